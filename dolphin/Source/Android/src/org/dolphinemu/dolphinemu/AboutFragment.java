@@ -20,8 +20,6 @@ import android.widget.TextView;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.dolphinemu.dolphinemu.settings.VideoSettingsFragment;
-
 /**
  * Represents the about screen.
  */
@@ -40,7 +38,39 @@ public final class AboutFragment extends Fragment
 
 		List<AboutFragmentItem> Input = new ArrayList<AboutFragmentItem>();
 		Input.add(new AboutFragmentItem(getString(R.string.build_revision), NativeLibrary.GetVersionString()));
-		Input.add(new AboutFragmentItem(getString(R.string.supports_gles3), VideoSettingsFragment.SupportsGLES3() ? yes : no));
+
+		// Only known once the startup stage that probes the GPU has finished.
+		GpuCapabilities gpu = GpuCapabilities.getCached();
+		if (gpu != null)
+		{
+			Input.add(new AboutFragmentItem(getString(R.string.supports_gles3), gpu.supportsGLES3() ? yes : no));
+			Input.add(new AboutFragmentItem(getString(R.string.gpu_renderer), gpu.getRenderer() + " (" + gpu.getVendor() + ")"));
+			Input.add(new AboutFragmentItem(getString(R.string.gpu_version), gpu.getVersion()));
+			Input.add(new AboutFragmentItem(getString(R.string.gpu_max_texture_size), Integer.toString(gpu.getMaxTextureSize())));
+		}
+		else
+		{
+			Input.add(new AboutFragmentItem(getString(R.string.supports_gles3), getString(R.string.startup_pending)));
+		}
+
+		// How long starting up took this time around.
+		Startup startup = Startup.getInstance(m_activity);
+		for (Startup.Stage stage : Startup.Stage.values())
+		{
+			String time;
+			if (startup.getDuration(stage) == -1)
+				time = getString(R.string.startup_pending);
+			else if (!startup.hasSucceeded(stage))
+				time = getString(R.string.startup_failed);
+			else
+				time = getString(R.string.startup_stage_time, startup.getDuration(stage), startup.getFinishTime(stage));
+
+			Input.add(new AboutFragmentItem(getString(stage.getName()), time));
+		}
+
+		long interactive = startup.getTimeToInteractive();
+		Input.add(new AboutFragmentItem(getString(R.string.startup_game_list_shown),
+				(interactive == -1) ? getString(R.string.startup_pending) : getString(R.string.startup_interactive_time, interactive, Startup.INTERACTIVE_BUDGET)));
 
 		AboutFragmentAdapter adapter = new AboutFragmentAdapter(m_activity, R.layout.about_layout, Input);
 		mMainList.setAdapter(adapter);
@@ -0,0 +1,461 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.Environment;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts the files the emulator needs from the assets of the APK
+ * into the user directory. This is one of the {@link Startup} stages.
+ * <p>
+ * A manifest in the private files directory of the app records the hash
+ * and size of every asset that was extracted, and which version of the app
+ * it came from. As long as the app hasn't been updated, starting up only
+ * checks that each file is still there with the size it had. After an
+ * update, each asset is hashed and only the ones that changed are extracted
+ * again. Either way, files are extracted in parallel, written to a temporary
+ * file and renamed into place, so an interrupted extraction never leaves a
+ * half-written file behind.
+ * <p>
+ * Config files are the user's to edit, so they are only replaced by a newer
+ * version if they're missing or still exactly as they were extracted. A
+ * file that's the same as a version an older release bundled counts as not
+ * edited either, since installs from before the manifest have no record of
+ * what was extracted.
+ */
+public final class AssetInstaller
+{
+	private static final String MANIFEST = "assets.manifest";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Upper bound on the number of extracting threads.
+	private static final int MAX_THREADS = 4;
+
+	// SHA-1 hashes of the GCPadNew.ini that older releases bundled,
+	// before pads 2 to 4 were mapped to the remote players.
+	private static final String[] OLD_GCPAD_INI = { "0eb89ec01a12557c34bb13b8c7b4884412ef8141" };
+
+	private static final class Asset
+	{
+		final String name;
+		final File destination;
+		final boolean preserveEdits;
+		final String[] oldHashes;
+
+		Asset(String name, File directory, boolean preserveEdits, String... oldHashes)
+		{
+			this.name = name;
+			this.destination = new File(directory, name);
+			this.preserveEdits = preserveEdits;
+			this.oldHashes = oldHashes;
+		}
+
+		// Whether a file with the given hash is a version of this asset an older release bundled.
+		boolean wasBundled(String hash)
+		{
+			for (String oldHash : oldHashes)
+			{
+				if (oldHash.equals(hash))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	// What was extracted from an asset.
+	private static final class Record
+	{
+		final String hash;
+		final long size;
+
+		Record(String hash, long size)
+		{
+			this.hash = hash;
+			this.size = size;
+		}
+	}
+
+	private final Context mContext;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ctx The current {@link Context}.
+	 */
+	public AssetInstaller(Context ctx)
+	{
+		mContext = ctx.getApplicationContext();
+	}
+
+	/**
+	 * Installs every asset that's missing or out of date, and
+	 * blocks until that's done. Must not be called on the UI thread.
+	 * <p>
+	 * The user directories must have been created beforehand.
+	 *
+	 * @return false if any asset couldn't be extracted.
+	 */
+	public boolean install()
+	{
+		int version = getVersion();
+		File manifestFile = new File(mContext.getFilesDir(), MANIFEST);
+		Map<String, Record> manifest = new HashMap<String, Record>();
+		final boolean upToDate = readManifest(manifestFile, manifest) == version && version != -1;
+
+		List<Asset> assets = getAssets();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		List<Future<Record>> results = new ArrayList<Future<Record>>();
+		for (final Asset asset : assets)
+		{
+			final Record record = manifest.get(asset.name);
+			results.add(executor.submit(new Callable<Record>()
+			{
+				public Record call() throws IOException
+				{
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					return install(asset, record, upToDate);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		boolean success = true;
+		Map<String, Record> installed = new HashMap<String, Record>();
+		for (int i = 0; i < assets.size(); i++)
+		{
+			try
+			{
+				installed.put(assets.get(i).name, results.get(i).get());
+			}
+			catch (ExecutionException e)
+			{
+				// Left out of the manifest, so it's looked at again next time.
+				Log.e("AssetInstaller", "Failed to install asset file: " + assets.get(i).name, e.getCause());
+				success = false;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		if (!upToDate || !installed.equals(manifest))
+			writeManifest(manifestFile, version, installed);
+
+		return success;
+	}
+
+	private List<Asset> getAssets()
+	{
+		File baseDir = new File(Environment.getExternalStorageDirectory(), "dolphin-emu");
+		File configDir = new File(baseDir, "Config");
+		File gcDir = new File(baseDir, "GC");
+
+		List<Asset> assets = new ArrayList<Asset>();
+		assets.add(new Asset("ButtonA.png",     baseDir,   false));
+		assets.add(new Asset("ButtonB.png",     baseDir,   false));
+		assets.add(new Asset("ButtonStart.png", baseDir,   false));
+		assets.add(new Asset("NoBanner.png",    baseDir,   false));
+		assets.add(new Asset("GCPadNew.ini",    configDir, true, OLD_GCPAD_INI));
+		assets.add(new Asset("Dolphin.ini",     configDir, true));
+		assets.add(new Asset("dsp_coef.bin",    gcDir,     false));
+		assets.add(new Asset("dsp_rom.bin",     gcDir,     false));
+		assets.add(new Asset("font_ansi.bin",   gcDir,     false));
+		assets.add(new Asset("font_sjis.bin",   gcDir,     false));
+		return assets;
+	}
+
+	private Record install(Asset asset, Record record, boolean upToDate) throws IOException
+	{
+		File file = asset.destination;
+
+		// Nothing can have changed in the APK, so the asset is fine as long as its file is.
+		if (upToDate && record != null)
+		{
+			if (!file.exists() || (!asset.preserveEdits && file.length() != record.size))
+				copy(asset);
+
+			return record;
+		}
+
+		Record bundled = hash(asset);
+		if (!file.exists())
+		{
+			copy(asset);
+			return bundled;
+		}
+
+		if (record != null && record.hash.equals(bundled.hash) && (asset.preserveEdits || file.length() == bundled.size))
+			return bundled;
+
+		if (asset.preserveEdits)
+		{
+			// Only replace what's there if it's what was extracted last time,
+			// or what an older release bundled, not the user's own edits.
+			String current = hash(file);
+			if ((record == null || !record.hash.equals(current)) && !asset.wasBundled(current))
+				return bundled;
+		}
+		else if (file.length() == bundled.size && bundled.hash.equals(hash(file)))
+		{
+			return bundled;
+		}
+
+		copy(asset);
+		return bundled;
+	}
+
+	// Copies an asset to a temporary file next to its destination, then moves it into place.
+	private void copy(Asset asset) throws IOException
+	{
+		File temp = new File(asset.destination.getPath() + TEMP_SUFFIX);
+		FileOutputStream out = new FileOutputStream(temp);
+		try
+		{
+			copy(asset.name, out);
+			out.getFD().sync();
+		}
+		catch (IOException e)
+		{
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		out.close();
+
+		if (!temp.renameTo(asset.destination))
+		{
+			temp.delete();
+			throw new IOException("Unable to move " + temp.getPath() + " into place");
+		}
+	}
+
+	private void copy(String asset, FileOutputStream out) throws IOException
+	{
+		// Assets stored uncompressed in the APK can be handed straight to the kernel.
+		AssetFileDescriptor fd = null;
+		try
+		{
+			fd = mContext.getAssets().openFd(asset);
+		}
+		catch (FileNotFoundException e)
+		{
+			// The asset is compressed.
+		}
+
+		if (fd != null)
+		{
+			try
+			{
+				FileChannel in = fd.createInputStream().getChannel();
+				FileChannel channel = out.getChannel();
+				long offset = fd.getStartOffset();
+				long length = fd.getLength();
+				long copied = 0;
+				while (copied < length)
+				{
+					long n = in.transferTo(offset + copied, length - copied, channel);
+					if (n <= 0)
+						throw new IOException("Unexpected end of asset file: " + asset);
+					copied += n;
+				}
+			}
+			finally
+			{
+				fd.close();
+			}
+			return;
+		}
+
+		InputStream in = mContext.getAssets().open(asset);
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private Record hash(Asset asset) throws IOException
+	{
+		InputStream in = mContext.getAssets().open(asset.name);
+		try
+		{
+			return hash(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static String hash(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			return hash(in).hash;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static Record hash(InputStream in) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException("SHA-1 is not available");
+		}
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long size = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1)
+		{
+			digest.update(buffer, 0, read);
+			size += read;
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b & 0xFF));
+
+		return new Record(hex.toString(), size);
+	}
+
+	private int getVersion()
+	{
+		try
+		{
+			return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).versionCode;
+		}
+		catch (PackageManager.NameNotFoundException e)
+		{
+			// Never upToDate, so every asset gets hashed.
+			return -1;
+		}
+	}
+
+	// Returns the version of the app the manifest was written by, or -1 if it can't be read.
+	// Lines are: the version, followed by "name hash size" for each asset.
+	private static int readManifest(File file, Map<String, Record> manifest)
+	{
+		try
+		{
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try
+			{
+				int version = Integer.parseInt(reader.readLine());
+
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					String[] fields = line.split(" ");
+					if (fields.length == 3)
+						manifest.put(fields[0], new Record(fields[1], Long.parseLong(fields[2])));
+				}
+
+				return version;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			// Nothing has been installed yet.
+			return -1;
+		}
+		catch (IOException e)
+		{
+			Log.e("AssetInstaller", "Unable to read " + file.getPath(), e);
+			manifest.clear();
+			return -1;
+		}
+		catch (NumberFormatException e)
+		{
+			Log.e("AssetInstaller", "Corrupt asset manifest " + file.getPath(), e);
+			manifest.clear();
+			return -1;
+		}
+	}
+
+	private static void writeManifest(File file, int version, Map<String, Record> manifest)
+	{
+		StringBuilder contents = new StringBuilder();
+		contents.append(version).append('\n');
+		for (Map.Entry<String, Record> entry : manifest.entrySet())
+		{
+			if (entry.getValue() != null)
+				contents.append(entry.getKey()).append(' ').append(entry.getValue().hash).append(' ').append(entry.getValue().size).append('\n');
+		}
+
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		try
+		{
+			FileOutputStream out = new FileOutputStream(temp);
+			try
+			{
+				out.write(contents.toString().getBytes("UTF-8"));
+				out.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+
+			if (!temp.renameTo(file))
+				throw new IOException("Unable to move " + temp.getPath() + " into place");
+		}
+		catch (IOException e)
+		{
+			Log.e("AssetInstaller", "Unable to write " + file.getPath(), e);
+			temp.delete();
+		}
+	}
+}
@@ -1,16 +1,33 @@
 package org.dolphinemu.dolphinemu;
 
 import android.app.Activity;
-import android.content.Context;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
-import android.util.DisplayMetrics;
+import android.os.Handler;
+import android.preference.PreferenceManager;
+import android.text.format.Formatter;
+import android.util.Log;
 import android.view.*;
 import android.view.WindowManager.LayoutParams;
-import org.dolphinemu.dolphinemu.settings.InputConfigFragment;
-
+import android.widget.AdapterView;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import org.dolphinemu.dolphinemu.settings.DolphinConfig;
+import org.dolphinemu.dolphinemu.settings.IniFile;
+import org.dolphinemu.dolphinemu.stream.FrameCapture;
+import org.dolphinemu.dolphinemu.stream.RemoteInput;
+import org.dolphinemu.dolphinemu.stream.StreamRelay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,23 +36,65 @@ import java.util.List;
  */
 public final class EmulationActivity extends Activity
 {
-	private boolean Running;
+	private final EmulationSession session = EmulationSession.getInstance();
+	private final SaveStateService saveStates = SaveStateService.getInstance();
+	private SaveStateStore saveStore;
 	private boolean IsActionBarHidden = false;
-	private float screenWidth;
-	private float screenHeight;
+	private View emulationView;
+	private final InputQueue inputQueue = InputScheduler.getInstance().getLocalQueue();
+	private final InputDeviceRegistry inputDevices = new InputDeviceRegistry(inputQueue);
+
+	// Frame timings, polled while they are shown or recorded.
+	private static final int FRAME_STATS_INTERVAL = 500;
+	private final FrameStats frameStats = new FrameStats();
+	private final InputScheduler.Lag inputLag = new InputScheduler.Lag();
+	private final Handler frameStatsHandler = new Handler();
+	private final Runnable frameStatsPoller = new Runnable()
+	{
+		public void run()
+		{
+			updateFrameStats();
+		}
+	};
+	private TextView frameStatsView;
+	private boolean showingFrameStats = false;
+	private FrameStatsRecorder frameStatsRecorder;
+
+	// Auto-saves, made every so often while playing and when leaving the game.
+	private final Handler autoSaveHandler = new Handler();
+	private final Runnable autoSaver = new Runnable()
+	{
+		public void run()
+		{
+			if (isRunning())
+				saveStates.save(saveStore.getNewAutoSaveSlot());
+
+			autoSaveHandler.postDelayed(this, autoSaveInterval);
+		}
+	};
+	private long autoSaveInterval = 0;
+	private long saveStateQuota = 0;
+
+	// Fast-forwarding, toggled from the menu or with the button bound to it.
+	private static final int FAST_FORWARD_SPEED_INTERVAL = 1000;
+	private final Handler fastForwardHandler = new Handler();
+	private final Runnable fastForwardSpeedPoller = new Runnable()
+	{
+		public void run()
+		{
+			fastForwardSpeedView.setText(getString(R.string.fast_forward_speed, NativeLibrary.GetEmulationSpeed()));
+			fastForwardHandler.postDelayed(this, FAST_FORWARD_SPEED_INTERVAL);
+		}
+	};
+	private TextView fastForwardSpeedView;
+	private boolean fastForwarding = false;
+	private int fastForwardFrameSkip = 0;
 
 	@Override
 	public void onCreate(Bundle savedInstanceState)
 	{
 		super.onCreate(savedInstanceState);
 
-		// Retrieve screen dimensions.
-		DisplayMetrics displayMetrics = new DisplayMetrics();
-		WindowManager wm = (WindowManager) getApplicationContext().getSystemService(Context.WINDOW_SERVICE); // the results will be higher than using the activity context object or the getWindowManager() shortcut
-		wm.getDefaultDisplay().getMetrics(displayMetrics);
-		this.screenHeight = displayMetrics.heightPixels;
-		this.screenWidth = displayMetrics.widthPixels;
-
 		// Request window features for the emulation view.
 		getWindow().addFlags(LayoutParams.FLAG_KEEP_SCREEN_ON);
 		getWindow().addFlags(LayoutParams.FLAG_FULLSCREEN);
@@ -46,18 +105,62 @@ public final class EmulationActivity extends Activity
 		actionBarBackground.setAlpha(175);
 		getActionBar().setBackgroundDrawable(actionBarBackground);
 
-		// Set the native rendering screen width/height.
-		// Also get the intent passed from the GameList when the game
+		// Get the intent passed from the GameList when the game
 		// was selected. This is so the path of the game can be retrieved
 		// and set on the native side of the code so the emulator can actually
-		// load the game.
+		// load the game. The rendering dimensions are set once the surface
+		// has been laid out and its size is known.
 		Intent gameToEmulate = getIntent();
-		NativeLibrary.SetDimensions((int)screenWidth, (int)screenHeight);
-		NativeLibrary.SetFilename(gameToEmulate.getStringExtra("SelectedGame"));
-		Running = true;
+		InputScheduler.getInstance().attach();
+
+		String game = gameToEmulate.getStringExtra("SelectedGame");
+		saveStore = new SaveStateStore(game);
+
+		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+		autoSaveInterval = Long.parseLong(prefs.getString("autoSaveInterval", "0")) * 60 * 1000;
+		saveStateQuota = Long.parseLong(prefs.getString("saveStateQuota", "1024")) * 1024 * 1024;
+		fastForwardFrameSkip = Integer.parseInt(prefs.getString("fastForwardFrameSkip", "2"));
+		inputDevices.setHotkey(DolphinConfig.get("Dolphin.ini").get("Android", "FastForward", "None"));
+
+		// Clear out whatever was left over the last time around.
+		saveStore.compact(saveStateQuota);
+
+		// Let the user know once a state has actually made it to disk.
+		saveStates.setListener(new SaveStateService.Listener()
+		{
+			public void onStateSaved(int slot, long size)
+			{
+				saveStore.compact(saveStateQuota);
+
+				// Auto-saves are made without the user asking, so they're kept quiet unless they fail.
+				if (slot < 0 && size > 0)
+					return;
+
+				String message;
+				if (slot < 0)
+					message = getString(R.string.auto_save_failed);
+				else if (size > 0)
+					message = getString(R.string.state_saved, slot + 1, Formatter.formatShortFileSize(EmulationActivity.this, size));
+				else
+					message = getString(R.string.state_save_failed, slot + 1);
+
+				Toast.makeText(EmulationActivity.this, message, Toast.LENGTH_SHORT).show();
+			}
+		});
+
+		// Emulation begins once the surface to render to exists.
+		session.start(game);
+		startStreaming();
+		startRemoteInput();
 
 		// Set the emulation window.
 		setContentView(R.layout.emulation_view);
+		emulationView = findViewById(R.id.emulationView);
+		frameStatsView = (TextView) findViewById(R.id.frameStats);
+		fastForwardSpeedView = (TextView) findViewById(R.id.fastForwardSpeed);
+
+		// Keep fast-forwarding if this is just a configuration change.
+		setFastForward(savedInstanceState != null && savedInstanceState.getBoolean("fastForwarding"));
 
 		// Hide the action bar by default so it doesn't get in the way.
 		getActionBar().hide();
@@ -65,44 +168,109 @@ public final class EmulationActivity extends Activity
 	}
 
 	@Override
-	public void onStop()
+	public void onDestroy()
 	{
-		super.onStop();
-		if (Running)
-			NativeLibrary.StopEmulation();
+		super.onDestroy();
+
+		saveStates.setListener(null);
+		frameStatsHandler.removeCallbacks(frameStatsPoller);
+		autoSaveHandler.removeCallbacks(autoSaver);
+		fastForwardHandler.removeCallbacks(fastForwardSpeedPoller);
+		stopRecordingFrameStats();
+
+		// Keep emulating if this is just a configuration change,
+		// the new instance of this activity picks the session back up.
+		if (isFinishing())
+		{
+			session.stop();
+			stopStreaming();
+			RemoteInput.getInstance().stop();
+		}
+	}
+
+	@Override
+	public void onSaveInstanceState(Bundle outState)
+	{
+		super.onSaveInstanceState(outState);
+		outState.putBoolean("fastForwarding", fastForwarding);
 	}
 
 	@Override
 	public void onPause()
 	{
 		super.onPause();
-		if (Running)
-			NativeLibrary.PauseEmulation();
+
+		boolean wasRunning = isRunning();
+		session.pause();
+		autoSaveHandler.removeCallbacks(autoSaver);
+
+		// Saving once paused means the snapshot is taken right away,
+		// rather than whenever emulation gets to run again.
+		if (autoSaveInterval > 0 && wasRunning && !isChangingConfigurations())
+			saveStates.save(saveStore.getNewAutoSaveSlot());
 	}
 
 	@Override
 	public void onResume()
 	{
 		super.onResume();
-		if (Running)
-			NativeLibrary.UnPauseEmulation();
+		session.resume();
+
+		if (autoSaveInterval > 0)
+			autoSaveHandler.postDelayed(autoSaver, autoSaveInterval);
 	}
 	
 	@Override
 	public boolean onTouchEvent(MotionEvent event)
 	{
-		float X = event.getX();
-		float Y = event.getY();
-		int Action = event.getActionMasked();
+		int action;
+		switch (event.getActionMasked())
+		{
+			case MotionEvent.ACTION_DOWN:
+			case MotionEvent.ACTION_POINTER_DOWN:
+				action = 0;
+				break;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_POINTER_UP:
+			case MotionEvent.ACTION_CANCEL:
+				action = 1;
+				break;
+			default:
+				action = 2;
+				break;
+		}
 
-		// Converts button locations 0 - 1 to OGL screen coords -1.0 - 1.0
-		float ScreenX = ((X / screenWidth) * 2.0f) - 1.0f;
-		float ScreenY = ((Y / screenHeight) * -2.0f) + 1.0f;
+		// Movements batched into this event since the last one.
+		for (int h = 0; h < event.getHistorySize(); h++)
+		{
+			for (int p = 0; p < event.getPointerCount(); p++)
+				queueTouch(event.getPointerId(p), 2, event.getHistoricalX(p, h), event.getHistoricalY(p, h));
+		}
+
+		if (action == 2 || event.getActionMasked() == MotionEvent.ACTION_CANCEL)
+		{
+			for (int p = 0; p < event.getPointerCount(); p++)
+				queueTouch(event.getPointerId(p), action, event.getX(p), event.getY(p));
+		}
+		else
+		{
+			// Only the pointer that went up or down changed its state.
+			int p = event.getActionIndex();
+			queueTouch(event.getPointerId(p), action, event.getX(p), event.getY(p));
+		}
 
-		NativeLibrary.onTouchEvent(Action, ScreenX, ScreenY);
-		
 		return false;
 	}
+
+	private void queueTouch(int pointerId, int action, float X, float Y)
+	{
+		// Converts button locations 0 - 1 to OGL screen coords -1.0 - 1.0
+		// The view being rendered to fills the window, so its size is the size of the rendered image.
+		float ScreenX = ((X / emulationView.getWidth()) * 2.0f) - 1.0f;
+		float ScreenY = ((Y / emulationView.getHeight()) * -2.0f) + 1.0f;
+
+		inputQueue.putTouch(pointerId, action, ScreenX, ScreenY);
+	}
 	
 	@Override
 	public void onBackPressed()
@@ -129,56 +297,358 @@ public final class EmulationActivity extends Activity
 		return true;
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu)
+	{
+		FrameStatsRecorder.Format recording = (frameStatsRecorder != null) ? frameStatsRecorder.getFormat() : null;
+
+		menu.findItem(R.id.fastForward).setChecked(fastForwarding);
+		menu.findItem(R.id.showFrameStats).setChecked(showingFrameStats);
+		menu.findItem(R.id.recordFrameStatsCsv).setChecked(recording == FrameStatsRecorder.Format.CSV);
+		menu.findItem(R.id.recordFrameStatsBinary).setChecked(recording == FrameStatsRecorder.Format.BINARY);
+		return true;
+	}
+
 	@Override
 	public boolean onMenuItemSelected(int itemId, MenuItem item)
 	{
 		switch(item.getItemId())
 		{
-			// Save state slots
-			case R.id.saveSlot1:
-				NativeLibrary.SaveState(0);
+			// Save states
+			case R.id.saveState:
+				showSaveStateDialog();
 				return true;
 
-			case R.id.saveSlot2:
-				NativeLibrary.SaveState(1);
+			case R.id.loadState:
+				showLoadStateDialog();
 				return true;
 
-			case R.id.saveSlot3:
-				NativeLibrary.SaveState(2);
+			// Fast-forwarding
+			case R.id.fastForward:
+				setFastForward(!fastForwarding);
 				return true;
 
-			case R.id.saveSlot4:
-				NativeLibrary.SaveState(3);
+			// Rewinding
+			case R.id.rewind:
+				showRewindDialog();
 				return true;
 
-			case R.id.saveSlot5:
-				NativeLibrary.SaveState(4);
+			// Frame timings
+			case R.id.showFrameStats:
+				showingFrameStats = !showingFrameStats;
+				frameStatsView.setVisibility(showingFrameStats ? View.VISIBLE : View.GONE);
+				pollFrameStats();
 				return true;
 
-			// Load state slot
-			case R.id.loadSlot1:
-				NativeLibrary.LoadState(0);
+			case R.id.recordFrameStatsCsv:
+				toggleRecordingFrameStats(FrameStatsRecorder.Format.CSV);
 				return true;
 
-			case R.id.loadSlot2:
-				NativeLibrary.LoadState(1);
+			case R.id.recordFrameStatsBinary:
+				toggleRecordingFrameStats(FrameStatsRecorder.Format.BINARY);
 				return true;
 
-			case R.id.loadSlot3:
-				NativeLibrary.LoadState(2);
-				return true;
+			default:
+				return super.onMenuItemSelected(itemId, item);
+		}
+	}
 
-			case R.id.loadSlot4:
-				NativeLibrary.LoadState(3);
-				return true;
+	// Lets the user save to a new slot, or over one of the numbered ones.
+	private void showSaveStateDialog()
+	{
+		final List<SaveStateIndex.Slot> slots = new ArrayList<SaveStateIndex.Slot>();
+		slots.add(null);
+		for (SaveStateIndex.Slot slot : saveStore.getSlots())
+		{
+			if (!slot.isAutoSave())
+				slots.add(slot);
+		}
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(this);
+		builder.setTitle(R.string.overlay_savestate);
+		builder.setAdapter(new SaveStateAdapter(this, slots), new DialogInterface.OnClickListener()
+		{
+			public void onClick(DialogInterface dialog, int which)
+			{
+				SaveStateIndex.Slot slot = slots.get(which);
+				saveStates.save((slot != null) ? slot.getSlot() : saveStore.getNewSlot());
+			}
+		});
+		builder.show();
+	}
+
+	// Lets the user load any slot, auto-saves included, or delete one by long-pressing it.
+	private void showLoadStateDialog()
+	{
+		final List<SaveStateIndex.Slot> slots = saveStore.getSlots();
+		if (slots.isEmpty())
+		{
+			Toast.makeText(this, R.string.load_state_none, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
+		final SaveStateAdapter adapter = new SaveStateAdapter(this, slots);
+		AlertDialog.Builder builder = new AlertDialog.Builder(this);
+		builder.setTitle(R.string.overlay_loadstate);
+		builder.setAdapter(adapter, new DialogInterface.OnClickListener()
+		{
+			public void onClick(DialogInterface dialog, int which)
+			{
+				saveStates.load(adapter.getItem(which).getSlot());
+			}
+		});
+
+		AlertDialog dialog = builder.create();
+		dialog.getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener()
+		{
+			public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id)
+			{
+				SaveStateIndex.Slot slot = adapter.getItem(position);
+				if (saveStore.delete(slot))
+					adapter.remove(slot);
+				else
+					Toast.makeText(EmulationActivity.this, R.string.state_delete_failed, Toast.LENGTH_SHORT).show();
 
-			case R.id.loadSlot5:
-				NativeLibrary.LoadState(4);
 				return true;
+			}
+		});
+		dialog.show();
+	}
 
-			default:
-				return super.onMenuItemSelected(itemId, item);
+	private void setFastForward(boolean enabled)
+	{
+		fastForwarding = enabled;
+		NativeLibrary.SetFastForward(enabled, fastForwardFrameSkip);
+
+		// The speed is only worked out once a second, so the first poll waits that long.
+		fastForwardHandler.removeCallbacks(fastForwardSpeedPoller);
+		fastForwardSpeedView.setText("");
+		fastForwardSpeedView.setVisibility(enabled ? View.VISIBLE : View.GONE);
+		if (enabled)
+			fastForwardHandler.postDelayed(fastForwardSpeedPoller, FAST_FORWARD_SPEED_INTERVAL);
+	}
+
+	// Lets the user pick how far back to rewind, with emulation paused in the meantime.
+	private void showRewindDialog()
+	{
+		final float[] ages = NativeLibrary.GetRewindAges();
+		if (ages.length == 0)
+		{
+			Toast.makeText(this, R.string.rewind_nothing, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
+		session.pause();
+
+		View view = getLayoutInflater().inflate(R.layout.rewind_dialog, null);
+		final TextView ageView = (TextView) view.findViewById(R.id.rewindAge);
+		final SeekBar position = (SeekBar) view.findViewById(R.id.rewindPosition);
+
+		// Dragging to the left goes further back.
+		position.setMax(ages.length - 1);
+		position.setProgress(ages.length - 1);
+		ageView.setText(getString(R.string.rewind_seconds, ages[0]));
+		position.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener()
+		{
+			public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser)
+			{
+				ageView.setText(getString(R.string.rewind_seconds, ages[ages.length - 1 - progress]));
+			}
+
+			public void onStartTrackingTouch(SeekBar seekBar)
+			{
+			}
+
+			public void onStopTrackingTouch(SeekBar seekBar)
+			{
+			}
+		});
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(this);
+		builder.setTitle(R.string.overlay_rewind);
+		builder.setView(view);
+		builder.setPositiveButton(R.string.overlay_rewind, new DialogInterface.OnClickListener()
+		{
+			public void onClick(DialogInterface dialog, int which)
+			{
+				if (!NativeLibrary.Rewind(ages.length - 1 - position.getProgress()))
+					Toast.makeText(EmulationActivity.this, R.string.rewind_failed, Toast.LENGTH_SHORT).show();
+			}
+		});
+		builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener()
+		{
+			public void onClick(DialogInterface dialog, int which)
+			{
+				// Do nothing. Emulation is resumed once the dialog is gone.
+			}
+		});
+
+		AlertDialog dialog = builder.create();
+		dialog.setOnDismissListener(new DialogInterface.OnDismissListener()
+		{
+			public void onDismiss(DialogInterface dialog)
+			{
+				session.resume();
+			}
+		});
+		dialog.show();
+	}
+
+	private void toggleRecordingFrameStats(FrameStatsRecorder.Format format)
+	{
+		boolean wasRecordingFormat = (frameStatsRecorder != null && frameStatsRecorder.getFormat() == format);
+		stopRecordingFrameStats();
+
+		if (!wasRecordingFormat)
+		{
+			File file = FrameStatsRecorder.createFile(format);
+			try
+			{
+				// Only frames presented from now on are recorded.
+				frameStats.update();
+				frameStatsRecorder = new FrameStatsRecorder(file, format);
+				Toast.makeText(this, getString(R.string.frame_stats_recording, file.getPath()), Toast.LENGTH_SHORT).show();
+			}
+			catch (IOException e)
+			{
+				Log.e("EmulationActivity", "Unable to create " + file.getPath(), e);
+				Toast.makeText(this, getString(R.string.frame_stats_record_failed, file.getPath()), Toast.LENGTH_SHORT).show();
+			}
+		}
+
+		pollFrameStats();
+	}
+
+	private void stopRecordingFrameStats()
+	{
+		if (frameStatsRecorder == null)
+			return;
+
+		try
+		{
+			frameStats.update();
+			frameStatsRecorder.write(frameStats);
+			frameStatsRecorder.close();
+		}
+		catch (IOException e)
+		{
+			Log.e("EmulationActivity", "Unable to finish writing " + frameStatsRecorder.getFile().getPath(), e);
 		}
+
+		frameStatsRecorder = null;
+	}
+
+	// Streams the game to browsers if a port is set with the StreamPort key of the Android
+	// section of Dolphin.ini. It keeps going across configuration changes.
+	private void startStreaming()
+	{
+		IniFile ini = DolphinConfig.get("Dolphin.ini");
+		int port = ini.getInt("Android", "StreamPort", 0);
+		if (port <= 0 || StreamRelay.getInstance().isRunning())
+			return;
+
+		try
+		{
+			StreamRelay relay = StreamRelay.getInstance();
+			relay.start(port, ini.getInt("Android", "StreamQueue", 4));
+
+			FrameCapture capture = FrameCapture.getInstance();
+			capture.start(ini.getInt("Android", "StreamWidth", 320),
+					ini.getInt("Android", "StreamHeight", 240),
+					ini.getInt("Android", "StreamQuantizer", 4), relay);
+			relay.setStreamHeader(capture.getStreamHeader());
+
+			Toast.makeText(this, getString(R.string.stream_started, port), Toast.LENGTH_SHORT).show();
+		}
+		catch (IOException e)
+		{
+			Log.e("EmulationActivity", "Unable to stream on port " + port, e);
+			Toast.makeText(this, getString(R.string.stream_failed, port), Toast.LENGTH_SHORT).show();
+		}
+	}
+
+	private void stopStreaming()
+	{
+		FrameCapture.getInstance().stop();
+		StreamRelay.getInstance().stop();
+	}
+
+	// Lets remote players join in if a port is set with the RemoteInputPort
+	// key of the Android section of Dolphin.ini.
+	private void startRemoteInput()
+	{
+		int port = DolphinConfig.get("Dolphin.ini").getInt("Android", "RemoteInputPort", 0);
+		if (port <= 0 || RemoteInput.getInstance().isRunning())
+			return;
+
+		try
+		{
+			RemoteInput.getInstance().start(port);
+			Toast.makeText(this, getString(R.string.remote_input_started, port), Toast.LENGTH_SHORT).show();
+		}
+		catch (IOException e)
+		{
+			Log.e("EmulationActivity", "Unable to take remote input on port " + port, e);
+			Toast.makeText(this, getString(R.string.remote_input_failed, port), Toast.LENGTH_SHORT).show();
+		}
+	}
+
+	// Starts or stops polling, depending on whether anything needs the frame timings.
+	private void pollFrameStats()
+	{
+		frameStatsHandler.removeCallbacks(frameStatsPoller);
+
+		if (showingFrameStats || frameStatsRecorder != null)
+			frameStatsHandler.postDelayed(frameStatsPoller, FRAME_STATS_INTERVAL);
+	}
+
+	private void updateFrameStats()
+	{
+		int frames = frameStats.update();
+
+		if (frameStatsRecorder != null)
+		{
+			try
+			{
+				frameStatsRecorder.write(frameStats);
+			}
+			catch (IOException e)
+			{
+				Log.e("EmulationActivity", "Unable to write " + frameStatsRecorder.getFile().getPath(), e);
+				Toast.makeText(this, getString(R.string.frame_stats_record_failed, frameStatsRecorder.getFile().getPath()), Toast.LENGTH_SHORT).show();
+				stopRecordingFrameStats();
+			}
+		}
+
+		// Show the frames presented since the last poll. Nothing's been
+		// presented if emulation is paused, so keep showing the last ones.
+		if (showingFrameStats && frames > 0)
+		{
+			StringBuilder text = new StringBuilder(getString(R.string.frame_stats_format,
+					frameStats.getAverage(FrameStats.CPU_TIME, frames), frameStats.getMax(FrameStats.CPU_TIME, frames),
+					frameStats.getAverage(FrameStats.GPU_TIME, frames), frameStats.getMax(FrameStats.GPU_TIME, frames),
+					frameStats.getAverage(FrameStats.VPS, frames), frameStats.getAverage(FrameStats.SPEED, frames)));
+
+			// How long input took to reach the game, and how much of it was thrown
+			// away, for the ports that had any since the last poll.
+			for (int port = 1; port <= InputScheduler.PORT_COUNT; port++)
+			{
+				InputScheduler.getInstance().takeLag(port, inputLag);
+				if (inputLag.events > 0)
+					text.append(getString(R.string.input_lag_format, port, inputLag.average, inputLag.max));
+				if (inputLag.dropped > 0)
+					text.append(getString(R.string.input_dropped_format, port, inputLag.dropped));
+			}
+
+			frameStatsView.setText(text);
+		}
+
+		pollFrameStats();
+	}
+
+	private boolean isRunning()
+	{
+		return session.getState() == EmulationSession.State.RUNNING;
 	}
 
 	// Gets button presses
@@ -188,22 +658,20 @@ public final class EmulationActivity extends Activity
 		int action = 0;
 
 		// Special catch for the back key
-		// Currently disabled because stopping and starting emulation is broken.
+		// Currently disabled, the back key toggles the action bar instead.
 		/*
 		if (event.getSource() == InputDevice.SOURCE_KEYBOARD
 			&& event.getKeyCode() == KeyEvent.KEYCODE_BACK
 			&& event.getAction() == KeyEvent.ACTION_UP)
 		{
-			if (Running)
-				NativeLibrary.StopEmulation();
-			Running = false;
+			session.stop();
 			Intent ListIntent = new Intent(this, GameListActivity.class);
 			startActivityForResult(ListIntent, 1);
 			return true;
 		}
 		*/
 
-		if (Running)
+		if (isRunning())
 		{
 			switch (event.getAction())
 			{
@@ -215,17 +683,27 @@ public final class EmulationActivity extends Activity
 						return true;
 					}
 
+					// The fast-forward button toggles it once per press.
+					if (inputDevices.isHotkey(event))
+					{
+						if (event.getRepeatCount() == 0)
+							setFastForward(!fastForwarding);
+						return true;
+					}
+
 					// Normal key events.
 					action = 0;
 					break;
 				case KeyEvent.ACTION_UP:
+					if (inputDevices.isHotkey(event))
+						return true;
+
 					action = 1;
 					break;
 				default:
 					return false;
 			}
-			InputDevice input = event.getDevice();
-			NativeLibrary.onGamePadEvent(InputConfigFragment.getInputDesc(input), event.getKeyCode(), action);
+			inputDevices.onButtonEvent(event, event.getKeyCode(), action);
 			return true;
 		}
 		return false;
@@ -234,19 +712,12 @@ public final class EmulationActivity extends Activity
 	@Override
 	public boolean dispatchGenericMotionEvent(MotionEvent event)
 	{
-		if (((event.getSource() & InputDevice.SOURCE_CLASS_JOYSTICK) == 0) || !Running)
+		if (((event.getSource() & InputDevice.SOURCE_CLASS_JOYSTICK) == 0) || !isRunning())
 		{
 			return super.dispatchGenericMotionEvent(event);
 		}
 
-		InputDevice input = event.getDevice();
-		List<InputDevice.MotionRange> motions = input.getMotionRanges();
-
-		for (InputDevice.MotionRange range : motions)
-		{
-			NativeLibrary.onGamePadMoveEvent(InputConfigFragment.getInputDesc(input), range.getAxis(), event.getAxisValue(range.getAxis()));
-		}
-
+		inputDevices.onMoveEvent(event);
 		return true;
 	}
 }
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Surface;
+
+/**
+ * Owns the emulation thread and keeps track of what state emulation is in.
+ * <p>
+ * There is only ever one session per process, and it outlives the
+ * activities that show it, so the surface emulation renders to can be
+ * replaced whenever Android destroys it, and a different game can be
+ * started without restarting the process.
+ * <p>
+ * All of the methods of this class must be called on the UI thread.
+ */
+public final class EmulationSession
+{
+	/**
+	 * The states a session can be in.
+	 */
+	public enum State
+	{
+		/** Nothing is being emulated. */
+		IDLE,
+
+		/** A game has been picked, but there's no surface to render to yet. */
+		STARTING,
+
+		/** A game is being emulated. */
+		RUNNING,
+
+		/** A game is loaded, but emulation has been paused. */
+		PAUSED,
+
+		/** A game is loaded, but the surface it renders to is gone. Emulation is paused until there's a new one. */
+		SURFACE_LOST,
+
+		/** Emulation is shutting down. */
+		STOPPING
+	}
+
+	private static EmulationSession sInstance;
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private volatile State mState = State.IDLE;
+	private Thread mThread;
+	private String mGame;
+
+	// The surface to render to, if there currently is one.
+	private Surface mSurface;
+
+	// The game to start as soon as the current one has finished shutting down.
+	private String mPendingGame;
+
+	// Whether emulation should be paused once it has a surface again.
+	private boolean mPaused = false;
+
+	private EmulationSession()
+	{
+	}
+
+	/**
+	 * Gets the emulation session.
+	 *
+	 * @return the emulation session.
+	 */
+	public static EmulationSession getInstance()
+	{
+		if (sInstance == null)
+			sInstance = new EmulationSession();
+
+		return sInstance;
+	}
+
+	/**
+	 * Gets the state the session is in.
+	 * <p>
+	 * Unlike the other methods of this class, this can be called from any thread.
+	 *
+	 * @return the state the session is in.
+	 */
+	public State getState()
+	{
+		return mState;
+	}
+
+	/**
+	 * Gets the path of the game being emulated.
+	 *
+	 * @return the path of the game being emulated, or null if nothing is.
+	 */
+	public String getGame()
+	{
+		return mGame;
+	}
+
+	/**
+	 * Starts emulating the given game once there's a surface to render to.
+	 * <p>
+	 * If a different game is already being emulated, it is stopped first.
+	 * If the given game is already being emulated, nothing happens.
+	 *
+	 * @param path The path of the game to emulate.
+	 */
+	public void start(String path)
+	{
+		switch (mState)
+		{
+			case IDLE:
+				mGame = path;
+				mPaused = false;
+				NativeLibrary.SetFilename(path);
+				setState(State.STARTING);
+
+				// Restarting into another game can reuse the surface of the last one.
+				if (mSurface != null && mSurface.isValid())
+					startThread(mSurface);
+				break;
+
+			case STARTING:
+				// Nothing's running yet, so the game can just be swapped for the new one.
+				mGame = path;
+				mPaused = false;
+				NativeLibrary.SetFilename(path);
+				break;
+
+			case STOPPING:
+				mPendingGame = path;
+				break;
+
+			default:
+				if (!path.equals(mGame))
+				{
+					stop();
+					mPendingGame = path;
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Stops emulation. The session goes back to {@link State#IDLE}
+	 * once the emulation thread has finished shutting down.
+	 */
+	public void stop()
+	{
+		mPendingGame = null;
+
+		switch (mState)
+		{
+			case STARTING:
+				mGame = null;
+				setState(State.IDLE);
+				break;
+
+			case RUNNING:
+			case PAUSED:
+			case SURFACE_LOST:
+				setState(State.STOPPING);
+				NativeLibrary.StopEmulation();
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Pauses emulation.
+	 */
+	public void pause()
+	{
+		mPaused = true;
+
+		if (mState == State.RUNNING)
+		{
+			NativeLibrary.PauseEmulation();
+			setState(State.PAUSED);
+		}
+	}
+
+	/**
+	 * Resumes emulation after {@link #pause()}.
+	 */
+	public void resume()
+	{
+		mPaused = false;
+
+		if (mState == State.PAUSED)
+		{
+			NativeLibrary.UnPauseEmulation();
+			setState(State.RUNNING);
+		}
+	}
+
+	/**
+	 * Hands the surface that should be rendered to over to emulation,
+	 * starting the emulation thread if this is the first surface.
+	 * <p>
+	 * This is also called when the size of the current surface changes,
+	 * in which case the renderer resizes its output to match.
+	 *
+	 * @param surface The {@link Surface} to render to.
+	 * @param width   The width of the surface in pixels.
+	 * @param height  The height of the surface in pixels.
+	 */
+	public void onSurfaceChanged(Surface surface, int width, int height)
+	{
+		mSurface = surface;
+		NativeLibrary.SetDimensions(width, height);
+
+		switch (mState)
+		{
+			case STARTING:
+				startThread(surface);
+				break;
+
+			case RUNNING:
+			case PAUSED:
+			case SURFACE_LOST:
+				NativeLibrary.SurfaceChanged(surface);
+
+				if (mState == State.SURFACE_LOST)
+				{
+					if (mPaused)
+					{
+						setState(State.PAUSED);
+					}
+					else
+					{
+						NativeLibrary.UnPauseEmulation();
+						setState(State.RUNNING);
+					}
+				}
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Lets emulation know that the surface it renders to is gone.
+	 */
+	public void onSurfaceDestroyed()
+	{
+		mSurface = null;
+
+		if (mState == State.RUNNING || mState == State.PAUSED)
+		{
+			NativeLibrary.SurfaceDestroyed();
+			setState(State.SURFACE_LOST);
+		}
+	}
+
+	private void startThread(final Surface surface)
+	{
+		setState(State.RUNNING);
+
+		mThread = new Thread("Emulation")
+		{
+			@Override
+			public void run()
+			{
+				// A game started right after the app was launched
+				// needs the files that are still being extracted.
+				try
+				{
+					Startup.waitFor(Startup.Stage.ASSETS);
+				}
+				catch (InterruptedException e)
+				{
+					Log.w("EmulationSession", "Interrupted while waiting for the assets to be installed");
+				}
+
+				NativeLibrary.Run(surface);
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						onThreadFinished();
+					}
+				});
+			}
+		};
+		mThread.start();
+	}
+
+	private void onThreadFinished()
+	{
+		mThread = null;
+		mGame = null;
+		setState(State.IDLE);
+		SaveStateService.getInstance().onEmulationStopped();
+
+		// Starting another game skips the setup done when the first one was started.
+		if (mPendingGame != null)
+		{
+			String game = mPendingGame;
+			mPendingGame = null;
+			start(game);
+		}
+	}
+
+	private void setState(State state)
+	{
+		Log.i("EmulationSession", mState + " -> " + state);
+		mState = state;
+	}
+}
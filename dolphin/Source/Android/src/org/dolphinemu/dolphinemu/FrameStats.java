@@ -0,0 +1,150 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+/**
+ * A rolling window of timings for the most recently presented frames.
+ * <p>
+ * Every call to {@link #update()} copies the latest timings from the
+ * native side into the same float array, so polling them doesn't allocate.
+ * Each frame is stored as {@link #FIELDS} floats:
+ * <pre>
+ * CPU_TIME  average time it took to emulate each field shown during the frame,
+ *           in milliseconds, not counting the frame limiter
+ * GPU_TIME  time since the previous frame was presented, in milliseconds
+ * VPS       rate fields were emulated at while the frame was shown
+ * SPEED     VPS in percent of the rate the game is meant to run at
+ * </pre>
+ * This class is meant to be used on a single thread.
+ */
+public final class FrameStats
+{
+	/** Index of the CPU thread time of a frame. */
+	public static final int CPU_TIME = 0;
+
+	/** Index of the GPU thread time of a frame. */
+	public static final int GPU_TIME = 1;
+
+	/** Index of the VPS of a frame. */
+	public static final int VPS = 2;
+
+	/** Index of the emulation speed of a frame. */
+	public static final int SPEED = 3;
+
+	/** Number of floats per frame. */
+	public static final int FIELDS = 4;
+
+	/** Number of frames the native side keeps, and so the most that can be fetched at once. */
+	public static final int CAPACITY = 512;
+
+	private final float[] mFrames = new float[CAPACITY * FIELDS];
+	private int mCount = 0;
+	private int mNewCount = 0;
+	private int mTotal = 0;
+
+	/**
+	 * Fetches the timings of the latest frames from the native side.
+	 *
+	 * @return the number of frames presented since the last update.
+	 */
+	public int update()
+	{
+		int total = NativeLibrary.GetFrameStats(mFrames);
+
+		// A lower total means emulation has been restarted since the last update.
+		mNewCount = (total >= mTotal) ? total - mTotal : total;
+		mCount = Math.min(total, CAPACITY);
+		mTotal = total;
+
+		return mNewCount;
+	}
+
+	/**
+	 * Gets the number of frames held, which is at most {@link #CAPACITY}.
+	 *
+	 * @return the number of frames held.
+	 */
+	public int getFrameCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * Gets the number of frames presented between the last two updates.
+	 * These are the last frames held, though if more were presented than
+	 * can be held, the oldest of them have been lost.
+	 *
+	 * @return the number of frames presented between the last two updates.
+	 */
+	public int getNewFrameCount()
+	{
+		return mNewCount;
+	}
+
+	/**
+	 * Gets the number of frames presented since emulation started.
+	 *
+	 * @return the number of frames presented since emulation started.
+	 */
+	public int getTotalFrameCount()
+	{
+		return mTotal;
+	}
+
+	/**
+	 * Gets a single timing of a frame.
+	 *
+	 * @param frame The index of the frame, from 0 (the oldest held) to {@link #getFrameCount()} - 1.
+	 * @param field The timing to get, such as {@link #CPU_TIME}.
+	 *
+	 * @return the timing.
+	 */
+	public float get(int frame, int field)
+	{
+		return mFrames[frame * FIELDS + field];
+	}
+
+	/**
+	 * Gets the average of a timing over the most recent frames.
+	 *
+	 * @param field  The timing to average, such as {@link #CPU_TIME}.
+	 * @param frames The number of frames to average over.
+	 *
+	 * @return the average, or 0 if no frames are held.
+	 */
+	public float getAverage(int field, int frames)
+	{
+		int count = Math.min(frames, mCount);
+		if (count == 0)
+			return 0.0f;
+
+		float sum = 0.0f;
+		for (int i = mCount - count; i < mCount; i++)
+			sum += mFrames[i * FIELDS + field];
+
+		return sum / count;
+	}
+
+	/**
+	 * Gets the highest value of a timing over the most recent frames.
+	 *
+	 * @param field  The timing to look at, such as {@link #GPU_TIME}.
+	 * @param frames The number of frames to look at.
+	 *
+	 * @return the highest value, or 0 if no frames are held.
+	 */
+	public float getMax(int field, int frames)
+	{
+		int count = Math.min(frames, mCount);
+
+		float max = 0.0f;
+		for (int i = mCount - count; i < mCount; i++)
+			max = Math.max(max, mFrames[i * FIELDS + field]);
+
+		return max;
+	}
+}
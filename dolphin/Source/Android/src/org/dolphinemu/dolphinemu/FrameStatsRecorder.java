@@ -0,0 +1,157 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.os.Environment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes the frames polled through a {@link FrameStats} to a file,
+ * so the timings of a play session can be looked at afterwards.
+ * <p>
+ * Two formats are supported. CSV has a header line followed by one line per frame:
+ * <pre>
+ * frame,cpu_ms,gpu_ms,vps,speed
+ * </pre>
+ * Binary is big-endian, and starts with the magic "DFST", a version int
+ * and the number of floats per frame, followed by one record per frame
+ * made up of the frame number as an int and the timings as floats.
+ */
+public final class FrameStatsRecorder
+{
+	/**
+	 * The formats frames can be written in.
+	 */
+	public enum Format
+	{
+		CSV,
+		BINARY
+	}
+
+	private static final int BINARY_MAGIC = 0x44465354; // "DFST"
+	private static final int BINARY_VERSION = 1;
+
+	private final File mFile;
+	private final Format mFormat;
+	private final DataOutputStream mOut;
+
+	/**
+	 * Constructor. Creates the file and writes its header.
+	 *
+	 * @param file   The file to write to.
+	 * @param format The {@link Format} to write in.
+	 *
+	 * @throws IOException if the file can't be created.
+	 */
+	public FrameStatsRecorder(File file, Format format) throws IOException
+	{
+		mFile = file;
+		mFormat = format;
+
+		File parent = file.getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+
+		mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+
+		if (format == Format.CSV)
+		{
+			mOut.writeBytes("frame,cpu_ms,gpu_ms,vps,speed\n");
+		}
+		else
+		{
+			mOut.writeInt(BINARY_MAGIC);
+			mOut.writeInt(BINARY_VERSION);
+			mOut.writeInt(FrameStats.FIELDS);
+		}
+	}
+
+	/**
+	 * Creates a new file to record frames in, named after the current time.
+	 * The file goes in the Dump/FrameStats folder of the dolphin-emu user folder.
+	 *
+	 * @param format The {@link Format} the file will be written in.
+	 *
+	 * @return the new file.
+	 */
+	public static File createFile(Format format)
+	{
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+		String extension = (format == Format.CSV) ? ".csv" : ".bin";
+
+		return new File(Environment.getExternalStorageDirectory() + File.separator + "dolphin-emu" + File.separator
+				+ "Dump" + File.separator + "FrameStats" + File.separator + "frames-" + name + extension);
+	}
+
+	/**
+	 * Gets the file being written to.
+	 *
+	 * @return the file being written to.
+	 */
+	public File getFile()
+	{
+		return mFile;
+	}
+
+	/**
+	 * Gets the format being written in.
+	 *
+	 * @return the {@link Format} being written in.
+	 */
+	public Format getFormat()
+	{
+		return mFormat;
+	}
+
+	/**
+	 * Writes the frames that were new in the last {@link FrameStats#update()}.
+	 *
+	 * @param stats The {@link FrameStats} to take the frames from.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void write(FrameStats stats) throws IOException
+	{
+		int count = Math.min(stats.getNewFrameCount(), stats.getFrameCount());
+		int first = stats.getFrameCount() - count;
+		int frameNumber = stats.getTotalFrameCount() - count;
+
+		for (int i = first; i < stats.getFrameCount(); i++, frameNumber++)
+		{
+			if (mFormat == Format.CSV)
+			{
+				mOut.writeBytes(String.format(Locale.US, "%d,%.3f,%.3f,%.2f,%.2f\n", frameNumber,
+						stats.get(i, FrameStats.CPU_TIME), stats.get(i, FrameStats.GPU_TIME),
+						stats.get(i, FrameStats.VPS), stats.get(i, FrameStats.SPEED)));
+			}
+			else
+			{
+				mOut.writeInt(frameNumber);
+				for (int field = 0; field < FrameStats.FIELDS; field++)
+					mOut.writeFloat(stats.get(i, field));
+			}
+		}
+	}
+
+	/**
+	 * Writes out anything still buffered and closes the file.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public void close() throws IOException
+	{
+		mOut.close();
+	}
+}
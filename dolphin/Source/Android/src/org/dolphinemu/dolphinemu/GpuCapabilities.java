@@ -0,0 +1,300 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * What the GPU of the device supports, as reported by OpenGL ES.
+ * <p>
+ * Finding out takes creating an EGL context, so it's only done once, in the
+ * background while starting up. The result is kept in the preferences along
+ * with the build fingerprint of the device, and only probed for again once
+ * a system update changes the fingerprint, since the GPU driver may have
+ * changed along with it.
+ */
+public final class GpuCapabilities
+{
+	private static final String PREFS = "GpuCapabilities";
+	private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+	private static final int EGL_OPENGL_ES2_BIT = 4;
+
+	// Held while loading or probing, so the GPU is only probed once even if several threads ask
+	// at the same time. getCached() doesn't take it, so it never has to wait for a probe to finish.
+	private static final Object sProbeLock = new Object();
+	private static GpuCapabilities sInstance;
+
+	private final String mVersion;
+	private final String mVendor;
+	private final String mRenderer;
+	private final String mExtensions;
+	private final int mMaxTextureSize;
+
+	private GpuCapabilities(String version, String vendor, String renderer, String extensions, int maxTextureSize)
+	{
+		mVersion = (version != null) ? version : "";
+		mVendor = (vendor != null) ? vendor : "";
+		mRenderer = (renderer != null) ? renderer : "";
+		mExtensions = (extensions != null) ? extensions : "";
+		mMaxTextureSize = maxTextureSize;
+	}
+
+	/**
+	 * Gets the capabilities of the GPU, probing for them first if that
+	 * hasn't been done since the last system update. This reads the
+	 * preferences and may create an EGL context, so it must not be called
+	 * on the UI thread.
+	 *
+	 * @param ctx The current {@link Context}.
+	 *
+	 * @return the capabilities of the GPU. If probing failed, everything is
+	 *         empty and nothing is supported, and it's tried again next time.
+	 */
+	public static GpuCapabilities get(Context ctx)
+	{
+		synchronized (sProbeLock)
+		{
+			GpuCapabilities capabilities = getCached();
+			if (capabilities != null)
+				return capabilities;
+
+			capabilities = load(ctx);
+			if (capabilities == null)
+			{
+				capabilities = probe();
+				if (capabilities == null)
+					return new GpuCapabilities(null, null, null, null, 0);
+
+				capabilities.save(ctx);
+			}
+
+			synchronized (GpuCapabilities.class)
+			{
+				sInstance = capabilities;
+			}
+			return capabilities;
+		}
+	}
+
+	/**
+	 * Gets the capabilities of the GPU if they're already known in this
+	 * process, without touching storage. This is fine to call on the UI thread.
+	 *
+	 * @return the capabilities of the GPU, or null if {@link #get(Context)}
+	 *         hasn't been called yet, which the startup does early on.
+	 */
+	public static synchronized GpuCapabilities getCached()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Gets the OpenGL ES version string.
+	 *
+	 * @return the OpenGL ES version string.
+	 */
+	public String getVersion()
+	{
+		return mVersion;
+	}
+
+	/**
+	 * Gets the OpenGL ES vendor string.
+	 *
+	 * @return the OpenGL ES vendor string.
+	 */
+	public String getVendor()
+	{
+		return mVendor;
+	}
+
+	/**
+	 * Gets the name of the OpenGL ES renderer.
+	 *
+	 * @return the name of the OpenGL ES renderer.
+	 */
+	public String getRenderer()
+	{
+		return mRenderer;
+	}
+
+	/**
+	 * Gets the OpenGL ES extensions that are supported.
+	 *
+	 * @return the names of the supported extensions, separated by spaces.
+	 */
+	public String getExtensions()
+	{
+		return mExtensions;
+	}
+
+	/**
+	 * Checks whether an OpenGL ES extension is supported.
+	 *
+	 * @param extension The name of the extension.
+	 *
+	 * @return true if the extension is supported.
+	 */
+	public boolean hasExtension(String extension)
+	{
+		return (" " + mExtensions + " ").contains(" " + extension + " ");
+	}
+
+	/**
+	 * Gets the largest width and height a texture can have.
+	 *
+	 * @return the largest texture size, in pixels.
+	 */
+	public int getMaxTextureSize()
+	{
+		return mMaxTextureSize;
+	}
+
+	/**
+	 * Checks if this device supports OpenGL ES 3.
+	 *
+	 * @return true if this device supports OpenGL ES 3; false otherwise.
+	 */
+	public boolean supportsGLES3()
+	{
+		// Check for OpenGL ES 3 support (General case).
+		if (mVersion.contains("OpenGL ES 3.0"))
+			return true;
+
+		// Checking for OpenGL ES 3 support for certain Qualcomm devices.
+		if (mVendor.equals("Qualcomm") && mRenderer.contains("Adreno (TM) 3"))
+		{
+			int start = mVersion.indexOf("V@");
+			if (start == -1)
+				return false;
+
+			start += 2;
+			int end = mVersion.indexOf(' ', start);
+			if (end == -1)
+				end = mVersion.length();
+
+			try
+			{
+				return Float.parseFloat(mVersion.substring(start, end)) >= 14.0f;
+			}
+			catch (NumberFormatException e)
+			{
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	private static GpuCapabilities load(Context ctx)
+	{
+		SharedPreferences prefs = ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+		if (!Build.FINGERPRINT.equals(prefs.getString("fingerprint", null)))
+			return null;
+
+		return new GpuCapabilities(
+				prefs.getString("version", null),
+				prefs.getString("vendor", null),
+				prefs.getString("renderer", null),
+				prefs.getString("extensions", null),
+				prefs.getInt("maxTextureSize", 0));
+	}
+
+	private void save(Context ctx)
+	{
+		ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+				.putString("fingerprint", Build.FINGERPRINT)
+				.putString("version", mVersion)
+				.putString("vendor", mVendor)
+				.putString("renderer", mRenderer)
+				.putString("extensions", mExtensions)
+				.putInt("maxTextureSize", mMaxTextureSize)
+				.commit();
+	}
+
+	// Creates a throwaway context on a 1x1 pbuffer to ask the driver, and cleans up after itself.
+	private static GpuCapabilities probe()
+	{
+		EGL10 egl = (EGL10) EGLContext.getEGL();
+		EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+		if (display == EGL10.EGL_NO_DISPLAY || !egl.eglInitialize(display, new int[2]))
+		{
+			Log.e("GpuCapabilities", "Unable to initialize EGL");
+			return null;
+		}
+
+		int[] configAttribs = new int[] {
+				EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+				EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+				EGL10.EGL_RED_SIZE, 8,
+				EGL10.EGL_GREEN_SIZE, 8,
+				EGL10.EGL_BLUE_SIZE, 8,
+				EGL10.EGL_NONE
+		};
+		EGLConfig[] configs = new EGLConfig[1];
+		int[] numConfigs = new int[1];
+		if (!egl.eglChooseConfig(display, configAttribs, configs, 1, numConfigs) || numConfigs[0] == 0)
+		{
+			Log.e("GpuCapabilities", "No EGL config supports OpenGL ES 2 pbuffers");
+			return null;
+		}
+
+		int[] contextAttribs = new int[] { EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE };
+		EGLContext context = egl.eglCreateContext(display, configs[0], EGL10.EGL_NO_CONTEXT, contextAttribs);
+		if (context == null || context == EGL10.EGL_NO_CONTEXT)
+		{
+			Log.e("GpuCapabilities", "Unable to create an EGL context");
+			return null;
+		}
+
+		int[] surfaceAttribs = new int[] { EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE };
+		EGLSurface surface = egl.eglCreatePbufferSurface(display, configs[0], surfaceAttribs);
+		if (surface == null || surface == EGL10.EGL_NO_SURFACE)
+		{
+			Log.e("GpuCapabilities", "Unable to create an EGL pbuffer surface");
+			egl.eglDestroyContext(display, context);
+			return null;
+		}
+
+		GpuCapabilities capabilities = null;
+		if (egl.eglMakeCurrent(display, surface, surface, context))
+		{
+			GL10 gl = (GL10) context.getGL();
+			int[] maxTextureSize = new int[1];
+			gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+
+			capabilities = new GpuCapabilities(
+					gl.glGetString(GL10.GL_VERSION),
+					gl.glGetString(GL10.GL_VENDOR),
+					gl.glGetString(GL10.GL_RENDERER),
+					gl.glGetString(GL10.GL_EXTENSIONS),
+					maxTextureSize[0]);
+
+			egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+			Log.i("GpuCapabilities", capabilities.mRenderer + " (" + capabilities.mVendor + "), " + capabilities.mVersion);
+		}
+		else
+		{
+			Log.e("GpuCapabilities", "Unable to make the EGL context current");
+		}
+
+		// The display is left initialized, since it's shared with every other EGL user in the process.
+		egl.eglDestroySurface(display, surface);
+		egl.eglDestroyContext(display, context);
+		return capabilities;
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.util.SparseArray;
+import android.view.InputDevice;
+import android.view.InputEvent;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import java.util.List;
+
+import org.dolphinemu.dolphinemu.settings.InputConfigFragment;
+
+/**
+ * Keeps track of the input devices that have sent events
+ * to the emulator, so that forwarding their input to the
+ * native side doesn't have to allocate anything.
+ * <p>
+ * The first event from a device looks up its descriptor and motion
+ * ranges and registers it with the native side, which hands back
+ * an integer handle. Every event after that is put in the
+ * {@link InputQueue} using that handle.
+ * <p>
+ * A button the frontend handles itself, such as the one bound to
+ * fast-forwarding, is resolved to a key code for each device as it's
+ * registered, so checking for it is a comparison of integers.
+ * <p>
+ * This class is meant to be used on the UI thread only.
+ */
+public final class InputDeviceRegistry
+{
+	private final SparseArray<Device> mDevices = new SparseArray<Device>();
+	private final InputQueue mQueue;
+	private String mHotkeyDevice = null;
+	private int mHotkeyCode = -1;
+
+	private static final class Device
+	{
+		private final String descriptor;
+		private final int handle;
+		private final int[] axes;
+
+		// The key code of the hotkey on this device, or -1 if it isn't on this device.
+		private int hotkey = -1;
+
+		private Device(String descriptor, int handle, int[] axes)
+		{
+			this.descriptor = descriptor;
+			this.handle = handle;
+			this.axes = axes;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param queue The {@link InputQueue} to put the events of the devices in.
+	 */
+	public InputDeviceRegistry(InputQueue queue)
+	{
+		mQueue = queue;
+	}
+
+	/**
+	 * Sets the button the frontend handles itself instead of forwarding.
+	 *
+	 * @param binding The button, stored the way the input settings store bindings:
+	 *                "Device '&lt;descriptor&gt;'-Button &lt;key code&gt;". Anything else,
+	 *                such as "None", means there's no such button.
+	 */
+	public void setHotkey(String binding)
+	{
+		final String prefix = "Device '";
+		final String separator = "'-Button ";
+
+		mHotkeyDevice = null;
+		mHotkeyCode = -1;
+
+		int end = binding.indexOf(separator);
+		if (binding.startsWith(prefix) && end >= prefix.length())
+		{
+			try
+			{
+				mHotkeyCode = Integer.parseInt(binding.substring(end + separator.length()));
+				mHotkeyDevice = binding.substring(prefix.length(), end);
+			}
+			catch (NumberFormatException e)
+			{
+				// Not a button, so there's no hotkey.
+			}
+		}
+
+		for (int i = 0; i < mDevices.size(); i++)
+		{
+			Device device = mDevices.valueAt(i);
+			device.hotkey = getHotkey(device.descriptor);
+		}
+	}
+
+	/**
+	 * Checks whether a key event comes from the button set with {@link #setHotkey(String)}.
+	 *
+	 * @param event The {@link KeyEvent} to check.
+	 *
+	 * @return true if the event comes from the hotkey; false otherwise.
+	 */
+	public boolean isHotkey(KeyEvent event)
+	{
+		return getDevice(event).hotkey == event.getKeyCode();
+	}
+
+	/**
+	 * Queues a button press or release.
+	 *
+	 * @param event  The {@link InputEvent} the button event came from.
+	 * @param button The key code of the button.
+	 * @param action Mask for the action being performed.
+	 */
+	public void onButtonEvent(InputEvent event, int button, int action)
+	{
+		mQueue.putButton(getDevice(event).handle, button, action);
+	}
+
+	/**
+	 * Queues the value of every axis of a joystick {@link MotionEvent},
+	 * including the historical values batched into it.
+	 *
+	 * @param event The joystick {@link MotionEvent} to queue.
+	 */
+	public void onMoveEvent(MotionEvent event)
+	{
+		Device device = getDevice(event);
+		int[] axes = device.axes;
+
+		for (int h = 0; h < event.getHistorySize(); h++)
+		{
+			for (int i = 0; i < axes.length; i++)
+				mQueue.putAxis(device.handle, i, event.getHistoricalAxisValue(axes[i], h));
+		}
+
+		for (int i = 0; i < axes.length; i++)
+			mQueue.putAxis(device.handle, i, event.getAxisValue(axes[i]));
+	}
+
+	private Device getDevice(InputEvent event)
+	{
+		// Device IDs aren't reused when a device is disconnected,
+		// so a cached entry can never end up describing a different device.
+		int id = event.getDeviceId();
+		Device device = mDevices.get(id);
+
+		if (device == null)
+		{
+			InputDevice input = event.getDevice();
+
+			int[] axes;
+			if (input != null)
+			{
+				List<InputDevice.MotionRange> motions = input.getMotionRanges();
+				axes = new int[motions.size()];
+				for (int i = 0; i < axes.length; i++)
+					axes[i] = motions.get(i).getAxis();
+			}
+			else
+			{
+				axes = new int[0];
+			}
+
+			String descriptor = InputConfigFragment.getInputDesc(input);
+			int handle = NativeLibrary.RegisterGamePad(descriptor, axes);
+			device = new Device(descriptor, handle, axes);
+			device.hotkey = getHotkey(descriptor);
+			mDevices.put(id, device);
+		}
+
+		return device;
+	}
+
+	private int getHotkey(String descriptor)
+	{
+		return descriptor.equals(mHotkeyDevice) ? mHotkeyCode : -1;
+	}
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free single-producer/single-consumer ring buffer of input events.
+ * <p>
+ * The UI thread puts touch, button and axis events in here as they arrive,
+ * and the emulation thread takes them out once per polled frame, so a slow
+ * UI thread never makes the emulated controller miss a poll and the UI thread
+ * never waits for the emulator.
+ * <p>
+ * Events are stored as fixed-size records in a direct {@link ByteBuffer} in
+ * native byte order, so the native side can read them straight out of memory:
+ * <pre>
+ * offset 0   int   write index (only written by the producer)
+ * offset 64  int   read index (only written by the consumer)
+ * offset 68  int   number of events taken out (only written by the consumer)
+ * offset 72  int   total lag of those events in microseconds, wrapping around (consumer)
+ * offset 76  int   longest lag since the last reset in microseconds (consumer)
+ * offset 80  int   number of the last reset the consumer has seen (consumer)
+ * offset 96  int   number of the last reset asked for (only written by {@link #resetMaxLag()})
+ * offset 128 records of {@link #RECORD_SIZE} bytes:
+ *            int type, int device, int code, int action, float x, float y, long time
+ * </pre>
+ * The time is when the event was put in the queue, from {@link System#nanoTime()}.
+ * The consumer only takes out the events put in before it started taking them
+ * out, and the lag of an event is how long before that it was put in.
+ * The indices keep counting up and are wrapped into the buffer when used,
+ * which works as long as the capacity is a power of two. The consumer
+ * can either be the native side or {@link #drain(Consumer)}, never both.
+ * <p>
+ * Input that comes from more than one thread goes through a queue for
+ * each, which the native side holds in slots and drains in turn.
+ */
+public final class InputQueue
+{
+	/** A touch event. device is the pointer ID, code is unused. */
+	public static final int TYPE_TOUCH = 0;
+
+	/** A gamepad button event. device is a gamepad handle, code is the key code. */
+	public static final int TYPE_BUTTON = 1;
+
+	/** A gamepad axis event. device is a gamepad handle, code is the index of the registered axis, x is its value. */
+	public static final int TYPE_AXIS = 2;
+
+	/** The slot of the queue that the devices of this phone or tablet go through. */
+	public static final int SLOT_LOCAL = 0;
+
+	/** The slot of the queue that remote player 1 goes through, the rest follow on from it. */
+	public static final int SLOT_REMOTE = 1;
+
+	/** Size of a single record in bytes. */
+	public static final int RECORD_SIZE = 32;
+
+	private static final int WRITE_INDEX = 0;
+	private static final int READ_INDEX = 64;
+	private static final int APPLIED = 68;
+	private static final int TOTAL_LAG = 72;
+	private static final int MAX_LAG = 76;
+	private static final int LAG_RESET_SEEN = 80;
+	private static final int LAG_RESET = 96;
+	private static final int RECORDS_START = 128;
+
+	private final ByteBuffer mBuffer;
+	private final int mMask;
+	private int mWriteIndex = 0;
+	private int mDropped = 0;
+
+	// Mirror of the write index in the buffer. Writing it after the record and
+	// reading it before the records is what makes drain() see
+	// whole records. The native side does the same with barriers of its own.
+	private final AtomicInteger mPublished = new AtomicInteger();
+
+	/**
+	 * Interface which receives the events taken out of the queue by {@link #drain(Consumer)}.
+	 */
+	public interface Consumer
+	{
+		/**
+		 * Called for each event taken out of the queue, in the order they were put in.
+		 *
+		 * @param type   The type of the event, such as {@link #TYPE_TOUCH}.
+		 * @param device The pointer ID or gamepad handle the event came from.
+		 * @param code   The key code or axis index of the event.
+		 * @param action The action of the event.
+		 * @param x      The X coordinate or axis value of the event.
+		 * @param y      The Y coordinate of the event.
+		 */
+		void onInputEvent(int type, int device, int code, int action, float x, float y);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The maximum number of events the queue can hold. Must be a power of two.
+	 */
+	public InputQueue(int capacity)
+	{
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+			throw new IllegalArgumentException("Capacity must be a power of two");
+
+		mMask = capacity - 1;
+		mBuffer = ByteBuffer.allocateDirect(RECORDS_START + capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Gets the direct buffer holding the queue, for handing to the native side.
+	 *
+	 * @return the direct buffer holding the queue.
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return mBuffer;
+	}
+
+	/**
+	 * Gets the number of events that have been thrown away because the queue was full.
+	 *
+	 * @return the number of events that have been thrown away because the queue was full.
+	 */
+	public int getDroppedCount()
+	{
+		return mDropped;
+	}
+
+	/**
+	 * Gets the number of events the consumer has taken out of the queue.
+	 * It wraps around, so only the difference between two calls means anything.
+	 *
+	 * @return the number of events taken out of the queue.
+	 */
+	public int getTakenCount()
+	{
+		return mBuffer.getInt(APPLIED);
+	}
+
+	/**
+	 * Gets how long the events taken out of the queue waited in it, added up.
+	 * It wraps around, so only the difference between two calls means anything.
+	 *
+	 * @return the total lag of the events taken out of the queue, in microseconds.
+	 */
+	public int getTotalLag()
+	{
+		return mBuffer.getInt(TOTAL_LAG);
+	}
+
+	/**
+	 * Gets the longest any event taken out of the queue waited
+	 * in it since the last call to {@link #resetMaxLag()}.
+	 *
+	 * @return the longest lag in microseconds.
+	 */
+	public int getMaxLag()
+	{
+		return mBuffer.getInt(MAX_LAG);
+	}
+
+	/**
+	 * Starts over on the longest lag, the next time the consumer takes
+	 * events out of the queue. Only call this from one thread.
+	 */
+	public void resetMaxLag()
+	{
+		mBuffer.putInt(LAG_RESET, mBuffer.getInt(LAG_RESET) + 1);
+	}
+
+	/**
+	 * Puts a touch event in the queue. Only call this from the producer thread.
+	 *
+	 * @param pointerId The ID of the pointer that moved.
+	 * @param action    0 if the pointer went down, 1 if it went up, 2 if it moved.
+	 * @param x         The X coordinate of the pointer in OpenGL screen coordinates.
+	 * @param y         The Y coordinate of the pointer in OpenGL screen coordinates.
+	 *
+	 * @return true if the event was queued; false if the queue is full.
+	 */
+	public boolean putTouch(int pointerId, int action, float x, float y)
+	{
+		return put(TYPE_TOUCH, pointerId, 0, action, x, y);
+	}
+
+	/**
+	 * Puts a gamepad button event in the queue. Only call this from the producer thread.
+	 *
+	 * @param device The gamepad handle returned by {@link NativeLibrary#RegisterGamePad(String, int[])}.
+	 * @param button The key code of the button.
+	 * @param action 0 if the button was pressed, 1 if it was released.
+	 *
+	 * @return true if the event was queued; false if the queue is full.
+	 */
+	public boolean putButton(int device, int button, int action)
+	{
+		return put(TYPE_BUTTON, device, button, action, 0.0f, 0.0f);
+	}
+
+	/**
+	 * Puts a gamepad axis event in the queue. Only call this from the producer thread.
+	 *
+	 * @param device    The gamepad handle returned by {@link NativeLibrary#RegisterGamePad(String, int[])}.
+	 * @param axisIndex The index of the axis in the list the gamepad was registered with.
+	 * @param value     The value of the axis.
+	 *
+	 * @return true if the event was queued; false if the queue is full.
+	 */
+	public boolean putAxis(int device, int axisIndex, float value)
+	{
+		return put(TYPE_AXIS, device, axisIndex, 0, value, 0.0f);
+	}
+
+	/**
+	 * Takes every event put in before this was called out of the queue. Only call this from the consumer thread,
+	 * and only if the queue hasn't been handed to the native side.
+	 *
+	 * @param consumer The {@link Consumer} to give the events to.
+	 *
+	 * @return the number of events taken out of the queue.
+	 */
+	public int drain(Consumer consumer)
+	{
+		long cutoff = System.nanoTime();
+		int readIndex = mBuffer.getInt(READ_INDEX);
+		int writeIndex = mPublished.get();
+
+		int lagReset = mBuffer.getInt(LAG_RESET);
+		if (lagReset != mBuffer.getInt(LAG_RESET_SEEN))
+		{
+			mBuffer.putInt(MAX_LAG, 0);
+			mBuffer.putInt(LAG_RESET_SEEN, lagReset);
+		}
+
+		// Reading mPublished above orders the record reads after it.
+		int i = readIndex;
+		for (; i != writeIndex; i++)
+		{
+			int offset = RECORDS_START + (i & mMask) * RECORD_SIZE;
+			long time = mBuffer.getLong(offset + 24);
+			if (time - cutoff > 0)
+				break;
+
+			int lag = (int) ((cutoff - time) / 1000);
+			mBuffer.putInt(APPLIED, mBuffer.getInt(APPLIED) + 1);
+			mBuffer.putInt(TOTAL_LAG, mBuffer.getInt(TOTAL_LAG) + lag);
+			mBuffer.putInt(MAX_LAG, Math.max(mBuffer.getInt(MAX_LAG), lag));
+
+			consumer.onInputEvent(mBuffer.getInt(offset), mBuffer.getInt(offset + 4), mBuffer.getInt(offset + 8),
+					mBuffer.getInt(offset + 12), mBuffer.getFloat(offset + 16), mBuffer.getFloat(offset + 20));
+		}
+
+		mBuffer.putInt(READ_INDEX, i);
+		return i - readIndex;
+	}
+
+	private boolean put(int type, int device, int code, int action, float x, float y)
+	{
+		// The read index only ever grows, so a stale value just makes the queue look fuller than it is.
+		if (mWriteIndex - mBuffer.getInt(READ_INDEX) > mMask)
+		{
+			mDropped++;
+			return false;
+		}
+
+		int offset = RECORDS_START + (mWriteIndex & mMask) * RECORD_SIZE;
+		mBuffer.putInt(offset, type);
+		mBuffer.putInt(offset + 4, device);
+		mBuffer.putInt(offset + 8, code);
+		mBuffer.putInt(offset + 12, action);
+		mBuffer.putFloat(offset + 16, x);
+		mBuffer.putFloat(offset + 20, y);
+		mBuffer.putLong(offset + 24, System.nanoTime());
+
+		mWriteIndex++;
+		mPublished.set(mWriteIndex);
+		mBuffer.putInt(WRITE_INDEX, mWriteIndex);
+		return true;
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+/**
+ * Holds the {@link InputQueue}s that feed the controller ports of the
+ * emulated console, and keeps track of how long input waits in them.
+ * <p>
+ * Each port has a queue of its own for the remote player on it, and the
+ * first port also has the one the devices of this phone go through. No
+ * queue is filled by more than one thread, so putting input in never
+ * waits on anything, and a player who sends more than their queue holds
+ * only loses their own input.
+ * <p>
+ * The native side takes the input out of every queue once per emulated
+ * frame, when the controllers are polled, and takes all of it up to the
+ * same point in time. Input is applied on the first frame polled after it
+ * arrived, whichever port it's for, and the lag of each port is how long
+ * that took.
+ */
+public final class InputScheduler
+{
+	/** The number of controller ports. */
+	public static final int PORT_COUNT = 4;
+
+	/**
+	 * How long the input of a port waited to be applied.
+	 */
+	public static final class Lag
+	{
+		/** The number of events applied. */
+		public int events;
+
+		/** How long they waited on average, in milliseconds. */
+		public float average;
+
+		/** The longest any of them waited, in milliseconds. */
+		public float max;
+
+		/** The number of events thrown away because the queue was full. */
+		public int dropped;
+	}
+
+	private static final InputScheduler sInstance = new InputScheduler();
+
+	// Indexed by the slot they're in on the native side.
+	private final InputQueue[] mQueues = new InputQueue[InputQueue.SLOT_REMOTE + PORT_COUNT];
+
+	// The counters of each queue as of the last call to takeLag().
+	private final int[] mLastTaken = new int[mQueues.length];
+	private final int[] mLastLag = new int[mQueues.length];
+	private final int[] mLastDropped = new int[mQueues.length];
+
+	private InputScheduler()
+	{
+		mQueues[InputQueue.SLOT_LOCAL] = new InputQueue(1024);
+		for (int i = 0; i < PORT_COUNT; i++)
+			mQueues[InputQueue.SLOT_REMOTE + i] = new InputQueue(256);
+	}
+
+	/**
+	 * Gets the input scheduler.
+	 *
+	 * @return the input scheduler.
+	 */
+	public static InputScheduler getInstance()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Hands every queue to the native side.
+	 */
+	public void attach()
+	{
+		for (int slot = 0; slot < mQueues.length; slot++)
+			NativeLibrary.SetInputQueue(slot, mQueues[slot].getBuffer());
+	}
+
+	/**
+	 * Gets the queue the devices of this phone go through,
+	 * which feeds the first port. Only fill it on the UI thread.
+	 *
+	 * @return the queue for the devices of this phone.
+	 */
+	public InputQueue getLocalQueue()
+	{
+		return mQueues[InputQueue.SLOT_LOCAL];
+	}
+
+	/**
+	 * Gets the queue the remote player on a port goes through.
+	 * Only fill it on one thread.
+	 *
+	 * @param port The port, from 1 to {@link #PORT_COUNT}.
+	 *
+	 * @return the queue for the remote player on the port.
+	 */
+	public InputQueue getRemoteQueue(int port)
+	{
+		return mQueues[InputQueue.SLOT_REMOTE + port - 1];
+	}
+
+	/**
+	 * Takes how long the input of a port waited to be applied, and how much
+	 * of it was thrown away, since the last time this was called for it.
+	 * The longest wait starts over, so only call this from one place,
+	 * and only on the UI thread.
+	 *
+	 * @param port The port, from 1 to {@link #PORT_COUNT}.
+	 * @param lag  The {@link Lag} to fill in.
+	 */
+	public void takeLag(int port, Lag lag)
+	{
+		int events = 0;
+		long total = 0;
+		int max = 0;
+		int dropped = 0;
+
+		for (int slot = 0; slot < mQueues.length; slot++)
+		{
+			if (getPort(slot) != port)
+				continue;
+
+			InputQueue queue = mQueues[slot];
+			int taken = queue.getTakenCount();
+			int totalLag = queue.getTotalLag();
+			events += taken - mLastTaken[slot];
+			total += (totalLag - mLastLag[slot]) & 0xFFFFFFFFL;
+			max = Math.max(max, queue.getMaxLag());
+			int droppedCount = queue.getDroppedCount();
+			dropped += droppedCount - mLastDropped[slot];
+
+			mLastTaken[slot] = taken;
+			mLastLag[slot] = totalLag;
+			mLastDropped[slot] = droppedCount;
+			queue.resetMaxLag();
+		}
+
+		lag.events = events;
+		lag.average = (events > 0) ? total / 1000.0f / events : 0.0f;
+		lag.max = max / 1000.0f;
+		lag.dropped = dropped;
+	}
+
+	private static int getPort(int slot)
+	{
+		return (slot == InputQueue.SLOT_LOCAL) ? 1 : slot - InputQueue.SLOT_REMOTE + 1;
+	}
+}
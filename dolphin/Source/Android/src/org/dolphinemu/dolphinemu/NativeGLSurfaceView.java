@@ -16,10 +16,6 @@ import android.view.SurfaceView;
  */
 public final class NativeGLSurfaceView extends SurfaceView
 {
-	private static Thread myRun;
-	private static boolean Running = false;
-	private static boolean Created = false;
-
 	/**
 	 * Constructor.
 	 * 
@@ -29,40 +25,22 @@ public final class NativeGLSurfaceView extends SurfaceView
 	{
 		super(context, attribs);
 
-		if (!Created)
+		getHolder().addCallback(new SurfaceHolder.Callback()
 		{
-			myRun = new Thread() 
-			{
-				@Override
-				public void run() {
-					NativeLibrary.Run(getHolder().getSurface());
+				public void surfaceCreated(SurfaceHolder holder)
+				{
+					// Nothing to do until the size of the surface is known.
 				}
-			};
-
-			getHolder().addCallback(new SurfaceHolder.Callback()
-			{
-					public void surfaceCreated(SurfaceHolder holder)
-					{
-						// TODO Auto-generated method stub
-						if (!Running)
-						{
-							myRun.start();
-							Running = true;
-						}
-					}
-
-					public void surfaceChanged(SurfaceHolder arg0, int arg1, int arg2, int arg3)
-					{
-						// TODO Auto-generated method stub
-					}
 
-					public void surfaceDestroyed(SurfaceHolder arg0)
-					{
-						// TODO Auto-generated method stub
-					}
-			 });
+				public void surfaceChanged(SurfaceHolder holder, int format, int width, int height)
+				{
+					EmulationSession.getInstance().onSurfaceChanged(holder.getSurface(), width, height);
+				}
 
-			Created = true;
-		}
+				public void surfaceDestroyed(SurfaceHolder holder)
+				{
+					EmulationSession.getInstance().onSurfaceDestroyed();
+				}
+		 });
 	}
 }
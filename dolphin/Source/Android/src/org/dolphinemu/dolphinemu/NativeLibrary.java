@@ -9,6 +9,10 @@ package org.dolphinemu.dolphinemu;
 import android.util.Log;
 import android.view.Surface;
 
+import java.nio.ByteBuffer;
+
+import org.dolphinemu.dolphinemu.stream.FrameCapture;
+
 /**
  * Class which contains methods that interact
  * with the native side of the Dolphin code.
@@ -42,6 +46,30 @@ public final class NativeLibrary
 	 */
 	public static native void onGamePadMoveEvent(String Device, int Axis, float Value);
 
+	/**
+	 * Registers a gamepad with the native side, so that its events can be
+	 * sent using an integer handle instead of its descriptor.
+	 * <p>
+	 * Registering the same descriptor again returns the same handle,
+	 * with the list of axes replaced by the given one.
+	 * 
+	 * @param Device The input descriptor of the gamepad.
+	 * @param Axes   The IDs of the axes, in the order {@link InputQueue#putAxis(int, int, float)} numbers them in.
+	 * 
+	 * @return the handle of the gamepad.
+	 */
+	public static native int RegisterGamePad(String Device, int[] Axes);
+
+	/**
+	 * Sets one of the {@link InputQueue}s that the emulated controllers take
+	 * their input from. Every queue that's set is drained, one after the
+	 * other, every time the controllers are polled.
+	 * 
+	 * @param Slot  Which queue to set, such as {@link InputQueue#SLOT_LOCAL}. From 0 to 7.
+	 * @param Queue The direct buffer returned by {@link InputQueue#getBuffer()}, or null to unset the slot.
+	 */
+	public static native void SetInputQueue(int Slot, ByteBuffer Queue);
+
 	/**
 	 * Gets a value from a key in the given ini-based config file.
 	 * 
@@ -79,6 +107,19 @@ public final class NativeLibrary
 	 */
 	public static native void SetDimensions(int width, int height);
 
+	/**
+	 * Gets the timings of the most recently presented frames.
+	 * <p>
+	 * Each frame takes up {@link FrameStats#FIELDS} floats, laid out as described in
+	 * {@link FrameStats}. As many frames as fit in the array are copied, oldest first,
+	 * up to the number of frames the native side keeps.
+	 * 
+	 * @param Stats The array to copy the timings into.
+	 * 
+	 * @return the number of frames presented since emulation started.
+	 */
+	public static native int GetFrameStats(float[] Stats);
+
 	/**
 	 * Gets the embedded banner within the given ISO/ROM.
 	 * 
@@ -106,18 +147,93 @@ public final class NativeLibrary
 
 	/**
 	 * Saves a game state to the slot number.
+	 * <p>
+	 * This returns straight away. The snapshot is taken on the emulation thread,
+	 * and compressed and written to disk in the background, after which
+	 * {@link #onStateSaved(String, long)} is called. Use {@link SaveStateService}
+	 * rather than calling this directly to find out when that happens.
 	 *
 	 * @param slot  The slot location to save state to.
+	 *
+	 * @return the path of the file the state is being saved to, or null if nothing is being emulated.
 	 */
-	public static native void SaveState(int slot);
+	public static native String SaveState(int slot);
 
 	/**
 	 * Loads a game state from the slot number.
+	 * <p>
+	 * This returns straight away, the state is loaded on the emulation thread.
 	 *
 	 * @param slot  The slot location to load state from.
 	 */
 	public static native void LoadState(int slot);
 
+	/**
+	 * Called from the native side once a state started by {@link #SaveState(int)}
+	 * has been written to disk, or has failed to be. This is called on the thread
+	 * that wrote the state.
+	 *
+	 * @param path The path of the state file.
+	 * @param size The size of the state file in bytes, or 0 if saving it failed.
+	 */
+	public static void onStateSaved(String path, long size)
+	{
+		SaveStateService.getInstance().onStateSaved(path, size);
+	}
+
+	/**
+	 * Gets the ID of a game, which its own settings and save states are kept under.
+	 * This opens the disc image, so it shouldn't be called on the UI thread.
+	 *
+	 * @param filename The path of the game.
+	 *
+	 * @return the ID of the game, or null if the game can't be identified.
+	 */
+	public static native String GetGameId(String filename);
+
+	/**
+	 * Gets the path of the index describing the save state slots of a game.
+	 * Use {@link SaveStateIndex} to read it.
+	 *
+	 * @param filename The path of the game.
+	 *
+	 * @return the path of the index, or null if the game can't be identified.
+	 */
+	public static native String GetStateIndexPath(String filename);
+
+	/**
+	 * Deletes a saved state and drops it from the index of its game.
+	 *
+	 * @param gameId The ID of the game, as in {@link SaveStateIndex.Slot#getGameId()}.
+	 * @param slot   The slot to delete.
+	 *
+	 * @return false if the state file couldn't be deleted.
+	 */
+	public static native boolean DeleteState(String gameId, int slot);
+
+	/**
+	 * Gets how far back each of the states kept for rewinding is.
+	 * Rewinding is set up through the RewindInterval and
+	 * RewindMemory keys of the Android section of Dolphin.ini.
+	 *
+	 * @return the age of each state in seconds of emulated time, newest first.
+	 *         Empty if rewinding is off or nothing is being emulated.
+	 */
+	public static native float[] GetRewindAges();
+
+	/**
+	 * Rewinds emulation to one of the states listed by {@link #GetRewindAges()}.
+	 * The states newer than it are dropped.
+	 * <p>
+	 * While emulation is running this returns straight away, the state is loaded
+	 * on the emulation thread. While it's paused, the state is loaded right away.
+	 *
+	 * @param index The index of the state, 0 being the newest.
+	 *
+	 * @return false if there is no such state.
+	 */
+	public static native boolean Rewind(int index);
+
 	/**
 	 * Creates the initial folder structure in /sdcard/dolphin-emu/
 	 *
@@ -131,6 +247,19 @@ public final class NativeLibrary
 	 */
 	public static native void Run(Surface surf);
 
+	/**
+	 * Replaces the surface that emulation renders to.
+	 * 
+	 * @param surf The new surface to render to.
+	 */
+	public static native void SurfaceChanged(Surface surf);
+
+	/**
+	 * Lets the native side know that the surface it renders
+	 * to is gone. Emulation is paused until there's a new one.
+	 */
+	public static native void SurfaceDestroyed();
+
 	/** Unpauses emulation from a paused state. */
 	public static native void UnPauseEmulation();
 
@@ -140,11 +269,88 @@ public final class NativeLibrary
 	/** Stops emulation. */
 	public static native void StopEmulation();
 
+	/**
+	 * Turns fast-forwarding on or off. While it's on, the frame and
+	 * audio limiters are off, so the game runs as fast as it can.
+	 * Fast-forwarding is turned off whenever emulation stops.
+	 *
+	 * @param enabled      Whether to fast-forward.
+	 * @param framesToSkip How many frames to skip after each one that's shown
+	 *                     while fast-forwarding, so that rendering takes up
+	 *                     less of the time. 0 shows every frame.
+	 */
+	public static native void SetFastForward(boolean enabled, int framesToSkip);
+
+	/**
+	 * Starts or stops handing the frames that are rendered to
+	 * {@link #onFrameCaptured(int, ByteBuffer, int, int)}.
+	 * Use {@link FrameCapture} rather than calling this directly.
+	 *
+	 * @param enabled Whether to capture frames.
+	 */
+	public static native void SetFrameCapture(boolean enabled);
+
+	/**
+	 * Gives a buffer handed to {@link #onFrameCaptured(int, ByteBuffer, int, int)}
+	 * back to the native side, so the next frame can be read into it.
+	 * The buffer must not be used after this.
+	 *
+	 * @param buffer The number of the buffer.
+	 */
+	public static native void ReleaseCapturedFrame(int buffer);
+
+	/**
+	 * Gets how many frames weren't captured because every buffer
+	 * was still held, since capturing was last turned on.
+	 *
+	 * @return the number of frames dropped.
+	 */
+	public static native int GetDroppedCaptureFrames();
+
+	/**
+	 * Called from the native side on the video thread with each frame
+	 * that's been read back, while capturing is turned on. Frames are
+	 * only read back while one of the few buffers is free, so each one
+	 * must be released with {@link #ReleaseCapturedFrame(int)}.
+	 *
+	 * @param buffer The number of the buffer the frame is in.
+	 * @param pixels The frame, as RGBA pixels starting with the bottom row.
+	 * @param width  The width of the frame.
+	 * @param height The height of the frame.
+	 */
+	public static void onFrameCaptured(int buffer, ByteBuffer pixels, int width, int height)
+	{
+		FrameCapture.getInstance().onFrameCaptured(buffer, pixels, width, height);
+	}
+
+	/**
+	 * Gets how fast the game has been running over the last second.
+	 *
+	 * @return the speed in percent of the speed the game is meant to
+	 *         run at, or 0 if nothing is being emulated.
+	 */
+	public static native int GetEmulationSpeed();
+
+	private static boolean sLoaded = false;
+
+	/**
+	 * Makes sure the native library has been loaded. The library is loaded
+	 * the first time anything in this class is used, so all this does is
+	 * pick the thread that pays for it.
+	 *
+	 * @return false if the library couldn't be loaded.
+	 */
+	public static boolean load()
+	{
+		return sLoaded;
+	}
+
 	static
 	{
 		try
 		{
 			System.loadLibrary("main");
+			sLoaded = true;
 		}
 		catch (UnsatisfiedLinkError ex)
 		{
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The adapter backing the lists of save state slots to save to or load from.
+ * <p>
+ * Each slot is shown with its thumbnail, when it was saved, how long the
+ * game had been played for and how big the state is. A null slot stands
+ * for saving to a new slot. The thumbnails are read from the slot index
+ * on a background thread once the adapter has been created.
+ */
+public final class SaveStateAdapter extends ArrayAdapter<SaveStateIndex.Slot>
+{
+	private final Context mContext;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	// Only touched on the UI thread.
+	private final Map<SaveStateIndex.Slot, Bitmap> mThumbnails = new HashMap<SaveStateIndex.Slot, Bitmap>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context The current {@link Context}.
+	 * @param slots   The slots to show. A null slot stands for a new slot.
+	 */
+	public SaveStateAdapter(Context context, List<SaveStateIndex.Slot> slots)
+	{
+		super(context, R.layout.save_state_item, slots);
+		mContext = context;
+		loadThumbnails(new ArrayList<SaveStateIndex.Slot>(slots));
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent)
+	{
+		View v = convertView;
+		if (v == null)
+		{
+			LayoutInflater vi = (LayoutInflater) mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+			v = vi.inflate(R.layout.save_state_item, parent, false);
+		}
+
+		TextView title     = (TextView) v.findViewById(R.id.SaveStateTitle);
+		TextView details   = (TextView) v.findViewById(R.id.SaveStateDetails);
+		ImageView thumbnail = (ImageView) v.findViewById(R.id.SaveStateThumbnail);
+
+		SaveStateIndex.Slot slot = getItem(position);
+		if (slot == null)
+		{
+			title.setText(R.string.save_state_new_slot);
+			details.setText("");
+			thumbnail.setImageBitmap(null);
+			return v;
+		}
+
+		if (slot.isAutoSave())
+			title.setText(R.string.save_state_auto);
+		else
+			title.setText(mContext.getString(R.string.overlay_slot, slot.getSlot() + 1));
+
+		String time = DateUtils.formatDateTime(mContext, slot.getTime(),
+				DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_MONTH);
+		String played = DateUtils.formatElapsedTime((long) slot.getEmulatedTime());
+		String size = Formatter.formatShortFileSize(mContext, slot.getSize());
+		details.setText(mContext.getString(R.string.save_state_details, time, played, size));
+
+		thumbnail.setImageBitmap(mThumbnails.get(slot));
+		return v;
+	}
+
+	private void loadThumbnails(final List<SaveStateIndex.Slot> slots)
+	{
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+				for (final SaveStateIndex.Slot slot : slots)
+				{
+					if (slot == null || !slot.hasThumbnail())
+						continue;
+
+					final Bitmap thumbnail = slot.loadThumbnail();
+					if (thumbnail == null)
+						continue;
+
+					mHandler.post(new Runnable()
+					{
+						public void run()
+						{
+							mThumbnails.put(slot, thumbnail);
+							notifyDataSetChanged();
+						}
+					});
+				}
+			}
+		}, "SaveStateThumbnails").start();
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the index the native side keeps of the save state slots of a game.
+ * <p>
+ * The index describes every slot that has been saved to, and holds a small
+ * thumbnail of the screen at the time. Listing the slots only reads the first
+ * few hundred bytes of the index, and each thumbnail is only read when asked
+ * for, so neither ever has to touch the states themselves. The format of the
+ * index is described in Android/StateIndex.h on the native side.
+ */
+public final class SaveStateIndex
+{
+	private static final int MAGIC = 0x49545344; // "DSTI"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int ENTRY_SIZE = 48;
+
+	/**
+	 * A slot that has been saved to.
+	 */
+	public static final class Slot
+	{
+		private final File mIndex;
+		private final int mSlot;
+		private final String mGameId;
+		private final long mTime;
+		private final double mEmulatedTime;
+		private final long mSize;
+		private final int mThumbnailWidth;
+		private final int mThumbnailHeight;
+		private final int mThumbnailOffset;
+
+		private Slot(File index, ByteBuffer entry)
+		{
+			mIndex = index;
+			mSlot = entry.getInt();
+
+			byte[] gameId = new byte[8];
+			entry.get(gameId);
+			int length = 0;
+			while (length < gameId.length && gameId[length] != 0)
+				length++;
+			mGameId = new String(gameId, 0, length);
+
+			mTime = entry.getLong();
+			mEmulatedTime = entry.getDouble();
+			mSize = entry.getLong();
+			mThumbnailWidth = entry.getShort() & 0xFFFF;
+			mThumbnailHeight = entry.getShort() & 0xFFFF;
+			mThumbnailOffset = entry.getInt();
+			entry.getInt(); // Reserved
+		}
+
+		/**
+		 * Gets the number of the slot.
+		 *
+		 * @return the number of the slot.
+		 */
+		public int getSlot()
+		{
+			return mSlot;
+		}
+
+		/**
+		 * Checks whether the slot is an auto-save rather than a numbered slot.
+		 * Auto-saves have slot numbers below 0.
+		 *
+		 * @return true if the slot is an auto-save.
+		 */
+		public boolean isAutoSave()
+		{
+			return mSlot < 0;
+		}
+
+		/**
+		 * Gets the ID of the game the state is of.
+		 *
+		 * @return the ID of the game the state is of.
+		 */
+		public String getGameId()
+		{
+			return mGameId;
+		}
+
+		/**
+		 * Gets when the state was saved.
+		 *
+		 * @return when the state was saved, in milliseconds since 1970.
+		 */
+		public long getTime()
+		{
+			return mTime;
+		}
+
+		/**
+		 * Gets how long the game had been emulated for when the state was saved.
+		 *
+		 * @return the emulated time, in seconds.
+		 */
+		public double getEmulatedTime()
+		{
+			return mEmulatedTime;
+		}
+
+		/**
+		 * Gets the size of the state file.
+		 *
+		 * @return the size of the state file in bytes.
+		 */
+		public long getSize()
+		{
+			return mSize;
+		}
+
+		/**
+		 * Checks whether a thumbnail was taken when the state was saved.
+		 *
+		 * @return true if the slot has a thumbnail.
+		 */
+		public boolean hasThumbnail()
+		{
+			return mThumbnailWidth > 0 && mThumbnailHeight > 0;
+		}
+
+		/**
+		 * Reads the thumbnail of the slot from the index.
+		 * This reads a few dozen kilobytes, so avoid calling it on the UI thread.
+		 *
+		 * @return the thumbnail, or null if there is none, it can't be read,
+		 *         or the slot has been saved to again since it was listed.
+		 */
+		public Bitmap loadThumbnail()
+		{
+			Slot current = null;
+			byte[] pixels;
+			try
+			{
+				RandomAccessFile file = new RandomAccessFile(mIndex, "r");
+				try
+				{
+					// The whole index is rewritten whenever any slot is saved, which moves
+					// the thumbnails around. So the entry is looked up again in the file as
+					// it is now, rather than trusting the offset from when it was listed.
+					for (Slot slot : read(file, mIndex))
+					{
+						if (slot.mSlot == mSlot && slot.mTime == mTime)
+							current = slot;
+					}
+
+					if (current == null || !current.hasThumbnail())
+						return null;
+
+					pixels = new byte[current.mThumbnailWidth * current.mThumbnailHeight * 2];
+					file.seek(current.mThumbnailOffset);
+					file.readFully(pixels);
+				}
+				finally
+				{
+					file.close();
+				}
+			}
+			catch (IOException e)
+			{
+				Log.e("SaveStateIndex", "Unable to read a thumbnail from " + mIndex.getPath(), e);
+				return null;
+			}
+
+			// The pixels are stored the way RGB_565 bitmaps keep them in memory.
+			Bitmap thumbnail = Bitmap.createBitmap(current.mThumbnailWidth, current.mThumbnailHeight, Bitmap.Config.RGB_565);
+			thumbnail.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+			return thumbnail;
+		}
+	}
+
+	private SaveStateIndex()
+	{
+	}
+
+	/**
+	 * Gets the index file of a game.
+	 *
+	 * @param gameFile The path of the game.
+	 *
+	 * @return the index file, or null if the game can't be identified.
+	 */
+	public static File getFile(String gameFile)
+	{
+		String path = NativeLibrary.GetStateIndexPath(gameFile);
+		return (path != null) ? new File(path) : null;
+	}
+
+	/**
+	 * Lists the slots in an index, without their thumbnails.
+	 *
+	 * @param index The index file, as returned by {@link #getFile(String)}.
+	 *
+	 * @return the slots that have been saved to, sorted by slot number.
+	 *         Empty if nothing has been saved yet or the index is unreadable.
+	 */
+	public static List<Slot> read(File index)
+	{
+		if (index == null)
+			return Collections.emptyList();
+
+		try
+		{
+			RandomAccessFile file = new RandomAccessFile(index, "r");
+			try
+			{
+				return read(file, index);
+			}
+			finally
+			{
+				file.close();
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			// Nothing has been saved yet.
+			return Collections.emptyList();
+		}
+		catch (IOException e)
+		{
+			Log.e("SaveStateIndex", "Unable to read " + index.getPath(), e);
+			return Collections.emptyList();
+		}
+	}
+
+	private static List<Slot> read(RandomAccessFile file, File index) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		file.readFully(header.array());
+
+		int count = header.getInt(8);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+				|| count < 0 || count > (file.length() - HEADER_SIZE) / ENTRY_SIZE)
+			return Collections.emptyList();
+
+		ByteBuffer entries = ByteBuffer.allocate(count * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		file.readFully(entries.array());
+
+		List<Slot> slots = new ArrayList<Slot>(count);
+		for (int i = 0; i < count; i++)
+			slots.add(new Slot(index, entries));
+
+		return slots;
+	}
+}
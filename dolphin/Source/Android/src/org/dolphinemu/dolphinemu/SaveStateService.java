@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Saves and loads states without blocking the caller.
+ * <p>
+ * Saving takes a snapshot on the emulation thread, which costs emulation
+ * about as long as copying the state in memory takes. The snapshot is then
+ * compressed and written to a temporary file on a background thread, synced
+ * to disk and renamed over the old state, so an interrupted save never
+ * leaves a broken state behind. Once that's done, the {@link Listener}
+ * is told how big the state ended up being.
+ * <p>
+ * All of the methods of this class must be called on the UI thread.
+ */
+public final class SaveStateService
+{
+	/**
+	 * Interface which is told when saving a state has finished.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called on the UI thread once a state has been written to disk.
+		 *
+		 * @param slot The slot the state was saved to.
+		 * @param size The size of the state file in bytes, or 0 if saving it failed.
+		 */
+		void onStateSaved(int slot, long size);
+	}
+
+	private static final SaveStateService sInstance = new SaveStateService();
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	// The saves that haven't finished yet, in the order they were started. States
+	// are written one at a time in that order, so a report for a path is about
+	// the first of these saving to it, even if the same slot is saved twice.
+	private final List<Request> mPending = new LinkedList<Request>();
+	private Listener mListener;
+
+	private static final class Request
+	{
+		private final int slot;
+		private final String path;
+
+		private Request(int slot, String path)
+		{
+			this.slot = slot;
+			this.path = path;
+		}
+	}
+
+	private SaveStateService()
+	{
+	}
+
+	/**
+	 * Gets the save state service.
+	 *
+	 * @return the save state service.
+	 */
+	public static SaveStateService getInstance()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Sets the {@link Listener} to tell about finished saves.
+	 *
+	 * @param listener The {@link Listener} to use, or null to stop listening.
+	 */
+	public void setListener(Listener listener)
+	{
+		mListener = listener;
+	}
+
+	/**
+	 * Starts saving the state of the game being emulated to a slot.
+	 *
+	 * @param slot The slot to save to.
+	 *
+	 * @return true if saving has started; false if nothing is being emulated.
+	 */
+	public boolean save(int slot)
+	{
+		String path = NativeLibrary.SaveState(slot);
+		if (path == null)
+			return false;
+
+		// The native side can only report back once this has returned,
+		// since the report is posted to this thread.
+		mPending.add(new Request(slot, path));
+		return true;
+	}
+
+	/**
+	 * Loads the state saved to a slot.
+	 *
+	 * @param slot The slot to load from.
+	 */
+	public void load(int slot)
+	{
+		NativeLibrary.LoadState(slot);
+	}
+
+	/**
+	 * Called by {@link EmulationSession} once the emulation thread has finished.
+	 * Every save has been reported by then, so any that are still pending were
+	 * never started, for example because emulation was stopped before the
+	 * emulation thread got to them.
+	 */
+	void onEmulationStopped()
+	{
+		mPending.clear();
+	}
+
+	/**
+	 * Called by {@link NativeLibrary#onStateSaved(String, long)}.
+	 * Unlike the other methods of this class, this can be called from any thread.
+	 *
+	 * @param path The path of the state file.
+	 * @param size The size of the state file in bytes, or 0 if saving it failed.
+	 */
+	void onStateSaved(final String path, final long size)
+	{
+		mHandler.post(new Runnable()
+		{
+			public void run()
+			{
+				Iterator<Request> it = mPending.iterator();
+				while (it.hasNext())
+				{
+					Request request = it.next();
+					if (request.path.equals(path))
+					{
+						it.remove();
+						if (mListener != null)
+							mListener.onStateSaved(request.slot, size);
+						return;
+					}
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the save state slots of a game, and keeps
+ * the space taken up by save states within a quota.
+ * <p>
+ * A game has as many numbered slots as the user saves to, starting at 0,
+ * and any number of auto-saves, which have slot numbers below 0. Every new
+ * auto-save gets a slot of its own, so none of them ever overwrites another.
+ * <p>
+ * Whenever {@link #compact(long)} is called, the states of every game are
+ * added up on a background thread, and the oldest auto-saves are deleted
+ * until they fit in the quota. Numbered slots are only ever deleted by hand,
+ * since the user saved them on purpose.
+ */
+public final class SaveStateStore
+{
+	// Leftovers of saves that were interrupted, which are deleted
+	// once they're old enough that no save can still be writing them.
+	private static final long STALE_TEMP_FILE_AGE = 10 * 60 * 1000;
+
+	// A single thread shared by every store, so two compactions never race each other.
+	private static final ThreadPoolExecutor sCompactor =
+			new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	private static final AtomicBoolean sCompactionQueued = new AtomicBoolean(false);
+
+	static
+	{
+		sCompactor.allowCoreThreadTimeOut(true);
+	}
+
+	private final File mIndex;
+	private int mLastAutoSaveSlot = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param game The path of the game.
+	 */
+	public SaveStateStore(String game)
+	{
+		mIndex = SaveStateIndex.getFile(game);
+	}
+
+	/**
+	 * Lists the slots of the game that have been saved to.
+	 * Only the start of the slot index is read.
+	 *
+	 * @return the slots that have been saved to, numbered ones first in order,
+	 *         followed by the auto-saves from newest to oldest.
+	 */
+	public List<SaveStateIndex.Slot> getSlots()
+	{
+		List<SaveStateIndex.Slot> slots = new ArrayList<SaveStateIndex.Slot>(SaveStateIndex.read(mIndex));
+		Collections.sort(slots, new Comparator<SaveStateIndex.Slot>()
+		{
+			public int compare(SaveStateIndex.Slot a, SaveStateIndex.Slot b)
+			{
+				if (a.isAutoSave() != b.isAutoSave())
+					return a.isAutoSave() ? 1 : -1;
+
+				// Auto-saves count down from -1, so this puts the newest first.
+				return (a.getSlot() < b.getSlot()) ? -1 : (a.getSlot() == b.getSlot() ? 0 : 1);
+			}
+		});
+		return slots;
+	}
+
+	/**
+	 * Gets the numbered slot after the last one that has been saved to.
+	 *
+	 * @return the first free numbered slot after the used ones.
+	 */
+	public int getNewSlot()
+	{
+		int next = 0;
+		for (SaveStateIndex.Slot slot : SaveStateIndex.read(mIndex))
+			next = Math.max(next, slot.getSlot() + 1);
+
+		return next;
+	}
+
+	/**
+	 * Gets a slot for a new auto-save. Each call returns a different slot,
+	 * even if the auto-save from the last call hasn't finished saving.
+	 *
+	 * @return a slot below any auto-save so far.
+	 */
+	public int getNewAutoSaveSlot()
+	{
+		int next = mLastAutoSaveSlot - 1;
+		for (SaveStateIndex.Slot slot : SaveStateIndex.read(mIndex))
+			next = Math.min(next, slot.getSlot() - 1);
+
+		mLastAutoSaveSlot = next;
+		return next;
+	}
+
+	/**
+	 * Deletes a saved state.
+	 *
+	 * @param slot The slot to delete.
+	 *
+	 * @return false if the state couldn't be deleted.
+	 */
+	public boolean delete(SaveStateIndex.Slot slot)
+	{
+		return NativeLibrary.DeleteState(slot.getGameId(), slot.getSlot());
+	}
+
+	/**
+	 * Starts deleting the oldest auto-saves of every game in the background,
+	 * until all save states take up no more than the quota. If a compaction
+	 * is already waiting to start, this does nothing.
+	 *
+	 * @param quota The most space save states may take up, in bytes.
+	 */
+	public void compact(final long quota)
+	{
+		if (mIndex == null || !sCompactionQueued.compareAndSet(false, true))
+			return;
+
+		final File directory = mIndex.getParentFile();
+		sCompactor.execute(new Runnable()
+		{
+			public void run()
+			{
+				sCompactionQueued.set(false);
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				compact(directory, quota);
+			}
+		});
+	}
+
+	private static void compact(File directory, long quota)
+	{
+		File[] indexes = directory.listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.getName().endsWith(".sti");
+			}
+		});
+		if (indexes == null)
+			return;
+
+		long total = 0;
+		List<SaveStateIndex.Slot> autoSaves = new ArrayList<SaveStateIndex.Slot>();
+		for (File index : indexes)
+		{
+			for (SaveStateIndex.Slot slot : SaveStateIndex.read(index))
+			{
+				total += slot.getSize();
+				if (slot.isAutoSave())
+					autoSaves.add(slot);
+			}
+		}
+
+		Collections.sort(autoSaves, new Comparator<SaveStateIndex.Slot>()
+		{
+			public int compare(SaveStateIndex.Slot a, SaveStateIndex.Slot b)
+			{
+				return (a.getTime() < b.getTime()) ? -1 : (a.getTime() == b.getTime() ? 0 : 1);
+			}
+		});
+
+		for (int i = 0; i < autoSaves.size() && total > quota; i++)
+		{
+			SaveStateIndex.Slot slot = autoSaves.get(i);
+			if (NativeLibrary.DeleteState(slot.getGameId(), slot.getSlot()))
+				total -= slot.getSize();
+			else
+				Log.e("SaveStateStore", "Unable to delete auto-save " + slot.getSlot() + " of " + slot.getGameId());
+		}
+
+		deleteStaleTempFiles(directory);
+	}
+
+	private static void deleteStaleTempFiles(File directory)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+
+		long now = System.currentTimeMillis();
+		for (File file : files)
+		{
+			if (file.getName().endsWith(".tmp") && now - file.lastModified() > STALE_TEMP_FILE_AGE)
+				file.delete();
+		}
+	}
+}
@@ -0,0 +1,540 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dolphinemu.dolphinemu.settings.GameProfile;
+
+/**
+ * Finds the fastest settings each of a list of games runs well with.
+ * <p>
+ * Every game is booted once for each of a fixed set of {@link Candidate}
+ * configurations, from the global settings to ever cheaper ones. Each run
+ * goes unthrottled, the same as fast-forwarding without skipping frames,
+ * and after letting the game warm up, the times between a number of frames
+ * are measured. A run counts as stable if the game kept running for all of
+ * them and its 99th percentile frame time stays within {@link #STUTTER_LIMIT}
+ * times the average. The stable configuration with the lowest average frame
+ * time becomes the {@link GameProfile} of the game. If none is stable, the
+ * profile the game had before is put back.
+ * <p>
+ * The results of every run are logged and written to a CSV file per game
+ * in the Dump/Tuner folder of the dolphin-emu user folder:
+ * <pre>
+ * candidate,frames,avg_ms,p99_ms,stable
+ * </pre>
+ * The tuner drives the {@link EmulationSession}, which needs something to
+ * hand it a surface, so it's run from {@link TunerActivity}. All of its
+ * methods must be called on the UI thread.
+ */
+public final class SettingsTuner
+{
+	/**
+	 * Gets told how tuning is going. Called on the UI thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called when a candidate configuration starts booting.
+		 *
+		 * @param game      The path of the game.
+		 * @param candidate The candidate configuration.
+		 */
+		void onCandidateStarted(String game, Candidate candidate);
+
+		/**
+		 * Called when a game has been run with every candidate configuration.
+		 *
+		 * @param game    The path of the game.
+		 * @param results The results of every candidate configuration, in the order they were run.
+		 * @param best    The result of the configuration that became the profile of the game,
+		 *                or null if none was stable or the game couldn't be identified.
+		 * @param report  The CSV file the results were written to, or null if it couldn't be written.
+		 */
+		void onGameFinished(String game, List<Result> results, Result best, File report);
+
+		/**
+		 * Called once every game has been tuned, or tuning was cancelled.
+		 */
+		void onFinished();
+	}
+
+	/**
+	 * A set of settings a game is tried with. Anything it doesn't set uses the global value.
+	 */
+	public static final class Candidate
+	{
+		private final Map<GameProfile.Setting, String> mSettings;
+
+		private Candidate(Map<GameProfile.Setting, String> settings)
+		{
+			mSettings = new EnumMap<GameProfile.Setting, String>(GameProfile.Setting.class);
+			mSettings.putAll(settings);
+		}
+
+		/**
+		 * Applies the settings to a profile, replacing what it had.
+		 * The profile isn't saved.
+		 *
+		 * @param profile The profile to apply the settings to.
+		 */
+		public void applyTo(GameProfile profile)
+		{
+			for (GameProfile.Setting setting : GameProfile.Setting.values())
+				profile.set(setting, mSettings.get(setting));
+		}
+
+		@Override
+		public String toString()
+		{
+			if (mSettings.isEmpty())
+				return "global";
+
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<GameProfile.Setting, String> entry : mSettings.entrySet())
+			{
+				if (sb.length() > 0)
+					sb.append(' ');
+				sb.append(entry.getKey()).append('=').append(entry.getValue());
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * How a game ran with a candidate configuration.
+	 */
+	public static final class Result
+	{
+		private final Candidate mCandidate;
+		private final int mFrames;
+		private final float mAverage;
+		private final float mPercentile99;
+		private final boolean mStable;
+
+		private Result(Candidate candidate, float[] frameTimes, int frames, boolean finished)
+		{
+			mCandidate = candidate;
+			mFrames = frames;
+
+			float sum = 0.0f;
+			for (int i = 0; i < frames; i++)
+				sum += frameTimes[i];
+			mAverage = (frames > 0) ? sum / frames : 0.0f;
+
+			float[] sorted = Arrays.copyOf(frameTimes, frames);
+			Arrays.sort(sorted);
+			mPercentile99 = (frames > 0) ? sorted[Math.max((int) Math.ceil(frames * 0.99) - 1, 0)] : 0.0f;
+
+			mStable = finished && mPercentile99 <= mAverage * STUTTER_LIMIT;
+		}
+
+		/**
+		 * Gets the candidate configuration the game ran with.
+		 *
+		 * @return the candidate configuration.
+		 */
+		public Candidate getCandidate()
+		{
+			return mCandidate;
+		}
+
+		/**
+		 * Gets the number of frames that were measured.
+		 *
+		 * @return the number of frames measured.
+		 */
+		public int getFrameCount()
+		{
+			return mFrames;
+		}
+
+		/**
+		 * Gets the average time between frames.
+		 *
+		 * @return the average frame time, in milliseconds.
+		 */
+		public float getAverage()
+		{
+			return mAverage;
+		}
+
+		/**
+		 * Gets the frame time 99% of the frames took no longer than.
+		 *
+		 * @return the 99th percentile frame time, in milliseconds.
+		 */
+		public float getPercentile99()
+		{
+			return mPercentile99;
+		}
+
+		/**
+		 * Checks whether the game kept running smoothly.
+		 *
+		 * @return true if the game ran for all of the frames without stuttering.
+		 */
+		public boolean isStable()
+		{
+			return mStable;
+		}
+	}
+
+	/** How many times the average frame time the 99th percentile may be for a run to count as stable. */
+	public static final float STUTTER_LIMIT = 4.0f;
+
+	// How often frame timings are fetched. The native side keeps FrameStats.CAPACITY frames,
+	// which is several seconds even unthrottled, so none are lost in between.
+	private static final int POLL_INTERVAL = 250;
+
+	// How long booting and warming up may take, on top of the time the measured frames may take.
+	private static final long BOOT_TIMEOUT = 60 * 1000;
+	private static final long FRAME_TIMEOUT = 100;
+
+	private final List<String> mGames;
+	private final int mWarmupFrames;
+	private final int mFrames;
+	private final Listener mListener;
+
+	private final EmulationSession mSession = EmulationSession.getInstance();
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final Runnable mPoller = new Runnable()
+	{
+		public void run()
+		{
+			poll();
+		}
+	};
+	private final FrameStats mStats = new FrameStats();
+	private final List<Candidate> mCandidates = getCandidates();
+
+	private int mGameIndex = -1;
+	private String mGameId;
+	private GameProfile mProfile;
+	private Candidate mOriginal;
+	private final List<Result> mResults = new ArrayList<Result>();
+
+	private int mCandidateIndex;
+	private float[] mFrameTimes;
+	private int mMeasured;
+	private long mDeadline;
+	private boolean mStopping;
+	private boolean mCancelled;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param games        The paths of the games to tune.
+	 * @param warmupFrames The number of frames to let each run go for before measuring.
+	 * @param frames       The number of frames to measure each run for.
+	 * @param listener     The {@link Listener} to tell how tuning is going.
+	 */
+	public SettingsTuner(List<String> games, int warmupFrames, int frames, Listener listener)
+	{
+		mGames = new ArrayList<String>(games);
+		mWarmupFrames = Math.max(warmupFrames, 0);
+		mFrames = Math.max(frames, 1);
+		mListener = listener;
+	}
+
+	/**
+	 * Starts tuning the first game. Nothing is emulated
+	 * until the session has a surface to render to.
+	 */
+	public void start()
+	{
+		nextGame();
+	}
+
+	/**
+	 * Stops tuning. The profile of the game being tuned is put back the way it was.
+	 */
+	public void cancel()
+	{
+		if (mCancelled)
+			return;
+
+		mCancelled = true;
+		mHandler.removeCallbacks(mPoller);
+		mSession.stop();
+		NativeLibrary.SetFastForward(false, 0);
+
+		if (mProfile != null)
+			saveProfile(mOriginal);
+
+		mListener.onFinished();
+	}
+
+	// Cheapest last. Each candidate adds to the one before it.
+	private static List<Candidate> getCandidates()
+	{
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		Map<GameProfile.Setting, String> settings = new EnumMap<GameProfile.Setting, String>(GameProfile.Setting.class);
+		candidates.add(new Candidate(settings));
+
+		// The JIT is the last core listed for the CPU the device has. Without one, there's only the interpreter.
+		if (Build.CPU_ABI.contains("x86") || Build.CPU_ABI.contains("arm"))
+		{
+			settings.put(GameProfile.Setting.CPU_CORE, Build.CPU_ABI.contains("x86") ? "1" : "3");
+			settings.put(GameProfile.Setting.DUAL_CORE, "True");
+			candidates.add(new Candidate(settings));
+
+			settings.put(GameProfile.Setting.FASTMEM, "True");
+			candidates.add(new Candidate(settings));
+		}
+
+		settings.put(GameProfile.Setting.EFB_COPY_METHOD, "Texture");
+		candidates.add(new Candidate(settings));
+
+		settings.put(GameProfile.Setting.TEXTURE_CACHE_ACCURACY, "128");
+		settings.put(GameProfile.Setting.EXTERNAL_FRAME_BUFFER, "Disabled");
+		candidates.add(new Candidate(settings));
+
+		settings.put(GameProfile.Setting.CACHE_DISPLAY_LISTS, "True");
+		candidates.add(new Candidate(settings));
+
+		settings.put(GameProfile.Setting.INTERNAL_RESOLUTION, "2");
+		candidates.add(new Candidate(settings));
+
+		return Collections.unmodifiableList(candidates);
+	}
+
+	private void nextGame()
+	{
+		mGameIndex++;
+		if (mGameIndex >= mGames.size())
+		{
+			mListener.onFinished();
+			return;
+		}
+
+		// Finding out the game ID opens the game, so it's done in the background.
+		final String game = mGames.get(mGameIndex);
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				String id = null;
+				try
+				{
+					Startup.waitFor(Startup.Stage.NATIVE_LIBRARY);
+					id = NativeLibrary.GetGameId(game);
+				}
+				catch (InterruptedException e)
+				{
+					Log.w("SettingsTuner", "Interrupted while waiting for the native library");
+				}
+
+				final String gameId = id;
+				final GameProfile profile = (gameId != null) ? new GameProfile(gameId) : null;
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						if (!mCancelled)
+							startGame(game, gameId, profile);
+					}
+				});
+			}
+		}, "SettingsTuner").start();
+	}
+
+	private void startGame(String game, String gameId, GameProfile profile)
+	{
+		mResults.clear();
+
+		if (profile == null)
+		{
+			Log.e("SettingsTuner", "Unable to identify " + game + ", skipping it");
+			mListener.onGameFinished(game, mResults, null, null);
+			nextGame();
+			return;
+		}
+
+		mGameId = gameId;
+		mProfile = profile;
+
+		Map<GameProfile.Setting, String> original = new EnumMap<GameProfile.Setting, String>(GameProfile.Setting.class);
+		for (GameProfile.Setting setting : GameProfile.Setting.values())
+		{
+			String value = profile.get(setting);
+			if (value != null)
+				original.put(setting, value);
+		}
+		mOriginal = new Candidate(original);
+
+		mCandidateIndex = -1;
+		nextCandidate();
+	}
+
+	private void nextCandidate()
+	{
+		mCandidateIndex++;
+		if (mCandidateIndex >= mCandidates.size())
+		{
+			finishGame();
+			return;
+		}
+
+		Candidate candidate = mCandidates.get(mCandidateIndex);
+		saveProfile(candidate);
+
+		mFrameTimes = new float[mFrames];
+		mMeasured = 0;
+		mStopping = false;
+		mDeadline = SystemClock.elapsedRealtime() + BOOT_TIMEOUT + (mWarmupFrames + mFrames) * FRAME_TIMEOUT;
+
+		String game = mGames.get(mGameIndex);
+		Log.i("SettingsTuner", "Running " + game + " with " + candidate);
+		mListener.onCandidateStarted(game, candidate);
+
+		mStats.update();
+		mSession.start(game);
+		mHandler.postDelayed(mPoller, POLL_INTERVAL);
+	}
+
+	private void poll()
+	{
+		// Wait for the run to finish shutting down before starting the next one.
+		if (mStopping)
+		{
+			if (mSession.getState() == EmulationSession.State.IDLE)
+				nextCandidate();
+			else
+				mHandler.postDelayed(mPoller, POLL_INTERVAL);
+			return;
+		}
+
+		// The game stopped by itself, most likely because it crashed or failed to boot.
+		if (mSession.getState() == EmulationSession.State.IDLE)
+		{
+			finishCandidate(false);
+			return;
+		}
+
+		// Run unthrottled. Finishing a game turns this off, so it's set again for every run.
+		NativeLibrary.SetFastForward(true, 0);
+
+		int newFrames = mStats.update();
+		int total = mStats.getTotalFrameCount();
+		for (int i = mStats.getFrameCount() - Math.min(newFrames, mStats.getFrameCount()); i < mStats.getFrameCount(); i++)
+		{
+			int frame = total - (mStats.getFrameCount() - i);
+			if (frame >= mWarmupFrames && mMeasured < mFrames)
+				mFrameTimes[mMeasured++] = mStats.get(i, FrameStats.GPU_TIME);
+		}
+
+		if (mMeasured >= mFrames)
+			finishCandidate(true);
+		else if (SystemClock.elapsedRealtime() > mDeadline)
+			finishCandidate(false);
+		else
+			mHandler.postDelayed(mPoller, POLL_INTERVAL);
+	}
+
+	private void finishCandidate(boolean finished)
+	{
+		Result result = new Result(mCandidates.get(mCandidateIndex), mFrameTimes, mMeasured, finished);
+		mResults.add(result);
+
+		Log.i("SettingsTuner", String.format(Locale.US, "%s: %d frames, %.3f ms average, %.3f ms 99th percentile%s",
+				result.getCandidate(), result.getFrameCount(), result.getAverage(), result.getPercentile99(),
+				result.isStable() ? "" : ", unstable"));
+
+		mStopping = true;
+		mSession.stop();
+		NativeLibrary.SetFastForward(false, 0);
+		mHandler.postDelayed(mPoller, POLL_INTERVAL);
+	}
+
+	private void finishGame()
+	{
+		Result best = null;
+		for (Result result : mResults)
+		{
+			if (result.isStable() && (best == null || result.getAverage() < best.getAverage()))
+				best = result;
+		}
+
+		String game = mGames.get(mGameIndex);
+		if (best != null)
+		{
+			Log.i("SettingsTuner", "Fastest stable settings for " + game + ": " + best.getCandidate());
+			saveProfile(best.getCandidate());
+		}
+		else
+		{
+			Log.w("SettingsTuner", "No stable settings for " + game + ", keeping its profile as it was");
+			saveProfile(mOriginal);
+		}
+
+		File report = writeReport();
+		mProfile = null;
+		mListener.onGameFinished(game, new ArrayList<Result>(mResults), best, report);
+		nextGame();
+	}
+
+	private void saveProfile(Candidate candidate)
+	{
+		candidate.applyTo(mProfile);
+		if (!mProfile.save())
+			Log.e("SettingsTuner", "Unable to save the profile of " + mGameId);
+	}
+
+	private File writeReport()
+	{
+		String name = mGameId + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".csv";
+		File file = new File(Environment.getExternalStorageDirectory() + File.separator + "dolphin-emu" + File.separator
+				+ "Dump" + File.separator + "Tuner" + File.separator + name);
+		file.getParentFile().mkdirs();
+
+		try
+		{
+			Writer out = new FileWriter(file);
+			try
+			{
+				out.write("candidate,frames,avg_ms,p99_ms,stable\n");
+				for (Result result : mResults)
+				{
+					out.write(String.format(Locale.US, "\"%s\",%d,%.3f,%.3f,%b\n", result.getCandidate(),
+							result.getFrameCount(), result.getAverage(), result.getPercentile99(), result.isStable()));
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+			return file;
+		}
+		catch (IOException e)
+		{
+			Log.e("SettingsTuner", "Unable to write " + file.getPath(), e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dolphinemu.dolphinemu.gamelist.GameListIndex;
+import org.dolphinemu.dolphinemu.settings.UserPreferences;
+
+/**
+ * Runs the work the app has to do once per process before everything
+ * works, on background threads, so the game list can be shown right away.
+ * <p>
+ * The work is split into {@link Stage}s. Each stage starts as soon as the
+ * stages it depends on have finished, and how long each one took is logged
+ * and shown on the about screen. So is the time it took for the game list
+ * to show up, which is expected to stay within {@link #INTERACTIVE_BUDGET}.
+ * Times are measured from when {@link #start()} was called.
+ */
+public final class Startup
+{
+	/**
+	 * The stages of starting up, each listed after the ones it depends on.
+	 */
+	public enum Stage
+	{
+		/** Loads the native library. */
+		NATIVE_LIBRARY(R.string.startup_native_library),
+
+		/** Loads the index of the games found last time, which the game list is filled from. */
+		GAME_LIST_INDEX(R.string.startup_game_list_index),
+
+		/** Creates the directories the emulator keeps its files in. */
+		USER_FOLDERS(R.string.startup_user_folders, NATIVE_LIBRARY),
+
+		/** Extracts the files the emulator needs from the APK. */
+		ASSETS(R.string.startup_assets, USER_FOLDERS),
+
+		/** Copies the settings from the ini files into the preferences. */
+		CONFIG(R.string.startup_config, NATIVE_LIBRARY, ASSETS),
+
+		/** Finds out what the GPU supports, unless that's known from an earlier run. */
+		GPU_CAPABILITIES(R.string.startup_gpu_capabilities);
+
+		private final int mName;
+		private final Stage[] mDependencies;
+
+		private Stage(int name, Stage... dependencies)
+		{
+			mName = name;
+			mDependencies = dependencies;
+		}
+
+		/**
+		 * Gets the name of the stage.
+		 *
+		 * @return the string resource of the name of the stage.
+		 */
+		public int getName()
+		{
+			return mName;
+		}
+	}
+
+	/** How long the game list may take to show up, in milliseconds. */
+	public static final long INTERACTIVE_BUDGET = 1000;
+
+	// The stages mostly wait on storage, so there's little to gain from more threads.
+	private static final int NUM_THREADS = 2;
+
+	private static Startup sInstance;
+
+	private final Context mContext;
+	private final int mNumStages = Stage.values().length;
+	private final CountDownLatch[] mDone = new CountDownLatch[mNumStages];
+	private final long[] mBegan = new long[mNumStages];
+	private final long[] mFinished = new long[mNumStages];
+	private final boolean[] mSucceeded = new boolean[mNumStages];
+
+	// Only touched while holding the lock on this.
+	private final Set<Stage> mSubmitted = EnumSet.noneOf(Stage.class);
+	private final Set<Stage> mCompleted = EnumSet.noneOf(Stage.class);
+	private ExecutorService mExecutor;
+
+	private volatile long mStart = -1;
+	private volatile long mInteractive = -1;
+
+	private Startup(Context ctx)
+	{
+		mContext = ctx;
+
+		for (int i = 0; i < mNumStages; i++)
+			mDone[i] = new CountDownLatch(1);
+	}
+
+	/**
+	 * Gets the startup of this process.
+	 *
+	 * @param ctx The current {@link Context}.
+	 *
+	 * @return the startup of this process.
+	 */
+	public static synchronized Startup getInstance(Context ctx)
+	{
+		if (sInstance == null)
+			sInstance = new Startup(ctx.getApplicationContext());
+
+		return sInstance;
+	}
+
+	/**
+	 * Starts running the stages in the background.
+	 * Does nothing if they have already been started.
+	 */
+	public synchronized void start()
+	{
+		if (mExecutor != null)
+			return;
+
+		mStart = SystemClock.elapsedRealtime();
+		mExecutor = Executors.newFixedThreadPool(NUM_THREADS, new StartupThreadFactory());
+		submitReadyStages();
+	}
+
+	/**
+	 * Blocks until a stage has finished. Returns right away if the stages
+	 * haven't been started in this process. Must not be called on the UI
+	 * thread.
+	 *
+	 * @param stage The stage to wait for.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public static void waitFor(Stage stage) throws InterruptedException
+	{
+		Startup startup;
+		synchronized (Startup.class)
+		{
+			startup = sInstance;
+		}
+
+		if (startup != null && startup.mStart != -1)
+			startup.mDone[stage.ordinal()].await();
+	}
+
+	/**
+	 * Lets the startup know the game list has been shown to the user.
+	 * Only the first call after starting up counts.
+	 */
+	public void onGameListShown()
+	{
+		if (mStart == -1 || mInteractive != -1)
+			return;
+
+		mInteractive = SystemClock.elapsedRealtime() - mStart;
+		if (mInteractive > INTERACTIVE_BUDGET)
+			Log.w("Startup", "Game list shown after " + mInteractive + " ms, over the budget of " + INTERACTIVE_BUDGET + " ms");
+		else
+			Log.i("Startup", "Game list shown after " + mInteractive + " ms");
+	}
+
+	/**
+	 * Gets how long it took for the game list to be shown.
+	 *
+	 * @return the time in milliseconds, or -1 if it hasn't been shown yet.
+	 */
+	public long getTimeToInteractive()
+	{
+		return mInteractive;
+	}
+
+	/**
+	 * Gets how long a stage took to run, not counting the time it spent
+	 * waiting for the stages it depends on.
+	 *
+	 * @param stage The stage to get the duration of.
+	 *
+	 * @return the time in milliseconds, or -1 if the stage hasn't finished yet.
+	 */
+	public synchronized long getDuration(Stage stage)
+	{
+		if (!mCompleted.contains(stage))
+			return -1;
+
+		return mFinished[stage.ordinal()] - mBegan[stage.ordinal()];
+	}
+
+	/**
+	 * Gets when a stage finished.
+	 *
+	 * @param stage The stage to get the finishing time of.
+	 *
+	 * @return the time in milliseconds since starting up, or -1 if the stage hasn't finished yet.
+	 */
+	public synchronized long getFinishTime(Stage stage)
+	{
+		if (!mCompleted.contains(stage))
+			return -1;
+
+		return mFinished[stage.ordinal()] - mStart;
+	}
+
+	/**
+	 * Checks whether a stage succeeded.
+	 *
+	 * @param stage The stage to check.
+	 *
+	 * @return false if the stage failed, was skipped because a stage it
+	 *         depends on failed, or hasn't finished yet.
+	 */
+	public synchronized boolean hasSucceeded(Stage stage)
+	{
+		return mCompleted.contains(stage) && mSucceeded[stage.ordinal()];
+	}
+
+	// Must be called while holding the lock on this.
+	private void submitReadyStages()
+	{
+		for (final Stage stage : Stage.values())
+		{
+			if (mSubmitted.contains(stage))
+				continue;
+
+			boolean ready = true;
+			for (Stage dependency : stage.mDependencies)
+				ready &= mCompleted.contains(dependency);
+
+			if (!ready)
+				continue;
+
+			mSubmitted.add(stage);
+			mExecutor.execute(new Runnable()
+			{
+				public void run()
+				{
+					runStage(stage);
+				}
+			});
+		}
+
+		if (mSubmitted.size() == mNumStages)
+			mExecutor.shutdown();
+	}
+
+	private void runStage(Stage stage)
+	{
+		boolean dependenciesSucceeded = true;
+		synchronized (this)
+		{
+			for (Stage dependency : stage.mDependencies)
+				dependenciesSucceeded &= mSucceeded[dependency.ordinal()];
+		}
+
+		long began = SystemClock.elapsedRealtime();
+		boolean success = false;
+		if (dependenciesSucceeded)
+		{
+			try
+			{
+				success = perform(stage);
+			}
+			catch (RuntimeException e)
+			{
+				Log.e("Startup", "Stage " + stage + " failed", e);
+			}
+		}
+		else
+		{
+			Log.e("Startup", "Skipping stage " + stage + ", a stage it depends on failed");
+		}
+		long finished = SystemClock.elapsedRealtime();
+
+		Log.i("Startup", stage + " took " + (finished - began) + " ms, done at " + (finished - mStart) + " ms" + (success ? "" : " (failed)"));
+
+		synchronized (this)
+		{
+			mBegan[stage.ordinal()] = began;
+			mFinished[stage.ordinal()] = finished;
+			mSucceeded[stage.ordinal()] = success;
+			mCompleted.add(stage);
+			submitReadyStages();
+		}
+		mDone[stage.ordinal()].countDown();
+	}
+
+	private boolean perform(Stage stage)
+	{
+		switch (stage)
+		{
+			case NATIVE_LIBRARY:
+				return NativeLibrary.load();
+
+			case GAME_LIST_INDEX:
+				GameListIndex.getInstance();
+				return true;
+
+			case USER_FOLDERS:
+				NativeLibrary.CreateUserFolders();
+				return true;
+
+			case ASSETS:
+				return new AssetInstaller(mContext).install();
+
+			case CONFIG:
+				UserPreferences.LoadDolphinConfigToPrefs(mContext);
+				return true;
+
+			case GPU_CAPABILITIES:
+				GpuCapabilities.get(mContext);
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
+	private static final class StartupThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger mCount = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			return new Thread(r, "Startup-" + mCount.incrementAndGet());
+		}
+	}
+}
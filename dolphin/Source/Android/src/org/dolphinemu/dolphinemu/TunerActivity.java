@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.view.WindowManager.LayoutParams;
+import android.widget.TextView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the {@link SettingsTuner} over one or more games without anyone
+ * having to be around. Nothing is shown except the game being run and
+ * which configuration it's being run with, and there are no controls.
+ * <p>
+ * It's started with an intent naming the games, which can be done from a
+ * test harness, or from the command line with:
+ * <pre>
+ * adb shell am start -a org.dolphinemu.dolphinemu.TUNE \
+ *     --esa games /sdcard/game1.iso,/sdcard/game2.iso \
+ *     --ei warmupFrames 300 --ei frames 600
+ * </pre>
+ * A single game can be given with {@code --es game} instead. Once every game
+ * has been tuned, the activity finishes with {@link Activity#RESULT_OK} and
+ * the paths of the CSV reports in the "reports" string array extra of the
+ * result. Progress is logged with the tag "SettingsTuner".
+ * <p>
+ * Starting it takes the DUMP permission, which the shell has and other apps
+ * can't get, so nothing else installed can make it rewrite game profiles
+ * or boot a path of its choosing. Instrumentation running in this app's
+ * process can start it as well.
+ */
+public final class TunerActivity extends Activity
+{
+	/** The action that starts tuning. */
+	public static final String ACTION_TUNE = "org.dolphinemu.dolphinemu.TUNE";
+
+	private static final int DEFAULT_WARMUP_FRAMES = 300;
+	private static final int DEFAULT_FRAMES = 600;
+
+	private SettingsTuner tuner;
+	private TextView statusView;
+	private final List<String> reports = new ArrayList<String>();
+	private boolean finished = false;
+
+	@Override
+	public void onCreate(Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		getWindow().addFlags(LayoutParams.FLAG_KEEP_SCREEN_ON);
+		getWindow().addFlags(LayoutParams.FLAG_FULLSCREEN);
+
+		// Tuning may be the first thing the app does after being installed.
+		Startup.getInstance(this).start();
+
+		Intent intent = getIntent();
+		List<String> games = new ArrayList<String>();
+		if (intent.getStringArrayExtra("games") != null)
+			games.addAll(Arrays.asList(intent.getStringArrayExtra("games")));
+		if (intent.getStringExtra("game") != null)
+			games.add(intent.getStringExtra("game"));
+
+		int warmupFrames = intent.getIntExtra("warmupFrames", DEFAULT_WARMUP_FRAMES);
+		int frames = intent.getIntExtra("frames", DEFAULT_FRAMES);
+
+		setContentView(R.layout.emulation_view);
+		statusView = (TextView) findViewById(R.id.frameStats);
+		statusView.setVisibility(View.VISIBLE);
+
+		if (games.isEmpty())
+		{
+			Log.e("SettingsTuner", "No games to tune, pass them in the \"games\" or \"game\" extra");
+			setResult(RESULT_CANCELED);
+			finish();
+			return;
+		}
+
+		tuner = new SettingsTuner(games, warmupFrames, frames, new SettingsTuner.Listener()
+		{
+			public void onCandidateStarted(String game, SettingsTuner.Candidate candidate)
+			{
+				statusView.setText(getString(R.string.tuner_status, new File(game).getName(), candidate.toString()));
+			}
+
+			public void onGameFinished(String game, List<SettingsTuner.Result> results, SettingsTuner.Result best, File report)
+			{
+				if (report != null)
+					reports.add(report.getPath());
+			}
+
+			public void onFinished()
+			{
+				finished = true;
+
+				Intent result = new Intent();
+				result.putExtra("reports", reports.toArray(new String[reports.size()]));
+				setResult(RESULT_OK, result);
+				finish();
+			}
+		});
+		tuner.start();
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		super.onDestroy();
+
+		// Leaving before it's done puts the profile being tuned back the way it was.
+		if (tuner != null && !finished)
+			tuner.cancel();
+	}
+}
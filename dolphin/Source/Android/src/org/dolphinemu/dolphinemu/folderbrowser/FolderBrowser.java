@@ -20,9 +20,10 @@ import android.widget.ListView;
 import java.io.File;
 import java.util.*;
 
-import org.dolphinemu.dolphinemu.NativeLibrary;
 import org.dolphinemu.dolphinemu.R;
 import org.dolphinemu.dolphinemu.gamelist.GameListActivity;
+import org.dolphinemu.dolphinemu.settings.DolphinConfig;
+import org.dolphinemu.dolphinemu.settings.IniFile;
 
 /**
  * A basic folder browser {@link Fragment} that allows
@@ -140,8 +141,8 @@ public final class FolderBrowser extends Fragment
 
 	private void FolderSelected()
 	{
-		String Directories = NativeLibrary.GetConfig("Dolphin.ini", "General", "GCMPathes", "0");
-		int intDirectories = Integer.parseInt(Directories);
+		IniFile config = DolphinConfig.get("Dolphin.ini");
+		int intDirectories = config.getInt("General", "GCMPathes", 0);
 
 		// Check to see if a path set in the Dolphin config
 		// matches the one the user is trying to add. If it's
@@ -149,7 +150,7 @@ public final class FolderBrowser extends Fragment
 		boolean pathNotPresent = true;
 		for (int i = 0; i < intDirectories; i++)
 		{
-			String gcmPath = NativeLibrary.GetConfig("Dolphin.ini", "General", "GCMPath" + i, "");
+			String gcmPath = config.get("General", "GCMPath" + i, "");
 
 			if (gcmPath.equals(currentDir.getPath()))
 			{
@@ -164,8 +165,9 @@ public final class FolderBrowser extends Fragment
 		// User doesn't have this path in the config, so add it.
 		if (pathNotPresent)
 		{
-			NativeLibrary.SetConfig("Dolphin.ini", "General", "GCMPathes", Integer.toString(intDirectories+1));
-			NativeLibrary.SetConfig("Dolphin.ini", "General", "GCMPath" + Integer.toString(intDirectories), currentDir.getPath());
+			config.set("General", "GCMPathes", Integer.toString(intDirectories+1));
+			config.set("General", "GCMPath" + Integer.toString(intDirectories), currentDir.getPath());
+			config.save();
 		}
 
 		((GameListActivity)m_activity).SwitchPage(0);
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.gamelist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads game banners for the game list on demand.
+ * <p>
+ * Banners are only decoded when a row asks for one, on a
+ * background thread, and the resulting {@link Bitmap}s are
+ * kept in a size-bounded LRU cache. Games without a banner
+ * all share a single placeholder {@link Bitmap}.
+ */
+public final class BannerCache
+{
+	private static BannerCache sInstance;
+
+	private final LruCache<String, Bitmap> mCache;
+	private final Bitmap mPlaceholder;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ThreadPoolExecutor mExecutor;
+
+	// The game each ImageView is currently supposed to show.
+	// Views are recycled by the ListView, so a finished load is
+	// thrown away if its view has moved on to another game.
+	private final Map<ImageView, String> mTargets = Collections.synchronizedMap(new WeakHashMap<ImageView, String>());
+
+	private BannerCache(Context ctx)
+	{
+		// Use an eighth of the memory available to the app at most.
+		int cacheSize = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+		mCache = new LruCache<String, Bitmap>(cacheSize)
+		{
+			@Override
+			protected int sizeOf(String path, Bitmap banner)
+			{
+				return banner.getRowBytes() * banner.getHeight();
+			}
+		};
+
+		mPlaceholder = loadPlaceholder(ctx);
+
+		// Newest requests are served first, so the rows that were
+		// scrolled to last get their banners before the ones that
+		// have already gone off screen.
+		mExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingDeque<Runnable>()
+		{
+			@Override
+			public boolean offer(Runnable r)
+			{
+				return offerFirst(r);
+			}
+		});
+		mExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets the banner cache used by the game list.
+	 *
+	 * @param ctx The current {@link Context}.
+	 *
+	 * @return the banner cache used by the game list.
+	 */
+	public static synchronized BannerCache getInstance(Context ctx)
+	{
+		if (sInstance == null)
+			sInstance = new BannerCache(ctx.getApplicationContext());
+
+		return sInstance;
+	}
+
+	/**
+	 * Sets the banner of the given game on the given {@link ImageView}.
+	 * <p>
+	 * If the banner isn't cached yet the placeholder is shown until
+	 * it has been loaded. Must be called on the UI thread.
+	 *
+	 * @param path The file path of the game.
+	 * @param view The {@link ImageView} to show the banner in.
+	 */
+	public void loadBanner(final String path, final ImageView view)
+	{
+		mTargets.put(view, path);
+
+		Bitmap banner = mCache.get(path);
+		if (banner != null)
+		{
+			view.setImageBitmap(banner);
+			return;
+		}
+
+		view.setImageBitmap(mPlaceholder);
+		mExecutor.execute(new Runnable()
+		{
+			public void run()
+			{
+				// Skip rows that were recycled before we got to them.
+				if (!path.equals(mTargets.get(view)))
+					return;
+
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				final Bitmap banner = decodeBanner(path);
+
+				mHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						if (path.equals(mTargets.get(view)))
+							view.setImageBitmap(banner);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Drops every cached banner.
+	 */
+	public void evictAll()
+	{
+		mCache.evictAll();
+	}
+
+	private Bitmap decodeBanner(String path)
+	{
+		Bitmap banner = mCache.get(path);
+		if (banner != null)
+			return banner;
+
+		int[] pixels = GameListIndex.getInstance().getBanner(path);
+		if (pixels == null)
+			return mPlaceholder;
+
+		banner = Bitmap.createBitmap(pixels, GameListIndex.BANNER_WIDTH, GameListIndex.BANNER_HEIGHT, Bitmap.Config.ARGB_8888);
+		mCache.put(path, banner);
+		return banner;
+	}
+
+	private static Bitmap loadPlaceholder(Context ctx)
+	{
+		try
+		{
+			// Open the no banner icon.
+			InputStream noBannerPath = ctx.getAssets().open("NoBanner.png");
+
+			// Decode the bitmap.
+			Bitmap image = BitmapFactory.decodeStream(noBannerPath);
+			noBannerPath.close();
+
+			// Scale the bitmap to match other banners.
+			return Bitmap.createScaledBitmap(image, GameListIndex.BANNER_WIDTH, GameListIndex.BANNER_HEIGHT, false);
+		}
+		catch (IOException e)
+		{
+			Log.e("BannerCache", e.toString());
+			return Bitmap.createBitmap(GameListIndex.BANNER_WIDTH, GameListIndex.BANNER_HEIGHT, Bitmap.Config.ARGB_8888);
+		}
+	}
+}
@@ -24,9 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.dolphinemu.dolphinemu.AboutFragment;
-import org.dolphinemu.dolphinemu.NativeLibrary;
 import org.dolphinemu.dolphinemu.R;
 import org.dolphinemu.dolphinemu.folderbrowser.FolderBrowser;
+import org.dolphinemu.dolphinemu.settings.DolphinConfig;
+import org.dolphinemu.dolphinemu.settings.IniFile;
 import org.dolphinemu.dolphinemu.settings.PrefsActivity;
 import org.dolphinemu.dolphinemu.sidemenu.SideMenuAdapter;
 import org.dolphinemu.dolphinemu.sidemenu.SideMenuItem;
@@ -248,15 +249,16 @@ public final class GameListActivity extends Activity
 			builder.setPositiveButton(R.string.yes, new DialogInterface.OnClickListener(){
 				public void onClick(DialogInterface dialog, int which)
 				{
-					String directories = NativeLibrary.GetConfig("Dolphin.ini", "General", "GCMPathes", "0");
-					int intDirs = Integer.parseInt(directories);
+					IniFile config = DolphinConfig.get("Dolphin.ini");
+					int intDirs = config.getInt("General", "GCMPathes", 0);
 
 					for (int i = 0; i < intDirs; i++)
 					{
-						NativeLibrary.SetConfig("Dolphin.ini", "General", "GCMPath" + i, "");
+						config.set("General", "GCMPath" + i, "");
 					}
 
-					NativeLibrary.SetConfig("Dolphin.ini", "General", "GCMPathes", "0");
+					config.set("General", "GCMPathes", "0");
+					config.save();
 
 					ArrayAdapter<GameListItem> adapter = ((GameListFragment)GameListActivity.this.mCurFragment).getAdapter();
 					adapter.clear();
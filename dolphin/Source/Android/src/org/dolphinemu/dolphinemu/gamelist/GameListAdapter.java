@@ -22,12 +22,15 @@ import org.dolphinemu.dolphinemu.R;
  * The adapter backing the game list.
  * <p>
  * Responsible for handling each game list item individually.
+ * Banners are loaded lazily through the {@link BannerCache}
+ * as rows become visible.
  */
 public final class GameListAdapter extends ArrayAdapter<GameListItem>
 {
 	private final Context c;
 	private final int id;
 	private final List<GameListItem>items;
+	private final BannerCache mBanners;
 
 	public GameListAdapter(Context context, int textViewResourceId, List<GameListItem> objects)
 	{
@@ -35,6 +38,7 @@ public final class GameListAdapter extends ArrayAdapter<GameListItem>
 		c = context;
 		id = textViewResourceId;
 		items = objects;
+		mBanners = BannerCache.getInstance(context);
 	}
 
 	@Override
@@ -68,7 +72,7 @@ public final class GameListAdapter extends ArrayAdapter<GameListItem>
 
 			if (icon != null)
 			{
-				icon.setImageBitmap(item.getImage());
+				mBanners.loadBanner(item.getPath(), icon);
 				icon.getLayoutParams().width = (int) ((860 / c.getResources().getDisplayMetrics().density) + 0.5);
 				icon.getLayoutParams().height = (int)((340 / c.getResources().getDisplayMetrics().density) + 0.5);
 			}
@@ -8,8 +8,12 @@ package org.dolphinemu.dolphinemu.gamelist;
 
 import android.app.Activity;
 import android.app.Fragment;
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,17 +21,17 @@ import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.Toast;
 
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.dolphinemu.dolphinemu.EmulationActivity;
 import org.dolphinemu.dolphinemu.NativeLibrary;
 import org.dolphinemu.dolphinemu.R;
+import org.dolphinemu.dolphinemu.Startup;
+import org.dolphinemu.dolphinemu.settings.DolphinConfig;
+import org.dolphinemu.dolphinemu.settings.GameProfile;
+import org.dolphinemu.dolphinemu.settings.IniFile;
 
 
 /**
@@ -37,6 +41,8 @@ public final class GameListFragment extends Fragment
 {
 	private ListView mMainList;
 	private GameListAdapter mGameAdapter;
+	private final List<GameListItem> mGames = new ArrayList<GameListItem>();
+	private GameListScanner mScanner;
 	private static GameListActivity mMe;
 	private OnGameListZeroListener mCallback;
 
@@ -65,52 +71,65 @@ public final class GameListFragment extends Fragment
 
 	private void Fill()
 	{
-		List<GameListItem> fls = new ArrayList<GameListItem>();
-		String Directories = NativeLibrary.GetConfig("Dolphin.ini", "General", "GCMPathes", "0");
-		int intDirectories = Integer.parseInt(Directories);
+		mGames.clear();
+		mGameAdapter = new GameListAdapter(mMe, R.layout.gamelist_folderbrowser_list, mGames);
+		mMainList.setAdapter(mGameAdapter);
 
-		// Extensions to filter by.
-		Set<String> exts = new HashSet<String>(Arrays.asList(".dff", ".dol", ".elf", ".gcm", ".gcz", ".iso", ".wad", ".wbfs"));
+		IniFile config = DolphinConfig.get("Dolphin.ini");
+		int intDirectories = config.getInt("General", "GCMPathes", 0);
 
+		List<String> directories = new ArrayList<String>();
 		for (int a = 0; a < intDirectories; ++a)
 		{
-			String BrowseDir = NativeLibrary.GetConfig("Dolphin.ini", "General", "GCMPath" + a, "");
-			File currentDir = new File(BrowseDir);
-			File[] dirs = currentDir.listFiles();
-			try
-			{
-				for (File entry : dirs)
-				{
-					String entryName = entry.getName();
-
-					if (!entry.isHidden() && !entry.isDirectory())
-					{
-						if (exts.contains(entryName.toLowerCase().substring(entryName.lastIndexOf('.'))))
-							fls.add(new GameListItem(mMe, entryName, getString(R.string.file_size)+entry.length(),entry.getAbsolutePath()));
-					}
-				}
-			}
-			catch (Exception ignored)
-			{
-			}
+			directories.add(config.get("General", "GCMPath" + a, ""));
 		}
-		Collections.sort(fls);
 
-		mGameAdapter = new GameListAdapter(mMe, R.layout.gamelist_folderbrowser_list, fls);
-		mMainList.setAdapter(mGameAdapter);
+		// Scanning the directories (and reading the banners of every
+		// game in them) happens in the background. Games are added to
+		// the list as they are found.
+		cancelScan();
+		mScanner = new GameListScanner(mMe, mScanListener);
+		mScanner.scan(directories);
+	}
 
-		if (fls.isEmpty())
+	private void cancelScan()
+	{
+		if (mScanner != null)
 		{
-			mCallback.onZeroFiles();
+			mScanner.cancel();
+			mScanner = null;
 		}
 	}
 
+	private final GameListScanner.Listener mScanListener = new GameListScanner.Listener()
+	{
+		public void onGamesFound(List<GameListItem> games)
+		{
+			mGames.addAll(games);
+			Collections.sort(mGames);
+			mGameAdapter.notifyDataSetChanged();
+			Startup.getInstance(mMe).onGameListShown();
+		}
+
+		public void onScanFinished(int totalGames)
+		{
+			mScanner = null;
+			Startup.getInstance(mMe).onGameListShown();
+
+			if (totalGames == 0)
+			{
+				mCallback.onZeroFiles();
+			}
+		}
+	};
+
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState)
 	{
 		View rootView = inflater.inflate(R.layout.gamelist_listview, container, false);
 		mMainList = (ListView) rootView.findViewById(R.id.gamelist);
 		mMainList.setOnItemClickListener(mGameItemClickListener);
+		mMainList.setOnItemLongClickListener(mGameItemLongClickListener);
 
 		Fill();
 
@@ -126,6 +145,56 @@ public final class GameListFragment extends Fragment
 		}
 	};
 
+	private final AdapterView.OnItemLongClickListener mGameItemLongClickListener = new AdapterView.OnItemLongClickListener()
+	{
+		public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id)
+		{
+			GameListItem item = mGameAdapter.getItem(position);
+			editProfile(item.getName(), item.getPath());
+			return true;
+		}
+	};
+
+	// Profiles are kept under the game ID, which takes opening the game to find out.
+	private void editProfile(final String name, final String path)
+	{
+		final Handler handler = new Handler(Looper.getMainLooper());
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				GameProfile profile = null;
+				try
+				{
+					Startup.waitFor(Startup.Stage.NATIVE_LIBRARY);
+
+					String gameId = NativeLibrary.GetGameId(path);
+					if (gameId != null)
+						profile = new GameProfile(gameId);
+				}
+				catch (InterruptedException e)
+				{
+					Log.w("GameListFragment", "Interrupted while waiting for the native library");
+				}
+
+				final GameProfile result = profile;
+				handler.post(new Runnable()
+				{
+					public void run()
+					{
+						if (!isAdded())
+							return;
+
+						if (result == null)
+							Toast.makeText(mMe, R.string.game_profile_unavailable, Toast.LENGTH_SHORT).show();
+						else
+							GameProfileDialog.show(mMe, name, result);
+					}
+				});
+			}
+		}, "GameProfile").start();
+	}
+
 	private void onFileClick(String o)
 	{
 		Toast.makeText(mMe, getString(R.string.file_clicked) + o, Toast.LENGTH_SHORT).show();
@@ -136,6 +205,15 @@ public final class GameListFragment extends Fragment
 		mMe.finish();
 	}
 
+	@Override
+	public void onDestroyView()
+	{
+		super.onDestroyView();
+
+		// Nothing left to show the results in.
+		cancelScan();
+	}
+
 	@Override
 	public void onAttach(Activity activity)
 	{
@@ -154,4 +232,21 @@ public final class GameListFragment extends Fragment
 					+ " must implement OnGameListZeroListener");
 		}
 	}
+
+	@Override
+	public void onDetach()
+	{
+		super.onDetach();
+		cancelScan();
+	}
+
+	@Override
+	public void onTrimMemory(int level)
+	{
+		super.onTrimMemory(level);
+
+		// Banners are cheap to load again from the game list index.
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+			BannerCache.getInstance(mMe).evictAll();
+	}
 }
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.gamelist;
+
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An on-disk index of the metadata (title and banner) of every
+ * game that has been shown in the game list.
+ * <p>
+ * Entries are keyed by the path of the game and are only considered
+ * valid while the size and last-modified time of the file match the
+ * ones recorded, so disc images only have to be opened when they are
+ * new or have changed since the last time the game list was filled.
+ * <p>
+ * Only the titles are kept in memory. Banners live at the end of the
+ * index file in fixed-size slots and are read back one at a time when
+ * a game actually needs to be drawn.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class GameListIndex
+{
+	/** Width of a banner in pixels. */
+	public static final int BANNER_WIDTH = 96;
+
+	/** Height of a banner in pixels. */
+	public static final int BANNER_HEIGHT = 32;
+
+	private static final int BANNER_BYTES = BANNER_WIDTH * BANNER_HEIGHT * 4;
+	private static final int HEADER_BYTES = 12;
+	private static final int MAGIC = 0x444C4749; // "DLGI"
+	private static final int VERSION = 2;
+
+	private static GameListIndex sInstance;
+
+	private final File mFile;
+	private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+	private long mBannersStart = 0;
+	private boolean mDirty = false;
+
+	/**
+	 * The metadata stored for a single game.
+	 */
+	public static final class Entry
+	{
+		private final long size;
+		private final long lastModified;
+		private final String title;
+		private boolean hasBanner;
+
+		// Banner pixels that haven't been written to the index file yet.
+		private int[] banner;
+
+		// Slot of the banner within the index file, or -1 if it isn't in there.
+		private int bannerSlot = -1;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param size         The size of the game file in bytes.
+		 * @param lastModified The last-modified time of the game file.
+		 * @param title        The embedded title of the game, or null if it has none.
+		 * @param banner       The banner pixels of the game, or null if it has no banner.
+		 */
+		public Entry(long size, long lastModified, String title, int[] banner)
+		{
+			if (banner != null && banner.length != BANNER_WIDTH * BANNER_HEIGHT)
+				throw new IllegalArgumentException("Banner must be " + BANNER_WIDTH + "x" + BANNER_HEIGHT + " pixels");
+
+			this.size = size;
+			this.lastModified = lastModified;
+			this.title = (title != null) ? title : "";
+			this.hasBanner = (banner != null);
+			this.banner = banner;
+		}
+
+		/**
+		 * Gets the embedded title of the game.
+		 *
+		 * @return the embedded title of the game.
+		 */
+		public String getTitle()
+		{
+			return title;
+		}
+	}
+
+	private GameListIndex(File file)
+	{
+		mFile = file;
+	}
+
+	/**
+	 * Gets the index stored in the dolphin-emu user folder,
+	 * loading it from disk the first time this is called.
+	 * <p>
+	 * This reads from storage, so it shouldn't be called on the UI thread.
+	 *
+	 * @return the game list index.
+	 */
+	public static synchronized GameListIndex getInstance()
+	{
+		if (sInstance == null)
+		{
+			String CacheDir = Environment.getExternalStorageDirectory() + File.separator + "dolphin-emu" + File.separator + "Cache";
+			sInstance = new GameListIndex(new File(CacheDir, "GameListIndex.bin"));
+			sInstance.load();
+		}
+
+		return sInstance;
+	}
+
+	/**
+	 * Gets the metadata for the given game file.
+	 *
+	 * @param file The game file to get the metadata of.
+	 *
+	 * @return the stored metadata, or null if there is none or the file has changed since it was stored.
+	 */
+	public synchronized Entry get(File file)
+	{
+		Entry entry = mEntries.get(file.getAbsolutePath());
+
+		if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified())
+			return null;
+
+		return entry;
+	}
+
+	/**
+	 * Stores the metadata for a game.
+	 *
+	 * @param path  The absolute path to the game file.
+	 * @param entry The metadata to store.
+	 */
+	public synchronized void put(String path, Entry entry)
+	{
+		mEntries.put(path, entry);
+		mDirty = true;
+	}
+
+	/**
+	 * Gets the banner of a game.
+	 * <p>
+	 * This may read from storage, so it shouldn't be called on the UI thread.
+	 *
+	 * @param path The absolute path to the game file.
+	 *
+	 * @return the banner pixels of the game as ARGB colors, or null if the game has no banner.
+	 */
+	public synchronized int[] getBanner(String path)
+	{
+		Entry entry = mEntries.get(path);
+		if (entry == null || !entry.hasBanner)
+			return null;
+
+		if (entry.banner != null)
+			return entry.banner;
+
+		RandomAccessFile file = null;
+
+		try
+		{
+			file = new RandomAccessFile(mFile, "r");
+			return readBanner(file, entry.bannerSlot);
+		}
+		catch (IOException e)
+		{
+			Log.e("GameListIndex", "Failed to read the banner of " + path, e);
+			return null;
+		}
+		finally
+		{
+			closeQuietly(file);
+		}
+	}
+
+	/**
+	 * Removes every entry whose path isn't in the given set.
+	 *
+	 * @param paths The paths of the games to keep.
+	 */
+	public synchronized void retainAll(Set<String> paths)
+	{
+		Iterator<String> it = mEntries.keySet().iterator();
+		while (it.hasNext())
+		{
+			if (!paths.contains(it.next()))
+			{
+				it.remove();
+				mDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes the index to disk if it has changed since it was loaded or last saved.
+	 * <p>
+	 * The index is written to a temporary file first, which then replaces
+	 * the old index, so an interrupted write never leaves a corrupt index behind.
+	 */
+	public synchronized void save()
+	{
+		if (!mDirty)
+			return;
+
+		File temp = new File(mFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		RandomAccessFile oldFile = null;
+		Map<Entry, Integer> newSlots = new HashMap<Entry, Integer>();
+
+		try
+		{
+			// The table goes first so that the location of the banners is known when loading.
+			ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+			DataOutputStream table = new DataOutputStream(tableBytes);
+			table.writeInt(mEntries.size());
+
+			int numBanners = 0;
+			for (Map.Entry<String, Entry> it : mEntries.entrySet())
+			{
+				Entry entry = it.getValue();
+				int slot = entry.hasBanner ? numBanners++ : -1;
+
+				table.writeUTF(it.getKey());
+				table.writeLong(entry.size);
+				table.writeLong(entry.lastModified);
+				table.writeUTF(entry.title);
+				table.writeInt(slot);
+
+				newSlots.put(entry, slot);
+			}
+			table.close();
+
+			mFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(tableBytes.size());
+			tableBytes.writeTo(out);
+
+			ByteBuffer bannerBytes = ByteBuffer.allocate(BANNER_BYTES);
+			for (Entry entry : mEntries.values())
+			{
+				if (!entry.hasBanner)
+					continue;
+
+				int[] banner = entry.banner;
+				if (banner == null)
+				{
+					// Carry the banner over from the old index file.
+					if (oldFile == null)
+						oldFile = new RandomAccessFile(mFile, "r");
+
+					banner = readBanner(oldFile, entry.bannerSlot);
+				}
+
+				bannerBytes.clear();
+				bannerBytes.asIntBuffer().put(banner);
+				out.write(bannerBytes.array());
+			}
+
+			out.close();
+			out = null;
+			closeQuietly(oldFile);
+			oldFile = null;
+
+			if (!temp.renameTo(mFile))
+				throw new IOException("Unable to replace " + mFile.getPath());
+
+			// Everything is on disk now, banners can be read back from there.
+			mBannersStart = HEADER_BYTES + tableBytes.size();
+			for (Map.Entry<Entry, Integer> it : newSlots.entrySet())
+			{
+				it.getKey().bannerSlot = it.getValue();
+				it.getKey().banner = null;
+			}
+
+			mDirty = false;
+		}
+		catch (IOException e)
+		{
+			Log.e("GameListIndex", "Failed to save the game list index", e);
+			temp.delete();
+		}
+		finally
+		{
+			closeQuietly(out);
+			closeQuietly(oldFile);
+		}
+	}
+
+	private int[] readBanner(RandomAccessFile file, int slot) throws IOException
+	{
+		byte[] bannerBytes = new byte[BANNER_BYTES];
+		file.seek(mBannersStart + (long) slot * BANNER_BYTES);
+		file.readFully(bannerBytes);
+
+		int[] banner = new int[BANNER_WIDTH * BANNER_HEIGHT];
+		ByteBuffer.wrap(bannerBytes).asIntBuffer().get(banner);
+		return banner;
+	}
+
+	private void load()
+	{
+		if (!mFile.exists())
+			return;
+
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 64 * 1024));
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				// Written by a different version, it'll be rebuilt on the next save.
+				mDirty = true;
+				return;
+			}
+
+			int tableSize = in.readInt();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				String path = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				String title = in.readUTF();
+
+				Entry entry = new Entry(size, lastModified, title, null);
+				entry.bannerSlot = in.readInt();
+				entry.hasBanner = (entry.bannerSlot != -1);
+				mEntries.put(path, entry);
+			}
+
+			mBannersStart = HEADER_BYTES + tableSize;
+		}
+		catch (IOException e)
+		{
+			Log.e("GameListIndex", "Failed to load the game list index, it will be rebuilt", e);
+			mEntries.clear();
+			mDirty = true;
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+	}
+
+	private static void closeQuietly(Closeable c)
+	{
+		if (c == null)
+			return;
+
+		try
+		{
+			c.close();
+		}
+		catch (IOException ignored)
+		{
+		}
+	}
+}
@@ -6,14 +6,7 @@
 
 package org.dolphinemu.dolphinemu.gamelist;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Log;
-
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 
 import org.dolphinemu.dolphinemu.NativeLibrary;
 
@@ -22,54 +15,58 @@ import org.dolphinemu.dolphinemu.NativeLibrary;
  */
 public final class GameListItem implements Comparable<GameListItem>
 {
-	private String name;
+	// Guards the banner and title lookups, which are not thread-safe natively.
+	private static final Object NATIVE_LOCK = new Object();
+
+	private final String name;
 	private final String data;
 	private final String path;
-	private Bitmap image;
 
 	/**
 	 * Constructor.
 	 * 
-	 * @param ctx     The current {@link Context}
 	 * @param name    The name of this GameListItem.
 	 * @param data    The subtitle for this GameListItem
 	 * @param path    The file path for the game represented by this GameListItem.
 	 */
-	public GameListItem(Context ctx, String name, String data, String path)
+	public GameListItem(String name, String data, String path)
 	{
 		this.name = name;
 		this.data = data;
 		this.path = path;
+	}
+
+	/**
+	 * Reads the title and banner embedded within the given ISO/ROM.
+	 * <p>
+	 * This opens and parses the disc image, so it shouldn't be called on the UI thread.
+	 *
+	 * @param file The ISO/ROM to read the metadata of.
+	 *
+	 * @return the metadata of the given ISO/ROM.
+	 */
+	public static GameListIndex.Entry readMetadata(File file)
+	{
+		String path = file.getAbsolutePath();
+		int[] banner;
+		String title;
 
-		File file = new File(path);
-		if (!file.isDirectory() && !path.isEmpty())
+		// The native side keeps the names it parsed out of the banner
+		// around for GetTitle, so the two calls have to happen together.
+		synchronized (NATIVE_LOCK)
 		{
-			int[] Banner = NativeLibrary.GetBanner(path);
-			if (Banner[0] == 0)
-			{
-				try
-				{
-					// Open the no banner icon.
-					InputStream noBannerPath = ctx.getAssets().open("NoBanner.png");
-
-					// Decode the bitmap.
-					image = BitmapFactory.decodeStream(noBannerPath);
-
-					// Scale the bitmap to match other banners.
-					image = Bitmap.createScaledBitmap(image, 96, 32, false);
-				}
-				catch (IOException e)
-				{
-					Log.e("GameListItem", e.toString());
-				}
-			}
-			else
-			{
-				image = Bitmap.createBitmap(Banner, 96, 32, Bitmap.Config.ARGB_8888);
-			}
-
-			this.name = NativeLibrary.GetTitle(path);
+			banner = NativeLibrary.GetBanner(path);
+			title = NativeLibrary.GetTitle(path);
 		}
+
+		if (banner[0] == 0)
+			banner = null;
+
+		// Images that can't be parsed have no title, show them by name instead.
+		if (title == null || title.isEmpty())
+			title = file.getName();
+
+		return new GameListIndex.Entry(file.length(), file.lastModified(), title, banner);
 	}
 
 	/**
@@ -102,16 +99,6 @@ public final class GameListItem implements Comparable<GameListItem>
 		return path;
 	}
 
-	/**
-	 * Gets the image data for this game as a {@link Bitmap}.
-	 * 
-	 * @return the image data for this game as a {@link Bitmap}.
-	 */
-	public Bitmap getImage()
-	{
-		return image;
-	}
-
 	public int compareTo(GameListItem o) 
 	{
 		if (name != null)
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.gamelist;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dolphinemu.dolphinemu.R;
+
+/**
+ * Scans the game directories set in the Dolphin config
+ * on a small pool of background threads.
+ * <p>
+ * The title and banner of each game are taken from the
+ * {@link GameListIndex} when possible, so only games that
+ * are new or have changed need their disc images read.
+ * <p>
+ * Discovered games are handed back to the UI thread in
+ * small batches as they are found, so the first rows of
+ * the game list show up without waiting for the whole
+ * library to be scanned.
+ */
+public final class GameListScanner
+{
+	/**
+	 * Interface which receives the results of a scan.
+	 * <p>
+	 * All of these methods are called on the UI thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called whenever a new batch of games has been found.
+		 *
+		 * @param games The games found since the last call.
+		 */
+		void onGamesFound(List<GameListItem> games);
+
+		/**
+		 * Called once every directory has been scanned.
+		 *
+		 * @param totalGames The total number of games found during the scan.
+		 */
+		void onScanFinished(int totalGames);
+	}
+
+	// Extensions to filter by.
+	private static final Set<String> EXTENSIONS = new HashSet<String>(Arrays.asList(".dff", ".dol", ".elf", ".gcm", ".gcz", ".iso", ".wad", ".wbfs"));
+
+	// Maximum number of games delivered to the listener at once.
+	private static final int BATCH_SIZE = 8;
+
+	// Upper bound on the number of scanning threads.
+	private static final int MAX_THREADS = 4;
+
+	private final Context mContext;
+	private final Listener mListener;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final AtomicInteger mPendingDirs = new AtomicInteger();
+	private final AtomicInteger mFound = new AtomicInteger();
+	private final Set<String> mScannedPaths = Collections.synchronizedSet(new HashSet<String>());
+	private ExecutorService mExecutor;
+	private volatile boolean mIncomplete = false;
+	private volatile boolean mCancelled = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ctx      The current {@link Context}.
+	 * @param listener The {@link Listener} that receives the scan results.
+	 */
+	public GameListScanner(Context ctx, Listener listener)
+	{
+		mContext = ctx.getApplicationContext();
+		mListener = listener;
+	}
+
+	/**
+	 * Begins scanning the given directories in the background.
+	 * <p>
+	 * A scanner can only be started once.
+	 *
+	 * @param directories The directories to look for games in.
+	 */
+	public void scan(List<String> directories)
+	{
+		if (mExecutor != null)
+			throw new IllegalStateException("GameListScanner has already been started");
+
+		if (directories.isEmpty())
+		{
+			postFinished();
+			return;
+		}
+
+		int numThreads = Math.min(directories.size(), Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		mExecutor = Executors.newFixedThreadPool(Math.max(1, numThreads), new ScannerThreadFactory());
+		mPendingDirs.set(directories.size());
+
+		for (final String directory : directories)
+		{
+			mExecutor.execute(new Runnable()
+			{
+				public void run()
+				{
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+					// Every thread gets the index itself, as the first one to ask loads it.
+					GameListIndex index = GameListIndex.getInstance();
+					boolean completed = false;
+
+					try
+					{
+						completed = scanDirectory(index, new File(directory));
+					}
+					catch (Exception ex)
+					{
+						Log.e("GameListScanner", "Failed to scan directory: " + directory, ex);
+					}
+
+					if (!completed)
+						mIncomplete = true;
+
+					if (mPendingDirs.decrementAndGet() == 0)
+					{
+						// Only forget about games that are gone if every directory was looked at.
+						if (!mIncomplete)
+							index.retainAll(mScannedPaths);
+
+						index.save();
+						postFinished();
+					}
+				}
+			});
+		}
+
+		// No more work will be submitted, let the threads die once the directories are done.
+		mExecutor.shutdown();
+	}
+
+	/**
+	 * Cancels the scan. No further results will be delivered
+	 * to the listener once this returns.
+	 * <p>
+	 * Must be called on the UI thread.
+	 */
+	public void cancel()
+	{
+		mCancelled = true;
+
+		if (mExecutor != null)
+			mExecutor.shutdownNow();
+
+		mHandler.removeCallbacksAndMessages(null);
+	}
+
+	/**
+	 * Gets whether or not this scan has been cancelled.
+	 *
+	 * @return true if this scan has been cancelled; false otherwise.
+	 */
+	public boolean isCancelled()
+	{
+		return mCancelled;
+	}
+
+	// Returns true if the whole directory was scanned.
+	private boolean scanDirectory(GameListIndex index, File directory)
+	{
+		File[] entries = directory.listFiles();
+		if (entries == null)
+			return false;
+
+		String sizePrefix = mContext.getString(R.string.file_size);
+		List<GameListItem> batch = new ArrayList<GameListItem>();
+
+		for (File entry : entries)
+		{
+			if (mCancelled)
+				return false;
+
+			String entryName = entry.getName();
+			int extStart = entryName.lastIndexOf('.');
+
+			if (entry.isHidden() || entry.isDirectory() || extStart == -1)
+				continue;
+
+			if (!EXTENSIONS.contains(entryName.substring(extStart).toLowerCase()))
+				continue;
+
+			String path = entry.getAbsolutePath();
+			mScannedPaths.add(path);
+
+			// Only open the disc image if it isn't in the index or has changed since.
+			GameListIndex.Entry metadata = index.get(entry);
+			if (metadata == null)
+			{
+				metadata = GameListItem.readMetadata(entry);
+				index.put(path, metadata);
+			}
+
+			batch.add(new GameListItem(metadata.getTitle(), sizePrefix + entry.length(), path));
+
+			// Get the very first game on screen as soon as possible.
+			if (batch.size() >= BATCH_SIZE || mFound.get() == 0)
+			{
+				postBatch(batch);
+				batch = new ArrayList<GameListItem>();
+			}
+		}
+
+		if (!batch.isEmpty())
+			postBatch(batch);
+
+		return true;
+	}
+
+	private void postBatch(final List<GameListItem> batch)
+	{
+		mFound.addAndGet(batch.size());
+
+		mHandler.post(new Runnable()
+		{
+			public void run()
+			{
+				if (!mCancelled)
+					mListener.onGamesFound(batch);
+			}
+		});
+	}
+
+	private void postFinished()
+	{
+		mHandler.post(new Runnable()
+		{
+			public void run()
+			{
+				if (!mCancelled)
+					mListener.onScanFinished(mFound.get());
+			}
+		});
+	}
+
+	// Names the scanner threads so they are easy to spot when debugging.
+	private static final class ScannerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger mCount = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			return new Thread(r, "GameListScanner-" + mCount.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.gamelist;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.widget.Toast;
+
+import org.dolphinemu.dolphinemu.R;
+import org.dolphinemu.dolphinemu.settings.GameProfile;
+
+/**
+ * The dialogs for editing the settings a game overrides the global ones with.
+ * <p>
+ * The first dialog lists every setting along with what it's set to for the
+ * game. Picking one shows the values it can have, plus using the global
+ * value. Each change is saved to the game's profile right away.
+ */
+public final class GameProfileDialog
+{
+	private GameProfileDialog()
+	{
+		// Disallowed.
+	}
+
+	/**
+	 * Shows the settings of a game's profile.
+	 *
+	 * @param ctx     The current {@link Context}.
+	 * @param title   The name of the game.
+	 * @param profile The profile of the game.
+	 */
+	public static void show(final Context ctx, final String title, final GameProfile profile)
+	{
+		final GameProfile.Setting[] settings = GameProfile.Setting.values();
+		CharSequence[] items = new CharSequence[settings.length];
+		for (int i = 0; i < settings.length; i++)
+			items[i] = ctx.getString(R.string.game_profile_setting, ctx.getString(settings[i].getName()), describe(ctx, profile, settings[i]));
+
+		new AlertDialog.Builder(ctx)
+				.setTitle(title)
+				.setItems(items, new DialogInterface.OnClickListener()
+				{
+					public void onClick(DialogInterface dialog, int which)
+					{
+						showChoices(ctx, title, profile, settings[which]);
+					}
+				})
+				.setNeutralButton(R.string.game_profile_reset, new DialogInterface.OnClickListener()
+				{
+					public void onClick(DialogInterface dialog, int which)
+					{
+						profile.clear();
+						save(ctx, profile);
+					}
+				})
+				.setNegativeButton(R.string.close, null)
+				.show();
+	}
+
+	private static void showChoices(final Context ctx, final String title, final GameProfile profile, final GameProfile.Setting setting)
+	{
+		String[] entries = ctx.getResources().getStringArray(setting.getEntries());
+		final String[] values = ctx.getResources().getStringArray(setting.getValues());
+
+		// The first choice is to use the global value.
+		CharSequence[] items = new CharSequence[entries.length + 1];
+		items[0] = ctx.getString(R.string.game_profile_global);
+		System.arraycopy(entries, 0, items, 1, entries.length);
+
+		int checked = indexOf(values, profile.get(setting)) + 1;
+
+		new AlertDialog.Builder(ctx)
+				.setTitle(setting.getName())
+				.setSingleChoiceItems(items, checked, new DialogInterface.OnClickListener()
+				{
+					public void onClick(DialogInterface dialog, int which)
+					{
+						profile.set(setting, (which == 0) ? null : values[which - 1]);
+						save(ctx, profile);
+						dialog.dismiss();
+
+						// Back to the list of settings, showing the new value.
+						show(ctx, title, profile);
+					}
+				})
+				.setNegativeButton(R.string.cancel, null)
+				.show();
+	}
+
+	private static String describe(Context ctx, GameProfile profile, GameProfile.Setting setting)
+	{
+		String value = profile.get(setting);
+		if (value == null)
+			return ctx.getString(R.string.game_profile_global);
+
+		int index = indexOf(ctx.getResources().getStringArray(setting.getValues()), value);
+		if (index == -1)
+			return value;
+
+		return ctx.getResources().getStringArray(setting.getEntries())[index];
+	}
+
+	private static void save(Context ctx, GameProfile profile)
+	{
+		if (!profile.save())
+			Toast.makeText(ctx, R.string.game_profile_save_failed, Toast.LENGTH_SHORT).show();
+	}
+
+	private static int indexOf(String[] values, String value)
+	{
+		if (value == null)
+			return -1;
+
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i].equals(value))
+				return i;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.settings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects reads and writes of ini config keys so that each config
+ * file is only checked for changes (and resaved) once per batch,
+ * instead of once for every single key.
+ * <p>
+ * This is what the frontend uses in place of going through
+ * {@link org.dolphinemu.dolphinemu.NativeLibrary#GetConfig(String, String, String, String)}
+ * and {@link org.dolphinemu.dolphinemu.NativeLibrary#SetConfig(String, String, String, String)}
+ * key by key, each of which loads the file again natively. The files are
+ * parsed in process by {@link IniFile}, through {@link DolphinConfig},
+ * so a batch doesn't cross into native code at all.
+ * <p>
+ * Reads are queued with {@link #get(String, String, String, String)}
+ * and are filled in by {@link #commit()}. Writes are queued with
+ * {@link #set(String, String, String, String)} and also happen on
+ * {@link #commit()}, after the reads.
+ */
+public final class ConfigBatch
+{
+	private final List<String> mGets = new ArrayList<String>();
+	private final List<Value> mValues = new ArrayList<Value>();
+	private final List<String> mSets = new ArrayList<String>();
+
+	/**
+	 * A value that will be read from a config file
+	 * when the batch it belongs to is committed.
+	 */
+	public static final class Value
+	{
+		private String value;
+
+		private Value(String defaultValue)
+		{
+			this.value = defaultValue;
+		}
+
+		/**
+		 * Gets the value read from the config file.
+		 *
+		 * @return the value read from the config file, or the default value if the batch hasn't been committed.
+		 */
+		public String get()
+		{
+			return value;
+		}
+
+		/**
+		 * Gets whether or not the value read from the config file is "True".
+		 *
+		 * @return true if the value read from the config file is "True"; false otherwise.
+		 */
+		public boolean isTrue()
+		{
+			return value.equals("True");
+		}
+	}
+
+	/**
+	 * Queues a read of a key in the given ini-based config file.
+	 *
+	 * @param configFile   The ini-based config file to get the value from.
+	 * @param section      The section key that the actual key is in.
+	 * @param key          The key to get the value from.
+	 * @param defaultValue The value to use in the event the given key doesn't exist.
+	 *
+	 * @return the {@link Value} that will hold the value of the key once this batch is committed.
+	 */
+	public Value get(String configFile, String section, String key, String defaultValue)
+	{
+		mGets.add(configFile);
+		mGets.add(section);
+		mGets.add(key);
+		mGets.add(defaultValue);
+
+		Value value = new Value(defaultValue);
+		mValues.add(value);
+		return value;
+	}
+
+	/**
+	 * Queues a write of a key in the given ini-based config file.
+	 *
+	 * @param configFile The ini-based config file to add the value to.
+	 * @param section    The section key for the ini key.
+	 * @param key        The actual ini key to set.
+	 * @param value      The string to set the ini key to.
+	 */
+	public void set(String configFile, String section, String key, String value)
+	{
+		mSets.add(configFile);
+		mSets.add(section);
+		mSets.add(key);
+		mSets.add(value);
+	}
+
+	/**
+	 * Queues a write of a boolean key in the given ini-based config file.
+	 *
+	 * @param configFile The ini-based config file to add the value to.
+	 * @param section    The section key for the ini key.
+	 * @param key        The actual ini key to set.
+	 * @param value      The boolean to set the ini key to.
+	 */
+	public void set(String configFile, String section, String key, boolean value)
+	{
+		set(configFile, section, key, value ? "True" : "False");
+	}
+
+	/**
+	 * Performs all of the queued reads, then all of the queued writes,
+	 * saving each config file that was written to once.
+	 */
+	public void commit()
+	{
+		Map<String, IniFile> files = new LinkedHashMap<String, IniFile>();
+
+		for (int i = 0; i < mValues.size(); i++)
+		{
+			IniFile ini = getFile(files, mGets.get(i * 4));
+			mValues.get(i).value = ini.get(mGets.get(i * 4 + 1), mGets.get(i * 4 + 2), mGets.get(i * 4 + 3));
+		}
+
+		mGets.clear();
+		mValues.clear();
+
+		if (mSets.isEmpty())
+			return;
+
+		for (int i = 0; i < mSets.size(); i += 4)
+		{
+			IniFile ini = getFile(files, mSets.get(i));
+			ini.set(mSets.get(i + 1), mSets.get(i + 2), mSets.get(i + 3));
+		}
+
+		mSets.clear();
+
+		// Files that were only read from aren't dirty, so saving them does nothing.
+		for (IniFile ini : files.values())
+			ini.save();
+	}
+
+	// Only looks each config file up (and checks whether it changed on disk) once per commit.
+	private static IniFile getFile(Map<String, IniFile> files, String configFile)
+	{
+		IniFile ini = files.get(configFile);
+
+		if (ini == null)
+		{
+			ini = DolphinConfig.get(configFile);
+			files.put(configFile, ini);
+		}
+
+		return ini;
+	}
+}
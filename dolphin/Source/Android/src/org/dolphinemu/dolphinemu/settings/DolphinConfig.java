@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.settings;
+
+import android.os.Environment;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives access to the ini-based config files in the dolphin-emu user folder.
+ * <p>
+ * Each file is only parsed the first time it is asked for. After that
+ * the same {@link IniFile} is handed out, and it is only reloaded if
+ * the file has been changed behind its back in the meantime.
+ */
+public final class DolphinConfig
+{
+	private static final Map<String, IniFile> sFiles = new HashMap<String, IniFile>();
+
+	private DolphinConfig()
+	{
+		// Disallowed.
+	}
+
+	/**
+	 * Gets the directory the config files are stored in.
+	 *
+	 * @return the directory the config files are stored in.
+	 */
+	public static File getConfigDirectory()
+	{
+		return new File(Environment.getExternalStorageDirectory() + File.separator + "dolphin-emu" + File.separator + "Config");
+	}
+
+	/**
+	 * Gets the directory the settings of individual games are stored in.
+	 * The files in it are layered over the config files when a game boots.
+	 *
+	 * @return the directory the settings of individual games are stored in.
+	 */
+	public static File getGameSettingsDirectory()
+	{
+		return new File(Environment.getExternalStorageDirectory() + File.separator + "dolphin-emu" + File.separator + "GameSettings");
+	}
+
+	/**
+	 * Gets an up to date copy of the given config file.
+	 * <p>
+	 * This may read from storage, so it's best not to call it in a tight loop.
+	 *
+	 * @param configFile The name of the ini-based config file, such as "Dolphin.ini".
+	 *
+	 * @return the {@link IniFile} for the given config file.
+	 */
+	public static synchronized IniFile get(String configFile)
+	{
+		IniFile ini = sFiles.get(configFile);
+
+		if (ini == null)
+		{
+			ini = new IniFile(new File(getConfigDirectory(), configFile));
+			sFiles.put(configFile, ini);
+		}
+		else
+		{
+			ini.refresh();
+		}
+
+		return ini;
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.settings;
+
+import android.os.Build;
+
+import java.io.File;
+
+import org.dolphinemu.dolphinemu.R;
+
+/**
+ * The settings a single game overrides the global ones with.
+ * <p>
+ * A profile is stored in the game's own ini file in the GameSettings
+ * directory, named after its game ID. When the game boots, the emulator
+ * layers that file over Dolphin.ini and gfx_opengl.ini in one go, so
+ * everything the profile doesn't set keeps the global value, and nothing
+ * global is changed. Only the keys of the settings below are touched,
+ * so anything else in the file, such as patches, is left alone.
+ */
+public final class GameProfile
+{
+	/**
+	 * The settings a profile can override. Values are the same as the
+	 * ones of the preference with the same name in the settings screens.
+	 */
+	public enum Setting
+	{
+		CPU_CORE(R.string.cpu_core, 0, 0),
+		DUAL_CORE(R.string.dual_core, R.array.gameProfileBooleanEntries, R.array.gameProfileBooleanValues),
+		FASTMEM(R.string.fastmem, R.array.gameProfileBooleanEntries, R.array.gameProfileBooleanValues),
+		INTERNAL_RESOLUTION(R.string.internal_resolution, R.array.internalResolutionEntries, R.array.internalResolutionValues),
+		EFB_COPY_METHOD(R.string.efb_copy_method, R.array.efbCopyMethodEntries, R.array.efbCopyMethodValues),
+		TEXTURE_CACHE_ACCURACY(R.string.texture_cache_accuracy, R.array.textureCacheAccuracyEntries, R.array.textureCacheAccuracyValues),
+		EXTERNAL_FRAME_BUFFER(R.string.external_frame_buffer, R.array.externalFrameBufferEntries, R.array.externalFrameBufferValues),
+		CACHE_DISPLAY_LISTS(R.string.cache_display_lists, R.array.gameProfileBooleanEntries, R.array.gameProfileBooleanValues);
+
+		private final int mName;
+		private final int mEntries;
+		private final int mValues;
+
+		private Setting(int name, int entries, int values)
+		{
+			mName = name;
+			mEntries = entries;
+			mValues = values;
+		}
+
+		/**
+		 * Gets the name of the setting.
+		 *
+		 * @return the string resource of the name of the setting.
+		 */
+		public int getName()
+		{
+			return mName;
+		}
+
+		/**
+		 * Gets the names of the values the setting can have.
+		 *
+		 * @return the array resource of the names of the values.
+		 */
+		public int getEntries()
+		{
+			if (this != CPU_CORE)
+				return mEntries;
+
+			// Same as the CPU settings screen.
+			if (Build.CPU_ABI.contains("x86"))
+				return R.array.emuCoreEntriesX86;
+			else if (Build.CPU_ABI.contains("arm"))
+				return R.array.emuCoreEntriesARM;
+			else
+				return R.array.emuCoreEntriesOther;
+		}
+
+		/**
+		 * Gets the values the setting can have.
+		 *
+		 * @return the array resource of the values, in the same order as {@link #getEntries()}.
+		 */
+		public int getValues()
+		{
+			if (this != CPU_CORE)
+				return mValues;
+
+			if (Build.CPU_ABI.contains("x86"))
+				return R.array.emuCoreValuesX86;
+			else if (Build.CPU_ABI.contains("arm"))
+				return R.array.emuCoreValuesARM;
+			else
+				return R.array.emuCoreValuesOther;
+		}
+	}
+
+	private final IniFile mIni;
+
+	/**
+	 * Constructor. Loads the profile of the given game, if it has one.
+	 * This reads from storage, so it's best not done on the UI thread.
+	 *
+	 * @param gameId The ID of the game, as returned by
+	 *               {@link org.dolphinemu.dolphinemu.NativeLibrary#GetGameId(String)}.
+	 */
+	public GameProfile(String gameId)
+	{
+		mIni = new IniFile(new File(DolphinConfig.getGameSettingsDirectory(), gameId + ".ini"));
+	}
+
+	/**
+	 * Gets the value the profile overrides a setting with.
+	 *
+	 * @param setting The setting to get.
+	 *
+	 * @return the value of the setting, or null if the global value is used.
+	 */
+	public String get(Setting setting)
+	{
+		switch (setting)
+		{
+			case CPU_CORE:
+				return mIni.get("Core", "CPUCore", null);
+
+			case DUAL_CORE:
+				return getBoolean("Core", "CPUThread");
+
+			case FASTMEM:
+				return getBoolean("Core", "Fastmem");
+
+			case INTERNAL_RESOLUTION:
+				return mIni.get("Video_Settings", "EFBScale", null);
+
+			case EFB_COPY_METHOD:
+			{
+				String efbCopyOn = getBoolean("Video_Hacks", "EFBCopyEnable");
+				if (efbCopyOn == null)
+					return null;
+				else if (efbCopyOn.equals("False"))
+					return "Off";
+				else if (mIni.getBoolean("Video_Hacks", "EFBToTextureEnable", false))
+					return "Texture";
+				else if (mIni.getBoolean("Video_Hacks", "EFBCopyCacheEnable", false))
+					return "RAM (cached)";
+				else
+					return "RAM (uncached)";
+			}
+
+			case TEXTURE_CACHE_ACCURACY:
+				return mIni.get("Video_Settings", "SafeTextureCacheColorSamples", null);
+
+			case EXTERNAL_FRAME_BUFFER:
+			{
+				String usingXFB = getBoolean("Video_Settings", "UseXFB");
+				if (usingXFB == null)
+					return null;
+				else if (usingXFB.equals("False"))
+					return "Disabled";
+				else if (mIni.getBoolean("Video_Settings", "UseRealXFB", false))
+					return "Real";
+				else
+					return "Virtual";
+			}
+
+			case CACHE_DISPLAY_LISTS:
+				return getBoolean("Video_Hacks", "DlistCachingEnable");
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Sets the value the profile overrides a setting with.
+	 * Nothing is written until {@link #save()} is called.
+	 *
+	 * @param setting The setting to set.
+	 * @param value   The value to set it to, or null to use the global value.
+	 */
+	public void set(Setting setting, String value)
+	{
+		switch (setting)
+		{
+			case CPU_CORE:
+				set("Core", "CPUCore", value);
+				break;
+
+			case DUAL_CORE:
+				set("Core", "CPUThread", value);
+				break;
+
+			case FASTMEM:
+				set("Core", "Fastmem", value);
+				break;
+
+			case INTERNAL_RESOLUTION:
+				set("Video_Settings", "EFBScale", value);
+				break;
+
+			case EFB_COPY_METHOD:
+				mIni.delete("Video_Hacks", "EFBCopyEnable");
+				mIni.delete("Video_Hacks", "EFBToTextureEnable");
+				mIni.delete("Video_Hacks", "EFBCopyCacheEnable");
+
+				if (value == null)
+					break;
+
+				mIni.set("Video_Hacks", "EFBCopyEnable", !value.equals("Off"));
+				if (value.equals("Texture"))
+				{
+					mIni.set("Video_Hacks", "EFBToTextureEnable", true);
+				}
+				else if (value.startsWith("RAM"))
+				{
+					mIni.set("Video_Hacks", "EFBToTextureEnable", false);
+					mIni.set("Video_Hacks", "EFBCopyCacheEnable", value.equals("RAM (cached)"));
+				}
+				break;
+
+			case TEXTURE_CACHE_ACCURACY:
+				set("Video_Settings", "SafeTextureCacheColorSamples", value);
+				break;
+
+			case EXTERNAL_FRAME_BUFFER:
+				mIni.delete("Video_Settings", "UseXFB");
+				mIni.delete("Video_Settings", "UseRealXFB");
+
+				if (value == null)
+					break;
+
+				mIni.set("Video_Settings", "UseXFB", !value.equals("Disabled"));
+				if (!value.equals("Disabled"))
+					mIni.set("Video_Settings", "UseRealXFB", value.equals("Real"));
+				break;
+
+			case CACHE_DISPLAY_LISTS:
+				set("Video_Hacks", "DlistCachingEnable", value);
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Checks whether the profile overrides anything.
+	 *
+	 * @return true if every setting uses the global value.
+	 */
+	public boolean isEmpty()
+	{
+		for (Setting setting : Setting.values())
+		{
+			if (get(setting) != null)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Makes every setting use the global value again.
+	 * Nothing is written until {@link #save()} is called.
+	 */
+	public void clear()
+	{
+		for (Setting setting : Setting.values())
+			set(setting, null);
+	}
+
+	/**
+	 * Writes every change made since the profile was loaded to the game's ini file at once.
+	 *
+	 * @return true if the profile is up to date on disk; false if writing it failed.
+	 */
+	public boolean save()
+	{
+		File directory = mIni.getFile().getParentFile();
+		if (!directory.isDirectory())
+			directory.mkdirs();
+
+		return mIni.save();
+	}
+
+	// Returns "True", "False" or null, whichever way the boolean is spelled in the file.
+	private String getBoolean(String section, String key)
+	{
+		if (mIni.get(section, key, null) == null)
+			return null;
+
+		return mIni.getBoolean(section, key, false) ? "True" : "False";
+	}
+
+	private void set(String section, String key, String value)
+	{
+		if (value == null)
+			mIni.delete(section, key);
+		else
+			mIni.set(section, key, value);
+	}
+}
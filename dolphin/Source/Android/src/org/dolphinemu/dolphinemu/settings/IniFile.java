@@ -0,0 +1,461 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.settings;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A Java implementation of the ini file handling done by the
+ * native IniFile class, so that config files can be read and
+ * written without going through JNI for every key.
+ * <p>
+ * The file is parsed once into memory and every lookup is served
+ * from there. Changes are only written back by {@link #save()},
+ * and only if something actually changed. If the file is modified
+ * by someone else (the native side, for example), {@link #refresh()}
+ * notices it through the last-modified time and reloads it.
+ * <p>
+ * Keys that were changed here and not saved yet are set again on top
+ * of whatever was reloaded, both by {@link #refresh()} and by a
+ * {@link #save()} that finds the file changed underneath it. So the
+ * keys someone else wrote in the meantime are kept, and the ones
+ * changed here win where both changed the same key.
+ * <p>
+ * Parsing and saving follow the native implementation: section names
+ * are case-insensitive, key names are not, and sections that contain
+ * keys are written back as "key = value" lines only.
+ * <p>
+ * This class doesn't depend on anything Android-specific
+ * and is thread-safe.
+ */
+public final class IniFile
+{
+	private static final String CHARSET = "UTF-8";
+
+	private final File mFile;
+	private final List<Section> mSections = new ArrayList<Section>();
+	private final Map<String, Section> mSectionsByName = new HashMap<String, Section>();
+	private long mLastModified = 0;
+	private long mLength = 0;
+
+	// The keys changed since the file was last loaded or saved,
+	// by lowercase section name and key, with null for a deleted key.
+	private final Map<String, Change> mChanges = new LinkedHashMap<String, Change>();
+
+	private static final class Change
+	{
+		private final String section;
+		private final String key;
+		private final String value;
+
+		private Change(String section, String key, String value)
+		{
+			this.section = section;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final class Section
+	{
+		private final String name;
+		private final Map<String, String> values = new LinkedHashMap<String, String>();
+
+		// Lines that aren't key/value pairs, such as comments and cheat codes.
+		private final List<String> lines = new ArrayList<String>();
+
+		private Section(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Constructor. Loads the given file, if it exists.
+	 *
+	 * @param file The ini file to load and save to.
+	 */
+	public IniFile(File file)
+	{
+		mFile = file;
+		load();
+	}
+
+	/**
+	 * Gets the file this ini file is loaded from and saved to.
+	 *
+	 * @return the file this ini file is loaded from and saved to.
+	 */
+	public File getFile()
+	{
+		return mFile;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 *
+	 * @param section      The section key that the actual key is in.
+	 * @param key          The key to get the value from.
+	 * @param defaultValue The value to return in the event the given key doesn't exist.
+	 *
+	 * @return the value of the key, or defaultValue if it doesn't exist.
+	 */
+	public synchronized String get(String section, String key, String defaultValue)
+	{
+		Section s = getSection(section);
+		if (s == null)
+			return defaultValue;
+
+		String value = s.values.get(key);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * Gets the value of a key as an integer.
+	 *
+	 * @param section      The section key that the actual key is in.
+	 * @param key          The key to get the value from.
+	 * @param defaultValue The value to return in the event the given key doesn't exist or isn't a number.
+	 *
+	 * @return the value of the key, or defaultValue if it doesn't exist or isn't a number.
+	 */
+	public int getInt(String section, String key, int defaultValue)
+	{
+		String value = get(section, key, null);
+		if (value == null)
+			return defaultValue;
+
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the value of a key as a boolean.
+	 *
+	 * @param section      The section key that the actual key is in.
+	 * @param key          The key to get the value from.
+	 * @param defaultValue The value to return in the event the given key doesn't exist.
+	 *
+	 * @return true if the value of the key is "True", false if it's anything
+	 *         else, or defaultValue if the key doesn't exist.
+	 */
+	public boolean getBoolean(String section, String key, boolean defaultValue)
+	{
+		String value = get(section, key, null);
+		if (value == null)
+			return defaultValue;
+
+		return value.equalsIgnoreCase("True") || value.equals("1");
+	}
+
+	/**
+	 * Sets the value of a key, creating the key
+	 * (and its section) if they don't exist yet.
+	 *
+	 * @param section The section key for the ini key.
+	 * @param key     The actual ini key to set.
+	 * @param value   The string to set the ini key to.
+	 */
+	public synchronized void set(String section, String key, String value)
+	{
+		Section s = getOrCreateSection(section);
+
+		if (!value.equals(s.values.get(key)))
+		{
+			s.values.put(key, value);
+			mChanges.put(changeKey(section, key), new Change(section, key, value));
+		}
+	}
+
+	/**
+	 * Sets the value of a boolean key, creating the key
+	 * (and its section) if they don't exist yet.
+	 *
+	 * @param section The section key for the ini key.
+	 * @param key     The actual ini key to set.
+	 * @param value   The boolean to set the ini key to.
+	 */
+	public void set(String section, String key, boolean value)
+	{
+		set(section, key, value ? "True" : "False");
+	}
+
+	/**
+	 * Removes a key.
+	 *
+	 * @param section The section key that the actual key is in.
+	 * @param key     The key to remove.
+	 *
+	 * @return true if the key existed; false otherwise.
+	 */
+	public synchronized boolean delete(String section, String key)
+	{
+		Section s = getSection(section);
+		if (s == null || s.values.remove(key) == null)
+			return false;
+
+		mChanges.put(changeKey(section, key), new Change(section, key, null));
+		return true;
+	}
+
+	/**
+	 * Reloads the file if it has been modified since it was last
+	 * loaded or saved by this instance. Unsaved changes are set
+	 * again on top of the reloaded file.
+	 *
+	 * @return true if the file was reloaded; false otherwise.
+	 */
+	public synchronized boolean refresh()
+	{
+		if (mFile.lastModified() == mLastModified && mFile.length() == mLength)
+			return false;
+
+		// Changes the other writer happened to make as well are left out, as they're no longer changes.
+		Map<String, Change> changes = new LinkedHashMap<String, Change>(mChanges);
+		load();
+
+		for (Change change : changes.values())
+		{
+			if (change.value != null)
+				set(change.section, change.key, change.value);
+			else
+				delete(change.section, change.key);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets whether or not there are changes that haven't been saved.
+	 *
+	 * @return true if there are changes that haven't been saved; false otherwise.
+	 */
+	public synchronized boolean isDirty()
+	{
+		return !mChanges.isEmpty();
+	}
+
+	/**
+	 * Writes the file back to disk if anything has changed since it was loaded or last saved.
+	 * <p>
+	 * The contents are written to a temporary file first, which then
+	 * replaces the real one, so readers never see a half-written file.
+	 *
+	 * @return true if the file is up to date on disk; false if writing it failed.
+	 */
+	public synchronized boolean save()
+	{
+		if (mChanges.isEmpty())
+			return true;
+
+		// Don't write over what someone else saved since this was loaded.
+		refresh();
+		if (mChanges.isEmpty())
+			return true;
+
+		File temp = new File(mFile.getPath() + ".tmp");
+		Writer out = null;
+
+		try
+		{
+			StringBuilder sb = new StringBuilder();
+			for (Section section : mSections)
+			{
+				if (section.values.isEmpty() && section.lines.isEmpty())
+					continue;
+
+				sb.append('[').append(section.name).append("]\n");
+
+				if (section.values.isEmpty())
+				{
+					for (String line : section.lines)
+						sb.append(line).append('\n');
+				}
+				else
+				{
+					for (Map.Entry<String, String> entry : section.values.entrySet())
+						sb.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+				}
+			}
+
+			File parent = mFile.getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+
+			out = new OutputStreamWriter(new FileOutputStream(temp), CHARSET);
+			out.write(sb.toString());
+			out.close();
+			out = null;
+
+			if (!temp.renameTo(mFile))
+				throw new IOException("Unable to replace " + mFile.getPath());
+
+			mLastModified = mFile.lastModified();
+			mLength = mFile.length();
+			mChanges.clear();
+			return true;
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			return false;
+		}
+		finally
+		{
+			if (out != null)
+			{
+				try
+				{
+					out.close();
+				}
+				catch (IOException ignored)
+				{
+				}
+			}
+		}
+	}
+
+	private Section getSection(String name)
+	{
+		return mSectionsByName.get(name.toLowerCase(Locale.US));
+	}
+
+	private Section getOrCreateSection(String name)
+	{
+		Section section = getSection(name);
+		if (section == null)
+		{
+			section = new Section(name);
+			mSections.add(section);
+			mSectionsByName.put(name.toLowerCase(Locale.US), section);
+		}
+
+		return section;
+	}
+
+	private void load()
+	{
+		mSections.clear();
+		mSectionsByName.clear();
+		mChanges.clear();
+
+		// Grab these before reading, so a write that
+		// happens while reading is noticed on the next refresh.
+		mLastModified = mFile.lastModified();
+		mLength = mFile.length();
+
+		String contents;
+		try
+		{
+			contents = readFile(mFile);
+		}
+		catch (IOException e)
+		{
+			// A missing file is just an empty one.
+			return;
+		}
+
+		Section current = null;
+		int lineStart = 0;
+		int length = contents.length();
+
+		while (lineStart < length)
+		{
+			int lineEnd = contents.indexOf('\n', lineStart);
+			if (lineEnd == -1)
+				lineEnd = length;
+
+			String line = contents.substring(lineStart, lineEnd);
+			lineStart = lineEnd + 1;
+
+			if (line.endsWith("\r"))
+				line = line.substring(0, line.length() - 1);
+
+			if (line.isEmpty())
+				continue;
+
+			if (line.charAt(0) == '[')
+			{
+				int end = line.indexOf(']');
+				if (end != -1)
+					current = getOrCreateSection(line.substring(1, end));
+			}
+			else if (current != null)
+			{
+				int equals = line.indexOf('=');
+
+				// Lines starting with '$' or '+' are kept verbatim, same as the native side does.
+				if (line.charAt(0) == '#' || line.charAt(0) == '$' || line.charAt(0) == '+' || equals == -1)
+				{
+					current.lines.add(line);
+				}
+				else
+				{
+					String key = line.substring(0, equals).trim();
+					String value = stripQuotes(line.substring(equals + 1).trim());
+					current.values.put(key, value);
+				}
+			}
+		}
+	}
+
+	private static String changeKey(String section, String key)
+	{
+		return section.toLowerCase(Locale.US) + '\n' + key;
+	}
+
+	private static String readFile(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+
+		try
+		{
+			// Config files are small, so read the whole thing in one go.
+			byte[] bytes = new byte[(int) file.length()];
+			int read = 0;
+			while (read < bytes.length)
+			{
+				int count = in.read(bytes, read, bytes.length - read);
+				if (count == -1)
+					break;
+
+				read += count;
+			}
+
+			return new String(bytes, 0, read, CHARSET);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static String stripQuotes(String s)
+	{
+		if (s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"')
+			return s.substring(1, s.length() - 1);
+
+		return s;
+	}
+}
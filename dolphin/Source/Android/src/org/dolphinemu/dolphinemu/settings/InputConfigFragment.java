@@ -22,7 +22,6 @@ import android.view.*;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.dolphinemu.dolphinemu.NativeLibrary;
 import org.dolphinemu.dolphinemu.R;
 
 /**
@@ -80,14 +79,16 @@ public final class InputConfigFragment extends PreferenceFragment
 			"MainUp", "MainDown", "MainLeft", "MainRight",
 			"CStickUp", "CStickDown", "CStickLeft", "CStickRight",
 			"InputL", "InputR",
+			"FastForward",
 		};
 
+		IniFile config = DolphinConfig.get("Dolphin.ini");
+
 		Preference pref;
-		for (String key : keys)
+		for (int i = 0; i < keys.length; i++)
 		{
-			String binding = NativeLibrary.GetConfig("Dolphin.ini", "Android", key, "None");
-			pref = findPreference(key);
-			pref.setSummary(binding);
+			pref = findPreference(keys[i]);
+			pref.setSummary(config.get("Android", keys[i], "None"));
 		}
 	}
 
@@ -109,7 +110,7 @@ public final class InputConfigFragment extends PreferenceFragment
 					case KeyEvent.ACTION_UP:
 						InputDevice input = event.getDevice();
 						String bindStr = "Device '" + getInputDesc(input) + "'-Button " + event.getKeyCode();
-						NativeLibrary.SetConfig("Dolphin.ini", "Android", pref.getKey(), bindStr);
+						saveBinding(pref.getKey(), bindStr);
 						pref.setSummary(bindStr);
 						dialog.dismiss();
 						return true;
@@ -154,14 +155,14 @@ public final class InputConfigFragment extends PreferenceFragment
 						if (m_values.get(a) > (event.getAxisValue(range.getAxis()) + 0.5f))
 						{
 							String bindStr = "Device '" + InputConfigFragment.getInputDesc(input) + "'-Axis " + range.getAxis() + "-";
-							NativeLibrary.SetConfig("Dolphin.ini", "Android", pref.getKey(), bindStr);
+							saveBinding(pref.getKey(), bindStr);
 							pref.setSummary(bindStr);
 							dialog.dismiss();
 						}
 						else if (m_values.get(a) < (event.getAxisValue(range.getAxis()) - 0.5f))
 						{
 							String bindStr = "Device '" + InputConfigFragment.getInputDesc(input) + "'-Axis " + range.getAxis() + "+";
-							NativeLibrary.SetConfig("Dolphin.ini", "Android", pref.getKey(), bindStr);
+							saveBinding(pref.getKey(), bindStr);
 							pref.setSummary(bindStr);
 							dialog.dismiss();
 						}
@@ -194,6 +195,13 @@ public final class InputConfigFragment extends PreferenceFragment
 		return true;
 	}
 
+	private static void saveBinding(String key, String bindStr)
+	{
+		IniFile config = DolphinConfig.get("Dolphin.ini");
+		config.set("Android", key, bindStr);
+		config.save();
+	}
+
 	@Override
 	public void onAttach(Activity activity)
 	{
@@ -7,6 +7,7 @@
 package org.dolphinemu.dolphinemu.settings;
 
 import org.dolphinemu.dolphinemu.R;
+import org.dolphinemu.dolphinemu.Startup;
 
 import android.app.ActionBar;
 import android.app.ActionBar.Tab;
@@ -51,9 +52,9 @@ public final class PrefsActivity extends Activity implements ActionBar.TabListen
 		// primary sections of the app.
 		mSectionsPagerAdapter = new SectionsPagerAdapter(getFragmentManager());
 
-		// Set up the ViewPager with the sections adapter.
+		// Set up the ViewPager. The sections adapter is set once the preferences hold the config.
 		mViewPager = (ViewPager) findViewById(R.id.pager);
-		mViewPager.setAdapter(mSectionsPagerAdapter);
+		showSectionsWhenConfigLoaded();
 
 		// When swiping between different sections, select the corresponding
 		// tab. We can also use ActionBar.Tab#select() to do this if we have
@@ -76,6 +77,47 @@ public final class PrefsActivity extends Activity implements ActionBar.TabListen
 		actionBar.addTab(actionBar.newTab().setText(R.string.video_settings).setTabListener(this));
 	}
 
+	// The CONFIG stage of starting up copies the config files into the preferences
+	// in the background, and each section saves the preferences back over the config
+	// files when it's destroyed. No section is created until the preferences have
+	// been filled in, so the defaults can never be saved over the user's config.
+	private void showSectionsWhenConfigLoaded()
+	{
+		if (Startup.getInstance(this).hasSucceeded(Startup.Stage.CONFIG))
+		{
+			mViewPager.setAdapter(mSectionsPagerAdapter);
+			return;
+		}
+
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					Startup.waitFor(Startup.Stage.CONFIG);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+
+				// The stage failed, or starting up never ran in this process.
+				if (!Startup.getInstance(PrefsActivity.this).hasSucceeded(Startup.Stage.CONFIG))
+					UserPreferences.LoadDolphinConfigToPrefs(PrefsActivity.this);
+
+				runOnUiThread(new Runnable()
+				{
+					public void run()
+					{
+						if (!isFinishing())
+							mViewPager.setAdapter(mSectionsPagerAdapter);
+					}
+				});
+			}
+		}, "PrefsConfigWait").start();
+	}
+
 	public void onTabReselected(Tab arg0, FragmentTransaction arg1)
 	{
 		// Do nothing.
@@ -6,8 +6,6 @@
 
 package org.dolphinemu.dolphinemu.settings;
 
-import org.dolphinemu.dolphinemu.NativeLibrary;
-
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
@@ -30,30 +28,74 @@ public final class UserPreferences
 	{
 		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
 
+		// Gather every key that's needed, so each file is only checked for changes once and then read from memory.
+		ConfigBatch config = new ConfigBatch();
+
+		ConfigBatch.Value cpuCore              = config.get("Dolphin.ini", "Core", "CPUCore", "3");
+		ConfigBatch.Value dualCore             = config.get("Dolphin.ini", "Core", "CPUThread", "False");
+		ConfigBatch.Value fastmem              = config.get("Dolphin.ini", "Core", "Fastmem", "False");
+		ConfigBatch.Value rewindInterval       = config.get("Dolphin.ini", "Android", "RewindInterval", "0");
+		ConfigBatch.Value rewindMemory         = config.get("Dolphin.ini", "Android", "RewindMemory", "64");
+		ConfigBatch.Value autoSaveInterval     = config.get("Dolphin.ini", "Android", "AutoSaveInterval", "0");
+		ConfigBatch.Value saveStateQuota       = config.get("Dolphin.ini", "Android", "StateQuota", "1024");
+
+		ConfigBatch.Value gfxBackend           = config.get("Dolphin.ini", "Core", "GFXBackend", "Software Renderer");
+		ConfigBatch.Value showFPS              = config.get("gfx_opengl.ini", "Settings", "ShowFPS", "False");
+		ConfigBatch.Value screenControls       = config.get("Dolphin.ini", "Android", "ScreenControls", "True");
+
+		ConfigBatch.Value efbScale             = config.get("gfx_opengl.ini", "Settings", "EFBScale", "2");
+		ConfigBatch.Value adaptiveResolution   = config.get("Dolphin.ini", "Android", "AdaptiveResolution", "False");
+		ConfigBatch.Value maxAnisotropy        = config.get("gfx_opengl.ini", "Enhancements", "MaxAnisotropy", "0");
+		ConfigBatch.Value efbScaledCopy        = config.get("gfx_opengl.ini", "Hacks", "EFBScaleCopy", "True");
+		ConfigBatch.Value pixelLighting        = config.get("gfx_opengl.ini", "Settings", "EnablePixelLighting", "False");
+		ConfigBatch.Value forceFiltering       = config.get("gfx_opengl.ini", "Enhancements", "ForceFiltering", "False");
+		ConfigBatch.Value disableFog           = config.get("gfx_opengl.ini", "Settings", "DisableFog", "False");
+		ConfigBatch.Value efbAccess            = config.get("gfx_opengl.ini", "Hacks", "EFBAccessEnable", "False");
+		ConfigBatch.Value formatChanges        = config.get("gfx_opengl.ini", "Hacks", "EFBEmulateFormatChanges", "False");
+
+		ConfigBatch.Value efbCopyEnable        = config.get("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "False");
+		ConfigBatch.Value efbToTextureEnable   = config.get("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
+		ConfigBatch.Value efbCopyCacheEnable   = config.get("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "False");
+
+		ConfigBatch.Value textureCacheSamples  = config.get("gfx_opengl.ini", "Settings", "SafeTextureCacheColorSamples", "128");
+		ConfigBatch.Value useXFB               = config.get("gfx_opengl.ini", "Settings", "UseXFB", "False");
+		ConfigBatch.Value useRealXFB           = config.get("gfx_opengl.ini", "Settings", "UseRealXFB", "False");
+
+		ConfigBatch.Value dlistCaching         = config.get("gfx_opengl.ini", "Hacks", "DlistCachingEnable", "False");
+		ConfigBatch.Value dstAlphaPass         = config.get("gfx_opengl.ini", "Settings", "DstAlphaPass", "False");
+		ConfigBatch.Value fastDepthCalc        = config.get("gfx_opengl.ini", "Settings", "FastDepthCalc", "True");
+
+		config.commit();
+
 		// Get an editor.
 		SharedPreferences.Editor editor = prefs.edit();
 
 		// Add the settings.
-		editor.putString("cpuCorePref",   getConfig("Dolphin.ini", "Core", "CPUCore", "3"));
-		editor.putBoolean("dualCorePref", getConfig("Dolphin.ini", "Core", "CPUThread", "False").equals("True"));
-		editor.putBoolean("fastmemPref", getConfig("Dolphin.ini", "Core", "Fastmem", "False").equals("True"));
-
-		editor.putString("gpuPref",               getConfig("Dolphin.ini", "Core", "GFXBackend", "Software Renderer"));
-		editor.putBoolean("showFPS",              getConfig("gfx_opengl.ini", "Settings", "ShowFPS", "False").equals("True"));
-		editor.putBoolean("drawOnscreenControls", getConfig("Dolphin.ini", "Android", "ScreenControls", "True").equals("True"));
-
-		editor.putString("internalResolution",     getConfig("gfx_opengl.ini", "Settings", "EFBScale", "2") );
-		editor.putString("anisotropicFiltering",   getConfig("gfx_opengl.ini", "Enhancements", "MaxAnisotropy", "0"));
-		editor.putBoolean("scaledEFBCopy",         getConfig("gfx_opengl.ini", "Hacks", "EFBScaleCopy", "True").equals("True"));
-		editor.putBoolean("perPixelLighting",      getConfig("gfx_opengl.ini", "Settings", "EnablePixelLighting", "False").equals("True"));
-		editor.putBoolean("forceTextureFiltering", getConfig("gfx_opengl.ini", "Enhancements", "ForceFiltering", "False").equals("True"));
-		editor.putBoolean("disableFog",            getConfig("gfx_opengl.ini", "Settings", "DisableFog", "False").equals("True"));
-		editor.putBoolean("skipEFBAccess",         getConfig("gfx_opengl.ini", "Hacks", "EFBAccessEnable", "False").equals("True"));
-		editor.putBoolean("ignoreFormatChanges",   getConfig("gfx_opengl.ini", "Hacks", "EFBEmulateFormatChanges", "False").equals("False"));
-
-		String efbCopyOn     = getConfig("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "False");
-		String efbToTexture  = getConfig("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
-		String efbCopyCache  = getConfig("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "False");
+		editor.putString("cpuCorePref",   cpuCore.get());
+		editor.putBoolean("dualCorePref", dualCore.isTrue());
+		editor.putBoolean("fastmemPref",  fastmem.isTrue());
+		editor.putString("rewindInterval", rewindInterval.get());
+		editor.putString("rewindMemory",   rewindMemory.get());
+		editor.putString("autoSaveInterval", autoSaveInterval.get());
+		editor.putString("saveStateQuota",   saveStateQuota.get());
+
+		editor.putString("gpuPref",               gfxBackend.get());
+		editor.putBoolean("showFPS",              showFPS.isTrue());
+		editor.putBoolean("drawOnscreenControls", screenControls.isTrue());
+
+		editor.putString("internalResolution",     efbScale.get());
+		editor.putBoolean("adaptiveResolution",    adaptiveResolution.isTrue());
+		editor.putString("anisotropicFiltering",   maxAnisotropy.get());
+		editor.putBoolean("scaledEFBCopy",         efbScaledCopy.isTrue());
+		editor.putBoolean("perPixelLighting",      pixelLighting.isTrue());
+		editor.putBoolean("forceTextureFiltering", forceFiltering.isTrue());
+		editor.putBoolean("disableFog",            disableFog.isTrue());
+		editor.putBoolean("skipEFBAccess",         efbAccess.isTrue());
+		editor.putBoolean("ignoreFormatChanges",   formatChanges.get().equals("False"));
+
+		String efbCopyOn     = efbCopyEnable.get();
+		String efbToTexture  = efbToTextureEnable.get();
+		String efbCopyCache  = efbCopyCacheEnable.get();
 
 		if (efbCopyOn.equals("False"))
 		{
@@ -72,10 +114,10 @@ public final class UserPreferences
 			editor.putString("efbCopyMethod", "RAM (cached)");
 		}
 
-		editor.putString("textureCacheAccuracy", getConfig("gfx_opengl.ini", "Settings", "SafeTextureCacheColorSamples", "128"));
+		editor.putString("textureCacheAccuracy", textureCacheSamples.get());
 
-		String usingXFB = getConfig("gfx_opengl.ini", "Settings", "UseXFB", "False");
-		String usingRealXFB = getConfig("gfx_opengl.ini", "Settings", "UseRealXFB", "False");
+		String usingXFB = useXFB.get();
+		String usingRealXFB = useRealXFB.get();
 
 		if (usingXFB.equals("False"))
 		{
@@ -90,20 +132,14 @@ public final class UserPreferences
 			editor.putString("externalFrameBuffer", "Real");
 		}
 
-		editor.putBoolean("cacheDisplayLists",       getConfig("gfx_opengl.ini", "Hacks", "DlistCachingEnable", "False").equals("True"));
-		editor.putBoolean("disableDestinationAlpha", getConfig("gfx_opengl.ini", "Settings", "DstAlphaPass", "False").equals("True"));
-		editor.putBoolean("fastDepthCalculation",    getConfig("gfx_opengl.ini", "Settings", "FastDepthCalc", "True").equals("True"));
+		editor.putBoolean("cacheDisplayLists",       dlistCaching.isTrue());
+		editor.putBoolean("disableDestinationAlpha", dstAlphaPass.isTrue());
+		editor.putBoolean("fastDepthCalculation",    fastDepthCalc.isTrue());
 
 		// Apply the changes.
 		editor.commit();
 	}
 
-	// Small utility method that shortens calls to NativeLibrary.GetConfig.
-	private static String getConfig(String ini, String section, String key, String defaultValue)
-	{
-		return NativeLibrary.GetConfig(ini, section, key, defaultValue);
-	}
-
 	/** 
 	 * Writes the config to the Dolphin ini file. 
 	 * 
@@ -122,6 +158,18 @@ public final class UserPreferences
 		// Fastmem JIT core usage
 		boolean isUsingFastmem = prefs.getBoolean("fastmemPref", false);
 
+		// How often a state is captured for rewinding, in fields. Falls back to off upon error.
+		String rewindInterval = prefs.getString("rewindInterval", "0");
+
+		// How many megabytes captured states may take up.
+		String rewindMemory = prefs.getString("rewindMemory", "64");
+
+		// How often the state is auto-saved, in minutes. Falls back to off upon error.
+		String autoSaveInterval = prefs.getString("autoSaveInterval", "0");
+
+		// How many megabytes the save states of all games may take up.
+		String saveStateQuota = prefs.getString("saveStateQuota", "1024");
+
 		// Current video backend being used. Falls back to software rendering upon error.
 		String currentVideoBackend = prefs.getString("gpuPref", "Software Rendering");
 
@@ -158,6 +206,9 @@ public final class UserPreferences
 		// Internal resolution. Falls back to 1x Native upon error.
 		String internalResolution = prefs.getString("internalResolution", "2");
 
+		// Whether or not the internal resolution is lowered when the game can't run at full speed.
+		boolean usingAdaptiveResolution = prefs.getBoolean("adaptiveResolution", false);
+
 		// Anisotropic Filtering Level. Falls back to 1x upon error.
 		String anisotropicFiltLevel = prefs.getString("anisotropicFiltering", "0");
 
@@ -174,72 +225,82 @@ public final class UserPreferences
 		boolean fogIsDisabled = prefs.getBoolean("disableFog", false);
 
 
+		// All of the keys are set in memory, and each file they're in is written out once at the end.
+		ConfigBatch config = new ConfigBatch();
+
 		// CPU related Settings
-		NativeLibrary.SetConfig("Dolphin.ini", "Core", "CPUCore", currentEmuCore);
-		NativeLibrary.SetConfig("Dolphin.ini", "Core", "CPUThread", isUsingDualCore ? "True" : "False");
-		NativeLibrary.SetConfig("Dolphin.ini", "Core", "Fastmem", isUsingFastmem ? "True" : "False");
+		config.set("Dolphin.ini", "Core", "CPUCore", currentEmuCore);
+		config.set("Dolphin.ini", "Core", "CPUThread", isUsingDualCore);
+		config.set("Dolphin.ini", "Core", "Fastmem", isUsingFastmem);
+		config.set("Dolphin.ini", "Android", "RewindInterval", rewindInterval);
+		config.set("Dolphin.ini", "Android", "RewindMemory", rewindMemory);
+		config.set("Dolphin.ini", "Android", "AutoSaveInterval", autoSaveInterval);
+		config.set("Dolphin.ini", "Android", "StateQuota", saveStateQuota);
 
 		// General Video Settings
-		NativeLibrary.SetConfig("Dolphin.ini", "Core", "GFXBackend", currentVideoBackend);
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "ShowFPS", showingFPS ? "True" : "False");
-		NativeLibrary.SetConfig("Dolphin.ini", "Android", "ScreenControls", drawingOnscreenControls ? "True" : "False");
+		config.set("Dolphin.ini", "Core", "GFXBackend", currentVideoBackend);
+		config.set("gfx_opengl.ini", "Settings", "ShowFPS", showingFPS);
+		config.set("Dolphin.ini", "Android", "ScreenControls", drawingOnscreenControls);
 
 		// Video Hack Settings
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBAccessEnable", skipEFBAccess ? "False" : "True");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBEmulateFormatChanges", ignoreFormatChanges ? "True" : "False");
+		config.set("gfx_opengl.ini", "Hacks", "EFBAccessEnable", skipEFBAccess ? "False" : "True");
+		config.set("gfx_opengl.ini", "Hacks", "EFBEmulateFormatChanges", ignoreFormatChanges);
 
 		// Set EFB Copy Method 
 		if (efbCopyMethod.equals("Off"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "False");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "False");
 		}
 		else if (efbCopyMethod.equals("Texture"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "True");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
+			config.set("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "True");
 		}
 		else if (efbCopyMethod.equals("RAM (uncached)"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "False");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
+			config.set("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "False");
 		}
 		else if (efbCopyMethod.equals("RAM (cached)"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "True");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyEnable", "True");
+			config.set("gfx_opengl.ini", "Hacks", "EFBToTextureEnable", "False");
+			config.set("gfx_opengl.ini", "Hacks", "EFBCopyCacheEnable", "True");
 		}
 
 		// Set texture cache accuracy
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "SafeTextureCacheColorSamples", textureCacheAccuracy);
+		config.set("gfx_opengl.ini", "Settings", "SafeTextureCacheColorSamples", textureCacheAccuracy);
 
 		// Set external frame buffer.
 		if (externalFrameBuffer.equals("Disabled"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "UseXFB", "False");
+			config.set("gfx_opengl.ini", "Settings", "UseXFB", "False");
 		}
 		else if (externalFrameBuffer.equals("Virtual"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "UseXFB", "True");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "UseRealXFB", "False");
+			config.set("gfx_opengl.ini", "Settings", "UseXFB", "True");
+			config.set("gfx_opengl.ini", "Settings", "UseRealXFB", "False");
 		}
 		else if (externalFrameBuffer.equals("Real"))
 		{
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "UseXFB", "True");
-			NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "UseRealXFB", "True");
+			config.set("gfx_opengl.ini", "Settings", "UseXFB", "True");
+			config.set("gfx_opengl.ini", "Settings", "UseRealXFB", "True");
 		}
 
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "DlistCachingEnable", dlistCachingEnabled ? "True" : "False");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "DstAlphaPass", disableDstAlphaPass ? "True" : "False");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "FastDepthCalc", useFastDepthCalc ? "True" : "False");
+		config.set("gfx_opengl.ini", "Hacks", "DlistCachingEnable", dlistCachingEnabled);
+		config.set("gfx_opengl.ini", "Settings", "DstAlphaPass", disableDstAlphaPass);
+		config.set("gfx_opengl.ini", "Settings", "FastDepthCalc", useFastDepthCalc);
 
 		//-- Enhancement Settings --//
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "EFBScale", internalResolution);
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Enhancements", "MaxAnisotropy", anisotropicFiltLevel);
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Hacks", "EFBScaledCopy", usingScaledEFBCopy ? "True" : "False");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "EnablePixelLighting", usingPerPixelLighting ? "True" : "False");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Enhancements", "ForceFiltering", isForcingTextureFiltering ? "True" : "False");
-		NativeLibrary.SetConfig("gfx_opengl.ini", "Settings", "DisableFog", fogIsDisabled ? "True" : "False");
+		config.set("gfx_opengl.ini", "Settings", "EFBScale", internalResolution);
+		config.set("Dolphin.ini", "Android", "AdaptiveResolution", usingAdaptiveResolution);
+		config.set("gfx_opengl.ini", "Enhancements", "MaxAnisotropy", anisotropicFiltLevel);
+		config.set("gfx_opengl.ini", "Hacks", "EFBScaledCopy", usingScaledEFBCopy);
+		config.set("gfx_opengl.ini", "Settings", "EnablePixelLighting", usingPerPixelLighting);
+		config.set("gfx_opengl.ini", "Enhancements", "ForceFiltering", isForcingTextureFiltering);
+		config.set("gfx_opengl.ini", "Settings", "DisableFog", fogIsDisabled);
+
+		config.commit();
 	}
 }
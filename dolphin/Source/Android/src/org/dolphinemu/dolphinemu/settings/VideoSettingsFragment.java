@@ -6,19 +6,16 @@
 
 package org.dolphinemu.dolphinemu.settings;
 
-import javax.microedition.khronos.egl.EGL10;
-import javax.microedition.khronos.egl.EGLConfig;
-import javax.microedition.khronos.egl.EGLContext;
-import javax.microedition.khronos.egl.EGLDisplay;
-import javax.microedition.khronos.egl.EGLSurface;
-import javax.microedition.khronos.opengles.GL10;
-
+import org.dolphinemu.dolphinemu.GpuCapabilities;
 import org.dolphinemu.dolphinemu.R;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.ListPreference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
@@ -31,150 +28,6 @@ public final class VideoSettingsFragment extends PreferenceFragment
 {
 	private Activity m_activity;
 
-	/**
-	 * Class which provides a means to check various
-	 * info about the OpenGL ES support for a device.
-	 */
-	public static final class VersionCheck
-	{
-		private EGL10 mEGL;
-		private EGLDisplay mEGLDisplay;
-		private EGLConfig[] mEGLConfigs;
-		private EGLConfig mEGLConfig;
-		private EGLContext mEGLContext;
-		private EGLSurface mEGLSurface;
-		private GL10 mGL;
-
-		String mThreadOwner;
-
-		public VersionCheck()
-		{
-			int[] version = new int[2];
-			int[] attribList = new int[] {
-					EGL10.EGL_WIDTH, 1,
-					EGL10.EGL_HEIGHT, 1,
-					EGL10.EGL_RENDERABLE_TYPE, 4,
-					EGL10.EGL_NONE
-			};
-			int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
-			int[] ctx_attribs = new int[] {
-					EGL_CONTEXT_CLIENT_VERSION, 2,
-					EGL10.EGL_NONE
-			};
-
-			// No error checking performed, minimum required code to elucidate logic
-			mEGL = (EGL10) EGLContext.getEGL();
-			mEGLDisplay = mEGL.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
-			mEGL.eglInitialize(mEGLDisplay, version);
-			mEGLConfig = chooseConfig(); // Choosing a config is a little more complicated
-			mEGLContext = mEGL.eglCreateContext(mEGLDisplay, mEGLConfig, EGL10.EGL_NO_CONTEXT, ctx_attribs);
-			mEGLSurface = mEGL.eglCreatePbufferSurface(mEGLDisplay, mEGLConfig,  attribList);
-			mEGL.eglMakeCurrent(mEGLDisplay, mEGLSurface, mEGLSurface, mEGLContext);
-			mGL = (GL10) mEGLContext.getGL();
-
-			// Record thread owner of OpenGL context
-			mThreadOwner = Thread.currentThread().getName();
-		}
-
-		/**
-		 * Gets the OpenGL ES version string.
-		 * 
-		 * @return  the OpenGL ES version string.
-		 */
-		public String getVersion()
-		{
-			return mGL.glGetString(GL10.GL_VERSION);
-		}
-
-		/**
-		 * Gets the OpenGL ES vendor string.
-		 * 
-		 * @return the OpenGL ES vendor string.
-		 */
-		public String getVendor()
-		{
-			return mGL.glGetString(GL10.GL_VENDOR);
-		}
-
-		/**
-		 * Gets the name of the OpenGL ES renderer.
-		 * 
-		 * @return the name of the OpenGL ES renderer.
-		 */
-		public String getRenderer()
-		{
-			return mGL.glGetString(GL10.GL_RENDERER);
-		}
-
-		private EGLConfig chooseConfig()
-		{
-			int[] attribList = new int[] {
-					EGL10.EGL_DEPTH_SIZE, 0,
-					EGL10.EGL_STENCIL_SIZE, 0,
-					EGL10.EGL_RED_SIZE, 8,
-					EGL10.EGL_GREEN_SIZE, 8,
-					EGL10.EGL_BLUE_SIZE, 8,
-					EGL10.EGL_ALPHA_SIZE, 8,
-					EGL10.EGL_NONE
-			};
-
-			// No error checking performed, minimum required code to elucidate logic
-			// Expand on this logic to be more selective in choosing a configuration
-			int[] numConfig = new int[1];
-			mEGL.eglChooseConfig(mEGLDisplay, attribList, null, 0, numConfig);
-			int configSize = numConfig[0];
-			mEGLConfigs = new EGLConfig[configSize];
-			mEGL.eglChooseConfig(mEGLDisplay, attribList, mEGLConfigs, configSize, numConfig);
-
-			return mEGLConfigs[0];  // Best match is probably the first configuration
-		}
-	}
-
-	/**
-	 * Checks if this device supports OpenGL ES 3.
-	 * 
-	 * @return true if this device supports OpenGL ES 3; false otherwise.
-	 */
-	public static boolean SupportsGLES3()
-	{
-		VersionCheck mbuffer = new VersionCheck();
-		String m_GLVersion = mbuffer.getVersion();
-		String m_GLVendor = mbuffer.getVendor();
-		String m_GLRenderer = mbuffer.getRenderer();
-
-		boolean mSupportsGLES3 = false;
-
-		// Check for OpenGL ES 3 support (General case).
-		if (m_GLVersion != null && (m_GLVersion.contains("OpenGL ES 3.0") || m_GLVersion.equals("OpenGL ES 3.0")))
-			mSupportsGLES3 = true;
-
-		// Checking for OpenGL ES 3 support for certain Qualcomm devices.
-		if (!mSupportsGLES3 && m_GLVendor != null && m_GLVendor.equals("Qualcomm"))
-		{
-			if (m_GLRenderer.contains("Adreno (TM) 3"))
-			{
-				int mVStart = m_GLVersion.indexOf("V@") + 2;
-				int mVEnd = 0;
-				float mVersion;
-
-				for (int a = mVStart; a < m_GLVersion.length(); ++a)
-				{
-					if (m_GLVersion.charAt(a) == ' ')
-					{
-						mVEnd = a;
-						break;
-					}
-				}
-
-				mVersion = Float.parseFloat(m_GLVersion.substring(mVStart, mVEnd));
-
-				if (mVersion >= 14.0f)
-					mSupportsGLES3 = true;
-			}
-		}
-		return mSupportsGLES3;
-	}
-
 	@Override
 	public void onCreate(Bundle savedInstanceState)
 	{
@@ -187,19 +40,31 @@ public final class VideoSettingsFragment extends PreferenceFragment
 		// Setting valid video backends.
 		//
 		final ListPreference videoBackends = (ListPreference) findPreference("gpuPref");
-		final boolean deviceSupportsGLES3 = SupportsGLES3();
+		GpuCapabilities gpu = GpuCapabilities.getCached();
+		setVideoBackends(videoBackends, gpu != null && gpu.supportsGLES3());
 
-		if (deviceSupportsGLES3)
+		// Startup hasn't got around to the GPU yet, so do it here, off the UI thread.
+		if (gpu == null)
 		{
-			videoBackends.setEntries(R.array.videoBackendEntriesGLES3);
-			videoBackends.setEntryValues(R.array.videoBackendValuesGLES3);
-		}
-		else
-		{
-			videoBackends.setEntries(R.array.videoBackendEntriesNoGLES3);
-			videoBackends.setEntryValues(R.array.videoBackendValuesNoGLES3);
+			final Context ctx = m_activity.getApplicationContext();
+			final Handler handler = new Handler(Looper.getMainLooper());
+			new Thread(new Runnable()
+			{
+				public void run()
+				{
+					final boolean supportsGLES3 = GpuCapabilities.get(ctx).supportsGLES3();
+					handler.post(new Runnable()
+					{
+						public void run()
+						{
+							if (isAdded())
+								setVideoBackends(videoBackends, supportsGLES3);
+						}
+					});
+				}
+			}, "GpuCapabilities").start();
 		}
-		
+
 		//
 		// Disable all options if Software Rendering is used.
 		//
@@ -253,6 +118,20 @@ public final class VideoSettingsFragment extends PreferenceFragment
 		});
 	}
 
+	private static void setVideoBackends(ListPreference videoBackends, boolean supportsGLES3)
+	{
+		if (supportsGLES3)
+		{
+			videoBackends.setEntries(R.array.videoBackendEntriesGLES3);
+			videoBackends.setEntryValues(R.array.videoBackendValuesGLES3);
+		}
+		else
+		{
+			videoBackends.setEntries(R.array.videoBackendEntriesNoGLES3);
+			videoBackends.setEntryValues(R.array.videoBackendValuesNoGLES3);
+		}
+	}
+
 	@Override
 	public void onAttach(Activity activity)
 	{
@@ -0,0 +1,334 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dolphinemu.dolphinemu.NativeLibrary;
+
+/**
+ * Streams the frames the game renders as MPEG-1 video that jsmpeg
+ * (site/jsmpg.js) can play, without capturing the screen.
+ * <p>
+ * The native side reads each frame back just before it's presented and
+ * hands it over on the video thread. From there it goes through two stages,
+ * each on a thread of its own: converting it to YCbCr at the size of the
+ * stream, and encoding it. Between the stages there is room for one frame.
+ * When a stage is still busy with the frame before, the frame waiting for it
+ * is replaced by the newer one, so a frame never waits on more than the one
+ * ahead of it, and a sink gets each picture about one frame plus the time
+ * it takes to convert and encode after the game rendered it. Once nothing
+ * can take a frame, the native side stops reading frames back at all.
+ * <p>
+ * A viewer first needs the header from {@link #getStreamHeader()}, and can
+ * then be sent the pictures as they come. Every picture can be decoded on
+ * its own, so a viewer can join at any point.
+ */
+public final class FrameCapture
+{
+	/**
+	 * Interface which is given the stream as it's encoded.
+	 */
+	public interface PacketSink
+	{
+		/**
+		 * Called on the encoding thread with each picture.
+		 * Anything slow should be done on another thread, as the
+		 * next picture isn't encoded until this returns.
+		 *
+		 * @param packet The coded picture. It isn't touched again after this.
+		 */
+		void onPacket(byte[] packet);
+	}
+
+	private static final FrameCapture sInstance = new FrameCapture();
+
+	// The frame rate written to the stream.
+	private static final float FRAME_RATE = 60.0f;
+
+	private volatile Pipeline mPipeline;
+
+	private FrameCapture()
+	{
+	}
+
+	/**
+	 * Gets the frame capture.
+	 *
+	 * @return the frame capture.
+	 */
+	public static FrameCapture getInstance()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Starts streaming, replacing the stream there is if there's one.
+	 * Frames are captured for as long as a game is running,
+	 * including across games, until {@link #stop()} is called.
+	 *
+	 * @param width     The width of the stream, from 1 to 4095. Frames are scaled to it.
+	 * @param height    The height of the stream, from 1 to 4095.
+	 * @param quantizer The quantizer scale, from 1 (best quality) to 31 (least bandwidth).
+	 * @param sink      The sink the pictures are given to.
+	 */
+	public synchronized void start(int width, int height, int quantizer, PacketSink sink)
+	{
+		stop();
+
+		mPipeline = new Pipeline(new Mpeg1Encoder(width, height, FRAME_RATE, quantizer), sink);
+		mPipeline.start();
+		NativeLibrary.SetFrameCapture(true);
+	}
+
+	/**
+	 * Stops streaming. A picture being encoded may still
+	 * be given to the sink after this returns.
+	 */
+	public synchronized void stop()
+	{
+		if (mPipeline == null)
+			return;
+
+		NativeLibrary.SetFrameCapture(false);
+		mPipeline.stop();
+		mPipeline = null;
+	}
+
+	/**
+	 * Checks whether streaming has been started.
+	 *
+	 * @return true if frames are being captured.
+	 */
+	public boolean isRunning()
+	{
+		return mPipeline != null;
+	}
+
+	/**
+	 * Gets the header jsmpeg expects before the stream, which is
+	 * "jsmp" followed by the width and height as big-endian shorts.
+	 *
+	 * @return the header, or null if streaming hasn't been started.
+	 */
+	public byte[] getStreamHeader()
+	{
+		Pipeline pipeline = mPipeline;
+		if (pipeline == null)
+			return null;
+
+		int width = pipeline.mEncoder.getWidth();
+		int height = pipeline.mEncoder.getHeight();
+		return new byte[] {
+				'j', 's', 'm', 'p',
+				(byte) (width >> 8), (byte) width,
+				(byte) (height >> 8), (byte) height
+		};
+	}
+
+	/**
+	 * Gets how many frames weren't streamed because a stage couldn't keep up.
+	 *
+	 * @return the number of frames dropped since streaming was started.
+	 */
+	public int getDroppedFrames()
+	{
+		Pipeline pipeline = mPipeline;
+		if (pipeline == null)
+			return 0;
+
+		return NativeLibrary.GetDroppedCaptureFrames() + pipeline.mDropped.get();
+	}
+
+	/**
+	 * Called by {@link NativeLibrary#onFrameCaptured(int, ByteBuffer, int, int)}
+	 * on the video thread with each frame.
+	 *
+	 * @param buffer The number of the native buffer the frame is in.
+	 * @param pixels The frame, as RGBA pixels starting with the bottom row.
+	 * @param width  The width of the frame.
+	 * @param height The height of the frame.
+	 */
+	public void onFrameCaptured(int buffer, ByteBuffer pixels, int width, int height)
+	{
+		Pipeline pipeline = mPipeline;
+		if (pipeline == null || !pipeline.offer(new CapturedFrame(buffer, pixels, width, height)))
+			NativeLibrary.ReleaseCapturedFrame(buffer);
+	}
+
+	private static final class CapturedFrame
+	{
+		final int mBuffer;
+		final ByteBuffer mPixels;
+		final int mWidth;
+		final int mHeight;
+
+		CapturedFrame(int buffer, ByteBuffer pixels, int width, int height)
+		{
+			mBuffer = buffer;
+			mPixels = pixels;
+			mWidth = width;
+			mHeight = height;
+		}
+	}
+
+	// The threads and queues of one stream. A new one is made each time
+	// streaming starts, so the threads of the last one can wind down
+	// without getting in the way.
+	private static final class Pipeline
+	{
+		final Mpeg1Encoder mEncoder;
+		final AtomicInteger mDropped = new AtomicInteger();
+
+		private final PacketSink mSink;
+		private final BlockingQueue<CapturedFrame> mCaptured = new ArrayBlockingQueue<CapturedFrame>(1);
+		private final BlockingQueue<YuvFrame> mConverted = new ArrayBlockingQueue<YuvFrame>(1);
+
+		// One frame being converted, one waiting and one being encoded.
+		private final BlockingQueue<YuvFrame> mFree = new ArrayBlockingQueue<YuvFrame>(3);
+
+		private final Thread mConvertThread;
+		private final Thread mEncodeThread;
+		private boolean mStopped = false;
+
+		Pipeline(Mpeg1Encoder encoder, PacketSink sink)
+		{
+			mEncoder = encoder;
+			mSink = sink;
+			for (int i = 0; i < 3; i++)
+				mFree.add(new YuvFrame(encoder));
+
+			mConvertThread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					convert();
+				}
+			}, "FrameCapture.convert");
+
+			mEncodeThread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					encode();
+				}
+			}, "FrameCapture.encode");
+		}
+
+		void start()
+		{
+			mConvertThread.start();
+			mEncodeThread.start();
+		}
+
+		// Queues a frame to be converted, in place of the one waiting if there is one.
+		synchronized boolean offer(CapturedFrame frame)
+		{
+			if (mStopped)
+				return false;
+
+			CapturedFrame replaced = null;
+			if (!mCaptured.offer(frame))
+			{
+				replaced = mCaptured.poll();
+				mCaptured.offer(frame);
+			}
+
+			if (replaced != null)
+			{
+				NativeLibrary.ReleaseCapturedFrame(replaced.mBuffer);
+				mDropped.incrementAndGet();
+			}
+			return true;
+		}
+
+		synchronized void stop()
+		{
+			mStopped = true;
+			mConvertThread.interrupt();
+			mEncodeThread.interrupt();
+
+			CapturedFrame frame;
+			while ((frame = mCaptured.poll()) != null)
+				NativeLibrary.ReleaseCapturedFrame(frame.mBuffer);
+		}
+
+		private void convert()
+		{
+			try
+			{
+				while (true)
+				{
+					CapturedFrame captured = mCaptured.take();
+					YuvFrame frame;
+					try
+					{
+						frame = mFree.take();
+						frame.convert(captured.mPixels, captured.mWidth, captured.mHeight);
+					}
+					finally
+					{
+						NativeLibrary.ReleaseCapturedFrame(captured.mBuffer);
+					}
+
+					if (!mConverted.offer(frame))
+					{
+						YuvFrame replaced = mConverted.poll();
+						if (replaced != null)
+						{
+							mFree.offer(replaced);
+							mDropped.incrementAndGet();
+						}
+						mConverted.offer(frame);
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Stopped.
+			}
+		}
+
+		private void encode()
+		{
+			try
+			{
+				while (true)
+				{
+					YuvFrame frame = mConverted.take();
+					byte[] packet;
+					try
+					{
+						packet = mEncoder.encode(frame.mY, frame.mCb, frame.mCr);
+					}
+					finally
+					{
+						mFree.offer(frame);
+					}
+
+					try
+					{
+						mSink.onPacket(packet);
+					}
+					catch (RuntimeException e)
+					{
+						Log.e("FrameCapture", "Stream sink failed", e);
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Stopped.
+			}
+		}
+	}
+}
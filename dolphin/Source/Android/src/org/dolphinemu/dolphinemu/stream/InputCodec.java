@@ -0,0 +1,314 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import java.util.Arrays;
+
+/**
+ * The binary protocol remote players send the state of their controllers
+ * in, to {@link RemoteInput}. site/inputcodec.js is the same for browsers.
+ * <p>
+ * A packet carries the newest few states of the controller of one player,
+ * so a state that's lost along with a packet still arrives with the next:
+ * <pre>
+ * byte  version, {@link #VERSION}
+ * byte  player (1 to {@link #MAX_PLAYERS}) in the high nibble,
+ *       and the number of states less one in the low nibble
+ * short sequence number of the newest state, big-endian, wrapping around
+ * the states, oldest first, each of them
+ *   byte  which fields follow: bit 0 the low byte of the buttons, bit 1 the
+ *         high byte, bits 2 to 5 main stick X, main stick Y, C stick X and C stick Y
+ *   byte  each of those fields, in that order
+ * </pre>
+ * A field that's left out is the same as in the state before it, or zero
+ * in the oldest state of the packet. The buttons have bit n set while
+ * button n is held, and the axes go from -127 to 127. Packets can follow
+ * one another in one datagram or message.
+ * <p>
+ * A press of a button with nothing else held takes 6 bytes on its own,
+ * or 8 when sent along with the two states before it.
+ */
+public final class InputCodec
+{
+	/** The version of the protocol. */
+	public static final int VERSION = 1;
+
+	/** The most players there can be. */
+	public static final int MAX_PLAYERS = 4;
+
+	/** The number of axes in a state. */
+	public static final int AXIS_COUNT = 4;
+
+	/** The most states a packet can carry. */
+	public static final int MAX_STATES = 16;
+
+	/** The most bytes a packet can take up. */
+	public static final int MAX_PACKET_SIZE = 4 + MAX_STATES * 7;
+
+	private static final int HEADER_SIZE = 4;
+
+	// The buttons take the first two fields, the axes the rest.
+	private static final int FIELD_COUNT = 2 + AXIS_COUNT;
+
+	private static final byte[] NEUTRAL = new byte[FIELD_COUNT];
+
+	private InputCodec()
+	{
+	}
+
+	/**
+	 * Encodes the states of the controller of one player as they change.
+	 */
+	public static final class Encoder
+	{
+		private final int mPlayer;
+		private final int mRedundancy;
+		private final byte[][] mHistory = new byte[MAX_STATES][FIELD_COUNT];
+		private int mSequence = 0xFFFF;
+		private int mCount = 0;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param player     The player, from 1 to {@link #MAX_PLAYERS}.
+		 * @param redundancy How many states each packet carries, from 1 to {@link #MAX_STATES}.
+		 *                   1 is enough over a connection that doesn't lose anything.
+		 */
+		public Encoder(int player, int redundancy)
+		{
+			if (player < 1 || player > MAX_PLAYERS)
+				throw new IllegalArgumentException("Player must be from 1 to " + MAX_PLAYERS);
+			if (redundancy < 1 || redundancy > MAX_STATES)
+				throw new IllegalArgumentException("Redundancy must be from 1 to " + MAX_STATES);
+
+			mPlayer = player;
+			mRedundancy = redundancy;
+		}
+
+		/**
+		 * Encodes a packet with a new state, and the states before it.
+		 *
+		 * @param buttons The buttons held, bit n for button n.
+		 * @param axes    The {@link #AXIS_COUNT} axes, from -127 to 127.
+		 * @param out     The array to write the packet to.
+		 * @param offset  Where in the array to write the packet.
+		 *                At most {@link #MAX_PACKET_SIZE} bytes are written.
+		 *
+		 * @return the size of the packet in bytes.
+		 */
+		public int encode(int buttons, byte[] axes, byte[] out, int offset)
+		{
+			mSequence = (mSequence + 1) & 0xFFFF;
+			mCount = Math.min(mCount + 1, mRedundancy);
+
+			byte[] state = mHistory[mSequence & (MAX_STATES - 1)];
+			state[0] = (byte) buttons;
+			state[1] = (byte) (buttons >> 8);
+			System.arraycopy(axes, 0, state, 2, AXIS_COUNT);
+
+			int position = offset;
+			out[position++] = VERSION;
+			out[position++] = (byte) ((mPlayer << 4) | (mCount - 1));
+			out[position++] = (byte) (mSequence >> 8);
+			out[position++] = (byte) mSequence;
+
+			byte[] previous = NEUTRAL;
+			for (int i = mCount - 1; i >= 0; i--)
+			{
+				byte[] current = mHistory[(mSequence - i) & (MAX_STATES - 1)];
+				int fieldsPosition = position++;
+				int fields = 0;
+				for (int f = 0; f < FIELD_COUNT; f++)
+				{
+					if (current[f] != previous[f])
+					{
+						fields |= 1 << f;
+						out[position++] = current[f];
+					}
+				}
+
+				out[fieldsPosition] = (byte) fields;
+				previous = current;
+			}
+
+			return position - offset;
+		}
+	}
+
+	/**
+	 * Interface which is given the states decoded by a {@link Decoder}.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called for each state that hasn't been seen before,
+		 * in the order the player sent them.
+		 *
+		 * @param player  The player, from 1 to {@link #MAX_PLAYERS}.
+		 * @param buttons The buttons held, bit n for button n.
+		 * @param axes    The {@link #AXIS_COUNT} axes, from -127 to 127.
+		 *                The array is reused for the next state.
+		 */
+		void onState(int player, int buttons, byte[] axes);
+	}
+
+	/**
+	 * Decodes packets from any number of players, passing on each
+	 * state once and in order however the packets arrived.
+	 * <p>
+	 * A packet whose newest state is older than the last one seen is
+	 * taken to have been overtaken by the packets after it, and is
+	 * skipped. One that's older by more than could be down to that is
+	 * taken to be from a player that started over.
+	 */
+	public static final class Decoder
+	{
+		// How far back a packet can be and still be taken as overtaken.
+		private static final int REORDER_WINDOW = 256;
+
+		private final int[] mLastSequence = new int[MAX_PLAYERS];
+		private final byte[] mState = new byte[FIELD_COUNT];
+		private final byte[] mAxes = new byte[AXIS_COUNT];
+		private int mLost = 0;
+		private int mStale = 0;
+		private int mRejected = 0;
+
+		/**
+		 * Constructor.
+		 */
+		public Decoder()
+		{
+			Arrays.fill(mLastSequence, -1);
+		}
+
+		/**
+		 * Decodes the packets in a datagram or message.
+		 *
+		 * @param data     The array the packets are in.
+		 * @param offset   Where the packets start.
+		 * @param length   The size of the packets in bytes.
+		 * @param listener The {@link Listener} to give the states to.
+		 *
+		 * @return false if the packets were cut short, or of another version.
+		 *         Everything before the packet that was is still decoded.
+		 */
+		public boolean decode(byte[] data, int offset, int length, Listener listener)
+		{
+			int end = offset + length;
+			while (offset < end)
+			{
+				if (end - offset < HEADER_SIZE || data[offset] != VERSION)
+				{
+					mRejected++;
+					return false;
+				}
+
+				int player = (data[offset + 1] >> 4) & 0x0F;
+				int count = (data[offset + 1] & 0x0F) + 1;
+				int sequence = ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+				boolean known = player >= 1 && player <= MAX_PLAYERS;
+				offset += HEADER_SIZE;
+
+				// How many of the states at the end of the packet are new.
+				int fresh = known ? freshStates(player, sequence, count) : 0;
+
+				Arrays.fill(mState, (byte) 0);
+				for (int i = 0; i < count; i++)
+				{
+					if (offset == end)
+					{
+						mRejected++;
+						return false;
+					}
+
+					int fields = data[offset++];
+					for (int f = 0; f < FIELD_COUNT; f++)
+					{
+						if ((fields & (1 << f)) == 0)
+							continue;
+
+						if (offset == end)
+						{
+							mRejected++;
+							return false;
+						}
+						mState[f] = data[offset++];
+					}
+
+					// Each state is marked as seen as it's passed on, so none
+					// are passed on again if the rest of the packet is cut short.
+					if (i >= count - fresh)
+					{
+						mLastSequence[player - 1] = (sequence - (count - 1 - i)) & 0xFFFF;
+						System.arraycopy(mState, 2, mAxes, 0, AXIS_COUNT);
+						listener.onState(player, ((mState[1] & 0xFF) << 8) | (mState[0] & 0xFF), mAxes);
+					}
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Gets the number of states that never arrived, as every packet
+		 * that carried them was lost.
+		 *
+		 * @return the number of states lost.
+		 */
+		public int getLostStates()
+		{
+			return mLost;
+		}
+
+		/**
+		 * Gets the number of packets that only had states in them that
+		 * had been seen already, because they were overtaken or repeated.
+		 *
+		 * @return the number of packets skipped.
+		 */
+		public int getStalePackets()
+		{
+			return mStale;
+		}
+
+		/**
+		 * Gets the number of datagrams or messages that weren't decoded
+		 * to the end, because they were cut short or of another version.
+		 *
+		 * @return the number of datagrams or messages rejected.
+		 */
+		public int getRejectedPackets()
+		{
+			return mRejected;
+		}
+
+		private int freshStates(int player, int sequence, int count)
+		{
+			int last = mLastSequence[player - 1];
+			if (last == -1)
+				return count;
+
+			// The difference as a signed 16-bit number, so it works across the wrap.
+			int ahead = (short) (sequence - last);
+			if (ahead < -REORDER_WINDOW)
+				return count;
+
+			if (ahead <= 0)
+			{
+				mStale++;
+				return 0;
+			}
+
+			if (ahead > count)
+			{
+				mLost += ahead - count;
+				return count;
+			}
+			return ahead;
+		}
+	}
+}
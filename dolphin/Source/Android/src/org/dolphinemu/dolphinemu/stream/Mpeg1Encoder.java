@@ -0,0 +1,447 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import java.util.Arrays;
+
+/**
+ * Encodes pictures as an MPEG-1 video elementary stream, which is what
+ * jsmpeg (site/jsmpg.js) plays from a WebSocket.
+ * <p>
+ * Every picture is an I-frame. That takes more bandwidth than predicting
+ * pictures from the last one would, but every picture takes about as long
+ * to encode, a viewer who joins can start from the very next picture, and
+ * a picture that's dropped along the way leaves nothing broken behind.
+ * Each row of macroblocks is a slice of its own, and the whole picture is
+ * quantized with the same scale, which is how quality is traded for size.
+ * <p>
+ * This is not thread-safe, each encoder must only be used from one thread.
+ */
+public final class Mpeg1Encoder
+{
+	private static final int START_PICTURE = 0x00000100;
+	private static final int START_SEQUENCE = 0x000001B3;
+	private static final int START_GOP = 0x000001B8;
+
+	private static final int PICTURE_TYPE_I = 1;
+
+	// Indexed by picture_rate code, 0 is forbidden.
+	private static final float[] PICTURE_RATES = {
+		0.0f, 23.976f, 24.0f, 25.0f, 29.97f, 30.0f, 50.0f, 59.94f, 60.0f
+	};
+
+	private static final int[] ZIG_ZAG = {
+		 0,  1,  8, 16,  9,  2,  3, 10,
+		17, 24, 32, 25, 18, 11,  4,  5,
+		12, 19, 26, 33, 40, 48, 41, 34,
+		27, 20, 13,  6,  7, 14, 21, 28,
+		35, 42, 49, 56, 57, 50, 43, 36,
+		29, 22, 15, 23, 30, 37, 44, 51,
+		58, 59, 52, 45, 38, 31, 39, 46,
+		53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	private static final int[] INTRA_QUANT_MATRIX = {
+		 8, 16, 19, 22, 26, 27, 29, 34,
+		16, 16, 22, 24, 27, 29, 34, 37,
+		19, 22, 26, 27, 29, 34, 34, 38,
+		22, 22, 26, 27, 29, 34, 37, 40,
+		22, 26, 27, 29, 32, 35, 40, 48,
+		26, 27, 29, 32, 35, 40, 48, 58,
+		26, 27, 29, 34, 38, 46, 56, 69,
+		27, 29, 35, 38, 46, 56, 69, 83
+	};
+
+	// dct_dc_size_luminance and dct_dc_size_chrominance, as { code, length } by size.
+	private static final int[][] DC_SIZE_LUMINANCE = {
+		{ 0x4, 3 }, { 0x0, 2 }, { 0x1, 2 }, { 0x5, 3 }, { 0x6, 3 },
+		{ 0xe, 4 }, { 0x1e, 5 }, { 0x3e, 6 }, { 0x7e, 7 }
+	};
+	private static final int[][] DC_SIZE_CHROMINANCE = {
+		{ 0x0, 2 }, { 0x1, 2 }, { 0x2, 2 }, { 0x6, 3 }, { 0xe, 4 },
+		{ 0x1e, 5 }, { 0x3e, 6 }, { 0x7e, 7 }, { 0xfe, 8 }
+	};
+
+	// dct_coeff_next, as { run, level, code, length }. The sign bit follows each code.
+	// Any other run and level is coded with an escape.
+	private static final int[][] DCT_COEFF = {
+		{ 0, 1, 0x3, 2 }, { 0, 2, 0x4, 4 }, { 0, 3, 0x5, 5 }, { 0, 4, 0x6, 7 }, { 0, 5, 0x26, 8 }, { 0, 6, 0x21, 8 },
+		{ 0, 7, 0xa, 10 }, { 0, 8, 0x1d, 12 }, { 0, 9, 0x18, 12 }, { 0, 10, 0x13, 12 }, { 0, 11, 0x10, 12 }, { 0, 12, 0x1a, 13 },
+		{ 0, 13, 0x19, 13 }, { 0, 14, 0x18, 13 }, { 0, 15, 0x17, 13 }, { 0, 16, 0x1f, 14 }, { 0, 17, 0x1e, 14 }, { 0, 18, 0x1d, 14 },
+		{ 0, 19, 0x1c, 14 }, { 0, 20, 0x1b, 14 }, { 0, 21, 0x1a, 14 }, { 0, 22, 0x19, 14 }, { 0, 23, 0x18, 14 }, { 0, 24, 0x17, 14 },
+		{ 0, 25, 0x16, 14 }, { 0, 26, 0x15, 14 }, { 0, 27, 0x14, 14 }, { 0, 28, 0x13, 14 }, { 0, 29, 0x12, 14 }, { 0, 30, 0x11, 14 },
+		{ 0, 31, 0x10, 14 }, { 0, 32, 0x18, 15 }, { 0, 33, 0x17, 15 }, { 0, 34, 0x16, 15 }, { 0, 35, 0x15, 15 }, { 0, 36, 0x14, 15 },
+		{ 0, 37, 0x13, 15 }, { 0, 38, 0x12, 15 }, { 0, 39, 0x11, 15 }, { 0, 40, 0x10, 15 },
+		{ 1, 1, 0x3, 3 }, { 1, 2, 0x6, 6 }, { 1, 3, 0x25, 8 }, { 1, 4, 0xc, 10 }, { 1, 5, 0x1b, 12 }, { 1, 6, 0x16, 13 },
+		{ 1, 7, 0x15, 13 }, { 1, 8, 0x1f, 15 }, { 1, 9, 0x1e, 15 }, { 1, 10, 0x1d, 15 }, { 1, 11, 0x1c, 15 }, { 1, 12, 0x1b, 15 },
+		{ 1, 13, 0x1a, 15 }, { 1, 14, 0x19, 15 }, { 1, 15, 0x13, 16 }, { 1, 16, 0x12, 16 }, { 1, 17, 0x11, 16 }, { 1, 18, 0x10, 16 },
+		{ 2, 1, 0x5, 4 }, { 2, 2, 0x4, 7 }, { 2, 3, 0xb, 10 }, { 2, 4, 0x14, 12 }, { 2, 5, 0x14, 13 },
+		{ 3, 1, 0x7, 5 }, { 3, 2, 0x24, 8 }, { 3, 3, 0x1c, 12 }, { 3, 4, 0x13, 13 },
+		{ 4, 1, 0x6, 5 }, { 4, 2, 0xf, 10 }, { 4, 3, 0x12, 12 },
+		{ 5, 1, 0x7, 6 }, { 5, 2, 0x9, 10 }, { 5, 3, 0x12, 13 },
+		{ 6, 1, 0x5, 6 }, { 6, 2, 0x1e, 12 }, { 6, 3, 0x14, 16 },
+		{ 7, 1, 0x4, 6 }, { 7, 2, 0x15, 12 },
+		{ 8, 1, 0x7, 7 }, { 8, 2, 0x11, 12 },
+		{ 9, 1, 0x5, 7 }, { 9, 2, 0x11, 13 },
+		{ 10, 1, 0x27, 8 }, { 10, 2, 0x10, 13 },
+		{ 11, 1, 0x23, 8 }, { 11, 2, 0x1a, 16 },
+		{ 12, 1, 0x22, 8 }, { 12, 2, 0x19, 16 },
+		{ 13, 1, 0x20, 8 }, { 13, 2, 0x18, 16 },
+		{ 14, 1, 0xe, 10 }, { 14, 2, 0x17, 16 },
+		{ 15, 1, 0xd, 10 }, { 15, 2, 0x16, 16 },
+		{ 16, 1, 0x8, 10 }, { 16, 2, 0x15, 16 },
+		{ 17, 1, 0x1f, 12 },
+		{ 18, 1, 0x1a, 12 },
+		{ 19, 1, 0x19, 12 },
+		{ 20, 1, 0x17, 12 },
+		{ 21, 1, 0x16, 12 },
+		{ 22, 1, 0x1f, 13 },
+		{ 23, 1, 0x1e, 13 },
+		{ 24, 1, 0x1d, 13 },
+		{ 25, 1, 0x1c, 13 },
+		{ 26, 1, 0x1b, 13 },
+		{ 27, 1, 0x1f, 16 },
+		{ 28, 1, 0x1e, 16 },
+		{ 29, 1, 0x1d, 16 },
+		{ 30, 1, 0x1c, 16 },
+		{ 31, 1, 0x1b, 16 },
+	};
+
+	private static final int MAX_LEVEL = 40;
+
+	// DCT_COEFF looked up by run * (MAX_LEVEL + 1) + level, as code << 8 | length, or 0 for an escape.
+	private static final int[] COEFF_CODES = new int[32 * (MAX_LEVEL + 1)];
+
+	// The DCT basis, DCT_BASIS[u * 8 + x] = C(u) / 2 * cos((2x + 1) * u * pi / 16).
+	private static final float[] DCT_BASIS = new float[64];
+
+	static
+	{
+		for (int[] entry : DCT_COEFF)
+			COEFF_CODES[entry[0] * (MAX_LEVEL + 1) + entry[1]] = (entry[2] << 8) | entry[3];
+
+		for (int u = 0; u < 8; u++)
+		{
+			double scale = (u == 0) ? Math.sqrt(0.125) : 0.5;
+			for (int x = 0; x < 8; x++)
+				DCT_BASIS[u * 8 + x] = (float) (scale * Math.cos((2 * x + 1) * u * Math.PI / 16));
+		}
+	}
+
+	private final int mWidth;
+	private final int mHeight;
+	private final int mMbWidth;
+	private final int mMbHeight;
+	private final int mPictureRate;
+	private final int mGopSize;
+	private final int mQuantizer;
+
+	// Multiplies a coefficient into its quantized level, in raster order.
+	private final float[] mQuantize = new float[64];
+
+	private final float[] mBlock = new float[64];
+	private final float[] mRows = new float[64];
+	private final float[] mCoefficients = new float[64];
+
+	private int mPictures = 0;
+	private final int[] mDcPredictor = new int[3];
+
+	private byte[] mOut;
+	private int mOutLength;
+	private long mBits;
+	private int mBitCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width     The width of the pictures, from 1 to 4095.
+	 * @param height    The height of the pictures, from 1 to 4095.
+	 * @param frameRate The rate pictures are shown at. This is only written to the
+	 *                  stream, jsmpeg shows pictures as they arrive over a socket.
+	 * @param quantizer The quantizer scale, from 1 (best quality) to 31 (smallest pictures).
+	 */
+	public Mpeg1Encoder(int width, int height, float frameRate, int quantizer)
+	{
+		if (width < 1 || width > 4095 || height < 1 || height > 4095)
+			throw new IllegalArgumentException("Unsupported picture size " + width + "x" + height);
+		if (quantizer < 1 || quantizer > 31)
+			throw new IllegalArgumentException("Quantizer scale must be from 1 to 31, not " + quantizer);
+
+		mWidth = width;
+		mHeight = height;
+		mMbWidth = (width + 15) / 16;
+		mMbHeight = (height + 15) / 16;
+		mQuantizer = quantizer;
+
+		int pictureRate = 1;
+		for (int i = 2; i < PICTURE_RATES.length; i++)
+		{
+			if (Math.abs(PICTURE_RATES[i] - frameRate) < Math.abs(PICTURE_RATES[pictureRate] - frameRate))
+				pictureRate = i;
+		}
+		mPictureRate = pictureRate;
+		mGopSize = Math.round(PICTURE_RATES[pictureRate]);
+
+		// An intra level is reconstructed as level * quantizer * matrix / 8.
+		for (int i = 0; i < 64; i++)
+			mQuantize[i] = 8.0f / (quantizer * INTRA_QUANT_MATRIX[i]);
+
+		mOut = new byte[getCodedWidth() * getCodedHeight() / 2];
+	}
+
+	/**
+	 * Gets the width of the pictures.
+	 *
+	 * @return the width of the pictures.
+	 */
+	public int getWidth()
+	{
+		return mWidth;
+	}
+
+	/**
+	 * Gets the height of the pictures.
+	 *
+	 * @return the height of the pictures.
+	 */
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	/**
+	 * Gets the width of the planes given to {@link #encode(byte[], byte[], byte[])},
+	 * which is the width of the pictures rounded up to a whole macroblock.
+	 *
+	 * @return the width of the luma plane, the chroma planes are half as wide.
+	 */
+	public int getCodedWidth()
+	{
+		return mMbWidth * 16;
+	}
+
+	/**
+	 * Gets the height of the planes given to {@link #encode(byte[], byte[], byte[])},
+	 * which is the height of the pictures rounded up to a whole macroblock.
+	 *
+	 * @return the height of the luma plane, the chroma planes are half as high.
+	 */
+	public int getCodedHeight()
+	{
+		return mMbHeight * 16;
+	}
+
+	/**
+	 * Encodes a picture. The planes are full range YCbCr, as jsmpeg converts
+	 * it back to RGB, with 4:2:0 chroma. The first picture, and one picture a
+	 * second after that, starts with a sequence header, so the stream can
+	 * also be saved to a file and played back from there.
+	 *
+	 * @param y  The luma plane, {@link #getCodedWidth()} by {@link #getCodedHeight()}.
+	 * @param cb The blue difference plane, half as wide and high as the luma plane.
+	 * @param cr The red difference plane, half as wide and high as the luma plane.
+	 *
+	 * @return the coded picture, ready to be sent as it is.
+	 */
+	public byte[] encode(byte[] y, byte[] cb, byte[] cr)
+	{
+		mOutLength = 0;
+
+		int temporalReference = mPictures % mGopSize;
+		if (temporalReference == 0)
+		{
+			writeSequenceHeader();
+			writeGopHeader(mPictures / mGopSize);
+		}
+		mPictures++;
+
+		writeBits(START_PICTURE, 32);
+		writeBits(temporalReference, 10);
+		writeBits(PICTURE_TYPE_I, 3);
+		writeBits(0xFFFF, 16); // vbv_delay, variable bitrate
+		writeBits(0, 1);       // extra_bit_picture
+		alignBits();
+
+		int codedWidth = getCodedWidth();
+		int chromaWidth = codedWidth / 2;
+		for (int mbRow = 0; mbRow < mMbHeight; mbRow++)
+		{
+			writeBits(START_PICTURE + mbRow + 1, 32);
+			writeBits(mQuantizer, 5);
+			writeBits(0, 1); // extra_bit_slice
+
+			Arrays.fill(mDcPredictor, 128);
+			for (int mbCol = 0; mbCol < mMbWidth; mbCol++)
+			{
+				writeBits(1, 1); // macroblock_address_increment, every macroblock is coded
+				writeBits(1, 1); // macroblock_type, intra without a new quantizer
+
+				int luma = mbRow * 16 * codedWidth + mbCol * 16;
+				int chroma = mbRow * 8 * chromaWidth + mbCol * 8;
+				encodeBlock(y, luma, codedWidth, 0);
+				encodeBlock(y, luma + 8, codedWidth, 0);
+				encodeBlock(y, luma + 8 * codedWidth, codedWidth, 0);
+				encodeBlock(y, luma + 8 * codedWidth + 8, codedWidth, 0);
+				encodeBlock(cb, chroma, chromaWidth, 1);
+				encodeBlock(cr, chroma, chromaWidth, 2);
+			}
+			alignBits();
+		}
+
+		return Arrays.copyOf(mOut, mOutLength);
+	}
+
+	private void writeSequenceHeader()
+	{
+		writeBits(START_SEQUENCE, 32);
+		writeBits(mWidth, 12);
+		writeBits(mHeight, 12);
+		writeBits(1, 4);       // pel_aspect_ratio, square pixels
+		writeBits(mPictureRate, 4);
+		writeBits(0x3FFFF, 18); // bit_rate, variable
+		writeBits(1, 1);       // marker_bit
+		writeBits(0, 10);      // vbv_buffer_size
+		writeBits(0, 1);       // constrained_parameters_flag
+		writeBits(0, 1);       // load_intra_quantizer_matrix
+		writeBits(0, 1);       // load_non_intra_quantizer_matrix
+		alignBits();
+	}
+
+	private void writeGopHeader(int seconds)
+	{
+		writeBits(START_GOP, 32);
+		writeBits(0, 1); // drop_frame_flag
+		writeBits((seconds / 3600) % 24, 5);
+		writeBits((seconds / 60) % 60, 6);
+		writeBits(1, 1); // marker_bit
+		writeBits(seconds % 60, 6);
+		writeBits(0, 6); // pictures
+		writeBits(1, 1); // closed_gop
+		writeBits(0, 1); // broken_link
+		alignBits();
+	}
+
+	// Transforms, quantizes and codes one 8x8 block of a plane.
+	// component is 0 for luma, 1 for blue and 2 for red difference.
+	private void encodeBlock(byte[] plane, int offset, int stride, int component)
+	{
+		int sum = 0;
+		for (int row = 0; row < 8; row++)
+		{
+			int in = offset + row * stride;
+			for (int col = 0; col < 8; col++)
+			{
+				int sample = plane[in + col] & 0xFF;
+				mBlock[row * 8 + col] = sample;
+				sum += sample;
+			}
+		}
+
+		// The DC coefficient is the mean of the block, with no level shift,
+		// coded as the difference from the block before it.
+		int dc = (sum + 32) >> 6;
+		int difference = dc - mDcPredictor[component];
+		mDcPredictor[component] = dc;
+
+		int size = 0;
+		for (int magnitude = Math.abs(difference); magnitude != 0; magnitude >>= 1)
+			size++;
+
+		int[] sizeCode = (component == 0) ? DC_SIZE_LUMINANCE[size] : DC_SIZE_CHROMINANCE[size];
+		writeBits(sizeCode[0], sizeCode[1]);
+		if (size != 0)
+			writeBits((difference > 0) ? difference : difference + (1 << size) - 1, size);
+
+		forwardDct();
+
+		int run = 0;
+		for (int i = 1; i < 64; i++)
+		{
+			int index = ZIG_ZAG[i];
+			int level = Math.round(mCoefficients[index] * mQuantize[index]);
+			if (level == 0)
+			{
+				run++;
+				continue;
+			}
+
+			level = Math.max(-255, Math.min(255, level));
+			int magnitude = Math.abs(level);
+			int code = (magnitude <= MAX_LEVEL) ? COEFF_CODES[run * (MAX_LEVEL + 1) + magnitude] : 0;
+			if (code != 0)
+			{
+				writeBits(code >> 8, code & 0xFF);
+				writeBits((level < 0) ? 1 : 0, 1);
+			}
+			else
+			{
+				writeBits(0x1, 6); // escape
+				writeBits(run, 6);
+				if (magnitude < 128)
+				{
+					writeBits(level & 0xFF, 8);
+				}
+				else
+				{
+					writeBits((level < 0) ? 0x80 : 0x00, 8);
+					writeBits(level & 0xFF, 8);
+				}
+			}
+			run = 0;
+		}
+
+		writeBits(0x2, 2); // end_of_block
+	}
+
+	// Transforms mBlock into mCoefficients, one dimension at a time.
+	private void forwardDct()
+	{
+		for (int y = 0; y < 8; y++)
+		{
+			for (int u = 0; u < 8; u++)
+			{
+				float value = 0.0f;
+				for (int x = 0; x < 8; x++)
+					value += mBlock[y * 8 + x] * DCT_BASIS[u * 8 + x];
+				mRows[y * 8 + u] = value;
+			}
+		}
+
+		for (int v = 0; v < 8; v++)
+		{
+			for (int u = 0; u < 8; u++)
+			{
+				float value = 0.0f;
+				for (int y = 0; y < 8; y++)
+					value += mRows[y * 8 + u] * DCT_BASIS[v * 8 + y];
+				mCoefficients[v * 8 + u] = value;
+			}
+		}
+	}
+
+	private void writeBits(int value, int count)
+	{
+		mBits = (mBits << count) | (value & ((1L << count) - 1));
+		mBitCount += count;
+
+		while (mBitCount >= 8)
+		{
+			if (mOutLength == mOut.length)
+				mOut = Arrays.copyOf(mOut, mOut.length * 2);
+
+			mBitCount -= 8;
+			mOut[mOutLength++] = (byte) (mBits >> mBitCount);
+		}
+	}
+
+	// Pads with zeros up to the next byte, as start codes must be byte aligned.
+	private void alignBits()
+	{
+		if (mBitCount != 0)
+			writeBits(0, 8 - mBitCount);
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct buffers that hold one message of the stream each, shared by
+ * everyone it's sent to rather than copied for each of them.
+ * <p>
+ * A packet is counted as in use by everyone who holds it. Once the last
+ * of them releases it, it goes back to the pool to hold a later message.
+ * Buffers come in powers of two, so a stream whose pictures stay about
+ * the same size keeps reusing the same few buffers.
+ */
+final class PacketPool
+{
+	/**
+	 * A message, and how many hold it.
+	 */
+	static final class Packet
+	{
+		private final PacketPool mPool;
+		private final ByteBuffer mData;
+		private final AtomicInteger mReferences = new AtomicInteger();
+		private int mLength;
+		private boolean mKeyframe;
+
+		private Packet(PacketPool pool, int capacity)
+		{
+			mPool = pool;
+			mData = ByteBuffer.allocateDirect(capacity);
+		}
+
+		/**
+		 * Gets the buffer the message is in. The message starts at 0 and is
+		 * {@link #getLength()} bytes long. Whoever reads it may move the
+		 * position and limit, but nothing else may be changed once the
+		 * packet is shared.
+		 *
+		 * @return the buffer the message is in.
+		 */
+		ByteBuffer getData()
+		{
+			return mData;
+		}
+
+		/**
+		 * Gets the length of the message.
+		 *
+		 * @return the length of the message in bytes.
+		 */
+		int getLength()
+		{
+			return mLength;
+		}
+
+		/**
+		 * Checks whether the message can be decoded without the ones before it.
+		 *
+		 * @return true if a viewer can start from this message.
+		 */
+		boolean isKeyframe()
+		{
+			return mKeyframe;
+		}
+
+		/**
+		 * Sets the length of the message once it's been written to the buffer.
+		 *
+		 * @param length   The length of the message in bytes.
+		 * @param keyframe Whether a viewer can start from this message.
+		 */
+		void setMessage(int length, boolean keyframe)
+		{
+			mLength = length;
+			mKeyframe = keyframe;
+		}
+
+		/**
+		 * Counts one more holder of the packet.
+		 *
+		 * @return this packet.
+		 */
+		Packet retain()
+		{
+			mReferences.incrementAndGet();
+			return this;
+		}
+
+		/**
+		 * Counts one holder less, and gives the packet back
+		 * to the pool if that was the last of them.
+		 */
+		void release()
+		{
+			if (mReferences.decrementAndGet() == 0)
+				mPool.recycle(this);
+		}
+	}
+
+	// The smallest buffer is 2^MIN_SHIFT bytes.
+	private static final int MIN_SHIFT = 10;
+
+	private final List<List<Packet>> mFree = new ArrayList<List<Packet>>();
+	private final int mMaxFree;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxFree The most unused packets of each size to keep around.
+	 */
+	PacketPool(int maxFree)
+	{
+		mMaxFree = maxFree;
+		for (int i = MIN_SHIFT; i < 31; i++)
+			mFree.add(new ArrayList<Packet>());
+	}
+
+	/**
+	 * Gets a packet to write a message into. The caller holds it once, and
+	 * the buffer is cleared, ready for the message to be put into it.
+	 *
+	 * @param size The length of the message in bytes.
+	 *
+	 * @return the packet.
+	 */
+	Packet obtain(int size)
+	{
+		int shift = MIN_SHIFT;
+		while ((1 << shift) < size)
+			shift++;
+
+		Packet packet = null;
+		List<Packet> free = mFree.get(shift - MIN_SHIFT);
+		synchronized (free)
+		{
+			if (!free.isEmpty())
+				packet = free.remove(free.size() - 1);
+		}
+
+		if (packet == null)
+			packet = new Packet(this, 1 << shift);
+
+		packet.mData.clear();
+		packet.mReferences.set(1);
+		return packet;
+	}
+
+	private void recycle(Packet packet)
+	{
+		int shift = Integer.numberOfTrailingZeros(packet.mData.capacity());
+		List<Packet> free = mFree.get(shift - MIN_SHIFT);
+		synchronized (free)
+		{
+			if (free.size() < mMaxFree)
+				free.add(packet);
+		}
+	}
+}
@@ -0,0 +1,576 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dolphinemu.dolphinemu.InputQueue;
+import org.dolphinemu.dolphinemu.InputScheduler;
+import org.dolphinemu.dolphinemu.NativeLibrary;
+
+/**
+ * Takes the controllers of remote players, such as the browsers watching
+ * the stream, over UDP or WebSockets on the same port.
+ * <p>
+ * Players send the state of their controller every time it changes, in
+ * the packets described in {@link InputCodec}, as datagrams or binary
+ * WebSocket messages. Each state is compared against the last state of
+ * that player so only what changed is passed on, in the order the player
+ * sent it. Over UDP, a state that arrives late or twice is skipped, and
+ * one that's lost is made up for by the packets after it. States are
+ * numbered by each address they're sent from, so a player that starts
+ * over from a new socket starts over here too.
+ * <p>
+ * Player n shows up on the native side as the gamepad "Remote n", whose
+ * buttons are numbered in the order of ButtonManager's ButtonType up to
+ * BUTTON_RIGHT, followed by L and R, and whose axes are numbered in the
+ * order of the protocol, each going down and right from -1 to 1. It's
+ * on controller port n.
+ * <p>
+ * Everything runs on one thread with a selector, which puts the changes
+ * in the {@link InputQueue} of the port of the player the moment they
+ * arrive. {@link InputScheduler} has the rest.
+ */
+public final class RemoteInput
+{
+	/** The most players that can be remote. */
+	public static final int MAX_PLAYERS = InputCodec.MAX_PLAYERS;
+
+	private static final int AXIS_COUNT = InputCodec.AXIS_COUNT;
+
+	// The most a datagram or message can take up.
+	private static final int MAX_MESSAGE = 1024;
+
+	// The most addresses datagrams are decoded for at once. The one
+	// that's sent nothing for the longest is forgotten to make room.
+	private static final int MAX_SOURCES = 16;
+
+	private static final RemoteInput sInstance = new RemoteInput();
+
+	private final Player[] mPlayers = new Player[MAX_PLAYERS];
+	private volatile boolean mRunning = false;
+
+	private Selector mSelector;
+	private DatagramChannel mDatagrams;
+	private ServerSocketChannel mServer;
+	private Thread mThread;
+
+	// Only touched on the input thread.
+	private final List<Client> mClients = new ArrayList<Client>();
+	private final ByteBuffer mDatagram = ByteBuffer.allocate(MAX_MESSAGE);
+	private final byte[] mMessage = new byte[MAX_MESSAGE];
+
+	// Datagrams from each address go through a decoder of their own,
+	// as each sender numbers its states from wherever it started.
+	private final Map<SocketAddress, InputCodec.Decoder> mDecoders =
+			new LinkedHashMap<SocketAddress, InputCodec.Decoder>(MAX_SOURCES, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SocketAddress, InputCodec.Decoder> eldest)
+		{
+			return size() > MAX_SOURCES;
+		}
+	};
+	private volatile int mLostStates = 0;
+	private final InputCodec.Listener mListener = new InputCodec.Listener()
+	{
+		public void onState(int player, int buttons, byte[] axes)
+		{
+			apply(player - 1, buttons, axes);
+		}
+	};
+
+	private static final class Player
+	{
+		final InputQueue mQueue;
+		int mHandle = -1;
+		int mButtons = 0;
+		final byte[] mAxes = new byte[AXIS_COUNT];
+
+		Player(InputQueue queue)
+		{
+			mQueue = queue;
+		}
+	}
+
+	// A WebSocket connection, which numbers its states on its own.
+	private final class Client implements InputCodec.Listener
+	{
+		final SocketChannel mChannel;
+		final SelectionKey mKey;
+		final ByteBuffer mIn = ByteBuffer.allocate(WebSocket.MAX_HANDSHAKE);
+		final InputCodec.Decoder mDecoder = new InputCodec.Decoder();
+
+		// The handshake response, which is all that's ever sent.
+		ByteBuffer mResponse;
+
+		boolean mOpen = false;
+		boolean mClosed = false;
+		boolean mCloseWhenSent = false;
+
+		// The players this client has sent states for, one bit each.
+		int mPlayers = 0;
+
+		Client(SocketChannel channel, SelectionKey key)
+		{
+			mChannel = channel;
+			mKey = key;
+		}
+
+		public void onState(int player, int buttons, byte[] axes)
+		{
+			mPlayers |= 1 << (player - 1);
+			apply(player - 1, buttons, axes);
+		}
+	}
+
+	private RemoteInput()
+	{
+		for (int i = 0; i < MAX_PLAYERS; i++)
+			mPlayers[i] = new Player(InputScheduler.getInstance().getRemoteQueue(i + 1));
+	}
+
+	/**
+	 * Gets the remote input receiver.
+	 *
+	 * @return the remote input receiver.
+	 */
+	public static RemoteInput getInstance()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Starts taking input from remote players.
+	 *
+	 * @param port The port to listen on for both UDP and WebSockets.
+	 *
+	 * @throws IOException if the port can't be listened on.
+	 */
+	public synchronized void start(int port) throws IOException
+	{
+		stop();
+
+		mSelector = Selector.open();
+		try
+		{
+			mServer = ServerSocketChannel.open();
+			mServer.socket().setReuseAddress(true);
+			mServer.socket().bind(new InetSocketAddress(port));
+			mServer.configureBlocking(false);
+			mServer.register(mSelector, SelectionKey.OP_ACCEPT);
+
+			mDatagrams = DatagramChannel.open();
+			mDatagrams.socket().bind(new InetSocketAddress(mServer.socket().getLocalPort()));
+			mDatagrams.configureBlocking(false);
+			mDatagrams.register(mSelector, SelectionKey.OP_READ);
+		}
+		catch (IOException e)
+		{
+			if (mServer != null)
+				mServer.close();
+			if (mDatagrams != null)
+				mDatagrams.close();
+			mSelector.close();
+			throw e;
+		}
+
+		// Handles stay the same for as long as the process runs.
+		int[] axes = new int[AXIS_COUNT];
+		for (int i = 0; i < AXIS_COUNT; i++)
+			axes[i] = i;
+		for (int i = 0; i < MAX_PLAYERS; i++)
+			mPlayers[i].mHandle = NativeLibrary.RegisterGamePad("Remote " + (i + 1), axes);
+
+		mRunning = true;
+		mThread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				receive();
+			}
+		}, "RemoteInput");
+		mThread.setPriority(Thread.MAX_PRIORITY);
+		mThread.start();
+
+		Log.i("RemoteInput", "Taking remote input on port " + getPort());
+	}
+
+	/**
+	 * Stops taking input from remote players, and lets go
+	 * of everything they were holding.
+	 */
+	public synchronized void stop()
+	{
+		if (!mRunning)
+			return;
+
+		mRunning = false;
+		mSelector.wakeup();
+
+		try
+		{
+			mThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks whether input is being taken from remote players.
+	 *
+	 * @return true if the receiver has been started.
+	 */
+	public boolean isRunning()
+	{
+		return mRunning;
+	}
+
+	/**
+	 * Gets the port remote players send to.
+	 *
+	 * @return the port being listened on, or -1 if the receiver isn't running.
+	 */
+	public synchronized int getPort()
+	{
+		return mRunning ? mServer.socket().getLocalPort() : -1;
+	}
+
+	/**
+	 * Gets the number of states sent over UDP that never
+	 * arrived, as every packet that carried them was lost.
+	 *
+	 * @return the number of states lost since the process started.
+	 */
+	public int getLostStates()
+	{
+		return mLostStates;
+	}
+
+	private void receive()
+	{
+		try
+		{
+			while (mRunning)
+			{
+				mSelector.select();
+
+				Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable())
+						accept();
+					else if (key.channel() == mDatagrams)
+						readDatagrams();
+					else if (key.isReadable())
+						read((Client) key.attachment());
+					else if (key.isWritable())
+						flush((Client) key.attachment());
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e("RemoteInput", "Remote input stopped", e);
+		}
+		finally
+		{
+			mRunning = false;
+			shutdown();
+		}
+	}
+
+	private void shutdown()
+	{
+		for (int i = mClients.size() - 1; i >= 0; i--)
+			close(mClients.get(i));
+
+		for (int i = 0; i < MAX_PLAYERS; i++)
+			release(i);
+		mDecoders.clear();
+
+		try
+		{
+			mDatagrams.close();
+			mServer.close();
+			mSelector.close();
+		}
+		catch (IOException e)
+		{
+			Log.e("RemoteInput", "Unable to close the sockets", e);
+		}
+	}
+
+	private void readDatagrams() throws IOException
+	{
+		// Take everything that's waiting, so a burst doesn't cost a select each.
+		while (true)
+		{
+			mDatagram.clear();
+			SocketAddress source = mDatagrams.receive(mDatagram);
+			if (source == null)
+				return;
+
+			InputCodec.Decoder decoder = mDecoders.get(source);
+			if (decoder == null)
+			{
+				decoder = new InputCodec.Decoder();
+				mDecoders.put(source, decoder);
+			}
+
+			int lost = decoder.getLostStates();
+			decoder.decode(mDatagram.array(), 0, mDatagram.position(), mListener);
+			mLostStates += decoder.getLostStates() - lost;
+		}
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel = mServer.accept();
+		if (channel == null)
+			return;
+
+		try
+		{
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(mSelector, SelectionKey.OP_READ);
+			Client client = new Client(channel, key);
+			key.attach(client);
+			mClients.add(client);
+		}
+		catch (IOException e)
+		{
+			channel.close();
+		}
+	}
+
+	private void read(Client client)
+	{
+		try
+		{
+			if (client.mChannel.read(client.mIn) < 0)
+			{
+				close(client);
+				return;
+			}
+
+			if (client.mOpen)
+				readMessages(client);
+			else
+				readHandshake(client);
+		}
+		catch (IOException e)
+		{
+			close(client);
+		}
+	}
+
+	private void readHandshake(Client client) throws IOException
+	{
+		ByteBuffer in = client.mIn;
+		String request = new String(in.array(), 0, in.position(), "ISO-8859-1");
+		int end = request.indexOf("\r\n\r\n");
+		if (end == -1)
+		{
+			if (!in.hasRemaining())
+				close(client);
+			return;
+		}
+
+		String response = WebSocket.accept(request.substring(0, end));
+		if (response == null)
+		{
+			response = WebSocket.badRequest();
+			client.mCloseWhenSent = true;
+		}
+		else
+		{
+			client.mOpen = true;
+		}
+
+		// A client that doesn't wait for the response may have sent messages already.
+		in.flip();
+		in.position(end + 4);
+		in.compact();
+
+		client.mResponse = ByteBuffer.wrap(response.getBytes("ISO-8859-1"));
+		flush(client);
+
+		if (client.mOpen && !client.mClosed && in.position() > 0)
+			readMessages(client);
+	}
+
+	private void readMessages(Client client)
+	{
+		ByteBuffer in = client.mIn;
+		in.flip();
+
+		while (in.remaining() >= 2)
+		{
+			int start = in.position();
+			int opcode = in.get() & 0x0F;
+			int second = in.get() & 0xFF;
+			boolean masked = (second & 0x80) != 0;
+			long length = second & 0x7F;
+			int headerLength = 2 + (masked ? 4 : 0);
+			if (length == 126)
+				headerLength += 2;
+			else if (length == 127)
+				headerLength += 8;
+
+			if (in.remaining() < headerLength - 2)
+			{
+				in.position(start);
+				break;
+			}
+
+			if (length == 126)
+				length = in.getShort() & 0xFFFF;
+			else if (length == 127)
+				length = in.getLong();
+
+			if (length > MAX_MESSAGE)
+			{
+				close(client);
+				return;
+			}
+
+			int mask = masked ? in.getInt() : 0;
+			if (in.remaining() < length)
+			{
+				in.position(start);
+				break;
+			}
+
+			if (opcode == WebSocket.OPCODE_CLOSE)
+			{
+				close(client);
+				return;
+			}
+
+			in.get(mMessage, 0, (int) length);
+			if (opcode == WebSocket.OPCODE_BINARY)
+			{
+				for (int i = 0; i < length; i++)
+					mMessage[i] ^= mask >>> (24 - (i & 3) * 8);
+
+				client.mDecoder.decode(mMessage, 0, (int) length, client);
+			}
+		}
+
+		in.compact();
+	}
+
+	private void apply(int index, int buttons, byte[] axes)
+	{
+		Player player = mPlayers[index];
+
+		// The state only takes in what made it into the queue, so anything
+		// that didn't is tried again with the next state from the player.
+		int changed = buttons ^ player.mButtons;
+		while (changed != 0)
+		{
+			int button = Integer.numberOfTrailingZeros(changed);
+			int bit = 1 << button;
+			changed &= ~bit;
+
+			boolean pressed = (buttons & bit) != 0;
+			if (!player.mQueue.putButton(player.mHandle, button, pressed ? 0 : 1))
+				return;
+
+			player.mButtons ^= bit;
+		}
+
+		for (int i = 0; i < AXIS_COUNT; i++)
+		{
+			byte value = axes[i];
+			if (value == player.mAxes[i])
+				continue;
+
+			if (!player.mQueue.putAxis(player.mHandle, i, Math.max(-1.0f, value / 127.0f)))
+				return;
+
+			player.mAxes[i] = value;
+		}
+	}
+
+	// Lets go of everything a player is holding.
+	private void release(int index)
+	{
+		apply(index, 0, new byte[AXIS_COUNT]);
+	}
+
+	private void flush(Client client)
+	{
+		try
+		{
+			client.mChannel.write(client.mResponse);
+			if (client.mResponse.hasRemaining())
+			{
+				client.mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+
+			client.mKey.interestOps(SelectionKey.OP_READ);
+			if (client.mCloseWhenSent)
+				close(client);
+		}
+		catch (IOException e)
+		{
+			close(client);
+		}
+	}
+
+	private void close(Client client)
+	{
+		if (client.mClosed)
+			return;
+
+		client.mClosed = true;
+		client.mKey.cancel();
+		try
+		{
+			client.mChannel.close();
+		}
+		catch (IOException e)
+		{
+			// Gone either way.
+		}
+
+		// Nobody is left to let go of what the client was holding.
+		for (int i = 0; i < MAX_PLAYERS; i++)
+		{
+			if ((client.mPlayers & (1 << i)) != 0)
+				release(i);
+		}
+		mClients.remove(client);
+	}
+}
@@ -0,0 +1,659 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends the stream to any number of browsers at once over WebSockets,
+ * which is how jsmpeg (site/jsmpg.js) expects to be fed.
+ * <p>
+ * Every connection is handled by one thread with a selector, which is
+ * enough for hundreds of viewers. Each message is framed once, into a
+ * direct buffer from a {@link PacketPool}, and that same buffer is written
+ * to every viewer; it goes back to the pool once the last of them has it.
+ * <p>
+ * A viewer whose connection can't keep up isn't allowed to hold up the
+ * rest, or to fall ever further behind. Once more than a set number of
+ * messages are waiting to be sent to it, the ones it hasn't started on are
+ * dropped, and it picks up again from the next keyframe. Every picture
+ * {@link FrameCapture} sends is a keyframe, so that's the next picture.
+ * <p>
+ * site/loadtest.js connects as many viewers as asked for, some of them
+ * slow if wanted, and reports what they receive.
+ */
+public final class StreamRelay implements FrameCapture.PacketSink
+{
+	// The most a message from a viewer can take up.
+	private static final int MAX_REQUEST = WebSocket.MAX_HANDSHAKE;
+
+	private static final StreamRelay sInstance = new StreamRelay();
+
+	private final PacketPool mPool = new PacketPool(8);
+	private final ConcurrentLinkedQueue<PacketPool.Packet> mIncoming = new ConcurrentLinkedQueue<PacketPool.Packet>();
+	private final AtomicReference<PacketPool.Packet> mIncomingHeader = new AtomicReference<PacketPool.Packet>();
+	private final AtomicInteger mDropped = new AtomicInteger();
+	private volatile int mViewerCount = 0;
+	private volatile boolean mRunning = false;
+
+	private Selector mSelector;
+	private ServerSocketChannel mServer;
+	private Thread mThread;
+	private int mMaxQueued;
+
+	// Only touched on the relay thread.
+	private final List<Viewer> mViewers = new ArrayList<Viewer>();
+	private PacketPool.Packet mHeader;
+
+	private static final class Viewer
+	{
+		final SocketChannel mChannel;
+		final SelectionKey mKey;
+		final ByteBuffer mIn = ByteBuffer.allocate(MAX_REQUEST);
+		final ArrayDeque<PacketPool.Packet> mQueue = new ArrayDeque<PacketPool.Packet>();
+
+		// The handshake response, sent ahead of everything else.
+		ByteBuffer mResponse;
+
+		// How much of the packet at the head of the queue has been sent.
+		int mOffset = 0;
+
+		boolean mOpen = false;
+		boolean mClosed = false;
+		boolean mCloseWhenSent = false;
+		boolean mHeaderSent = false;
+		boolean mWaitingForKeyframe = true;
+
+		// The stream header while it's queued and not all of it has been sent yet.
+		PacketPool.Packet mUnsentHeader;
+
+		Viewer(SocketChannel channel, SelectionKey key)
+		{
+			mChannel = channel;
+			mKey = key;
+		}
+	}
+
+	private StreamRelay()
+	{
+	}
+
+	/**
+	 * Gets the stream relay.
+	 *
+	 * @return the stream relay.
+	 */
+	public static StreamRelay getInstance()
+	{
+		return sInstance;
+	}
+
+	/**
+	 * Starts accepting viewers. Messages sent before this are dropped.
+	 *
+	 * @param port      The TCP port to listen on, or 0 for any free port.
+	 * @param maxQueued The most messages that can be waiting to be sent to a
+	 *                  viewer before it's made to skip ahead to the next keyframe.
+	 *
+	 * @throws IOException if the port can't be listened on.
+	 */
+	public synchronized void start(int port, int maxQueued) throws IOException
+	{
+		stop();
+
+		mMaxQueued = Math.max(1, maxQueued);
+		mDropped.set(0);
+		mSelector = Selector.open();
+		try
+		{
+			mServer = ServerSocketChannel.open();
+			mServer.socket().setReuseAddress(true);
+			mServer.socket().bind(new InetSocketAddress(port));
+			mServer.configureBlocking(false);
+			mServer.register(mSelector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException e)
+		{
+			if (mServer != null)
+				mServer.close();
+			mSelector.close();
+			throw e;
+		}
+
+		mRunning = true;
+		mThread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				relay();
+			}
+		}, "StreamRelay");
+		mThread.start();
+
+		Log.i("StreamRelay", "Streaming on port " + getPort());
+	}
+
+	/**
+	 * Disconnects every viewer and stops accepting new ones.
+	 */
+	public synchronized void stop()
+	{
+		if (!mRunning)
+			return;
+
+		mRunning = false;
+		mSelector.wakeup();
+
+		try
+		{
+			mThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks whether viewers are being accepted.
+	 *
+	 * @return true if the relay has been started.
+	 */
+	public boolean isRunning()
+	{
+		return mRunning;
+	}
+
+	/**
+	 * Gets the port viewers connect to.
+	 *
+	 * @return the port being listened on, or -1 if the relay isn't running.
+	 */
+	public synchronized int getPort()
+	{
+		return mRunning ? mServer.socket().getLocalPort() : -1;
+	}
+
+	/**
+	 * Gets the number of viewers.
+	 *
+	 * @return the number of viewers that have completed the WebSocket handshake.
+	 */
+	public int getViewerCount()
+	{
+		return mViewerCount;
+	}
+
+	/**
+	 * Gets the number of messages that weren't sent to
+	 * a viewer because it had fallen too far behind.
+	 *
+	 * @return the number of messages dropped since the relay was started.
+	 */
+	public int getDroppedMessages()
+	{
+		return mDropped.get();
+	}
+
+	/**
+	 * Sets the message every viewer is sent before the stream, such as
+	 * {@link FrameCapture#getStreamHeader()}. Viewers that are already
+	 * watching are only sent it if they haven't been sent one yet.
+	 *
+	 * @param header The message.
+	 */
+	public void setStreamHeader(byte[] header)
+	{
+		PacketPool.Packet packet = frame(header, false);
+		PacketPool.Packet replaced = mIncomingHeader.getAndSet(packet);
+		if (replaced != null)
+			replaced.release();
+
+		wakeup();
+	}
+
+	/**
+	 * Sends a message to every viewer. This can be called from any
+	 * thread, and returns once the message has been queued.
+	 *
+	 * @param message  The message. It isn't touched after this returns.
+	 * @param keyframe Whether a viewer that's been skipping ahead can start from this message.
+	 */
+	public void send(byte[] message, boolean keyframe)
+	{
+		if (!mRunning)
+			return;
+
+		mIncoming.add(frame(message, keyframe));
+		wakeup();
+	}
+
+	/**
+	 * Sends a picture from {@link FrameCapture} to every viewer.
+	 *
+	 * @param packet The coded picture.
+	 */
+	public void onPacket(byte[] packet)
+	{
+		send(packet, true);
+	}
+
+	private synchronized void wakeup()
+	{
+		if (mRunning)
+			mSelector.wakeup();
+	}
+
+	// Frames a message as an unmasked, binary WebSocket message.
+	private PacketPool.Packet frame(byte[] message, boolean keyframe)
+	{
+		PacketPool.Packet packet = mPool.obtain(message.length + 10);
+		ByteBuffer data = packet.getData();
+
+		data.put((byte) (0x80 | WebSocket.OPCODE_BINARY));
+		if (message.length < 126)
+		{
+			data.put((byte) message.length);
+		}
+		else if (message.length < 65536)
+		{
+			data.put((byte) 126);
+			data.putShort((short) message.length);
+		}
+		else
+		{
+			data.put((byte) 127);
+			data.putLong(message.length);
+		}
+		data.put(message);
+
+		packet.setMessage(data.position(), keyframe);
+		return packet;
+	}
+
+	private void relay()
+	{
+		try
+		{
+			while (mRunning)
+			{
+				mSelector.select();
+
+				PacketPool.Packet header = mIncomingHeader.getAndSet(null);
+				if (header != null)
+					setHeader(header);
+
+				PacketPool.Packet packet;
+				while ((packet = mIncoming.poll()) != null)
+				{
+					broadcast(packet);
+					packet.release();
+				}
+
+				Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable())
+					{
+						accept();
+						continue;
+					}
+
+					Viewer viewer = (Viewer) key.attachment();
+					if (key.isReadable())
+						read(viewer);
+					if (!viewer.mClosed && key.isWritable())
+						flush(viewer);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e("StreamRelay", "Relay stopped", e);
+		}
+		finally
+		{
+			mRunning = false;
+			shutdown();
+		}
+	}
+
+	private void shutdown()
+	{
+		for (int i = mViewers.size() - 1; i >= 0; i--)
+			close(mViewers.get(i));
+
+		if (mHeader != null)
+		{
+			mHeader.release();
+			mHeader = null;
+		}
+
+		PacketPool.Packet packet;
+		while ((packet = mIncoming.poll()) != null)
+			packet.release();
+
+		try
+		{
+			mServer.close();
+			mSelector.close();
+		}
+		catch (IOException e)
+		{
+			Log.e("StreamRelay", "Unable to close the server socket", e);
+		}
+	}
+
+	private void accept() throws IOException
+	{
+		SocketChannel channel = mServer.accept();
+		if (channel == null)
+			return;
+
+		try
+		{
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(mSelector, SelectionKey.OP_READ);
+			Viewer viewer = new Viewer(channel, key);
+			key.attach(viewer);
+			mViewers.add(viewer);
+		}
+		catch (IOException e)
+		{
+			channel.close();
+		}
+	}
+
+	private void read(Viewer viewer)
+	{
+		try
+		{
+			if (viewer.mChannel.read(viewer.mIn) < 0)
+			{
+				close(viewer);
+				return;
+			}
+
+			if (viewer.mOpen)
+				readMessages(viewer);
+			else
+				readHandshake(viewer);
+		}
+		catch (IOException e)
+		{
+			close(viewer);
+		}
+	}
+
+	private void readHandshake(Viewer viewer) throws IOException
+	{
+		ByteBuffer in = viewer.mIn;
+		String request = new String(in.array(), 0, in.position(), "ISO-8859-1");
+		int end = request.indexOf("\r\n\r\n");
+		if (end == -1)
+		{
+			if (!in.hasRemaining())
+				close(viewer);
+			return;
+		}
+
+		String response = WebSocket.accept(request.substring(0, end));
+		in.clear();
+
+		if (response == null)
+		{
+			response = WebSocket.badRequest();
+			viewer.mCloseWhenSent = true;
+		}
+		else
+		{
+			viewer.mOpen = true;
+			mViewerCount++;
+
+			if (mHeader != null)
+			{
+				viewer.mQueue.add(mHeader.retain());
+				viewer.mHeaderSent = true;
+				viewer.mUnsentHeader = mHeader;
+			}
+		}
+
+		viewer.mResponse = ByteBuffer.wrap(response.getBytes("ISO-8859-1"));
+		flush(viewer);
+	}
+
+	// Viewers only watch, so all that's looked for is whether they're leaving.
+	private void readMessages(Viewer viewer)
+	{
+		ByteBuffer in = viewer.mIn;
+		in.flip();
+
+		while (in.remaining() >= 2)
+		{
+			int start = in.position();
+			int opcode = in.get() & 0x0F;
+			int second = in.get() & 0xFF;
+			long length = second & 0x7F;
+			int headerLength = 2 + (((second & 0x80) != 0) ? 4 : 0);
+			if (length == 126)
+				headerLength += 2;
+			else if (length == 127)
+				headerLength += 8;
+
+			if (in.remaining() < headerLength - 2)
+			{
+				in.position(start);
+				break;
+			}
+
+			if (length == 126)
+				length = in.getShort() & 0xFFFF;
+			else if (length == 127)
+				length = in.getLong();
+
+			if (length > MAX_REQUEST - headerLength)
+			{
+				close(viewer);
+				return;
+			}
+
+			if (in.remaining() < length)
+			{
+				in.position(start);
+				break;
+			}
+
+			if (opcode == WebSocket.OPCODE_CLOSE)
+			{
+				close(viewer);
+				return;
+			}
+
+			in.position(start + headerLength + (int) length);
+		}
+
+		in.compact();
+	}
+
+	private void setHeader(PacketPool.Packet header)
+	{
+		if (mHeader != null)
+			mHeader.release();
+		mHeader = header;
+
+		for (int i = mViewers.size() - 1; i >= 0; i--)
+		{
+			Viewer viewer = mViewers.get(i);
+			if (viewer.mOpen && !viewer.mHeaderSent)
+			{
+				viewer.mQueue.add(header.retain());
+				viewer.mHeaderSent = true;
+				viewer.mUnsentHeader = header;
+				flush(viewer);
+			}
+		}
+	}
+
+	private void broadcast(PacketPool.Packet packet)
+	{
+		// Backwards, as a viewer whose connection has gone is removed on the way.
+		for (int i = mViewers.size() - 1; i >= 0; i--)
+		{
+			Viewer viewer = mViewers.get(i);
+			if (viewer.mOpen && !viewer.mCloseWhenSent && viewer.mHeaderSent)
+			{
+				enqueue(viewer, packet);
+				flush(viewer);
+			}
+		}
+	}
+
+	private void enqueue(Viewer viewer, PacketPool.Packet packet)
+	{
+		if (viewer.mQueue.size() >= mMaxQueued)
+		{
+			// Drop everything that hasn't started being sent. A message that's
+			// half sent has to be finished, or the stream can't be read any more.
+			// Neither can it without the header, so that's kept too.
+			int kept = (viewer.mOffset > 0) ? 1 : 0;
+			PacketPool.Packet header = null;
+			while (viewer.mQueue.size() > kept)
+			{
+				PacketPool.Packet queued = viewer.mQueue.pollLast();
+				if (queued == viewer.mUnsentHeader)
+				{
+					header = queued;
+					continue;
+				}
+
+				queued.release();
+				mDropped.incrementAndGet();
+			}
+			if (header != null)
+				viewer.mQueue.add(header);
+			viewer.mWaitingForKeyframe = true;
+		}
+
+		if (viewer.mWaitingForKeyframe)
+		{
+			if (!packet.isKeyframe())
+			{
+				mDropped.incrementAndGet();
+				return;
+			}
+			viewer.mWaitingForKeyframe = false;
+		}
+
+		viewer.mQueue.add(packet.retain());
+	}
+
+	// Sends as much as the connection takes without blocking, and
+	// asks to be told once it can take more if that wasn't everything.
+	private void flush(Viewer viewer)
+	{
+		try
+		{
+			if (viewer.mResponse != null)
+			{
+				viewer.mChannel.write(viewer.mResponse);
+				if (viewer.mResponse.hasRemaining())
+				{
+					setInterest(viewer, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+
+				viewer.mResponse = null;
+				if (viewer.mCloseWhenSent)
+				{
+					close(viewer);
+					return;
+				}
+			}
+
+			while (!viewer.mQueue.isEmpty())
+			{
+				PacketPool.Packet packet = viewer.mQueue.peek();
+				ByteBuffer data = packet.getData();
+				data.limit(packet.getLength());
+				data.position(viewer.mOffset);
+
+				viewer.mChannel.write(data);
+				viewer.mOffset = data.position();
+				if (data.hasRemaining())
+				{
+					setInterest(viewer, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+
+				if (packet == viewer.mUnsentHeader)
+					viewer.mUnsentHeader = null;
+				viewer.mQueue.poll().release();
+				viewer.mOffset = 0;
+			}
+
+			setInterest(viewer, SelectionKey.OP_READ);
+		}
+		catch (IOException e)
+		{
+			close(viewer);
+		}
+	}
+
+	private void setInterest(Viewer viewer, int ops)
+	{
+		if (viewer.mKey.interestOps() != ops)
+			viewer.mKey.interestOps(ops);
+	}
+
+	private void close(Viewer viewer)
+	{
+		if (viewer.mClosed)
+			return;
+
+		viewer.mClosed = true;
+		viewer.mKey.cancel();
+		try
+		{
+			viewer.mChannel.close();
+		}
+		catch (IOException e)
+		{
+			// Gone either way.
+		}
+
+		PacketPool.Packet packet;
+		while ((packet = viewer.mQueue.poll()) != null)
+			packet.release();
+		viewer.mUnsentHeader = null;
+
+		if (viewer.mOpen)
+			mViewerCount--;
+		mViewers.remove(viewer);
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import android.util.Base64;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The parts of the WebSocket protocol (RFC 6455) that the servers in this
+ * package share: the opening handshake, and the opcodes they deal with.
+ */
+final class WebSocket
+{
+	static final int OPCODE_BINARY = 0x2;
+	static final int OPCODE_CLOSE = 0x8;
+
+	// The most a handshake can take up.
+	static final int MAX_HANDSHAKE = 4096;
+
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	private static final String BAD_REQUEST = "HTTP/1.1 400 Bad Request\r\nConnection: close\r\n\r\n";
+
+	private WebSocket()
+	{
+	}
+
+	/**
+	 * Answers the opening handshake of a client.
+	 *
+	 * @param request The request the client sent, up to the blank line that ends it.
+	 *
+	 * @return the response that accepts the connection, or null if the
+	 *         request isn't a WebSocket handshake. The connection should be
+	 *         closed after sending {@link #badRequest()} in that case.
+	 */
+	static String accept(String request)
+	{
+		String key = null;
+		for (String line : request.split("\r\n"))
+		{
+			int colon = line.indexOf(':');
+			if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key"))
+				key = line.substring(colon + 1).trim();
+		}
+
+		if (key == null)
+			return null;
+
+		return "HTTP/1.1 101 Switching Protocols\r\n"
+				+ "Upgrade: websocket\r\n"
+				+ "Connection: Upgrade\r\n"
+				+ "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+	}
+
+	/**
+	 * Gets the response to a request that isn't a WebSocket handshake.
+	 *
+	 * @return the response.
+	 */
+	static String badRequest()
+	{
+		return BAD_REQUEST;
+	}
+
+	private static String acceptKey(String key)
+	{
+		try
+		{
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			byte[] digest = sha1.digest((key + GUID).getBytes("ISO-8859-1"));
+			return Base64.encodeToString(digest, Base64.NO_WRAP);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A picture in the planes {@link Mpeg1Encoder} takes, and the conversion
+ * into them from the RGBA frames the native side captures.
+ */
+final class YuvFrame
+{
+	final byte[] mY;
+	final byte[] mCb;
+	final byte[] mCr;
+
+	private final int mWidth;
+	private final int mHeight;
+	private final int mCodedWidth;
+	private final int mCodedHeight;
+
+	// Reused from one conversion to the next, so converting doesn't allocate.
+	private byte[] mRow0 = new byte[0];
+	private byte[] mRow1 = new byte[0];
+	private int[] mSourceX = new int[0];
+	private int mSourceWidth = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param encoder The encoder the frame is for.
+	 */
+	YuvFrame(Mpeg1Encoder encoder)
+	{
+		mWidth = encoder.getWidth();
+		mHeight = encoder.getHeight();
+		mCodedWidth = encoder.getCodedWidth();
+		mCodedHeight = encoder.getCodedHeight();
+		mY = new byte[mCodedWidth * mCodedHeight];
+		mCb = new byte[mY.length / 4];
+		mCr = new byte[mY.length / 4];
+	}
+
+	/**
+	 * Converts a captured frame into this one, scaling it to the size of the
+	 * pictures. Each pixel is taken from the nearest one in the source, and
+	 * each chroma sample from the four pixels it covers. The padding up to
+	 * a whole macroblock repeats the last row and column.
+	 *
+	 * @param rgba         The captured frame, as RGBA pixels starting with the bottom row.
+	 * @param sourceWidth  The width of the captured frame.
+	 * @param sourceHeight The height of the captured frame.
+	 */
+	void convert(ByteBuffer rgba, int sourceWidth, int sourceHeight)
+	{
+		int rowSize = sourceWidth * 4;
+		if (sourceWidth != mSourceWidth)
+		{
+			mSourceWidth = sourceWidth;
+			mRow0 = new byte[rowSize];
+			mRow1 = new byte[rowSize];
+			mSourceX = new int[mCodedWidth];
+			for (int x = 0; x < mCodedWidth; x++)
+				mSourceX[x] = (Math.min(x, mWidth - 1) * sourceWidth / mWidth) * 4;
+		}
+
+		int chromaWidth = mCodedWidth / 2;
+		for (int y = 0; y < mCodedHeight; y += 2)
+		{
+			readRow(rgba, sourceWidth, sourceHeight, y, mRow0);
+			readRow(rgba, sourceWidth, sourceHeight, y + 1, mRow1);
+
+			int luma = y * mCodedWidth;
+			int chroma = (y / 2) * chromaWidth;
+			for (int x = 0; x < mCodedWidth; x += 2)
+			{
+				int left = mSourceX[x];
+				int right = mSourceX[x + 1];
+
+				int r0 = mRow0[left] & 0xFF, g0 = mRow0[left + 1] & 0xFF, b0 = mRow0[left + 2] & 0xFF;
+				int r1 = mRow0[right] & 0xFF, g1 = mRow0[right + 1] & 0xFF, b1 = mRow0[right + 2] & 0xFF;
+				int r2 = mRow1[left] & 0xFF, g2 = mRow1[left + 1] & 0xFF, b2 = mRow1[left + 2] & 0xFF;
+				int r3 = mRow1[right] & 0xFF, g3 = mRow1[right + 1] & 0xFF, b3 = mRow1[right + 2] & 0xFF;
+
+				// Full range BT.601, which is what jsmpeg converts back from.
+				mY[luma + x] = (byte) ((77 * r0 + 150 * g0 + 29 * b0 + 128) >> 8);
+				mY[luma + x + 1] = (byte) ((77 * r1 + 150 * g1 + 29 * b1 + 128) >> 8);
+				mY[luma + mCodedWidth + x] = (byte) ((77 * r2 + 150 * g2 + 29 * b2 + 128) >> 8);
+				mY[luma + mCodedWidth + x + 1] = (byte) ((77 * r3 + 150 * g3 + 29 * b3 + 128) >> 8);
+
+				int r = r0 + r1 + r2 + r3;
+				int g = g0 + g1 + g2 + g3;
+				int b = b0 + b1 + b2 + b3;
+				mCb[chroma + x / 2] = (byte) Math.min(255, ((-43 * r - 85 * g + 128 * b + 512) >> 10) + 128);
+				mCr[chroma + x / 2] = (byte) Math.min(255, ((128 * r - 107 * g - 21 * b + 512) >> 10) + 128);
+			}
+		}
+	}
+
+	// Reads the source row that row y of the picture is taken from.
+	private void readRow(ByteBuffer rgba, int sourceWidth, int sourceHeight, int y, byte[] row)
+	{
+		int sourceY = Math.min(y, mHeight - 1) * sourceHeight / mHeight;
+
+		// GL reads the frame from the bottom up
+		rgba.position((sourceHeight - 1 - sourceY) * sourceWidth * 4);
+		rgba.get(row, 0, sourceWidth * 4);
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class InputQueueTest extends TestCase
+{
+	private static final class Recorder implements InputQueue.Consumer
+	{
+		private final List<float[]> events = new ArrayList<float[]>();
+
+		public void onInputEvent(int type, int device, int code, int action, float x, float y)
+		{
+			events.add(new float[] { type, device, code, action, x, y });
+		}
+	}
+
+	public void testCapacityMustBePowerOfTwo()
+	{
+		try
+		{
+			new InputQueue(12);
+			fail();
+		}
+		catch (IllegalArgumentException expected)
+		{
+		}
+	}
+
+	public void testEventsComeOutInOrder()
+	{
+		InputQueue queue = new InputQueue(8);
+		assertTrue(queue.putTouch(3, 0, 0.5f, -0.5f));
+		assertTrue(queue.putButton(1, 96, 0));
+		assertTrue(queue.putAxis(1, 2, -0.25f));
+
+		Recorder recorder = new Recorder();
+		assertEquals(3, queue.drain(recorder));
+		assertEquals(3, recorder.events.size());
+
+		float[] touch = recorder.events.get(0);
+		assertEquals(InputQueue.TYPE_TOUCH, (int) touch[0]);
+		assertEquals(3, (int) touch[1]);
+		assertEquals(0.5f, touch[4], 0.0f);
+		assertEquals(-0.5f, touch[5], 0.0f);
+
+		float[] button = recorder.events.get(1);
+		assertEquals(InputQueue.TYPE_BUTTON, (int) button[0]);
+		assertEquals(96, (int) button[2]);
+
+		float[] axis = recorder.events.get(2);
+		assertEquals(InputQueue.TYPE_AXIS, (int) axis[0]);
+		assertEquals(-0.25f, axis[4], 0.0f);
+
+		assertEquals(0, queue.drain(recorder));
+		assertEquals(3, queue.getTakenCount());
+	}
+
+	public void testFullQueueDropsEvents()
+	{
+		InputQueue queue = new InputQueue(4);
+		for (int i = 0; i < 4; i++)
+			assertTrue(queue.putButton(0, i, 0));
+
+		assertFalse(queue.putButton(0, 4, 0));
+		assertEquals(1, queue.getDroppedCount());
+
+		// Taking events out makes room again, across the wrap of the buffer.
+		Recorder recorder = new Recorder();
+		assertEquals(4, queue.drain(recorder));
+		for (int i = 0; i < 4; i++)
+			assertTrue(queue.putButton(0, 10 + i, 0));
+		assertEquals(4, queue.drain(recorder));
+		assertEquals(13, (int) recorder.events.get(7)[2]);
+	}
+
+	public void testLag() throws InterruptedException
+	{
+		InputQueue queue = new InputQueue(4);
+		queue.putButton(0, 0, 0);
+		Thread.sleep(20);
+		queue.drain(new Recorder());
+
+		assertTrue(queue.getTotalLag() >= 20000);
+		assertEquals(queue.getTotalLag(), queue.getMaxLag());
+
+		// The longest lag starts over on the next drain after a reset.
+		queue.resetMaxLag();
+		assertTrue(queue.getMaxLag() >= 20000);
+		queue.putButton(0, 0, 1);
+		queue.drain(new Recorder());
+		assertTrue(queue.getMaxLag() < 20000);
+	}
+
+	// A producer and a consumer going as fast as they can, with a queue small
+	// enough to be full most of the time. Every event has to come out once,
+	// whole and in order, or be counted as dropped.
+	public void testSyntheticProducer() throws InterruptedException
+	{
+		final int count = 200000;
+		final InputQueue queue = new InputQueue(16);
+		final int[] accepted = new int[1];
+
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < count; i++)
+				{
+					// The fields of a record all carry the number of the event, to catch torn records.
+					if (queue.putTouch(i, i & 3, i, -i))
+						accepted[0]++;
+				}
+			}
+		};
+
+		final List<String> errors = new ArrayList<String>();
+		final int[] taken = new int[1];
+		final int[] last = { -1 };
+		InputQueue.Consumer checker = new InputQueue.Consumer()
+		{
+			public void onInputEvent(int type, int device, int code, int action, float x, float y)
+			{
+				if (errors.size() < 10 && (device <= last[0] || action != (device & 3) || x != device || y != -device))
+					errors.add("Event " + device + " after " + last[0] + ": " + action + ", " + x + ", " + y);
+
+				last[0] = device;
+				taken[0]++;
+			}
+		};
+
+		producer.start();
+		while (producer.isAlive())
+			queue.drain(checker);
+		producer.join();
+		queue.drain(checker);
+
+		assertEquals(errors.toString(), 0, errors.size());
+		assertEquals(accepted[0], taken[0]);
+		assertEquals(count, accepted[0] + queue.getDroppedCount());
+		assertEquals(taken[0], queue.getTakenCount());
+	}
+}
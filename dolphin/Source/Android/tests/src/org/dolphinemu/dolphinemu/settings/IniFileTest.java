@@ -0,0 +1,162 @@
+/**
+ * Copyright 2013 Dolphin Emulator Project
+ * Licensed under GPLv2
+ * Refer to the license.txt file included.
+ */
+
+package org.dolphinemu.dolphinemu.settings;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public final class IniFileTest extends TestCase
+{
+	private File mFile;
+
+	@Override
+	protected void setUp() throws IOException
+	{
+		mFile = File.createTempFile("IniFileTest", ".ini");
+	}
+
+	@Override
+	protected void tearDown()
+	{
+		mFile.delete();
+		new File(mFile.getPath() + ".tmp").delete();
+	}
+
+	public void testParse() throws IOException
+	{
+		write("[Core]\nCPUCore = 3\r\nName = \"Quoted\"\n[GeckoCodes]\n$Code\n0000 1111\n");
+		IniFile ini = new IniFile(mFile);
+
+		assertEquals("3", ini.get("Core", "CPUCore", null));
+		assertEquals("3", ini.get("core", "CPUCore", null));
+		assertNull(ini.get("Core", "cpucore", null));
+		assertEquals("Quoted", ini.get("Core", "Name", null));
+		assertEquals(3, ini.getInt("Core", "CPUCore", 0));
+		assertEquals(7, ini.getInt("Core", "Name", 7));
+		assertFalse(ini.isDirty());
+	}
+
+	public void testSaveRoundTrip() throws IOException
+	{
+		write("[GeckoCodes]\n$Code\n0000 1111\n");
+		IniFile ini = new IniFile(mFile);
+		ini.set("Core", "CPUCore", "3");
+		ini.set("Core", "Fastmem", true);
+		assertTrue(ini.isDirty());
+		assertTrue(ini.save());
+		assertFalse(ini.isDirty());
+
+		IniFile reloaded = new IniFile(mFile);
+		assertEquals("3", reloaded.get("Core", "CPUCore", null));
+		assertTrue(reloaded.getBoolean("Core", "Fastmem", false));
+		assertEquals("[GeckoCodes]\n$Code\n0000 1111\n[Core]\nCPUCore = 3\nFastmem = True\n", read());
+	}
+
+	public void testSettingSameValueIsNotAChange() throws IOException
+	{
+		write("[Core]\nCPUCore = 3\n");
+		IniFile ini = new IniFile(mFile);
+		ini.set("Core", "CPUCore", "3");
+		assertFalse(ini.isDirty());
+	}
+
+	public void testRefreshPicksUpOtherWriters() throws IOException
+	{
+		write("[Core]\nCPUCore = 3\n");
+		IniFile ini = new IniFile(mFile);
+		assertFalse(ini.refresh());
+
+		writeLater("[Core]\nCPUCore = 1\n");
+		assertTrue(ini.refresh());
+		assertEquals("1", ini.get("Core", "CPUCore", null));
+	}
+
+	public void testRefreshKeepsUnsavedChanges() throws IOException
+	{
+		write("[Core]\nCPUCore = 3\nFastmem = False\n");
+		IniFile ini = new IniFile(mFile);
+		ini.set("Core", "Fastmem", "True");
+		ini.delete("Core", "CPUCore");
+
+		writeLater("[Core]\nCPUCore = 1\nFastmem = False\n[Video]\nAspect = 2\n");
+		assertTrue(ini.refresh());
+
+		assertEquals("True", ini.get("Core", "Fastmem", null));
+		assertNull(ini.get("Core", "CPUCore", null));
+		assertEquals("2", ini.get("Video", "Aspect", null));
+		assertTrue(ini.isDirty());
+	}
+
+	public void testSaveMergesWithOtherWriters() throws IOException
+	{
+		write("[Core]\nCPUCore = 3\n");
+		IniFile ini = new IniFile(mFile);
+		ini.set("Core", "Fastmem", "True");
+
+		writeLater("[Core]\nCPUCore = 1\n[Video]\nAspect = 2\n");
+		assertTrue(ini.save());
+
+		IniFile reloaded = new IniFile(mFile);
+		assertEquals("1", reloaded.get("Core", "CPUCore", null));
+		assertEquals("True", reloaded.get("Core", "Fastmem", null));
+		assertEquals("2", reloaded.get("Video", "Aspect", null));
+	}
+
+	public void testSameChangeFromBothWritersIsNotSavedAgain() throws IOException
+	{
+		write("[Core]\nFastmem = False\n");
+		IniFile ini = new IniFile(mFile);
+		ini.set("Core", "Fastmem", "True");
+
+		writeLater("[Core]\nFastmem = True\n");
+		assertTrue(ini.refresh());
+		assertFalse(ini.isDirty());
+	}
+
+	private void write(String contents) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(mFile);
+		try
+		{
+			out.write(contents.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	// Writes the file as another writer would, making
+	// sure the change is visible through its last-modified time.
+	private void writeLater(String contents) throws IOException
+	{
+		long lastModified = mFile.lastModified();
+		write(contents);
+		mFile.setLastModified(lastModified + 2000);
+	}
+
+	private String read() throws IOException
+	{
+		byte[] bytes = new byte[(int) mFile.length()];
+		FileInputStream in = new FileInputStream(mFile);
+		try
+		{
+			int read = 0;
+			while (read < bytes.length)
+				read += in.read(bytes, read, bytes.length - read);
+		}
+		finally
+		{
+			in.close();
+		}
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -58,6 +58,7 @@
 #include "LogManager.h"
 
 #include "State.h"
+#include "Rewind.h"
 #include "Movie.h"
 #include "PatchEngine.h"
 
@@ -72,6 +73,18 @@ Common::Timer Timer;
 volatile u32 DrawnFrame = 0;
 u32 DrawnVideo = 0;
 
+// Time the frame limiter spent waiting since the last info update, in ms
+static u32 ThrottleIdleTime = 0;
+
+// Figures from the last info update, read by the host from other threads
+static volatile u32 s_lastSpeed = 0;
+static volatile u32 s_lastIdle = 0;
+
+// Running totals for timing the CPU thread, see GetFieldCount()
+static u64 FieldStartTime = 0;
+static volatile u32 s_fieldCount = 0;
+static volatile u32 s_emulationTime = 0;
+
 // Function forwarding
 const char *Callback_ISOName(void);
 void Callback_WiimoteInterruptChannel(int _number, u16 _channelID, const void* _pData, u32 _Size);
@@ -194,6 +207,9 @@ bool Init()
 
 	g_CoreStartupParameter = _CoreParameter;
 
+	// Don't count the time between the last game and this one as emulation time
+	FieldStartTime = 0;
+
 	INFO_LOG(OSREPORT, "Starting core = %s mode",
 		g_CoreStartupParameter.bWii ? "Wii" : "Gamecube");
 	INFO_LOG(OSREPORT, "CPU Thread separate = %s",
@@ -611,6 +627,10 @@ bool PauseAndLock(bool doLock, bool unpauseOnUnlock)
 // This should only be called from VI
 void VideoThrottle()
 {
+	// Time it took to emulate this field, not counting the frame limiter
+	if (FieldStartTime != 0)
+		s_emulationTime += (u32)(Common::Timer::GetTimeUs() - FieldStartTime);
+
 	u32 TargetVPS = (SConfig::GetInstance().m_Framelimit > 2) ?
 		(SConfig::GetInstance().m_Framelimit - 1) * 5 : VideoInterface::TargetRefreshRate;
 
@@ -632,6 +652,8 @@ void VideoThrottle()
 		while ((u32)Timer.GetTimeDifference() < frametime)
 			Common::YieldCPU();
 			//Common::SleepCurrentThread(1);
+
+		ThrottleIdleTime += (u32)Timer.GetTimeDifference() - timeDifference;
 	}
 
 	// Update info per second
@@ -644,9 +666,35 @@ void VideoThrottle()
 		Timer.Update();
 		Common::AtomicStore(DrawnFrame, 0);
 		DrawnVideo = 0;
+		ThrottleIdleTime = 0;
 	}
 
 	DrawnVideo++;
+
+	Rewind::OnField();
+
+	s_fieldCount++;
+	FieldStartTime = Common::Timer::GetTimeUs();
+}
+
+u32 GetEmulationSpeed()
+{
+	return s_lastSpeed;
+}
+
+u32 GetThrottleIdle()
+{
+	return s_lastIdle;
+}
+
+u32 GetFieldCount()
+{
+	return s_fieldCount;
+}
+
+u32 GetEmulationTime()
+{
+	return s_emulationTime;
 }
 
 // Executed from GPU thread
@@ -654,6 +702,11 @@ void VideoThrottle()
 // depending on the framelimit set
 bool ShouldSkipFrame(int skipped)
 {
+	// With the frame limiter off there's no frame rate to keep up with,
+	// so skip as many frames as allowed.
+	if (isTabPressed)
+		return true;
+
 	const u32 TargetFPS = (SConfig::GetInstance().m_Framelimit > 1)
 		? SConfig::GetInstance().m_Framelimit * 5
 		: VideoInterface::TargetRefreshRate;
@@ -698,6 +751,9 @@ void UpdateTitle()
 	u32 VPS = DrawnVideo * 1000 / ElapseTime;
 	u32 Speed = DrawnVideo * (100 * 1000) / (VideoInterface::TargetRefreshRate * ElapseTime);
 
+	s_lastSpeed = Speed;
+	s_lastIdle = (ThrottleIdleTime < ElapseTime) ? ThrottleIdleTime * 100 / ElapseTime : 100;
+
 	// Settings are shown the same for both extended and summary info
 	std::string SSettings = StringFromFormat("%s %s | %s | %s", cpu_core_base->GetName(),	_CoreParameter.bCPUThread ? "DC" : "SC",
 		g_video_backend->GetName().c_str(), _CoreParameter.bDSPHLE ? "HLE" : "LLE");
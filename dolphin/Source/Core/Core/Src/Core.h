@@ -80,6 +80,19 @@ void RequestRefreshInfo();
 
 void UpdateTitle();
 
+// Emulation speed over the last second, in percent of full speed.
+u32 GetEmulationSpeed();
+
+// How much of the last second the frame limiter spent waiting, in percent.
+// Anything above zero means emulation could have run faster than it did.
+u32 GetThrottleIdle();
+
+// Running totals of the number of fields emulated, and of the time the CPU thread
+// spent emulating them in microseconds, not counting time spent in the frame limiter.
+// Both wrap around, so only the difference between two readings means anything.
+u32 GetFieldCount();
+u32 GetEmulationTime();
+
 // waits until all systems are paused and fully idle, and acquires a lock on that state.
 // or, if doLock is false, releases a lock on that state and optionally unpauses.
 // calls must be balanced (once with doLock true, then once with doLock false) but may be recursive.
@@ -23,6 +23,7 @@
 #include "SystemTimers.h"
 #include "../IPC_HLE/WII_IPC_HLE.h"
 #include "../State.h"
+#include "../Rewind.h"
 #include "../PowerPC/PPCAnalyst.h"
 
 namespace HW
@@ -33,6 +34,7 @@ namespace HW
 		SystemTimers::PreInit();
 
 		State::Init();
+		Rewind::Init();
 
 		// Init the whole Hardware
 		AudioInterface::Init();
@@ -71,6 +73,7 @@ namespace HW
 			WII_IPC_HLE_Interface::Shutdown();
 		}
 
+		Rewind::Shutdown();
 		State::Shutdown();
 		CoreTiming::Shutdown();
 	}
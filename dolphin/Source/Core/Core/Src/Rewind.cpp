@@ -0,0 +1,347 @@
+// Copyright 2013 Dolphin Emulator Project
+// Licensed under GPLv2
+// Refer to the license.txt file included.
+
+#include <deque>
+#include <lzo/lzo1x.h>
+
+#include "Common.h"
+#include "Thread.h"
+#include "Rewind.h"
+#include "State.h"
+#include "CoreTiming.h"
+#include "HW/SystemTimers.h"
+
+namespace Rewind
+{
+
+// Captures are compressed in chunks of this size,
+// so no buffer the size of a whole state is needed for the output
+static const u32 CHUNK_LEN = 128 * 1024u;
+static const u32 CHUNK_OUT_LEN = CHUNK_LEN + (CHUNK_LEN / 16) + 64 + 3;
+
+// Every this many captures, a full one is stored instead of a delta.
+// The deltas grow as the state drifts away from its keyframe.
+static const u32 KEYFRAME_INTERVAL = 10;
+
+struct Capture
+{
+	// Chunks of { u32 compressed length, compressed data }
+	std::vector<u8> data;
+	u32 size;
+	bool keyframe;
+	u64 ticks;
+};
+
+static u32 s_interval = 0;
+static size_t s_memory_budget = 0;
+
+static int s_ev_capture = -1;
+static int s_ev_load = -1;
+static u32 s_fields = 0;
+
+// Everything below is protected by s_lock, except for the buffers
+// while they're handed over to the worker through s_snapshot_ready.
+static std::mutex s_lock;
+static std::condition_variable s_cond;
+static std::thread s_worker;
+static bool s_quit = false;
+
+static std::deque<Capture> s_captures;
+static size_t s_used = 0;
+
+// Increased whenever the history is rewound, so a capture
+// taken before that isn't added to the new timeline.
+static u32 s_generation = 0;
+
+// The capture being compressed, and the state it was captured from
+static std::vector<u8> s_snapshot;
+static bool s_snapshot_ready = false;
+static u32 s_snapshot_generation = 0;
+static u64 s_snapshot_ticks = 0;
+
+// The last keyframe, uncompressed. Only used by the worker.
+static std::vector<u8> s_keyframe;
+static u32 s_since_keyframe = 0;
+static bool s_need_keyframe = true;
+
+static u8 s_chunk_out[CHUNK_OUT_LEN];
+static lzo_align_t s_wrkmem[(LZO1X_1_MEM_COMPRESS + (sizeof(lzo_align_t) - 1)) / sizeof(lzo_align_t)];
+
+static void Compress(const std::vector<u8>& in, std::vector<u8>& out)
+{
+	out.clear();
+
+	for (size_t i = 0; i < in.size(); i += CHUNK_LEN)
+	{
+		lzo_uint in_len = std::min<size_t>(CHUNK_LEN, in.size() - i);
+		lzo_uint out_len = 0;
+		lzo1x_1_compress(&in[i], in_len, s_chunk_out, &out_len, s_wrkmem);
+
+		u32 len = (u32)out_len;
+		out.insert(out.end(), (u8*)&len, (u8*)&len + sizeof(len));
+		out.insert(out.end(), s_chunk_out, s_chunk_out + out_len);
+	}
+}
+
+static bool Decompress(const Capture& capture, std::vector<u8>& out)
+{
+	out.resize(capture.size);
+
+	size_t pos = 0;
+	for (size_t i = 0; i < out.size(); i += CHUNK_LEN)
+	{
+		u32 len;
+		if (pos + sizeof(len) > capture.data.size())
+			return false;
+		memcpy(&len, &capture.data[pos], sizeof(len));
+		pos += sizeof(len);
+
+		lzo_uint out_len = std::min<size_t>(CHUNK_LEN, out.size() - i);
+		if (pos + len > capture.data.size() ||
+			lzo1x_decompress_safe(&capture.data[pos], len, &out[i], &out_len, NULL) != LZO_E_OK)
+			return false;
+		pos += len;
+	}
+
+	return true;
+}
+
+// XORs b into a. Where a is longer than b, it's left as it is.
+static void Xor(std::vector<u8>& a, const std::vector<u8>& b)
+{
+	const size_t len = std::min(a.size(), b.size());
+	const size_t words = len / sizeof(u32);
+
+	u32* const a32 = (u32*)&a[0];
+	const u32* const b32 = (const u32*)&b[0];
+	for (size_t i = 0; i < words; ++i)
+		a32[i] ^= b32[i];
+
+	for (size_t i = words * sizeof(u32); i < len; ++i)
+		a[i] ^= b[i];
+}
+
+static void Evict()
+{
+	// Always keep the newest capture, however big it is
+	while (s_used > s_memory_budget && s_captures.size() > 1)
+	{
+		s_used -= s_captures.front().data.size();
+		s_captures.pop_front();
+
+		// Deltas are useless without their keyframe
+		while (!s_captures.empty() && !s_captures.front().keyframe)
+		{
+			s_used -= s_captures.front().data.size();
+			s_captures.pop_front();
+		}
+	}
+}
+
+static void WorkerThread()
+{
+	Common::SetCurrentThreadName("Rewind thread");
+
+	std::unique_lock<std::mutex> lk(s_lock);
+	while (true)
+	{
+		while (!s_quit && !s_snapshot_ready)
+			s_cond.wait(lk);
+
+		if (s_quit)
+			break;
+
+		const u32 generation = s_snapshot_generation;
+		const bool keyframe = s_need_keyframe || s_since_keyframe >= KEYFRAME_INTERVAL ||
+			s_snapshot.size() != s_keyframe.size();
+		s_need_keyframe = false;
+		lk.unlock();
+
+		Capture capture;
+		capture.size = (u32)s_snapshot.size();
+		capture.keyframe = keyframe;
+		capture.ticks = s_snapshot_ticks;
+
+		if (keyframe)
+		{
+			Compress(s_snapshot, capture.data);
+			s_keyframe.swap(s_snapshot);
+			s_since_keyframe = 0;
+		}
+		else
+		{
+			Xor(s_snapshot, s_keyframe);
+			Compress(s_snapshot, capture.data);
+			++s_since_keyframe;
+		}
+
+		lk.lock();
+		if (generation != s_generation || (!keyframe && s_captures.empty()))
+		{
+			// The keyframe this would have been based on isn't in the history
+			s_need_keyframe = true;
+		}
+		else
+		{
+			s_used += capture.data.size();
+			s_captures.push_back(Capture());
+			s_captures.back().data.swap(capture.data);
+			s_captures.back().size = capture.size;
+			s_captures.back().keyframe = capture.keyframe;
+			s_captures.back().ticks = capture.ticks;
+			Evict();
+
+			if (s_captures.empty())
+				s_need_keyframe = true;
+		}
+		s_snapshot_ready = false;
+	}
+}
+
+static void CaptureCallback(u64 userdata, int cyclesLate)
+{
+	{
+		std::lock_guard<std::mutex> lk(s_lock);
+
+		// Rather than making the CPU thread wait, skip
+		// this capture if the last one isn't done yet.
+		if (s_snapshot_ready || !s_worker.joinable())
+			return;
+	}
+
+	State::SaveToBuffer(s_snapshot);
+
+	std::lock_guard<std::mutex> lk(s_lock);
+	s_snapshot_ticks = CoreTiming::GetTicks();
+	s_snapshot_generation = s_generation;
+	s_snapshot_ready = true;
+	s_cond.notify_one();
+}
+
+static void LoadCallback(u64 userdata, int cyclesLate)
+{
+	Load((u32)userdata);
+}
+
+void Configure(u32 interval, size_t memory_budget)
+{
+	s_interval = interval;
+	s_memory_budget = memory_budget;
+}
+
+void Init()
+{
+	s_ev_capture = -1;
+	s_ev_load = -1;
+	s_fields = 0;
+	s_quit = false;
+	s_need_keyframe = true;
+	s_since_keyframe = 0;
+
+	if (s_interval == 0)
+		return;
+
+	// Only registered while rewinding is on. A state saved with one of these
+	// pending and loaded with rewinding off just loses it, which is harmless.
+	s_ev_capture = CoreTiming::RegisterEvent("RewindCapture", CaptureCallback);
+	s_ev_load = CoreTiming::RegisterEvent("RewindLoad", LoadCallback);
+
+	s_worker = std::thread(WorkerThread);
+}
+
+void Shutdown()
+{
+	if (s_worker.joinable())
+	{
+		{
+			std::lock_guard<std::mutex> lk(s_lock);
+			s_quit = true;
+			s_cond.notify_one();
+		}
+		s_worker.join();
+	}
+
+	// Give the memory back right away
+	std::deque<Capture>().swap(s_captures);
+	std::vector<u8>().swap(s_snapshot);
+	std::vector<u8>().swap(s_keyframe);
+	s_used = 0;
+	s_snapshot_ready = false;
+}
+
+void OnField()
+{
+	// The VI is in the middle of an update here, which isn't a place
+	// the state can be saved from, so the capture gets its own event.
+	if (s_interval != 0 && ++s_fields >= s_interval)
+	{
+		s_fields = 0;
+		CoreTiming::ScheduleEvent(0, s_ev_capture);
+	}
+}
+
+std::vector<float> GetAges()
+{
+	std::lock_guard<std::mutex> lk(s_lock);
+
+	const u64 now = CoreTiming::GetTicks();
+	const float ticks_per_second = (float)SystemTimers::GetTicksPerSecond();
+
+	std::vector<float> ages;
+	ages.reserve(s_captures.size());
+	for (std::deque<Capture>::reverse_iterator it = s_captures.rbegin(); it != s_captures.rend(); ++it)
+		ages.push_back((now - it->ticks) / ticks_per_second);
+
+	return ages;
+}
+
+bool Load(u32 index)
+{
+	std::vector<u8> buffer;
+
+	{
+		std::lock_guard<std::mutex> lk(s_lock);
+		if (index >= s_captures.size())
+			return false;
+
+		const size_t target = s_captures.size() - 1 - index;
+		size_t keyframe = target;
+		while (keyframe != 0 && !s_captures[keyframe].keyframe)
+			--keyframe;
+
+		if (!s_captures[keyframe].keyframe || !Decompress(s_captures[keyframe], buffer))
+			return false;
+
+		if (keyframe != target)
+		{
+			std::vector<u8> delta;
+			if (!Decompress(s_captures[target], delta))
+				return false;
+
+			Xor(delta, buffer);
+			buffer.swap(delta);
+		}
+
+		// Drop the future, along with anything captured from it that's still being compressed
+		while (s_captures.size() > target + 1)
+		{
+			s_used -= s_captures.back().data.size();
+			s_captures.pop_back();
+		}
+		++s_generation;
+		s_need_keyframe = true;
+	}
+
+	State::LoadFromBuffer(buffer);
+	s_fields = 0;
+	return true;
+}
+
+void ScheduleLoad(u32 index)
+{
+	if (s_ev_load != -1)
+		CoreTiming::ScheduleEvent_Threadsafe(0, s_ev_load, index);
+}
+
+}
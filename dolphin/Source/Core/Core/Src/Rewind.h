@@ -0,0 +1,53 @@
+// Copyright 2013 Dolphin Emulator Project
+// Licensed under GPLv2
+// Refer to the license.txt file included.
+
+// Keeps a history of recent states in memory, so emulation can be taken back
+// a few seconds without the user having saved a state beforehand.
+//
+// Every so many fields the CPU thread copies the state into a buffer, and a
+// worker thread compresses it. Most captures are stored as the XOR of
+// themselves and the last keyframe, which is mostly zeros and compresses to
+// a tiny fraction of a full state. The oldest captures are thrown away
+// whenever the history grows past its memory budget.
+//
+// On top of the budget, two uncompressed states are kept while rewinding is
+// on: the capture being compressed, and the last keyframe.
+
+#ifndef _REWIND_H_
+#define _REWIND_H_
+
+#include "Common.h"
+
+#include <vector>
+
+namespace Rewind
+{
+
+// Sets how often a state is captured, in fields (0 turns rewinding off),
+// and how many bytes the captured states may take up in total.
+// Takes effect the next time emulation starts.
+void Configure(u32 interval, size_t memory_budget);
+
+void Init();
+void Shutdown();
+
+// Called by the VI once per field, on the CPU thread.
+void OnField();
+
+// Gets how far back each captured state is, in seconds of emulated time,
+// newest first. The index of a state in here is what Load takes.
+std::vector<float> GetAges();
+
+// Goes back to a captured state, 0 being the newest one. Every
+// state captured after it is dropped, since that future never happened.
+// Returns false if there's no such state.
+bool Load(u32 index);
+
+// Same as Load, except it's done on the CPU thread the next time it handles
+// events, so the caller doesn't have to wait for the core to pause.
+void ScheduleLoad(u32 index);
+
+}
+
+#endif
@@ -19,6 +19,11 @@
 #include "VideoBackendBase.h"
 
 #include <lzo/lzo1x.h>
+#ifdef _WIN32
+#include <io.h>
+#else
+#include <unistd.h>
+#endif
 #include "HW/Memmap.h"
 #include "HW/VideoInterface.h"
 #include "HW/SystemTimers.h"
@@ -46,6 +51,11 @@ static HEAP_ALLOC(wrkmem, LZO1X_1_MEM_COMPRESS);
 static std::string g_last_filename;
 
 static CallbackFunc g_onAfterLoadCb = NULL;
+static SaveCallbackFunc g_onAfterSaveCb = NULL;
+
+// CoreTiming events for saving and loading on the CPU thread
+static int g_ev_save = -1;
+static int g_ev_load = -1;
 
 // Temporary undo state buffer
 static std::vector<u8> g_undo_load_buffer;
@@ -173,8 +183,6 @@ int GetEmptySlot(std::map<double, int> m)
 	return -1;
 }
 
-static std::string MakeStateFilename(int number);
-
 // read state timestamps
 std::map<double, int> GetSavedStates()
 {
@@ -196,6 +204,27 @@ std::map<double, int> GetSavedStates()
 	return m;
 }
 
+// Makes sure everything written to the file has actually reached the disk
+static bool SyncFile(File::IOFile& f)
+{
+	if (!f.Flush())
+		return false;
+
+#ifdef _WIN32
+	return 0 == _commit(_fileno(f.GetHandle()));
+#else
+	return 0 == fsync(fileno(f.GetHandle()));
+#endif
+}
+
+static void SaveFailed(const std::string& filename)
+{
+	Core::DisplayMessage("Could not save state", 2000);
+	if (g_onAfterSaveCb)
+		g_onAfterSaveCb(filename, 0);
+	g_compressAndDumpStateSyncEvent.Set();
+}
+
 struct CompressAndDumpState_args
 {
 	std::vector<u8>* buffer_vector;
@@ -217,30 +246,15 @@ void CompressAndDumpState(CompressAndDumpState_args save_args)
 	// For easy debugging
 	Common::SetCurrentThreadName("SaveState thread");
 
-	// Moving to last overwritten save-state
-	if (File::Exists(filename))
-	{
-		if (File::Exists(File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav"))
-			File::Delete((File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav"));
-		if (File::Exists(File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav.dtm"))
-			File::Delete((File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav.dtm"));
-
-		if (!File::Rename(filename, File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav"))
-			Core::DisplayMessage("Failed to move previous state to state undo backup", 1000);
-		else 
-			File::Rename(filename + ".dtm", File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav.dtm");
-	}
-
-	if ((Movie::IsRecordingInput() || Movie::IsPlayingInput()) && !Movie::IsJustStartingRecordingInputFromSaveState())
-		Movie::SaveRecording((filename + ".dtm").c_str());
-	else if (!Movie::IsRecordingInput() && !Movie::IsPlayingInput())
-		File::Delete(filename + ".dtm");
+	// The state is written to a temporary file, which only replaces the real one
+	// once it's completely on disk. That way a crash or a full disk can never
+	// leave behind a truncated state where a good one used to be.
+	const std::string temp_filename = filename + ".tmp";
 
-	File::IOFile f(filename, "wb");
+	File::IOFile f(temp_filename, "wb");
 	if (!f)
 	{
-		Core::DisplayMessage("Could not save state", 2000);
-		g_compressAndDumpStateSyncEvent.Set();
+		SaveFailed(filename);
 		return;
 	}
 
@@ -283,8 +297,59 @@ void CompressAndDumpState(CompressAndDumpState_args save_args)
 		f.WriteBytes(buffer_data, buffer_size);
 	}
 
+	const u64 file_size = f.Tell();
+	if (!SyncFile(f) || !f.Close())
+	{
+		File::Delete(temp_filename);
+		SaveFailed(filename);
+		return;
+	}
+
+	// Moving to last overwritten save-state
+	const std::string last_filename = File::GetUserPath(D_STATESAVES_IDX) + "lastState.sav";
+	bool backed_up = false;
+	if (File::Exists(filename))
+	{
+		if (File::Exists(last_filename))
+			File::Delete(last_filename);
+		if (File::Exists(last_filename + ".dtm"))
+			File::Delete(last_filename + ".dtm");
+
+		if (!File::Rename(filename, last_filename))
+		{
+			Core::DisplayMessage("Failed to move previous state to state undo backup", 1000);
+		}
+		else
+		{
+			backed_up = true;
+			File::Rename(filename + ".dtm", last_filename + ".dtm");
+		}
+	}
+
+	if (!File::Rename(temp_filename, filename))
+	{
+		File::Delete(temp_filename);
+
+		// Put the previous state back rather than leave the slot empty
+		if (backed_up)
+		{
+			File::Rename(last_filename, filename);
+			File::Rename(last_filename + ".dtm", filename + ".dtm");
+		}
+
+		SaveFailed(filename);
+		return;
+	}
+
+	if ((Movie::IsRecordingInput() || Movie::IsPlayingInput()) && !Movie::IsJustStartingRecordingInputFromSaveState())
+		Movie::SaveRecording((filename + ".dtm").c_str());
+	else if (!Movie::IsRecordingInput() && !Movie::IsPlayingInput())
+		File::Delete(filename + ".dtm");
+
 	Core::DisplayMessage(StringFromFormat("Saved State to %s",
 		filename.c_str()).c_str(), 2000);
+	if (g_onAfterSaveCb)
+		g_onAfterSaveCb(filename, file_size);
 	g_compressAndDumpStateSyncEvent.Set();
 }
 
@@ -501,6 +566,11 @@ void SetOnAfterLoadCallback(CallbackFunc callback)
 	g_onAfterLoadCb = callback;
 }
 
+void SetOnAfterSaveCallback(SaveCallbackFunc callback)
+{
+	g_onAfterSaveCb = callback;
+}
+
 void VerifyAt(const std::string& filename)
 {
 	bool wasUnpaused = Core::PauseAndLock(true);
@@ -524,10 +594,23 @@ void VerifyAt(const std::string& filename)
 }
 
 
+static void SaveStateCallback(u64 userdata, int cyclesLate)
+{
+	Save((int)userdata);
+}
+
+static void LoadStateCallback(u64 userdata, int cyclesLate)
+{
+	Load((int)userdata);
+}
+
 void Init()
 {
 	if (lzo_init() != LZO_E_OK)
 		PanicAlertT("Internal LZO Error - lzo_init() failed");
+
+	g_ev_save = CoreTiming::RegisterEvent("SaveState", SaveStateCallback);
+	g_ev_load = CoreTiming::RegisterEvent("LoadState", LoadStateCallback);
 }
 
 void Shutdown()
@@ -547,10 +630,17 @@ void Shutdown()
 	}
 }
 
-static std::string MakeStateFilename(int number)
+std::string MakeStateFilename(int number)
 {
-	return StringFromFormat("%s%s.s%02i", File::GetUserPath(D_STATESAVES_IDX).c_str(),
-		SConfig::GetInstance().m_LocalCoreStartupParameter.GetUniqueID().c_str(), number);
+	return MakeStateFilename(SConfig::GetInstance().m_LocalCoreStartupParameter.GetUniqueID(), number);
+}
+
+std::string MakeStateFilename(const std::string& game_id, int number)
+{
+	if (number < 0)
+		return StringFromFormat("%s%s.a%02i", File::GetUserPath(D_STATESAVES_IDX).c_str(), game_id.c_str(), -number);
+
+	return StringFromFormat("%s%s.s%02i", File::GetUserPath(D_STATESAVES_IDX).c_str(), game_id.c_str(), number);
 }
 
 void Save(int slot, bool wait)
@@ -568,6 +658,16 @@ void Verify(int slot)
 	VerifyAt(MakeStateFilename(slot));
 }
 
+void ScheduleSave(int slot)
+{
+	CoreTiming::ScheduleEvent_Threadsafe(0, g_ev_save, slot);
+}
+
+void ScheduleLoad(int slot)
+{
+	CoreTiming::ScheduleEvent_Threadsafe(0, g_ev_load, slot);
+}
+
 void LoadLastSaved(int i)
 {
 	std::map<double, int> savedStates = GetSavedStates();
@@ -36,11 +36,21 @@ bool ReadHeader(const std::string filename, StateHeader& header);
 // ...But only if we're not in the main cpu thread.
 //    If we're in the main cpu thread then they run immediately instead
 //    because some things (like Lua) need them to run immediately.
-// Slots from 0-99.
+// Slots from 0 up. Slots below 0 are auto-saves, which are kept apart from the numbered ones.
 void Save(int slot, bool wait = false);
 void Load(int slot);
 void Verify(int slot);
 
+// Same as Save and Load, except the state is saved or loaded on the CPU thread
+// the next time it handles events, so the calling thread doesn't have to wait
+// for the core to pause. Only call these while the core is running.
+void ScheduleSave(int slot);
+void ScheduleLoad(int slot);
+
+// Gets the path of a slot of the running game, or of any game.
+std::string MakeStateFilename(int number);
+std::string MakeStateFilename(const std::string& game_id, int number);
+
 void SaveAs(const std::string &filename, bool wait = false);
 void LoadAs(const std::string &filename);
 void VerifyAt(const std::string &filename);
@@ -61,6 +71,11 @@ void Flush();
 typedef void(*CallbackFunc)(void);
 void SetOnAfterLoadCallback(CallbackFunc callback);
 
+// Called on the save thread once a state file has been written.
+// size is the size of the file on disk, or 0 if the state couldn't be saved.
+typedef void(*SaveCallbackFunc)(const std::string& filename, u64 size);
+void SetOnAfterSaveCallback(SaveCallbackFunc callback);
+
 }
 
 #endif
@@ -15,8 +15,12 @@
 // Official SVN repository and contact information can be found at
 // http://code.google.com/p/dolphin-emu/
 
+#include <cmath>
+#include <mutex>
+#include <time.h>
 #include <vector>
 #include "GLInterface.h"
+#include "HW/SI_Device.h"
 #include "Android/TextureLoader.h"
 #include "Android/ButtonManager.h"
 
@@ -26,6 +30,71 @@ namespace ButtonManager
 {
 	std::vector<Button*> m_buttons;
 	std::map<std::string, InputDevice*> m_controllers;
+
+	// The touchscreen button each pointer that's down went down on, by pointer ID.
+	std::map<int, Button*> m_touches;
+
+	// Gamepads registered by the frontend, indexed by handle.
+	// The device pointer is looked up lazily, since the controllers
+	// are recreated every time emulation starts.
+	struct GamepadHandle
+	{
+		std::string dev;
+		std::vector<int> axes;
+		InputDevice *device;
+	};
+	std::vector<GamepadHandle> m_handles;
+
+	// The input queues shared with the frontend, laid out as described in InputQueue.java.
+	enum InputRecordType
+	{
+		INPUT_TOUCH = 0,
+		INPUT_BUTTON,
+		INPUT_AXIS
+	};
+	struct InputRecord
+	{
+		s32 type;
+		s32 device;
+		s32 code;
+		s32 action;
+		float x;
+		float y;
+		s64 time;
+	};
+	const size_t queueWriteIndex = 0;
+	const size_t queueReadIndex = 64;
+	const size_t queueApplied = 68;
+	const size_t queueTotalLag = 72;
+	const size_t queueMaxLag = 76;
+	const size_t queueLagResetSeen = 80;
+	const size_t queueLagReset = 96;
+	const size_t queueRecordsStart = 128;
+	struct SharedQueue
+	{
+		u8 *buffer;
+		u32 mask;
+	};
+	const int maxInputQueues = 8;
+	std::mutex m_queue_lock;
+	SharedQueue m_queues[maxInputQueues];
+
+	// Remote players (RemoteInput.java) send their buttons in the order of
+	// ButtonType up to BUTTON_RIGHT followed by the triggers, and their sticks
+	// as main X, main Y, C X and C Y, like a gamepad would. Each of them is
+	// on the controller port of their number, everything else on the first.
+	// Players whose port has nothing plugged into it aren't bound at all.
+	const char *remoteDevices[] = { "Remote 1", "Remote 2", "Remote 3", "Remote 4" };
+	const int remoteDeviceNum = 4;
+
+	static int PortOf(const std::string &dev)
+	{
+		for (int d = 0; d < remoteDeviceNum; ++d)
+			if (dev == remoteDevices[d])
+				return d;
+		return 0;
+	}
+
 	// XXX: This needs to not be here so we can load the locations from file
 	// This will allow customizable button locations in the future
 	// These are the OpenGL on screen coordinates
@@ -64,7 +133,7 @@ namespace ButtonManager
 			it->second->AddBind(bind);
 			return;
 		}
-		m_controllers[dev] = new InputDevice(dev);
+		m_controllers[dev] = new InputDevice(dev, PortOf(dev));
 		m_controllers[dev]->AddBind(bind);
 	}
 
@@ -105,48 +174,107 @@ namespace ButtonManager
 				AddBind(std::string(dev), new sBind((ButtonType)a, type, bindnum, modifier == '-' ? -1.0f : 1.0f));
 		}
 
+		// A remote player is only bound if there's a controller plugged into
+		// their port, rather than having their input taken and go nowhere.
+		for (int d = 0; d < remoteDeviceNum; ++d)
+		{
+			char key[16];
+			int sidevice;
+			sprintf(key, "SIDevice%d", d);
+			ini.Get("Core", key, &sidevice, d == 0 ? SIDEVICE_GC_CONTROLLER : SIDEVICE_NONE);
+			if (sidevice == SIDEVICE_NONE)
+				continue;
+
+			std::string dev = remoteDevices[d];
+			for (int a = BUTTON_A; a <= BUTTON_RIGHT; ++a)
+				AddBind(dev, new sBind((ButtonType)a, BIND_BUTTON, a, 1.0f));
+			AddBind(dev, new sBind(TRIGGER_L, BIND_BUTTON, BUTTON_RIGHT + 1, 1.0f));
+			AddBind(dev, new sBind(TRIGGER_R, BIND_BUTTON, BUTTON_RIGHT + 2, 1.0f));
+
+			AddBind(dev, new sBind(STICK_MAIN_LEFT, BIND_AXIS, 0, -1.0f));
+			AddBind(dev, new sBind(STICK_MAIN_RIGHT, BIND_AXIS, 0, 1.0f));
+			AddBind(dev, new sBind(STICK_MAIN_UP, BIND_AXIS, 1, -1.0f));
+			AddBind(dev, new sBind(STICK_MAIN_DOWN, BIND_AXIS, 1, 1.0f));
+			AddBind(dev, new sBind(STICK_C_LEFT, BIND_AXIS, 2, -1.0f));
+			AddBind(dev, new sBind(STICK_C_RIGHT, BIND_AXIS, 2, 1.0f));
+			AddBind(dev, new sBind(STICK_C_UP, BIND_AXIS, 3, -1.0f));
+			AddBind(dev, new sBind(STICK_C_DOWN, BIND_AXIS, 3, 1.0f));
+		}
 	}
-	bool GetButtonPressed(ButtonType button)
+	bool GetButtonPressed(int port, ButtonType button)
 	{
 		bool pressed = false;
-		for (auto it = m_buttons.begin(); it != m_buttons.end(); ++it)
-			if ((*it)->GetButtonType() == button)
-				pressed = (*it)->Pressed();
+		if (port == 0)
+		{
+			for (auto it = m_buttons.begin(); it != m_buttons.end(); ++it)
+				if ((*it)->GetButtonType() == button)
+					pressed = (*it)->Pressed();
+		}
 
 		for (auto it = m_controllers.begin(); it != m_controllers.end(); ++it)
-			pressed |= it->second->ButtonValue(button);
+			if (it->second->GetPort() == port)
+				pressed |= it->second->ButtonValue(button);
 
 		return pressed;
 	}
-	float GetAxisValue(ButtonType axis)
+	float GetAxisValue(int port, ButtonType axis)
 	{
-		auto it = m_controllers.begin();
-		if (it == m_controllers.end())
-			return 0.0f;
-		return it->second->AxisValue(axis); 
+		// Whichever controller on the port is pushed the furthest wins.
+		float value = 0.0f;
+		for (auto it = m_controllers.begin(); it != m_controllers.end(); ++it)
+		{
+			if (it->second->GetPort() != port)
+				continue;
+
+			float controllerValue = it->second->AxisValue(axis);
+			if (fabsf(controllerValue) > fabsf(value))
+				value = controllerValue;
+		}
+		return value;
 	}
-	void TouchEvent(int action, float x, float y)
+	void TouchEvent(int pointer, int action, float x, float y)
 	{
 		// Actions
 		// 0 is press
 		// 1 is let go
 		// 2 is move
-		for (auto it = m_buttons.begin(); it != m_buttons.end(); ++it)
+		if (action == 0)
 		{
-			float *coords = (*it)->GetCoords();
-			if (	x >= coords[0] &&
-				x <= coords[4] &&
-				y >= coords[1] &&
-				y <= coords[3])
+			for (auto it = m_buttons.begin(); it != m_buttons.end(); ++it)
 			{
-				if (action == 0)
+				float *coords = (*it)->GetCoords();
+				if (	x >= coords[0] &&
+					x <= coords[4] &&
+					y >= coords[1] &&
+					y <= coords[3])
+				{
+					m_touches[pointer] = *it;
 					(*it)->SetState(BUTTON_PRESSED);
-				if (action == 1)
-					(*it)->SetState(BUTTON_RELEASED);
-				if (action == 2)
-					; // XXX: Be used later for analog stick
+				}
 			}
 		}
+		else if (action == 1)
+		{
+			// Let go of the button the pointer went down on, wherever it is now,
+			// unless another pointer is still holding it.
+			auto touch = m_touches.find(pointer);
+			if (touch == m_touches.end())
+				return;
+
+			Button *button = touch->second;
+			m_touches.erase(touch);
+
+			bool held = false;
+			for (auto it = m_touches.begin(); it != m_touches.end(); ++it)
+				if (it->second == button)
+					held = true;
+			if (!held)
+				button->SetState(BUTTON_RELEASED);
+		}
+		else if (action == 2)
+		{
+			; // XXX: Be used later for analog stick
+		}
 	}
 
 	void GamepadEvent(std::string dev, int button, int action)
@@ -157,7 +285,7 @@ namespace ButtonManager
 			it->second->PressEvent(button, action);
 			return;
 		}
-		m_controllers[dev] = new InputDevice(dev);
+		m_controllers[dev] = new InputDevice(dev, PortOf(dev));
 		m_controllers[dev]->PressEvent(button, action);
 	}
 	void GamepadAxisEvent(std::string dev, int axis, float value)
@@ -168,15 +296,157 @@ namespace ButtonManager
 			it->second->AxisEvent(axis, value);
 			return;
 		}
-		m_controllers[dev] = new InputDevice(dev);
+		m_controllers[dev] = new InputDevice(dev, PortOf(dev));
 		m_controllers[dev]->AxisEvent(axis, value);
 	}
+	int RegisterGamepad(const std::string& dev, const int *axes, int count)
+	{
+		// The handles are read while draining the input queue.
+		std::lock_guard<std::mutex> lk(m_queue_lock);
+
+		int handle = 0;
+		while (handle < (int)m_handles.size() && m_handles[handle].dev != dev)
+			++handle;
+
+		if (handle == (int)m_handles.size())
+		{
+			GamepadHandle newHandle;
+			newHandle.dev = dev;
+			newHandle.device = NULL;
+			m_handles.push_back(newHandle);
+		}
+
+		m_handles[handle].axes.assign(axes, axes + count);
+		return handle;
+	}
+	static InputDevice *GetGamepad(int handle)
+	{
+		if (handle < 0 || handle >= (int)m_handles.size())
+			return NULL;
+
+		GamepadHandle &gamepad = m_handles[handle];
+		if (!gamepad.device)
+		{
+			auto it = m_controllers.find(gamepad.dev);
+			if (it == m_controllers.end())
+				it = m_controllers.insert(std::make_pair(gamepad.dev, new InputDevice(gamepad.dev, PortOf(gamepad.dev)))).first;
+			gamepad.device = it->second;
+		}
+		return gamepad.device;
+	}
+	void SetInputQueue(int slot, void *buffer, size_t size)
+	{
+		if (slot < 0 || slot >= maxInputQueues)
+			return;
+
+		std::lock_guard<std::mutex> lk(m_queue_lock);
+		m_queues[slot].buffer = (u8*)buffer;
+		m_queues[slot].mask = buffer ? (u32)((size - queueRecordsStart) / sizeof(InputRecord)) - 1 : 0;
+	}
+	static void DrainQueue(const SharedQueue &queue, s64 cutoff)
+	{
+		volatile u32 &writeIndex = *(volatile u32*)(queue.buffer + queueWriteIndex);
+		volatile u32 &readIndex = *(volatile u32*)(queue.buffer + queueReadIndex);
+		const InputRecord *records = (const InputRecord*)(queue.buffer + queueRecordsStart);
+
+		volatile u32 &applied = *(volatile u32*)(queue.buffer + queueApplied);
+		volatile u32 &totalLag = *(volatile u32*)(queue.buffer + queueTotalLag);
+		volatile u32 &maxLag = *(volatile u32*)(queue.buffer + queueMaxLag);
+		volatile u32 &lagResetSeen = *(volatile u32*)(queue.buffer + queueLagResetSeen);
+		u32 lagReset = *(volatile u32*)(queue.buffer + queueLagReset);
+		if (lagReset != lagResetSeen)
+		{
+			maxLag = 0;
+			lagResetSeen = lagReset;
+		}
+
+		u32 end = writeIndex;
+		__sync_synchronize(); // Don't read any records before the write index.
+
+		// A press and release of the same button within one poll would cancel
+		// each other out, so the release is left in the queue for the next poll.
+		const int maxPresses = 16;
+		InputRecord pressed[maxPresses];
+		int numPressed = 0;
+
+		u32 i = readIndex;
+		for (; i != end; ++i)
+		{
+			const InputRecord &record = records[i & queue.mask];
+
+			// What arrived after this poll started waits for the next one,
+			// whichever queue it's in, so no player gets a later cutoff.
+			if (record.time > cutoff)
+				break;
+
+			if (record.type != INPUT_AXIS && record.action == 1)
+			{
+				bool pressedThisPoll = false;
+				for (int p = 0; p < numPressed; ++p)
+					if (pressed[p].type == record.type && pressed[p].device == record.device && pressed[p].code == record.code)
+						pressedThisPoll = true;
+				if (pressedThisPoll)
+					break;
+			}
+			else if (record.type != INPUT_AXIS && record.action == 0)
+			{
+				if (numPressed == maxPresses)
+					break;
+				pressed[numPressed++] = record;
+			}
+
+			u32 lag = (u32)((cutoff - record.time) / 1000);
+			applied = applied + 1;
+			totalLag = totalLag + lag;
+			if (lag > maxLag)
+				maxLag = lag;
+
+			if (record.type == INPUT_AXIS)
+			{
+				InputDevice *device = GetGamepad(record.device);
+				if (device && record.code >= 0 && record.code < (int)m_handles[record.device].axes.size())
+					device->AxisEvent(m_handles[record.device].axes[record.code], record.x);
+			}
+			else if (record.type == INPUT_TOUCH)
+			{
+				TouchEvent(record.device, record.action, record.x, record.y);
+			}
+			else if (record.type == INPUT_BUTTON)
+			{
+				InputDevice *device = GetGamepad(record.device);
+				if (device)
+					device->PressEvent(record.code, record.action);
+			}
+		}
+
+		__sync_synchronize(); // Finish reading the records before handing them back.
+		readIndex = i;
+	}
+	void DrainInputQueue()
+	{
+		// The same clock as System.nanoTime(), which the records are stamped with.
+		timespec now;
+		clock_gettime(CLOCK_MONOTONIC, &now);
+		s64 cutoff = (s64)now.tv_sec * 1000000000 + now.tv_nsec;
+
+		std::lock_guard<std::mutex> lk(m_queue_lock);
+		for (int q = 0; q < maxInputQueues; ++q)
+			if (m_queues[q].buffer)
+				DrainQueue(m_queues[q], cutoff);
+	}
 	void Shutdown()
 	{
 		for(auto it = m_buttons.begin(); it != m_buttons.end(); ++it)
 			delete *it;
 		for (auto it = m_controllers.begin(); it != m_controllers.end(); ++it)
 			delete it->second;
+		m_buttons.clear();
+		m_controllers.clear();
+		m_touches.clear();
+
+		// Handles stay valid, their devices are looked up again on the next event.
+		for (auto it = m_handles.begin(); it != m_handles.end(); ++it)
+			it->device = NULL;
 	}
 
 	void DrawButtons()
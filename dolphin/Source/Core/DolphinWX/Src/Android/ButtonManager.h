@@ -107,13 +107,15 @@ namespace ButtonManager
 	{
 	private:
 		std::string m_dev;
+		int m_port;
 		std::map<int, bool> m_buttons;
 		std::map<int, float> m_axises;
 		std::map<ButtonType, sBind*> m_binds;
 	public:
-		InputDevice(std::string dev)
+		InputDevice(std::string dev, int port)
 		{
 			m_dev = dev;
+			m_port = port;
 		}
 		~InputDevice()
 		{
@@ -121,6 +123,7 @@ namespace ButtonManager
 			delete it->second;
 		}
 		void AddBind(sBind *bind) { m_binds[bind->m_buttontype] = bind; } 
+		int GetPort() const { return m_port; }
 		void PressEvent(int button, int action);
 		void AxisEvent(int axis, float value);
 		bool ButtonValue(ButtonType button);
@@ -129,10 +132,13 @@ namespace ButtonManager
 
 	void Init();
 	void DrawButtons();
-	bool GetButtonPressed(ButtonType button);
-	float GetAxisValue(ButtonType axis);
-	void TouchEvent(int action, float x, float y);
+	bool GetButtonPressed(int port, ButtonType button);
+	float GetAxisValue(int port, ButtonType axis);
+	void TouchEvent(int pointer, int action, float x, float y);
 	void GamepadEvent(std::string dev, int button, int action);
 	void GamepadAxisEvent(std::string dev, int axis, float value);
+	int RegisterGamepad(const std::string& dev, const int *axes, int count);
+	void SetInputQueue(int slot, void *buffer, size_t size);
+	void DrainInputQueue();
 	void Shutdown();
 }
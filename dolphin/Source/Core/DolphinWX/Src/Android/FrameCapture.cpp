@@ -0,0 +1,111 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#include <mutex>
+#include <vector>
+
+#include "GLInterface.h"
+#include "Android/FrameCapture.h"
+
+namespace FrameCapture
+{
+	std::mutex m_lock;
+	std::vector<u8> m_buffers[buffer_count];
+	bool m_held[buffer_count];
+	bool m_enabled = false;
+	u32 m_dropped = 0;
+	Callback m_callback = NULL;
+
+	void SetCallback(Callback callback)
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		m_callback = callback;
+	}
+
+	void SetEnabled(bool enabled)
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		m_enabled = enabled;
+		m_dropped = 0;
+
+		// Only the memory of buffers nobody holds can be given back.
+		if (!enabled)
+		{
+			for (u32 i = 0; i < buffer_count; ++i)
+			{
+				if (!m_held[i])
+					std::vector<u8>().swap(m_buffers[i]);
+			}
+		}
+	}
+
+	void Release(u32 buffer)
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		if (buffer < buffer_count)
+			m_held[buffer] = false;
+	}
+
+	u32 GetDroppedFrames()
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		return m_dropped;
+	}
+
+	// Runs on the video thread once per frame, just before it's presented.
+	void OnFrame()
+	{
+		u32 buffer;
+		Callback callback;
+		{
+			std::lock_guard<std::mutex> lk(m_lock);
+			if (!m_enabled || !m_callback)
+				return;
+
+			buffer = 0;
+			while (buffer < buffer_count && m_held[buffer])
+				++buffer;
+
+			if (buffer == buffer_count)
+			{
+				++m_dropped;
+				return;
+			}
+
+			m_held[buffer] = true;
+			callback = m_callback;
+		}
+
+		const u32 width = GLInterface->GetBackBufferWidth();
+		const u32 height = GLInterface->GetBackBufferHeight();
+		if (width == 0 || height == 0)
+		{
+			Release(buffer);
+			return;
+		}
+
+		// The buffer is only resized while it's marked as held,
+		// so it never moves while the frontend has it.
+		std::vector<u8>& data = m_buffers[buffer];
+		data.resize(width * height * 4);
+
+		glPixelStorei(GL_PACK_ALIGNMENT, 4);
+		glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, &data[0]);
+
+		callback(buffer, &data[0], width, height);
+	}
+}
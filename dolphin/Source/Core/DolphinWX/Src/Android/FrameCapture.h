@@ -0,0 +1,55 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#pragma once
+
+#include "Common.h"
+
+// Hands the frames the game renders to the frontend as they're presented,
+// so they can be encoded and streamed without capturing the screen.
+//
+// A frame is read back from the back buffer just before it's swapped,
+// before the on-screen buttons are drawn, into one of a few buffers that
+// are owned here. The frontend is given the buffer as RGBA pixels, bottom
+// row first as GL reads them, and gives it back with Release once it's
+// done with it. Frames that come in while every buffer is still held by
+// the frontend are dropped without being read back, so a frontend that
+// can't keep up costs the video thread nothing.
+namespace FrameCapture
+{
+	// The number of buffers frames are read into
+	const u32 buffer_count = 3;
+
+	// Called on the video thread with each frame that's been read back.
+	// buffer is what to pass to Release once data is no longer needed.
+	typedef void (*Callback)(u32 buffer, u8* data, u32 width, u32 height);
+
+	void SetCallback(Callback callback);
+
+	// Starts or stops reading back frames. Buffers the frontend still
+	// holds stay valid until they're released.
+	void SetEnabled(bool enabled);
+
+	// Gives a buffer back to be read into again. Can be called from any thread.
+	void Release(u32 buffer);
+
+	// Gets the number of frames dropped because no buffer was free since capturing was enabled.
+	u32 GetDroppedFrames();
+
+	// OSD callbacks
+	void OnFrame();
+}
@@ -0,0 +1,85 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#include <algorithm>
+#include <mutex>
+#include <string.h>
+
+#include "Timer.h"
+#include "Core.h"
+#include "HW/VideoInterface.h"
+#include "Android/FrameStats.h"
+
+namespace FrameStats
+{
+	std::mutex m_lock;
+	float m_frames[capacity * FIELDS];
+	u32 m_total;
+
+	u64 m_lastTime;
+	u32 m_lastFieldCount;
+	u32 m_lastEmulationTime;
+
+	void Init()
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		m_total = 0;
+		m_lastTime = 0;
+	}
+
+	// Runs on the video thread once per frame.
+	void OnFrame()
+	{
+		u64 now = Common::Timer::GetTimeUs();
+		u32 fieldCount = Core::GetFieldCount();
+		u32 emulationTime = Core::GetEmulationTime();
+
+		if (m_lastTime != 0 && now > m_lastTime)
+		{
+			u32 fields = fieldCount - m_lastFieldCount;
+			float elapsed = (float)(now - m_lastTime);
+			float vps = fields * 1000000.0f / elapsed;
+			u32 target = VideoInterface::TargetRefreshRate ? VideoInterface::TargetRefreshRate : 60;
+
+			std::lock_guard<std::mutex> lk(m_lock);
+			float *frame = &m_frames[(m_total % capacity) * FIELDS];
+			frame[CPU_TIME] = fields ? (emulationTime - m_lastEmulationTime) / (fields * 1000.0f) : 0.0f;
+			frame[GPU_TIME] = elapsed / 1000.0f;
+			frame[VPS] = vps;
+			frame[SPEED] = vps * 100.0f / target;
+			++m_total;
+		}
+
+		m_lastTime = now;
+		m_lastFieldCount = fieldCount;
+		m_lastEmulationTime = emulationTime;
+	}
+
+	u32 Get(float *out, u32 max_frames)
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+
+		u32 count = std::min(std::min(max_frames, capacity), m_total);
+		for (u32 i = m_total - count; i != m_total; ++i)
+		{
+			memcpy(out, &m_frames[(i % capacity) * FIELDS], FIELDS * sizeof(float));
+			out += FIELDS;
+		}
+
+		return m_total;
+	}
+}
@@ -0,0 +1,56 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#pragma once
+
+#include "Common.h"
+
+// Keeps timings for the most recently presented frames, so the frontend
+// can show how well a game is running and record it for later comparison.
+//
+// Each frame is recorded as FIELDS floats, in this order:
+//  - CPU thread time: the average time it took to emulate each field shown
+//    during the frame, in milliseconds, not counting the frame limiter.
+//  - GPU thread time: the time since the previous frame was presented, in
+//    milliseconds. The video thread spins while waiting for work, so this
+//    is how long it took to deliver the frame rather than how busy it was.
+//  - VPS: the rate fields were emulated at while the frame was shown.
+//  - Speed: VPS in percent of the rate the game is meant to run at.
+namespace FrameStats
+{
+	enum
+	{
+		CPU_TIME = 0,
+		GPU_TIME,
+		VPS,
+		SPEED,
+		FIELDS
+	};
+
+	// The number of frames that are kept
+	const u32 capacity = 512;
+
+	// Copies the timings of the most recent frames into out, oldest first.
+	// At most max_frames frames are copied, and never more than have been kept.
+	// Returns the number of frames presented since emulation started,
+	// which tells the caller how many of them it hasn't seen yet.
+	u32 Get(float *out, u32 max_frames);
+
+	// OSD callbacks
+	void Init();
+	void OnFrame();
+}
@@ -0,0 +1,150 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#include <algorithm>
+
+#include "Common.h"
+#include "Timer.h"
+#include "Core.h"
+#include "VideoConfig.h"
+#include "Android/ResolutionScaler.h"
+
+namespace ResolutionScaler
+{
+	// Below this speed, in percent, emulation counts as too slow.
+	const u32 slowSpeed = 95;
+	// Limiter idle time, in percent, needed to count as having headroom.
+	// With the frame limiter off, a speed this far above full speed counts as well.
+	const u32 headroomIdle = 25;
+	const u32 headroomSpeed = 125;
+
+	// How many one-second samples in a row it takes to step down or up.
+	const int slowSamples = 2;
+	const int headroomSamples = 5;
+	const int maxHeadroomSamples = 80;
+
+	// Samples to ignore after a change, while the speed figures catch up with it.
+	const int settleSamples = 2;
+
+	volatile bool m_enabled = false;
+	bool m_active = false;
+	int m_maxScale;
+	u32 m_lastSample;
+	int m_settle;
+	int m_slowCount;
+	int m_headroomCount;
+
+	// Samples of headroom needed before stepping up into each scale,
+	// doubled each time a step up into it turns out to be too slow.
+	int m_needed[SCALE_4X + 1];
+
+	// The scale most recently stepped up into, and whether it is still on probation.
+	int m_probeScale;
+	bool m_probing;
+
+	void SetEnabled(bool enabled)
+	{
+		m_enabled = enabled;
+	}
+
+	void Init()
+	{
+		// Only the fixed multipliers can be stepped through;
+		// the window-based ones are left as they are.
+		m_maxScale = g_Config.iEFBScale;
+		m_active = m_enabled && m_maxScale >= SCALE_1X && m_maxScale <= SCALE_4X;
+
+		m_lastSample = Common::Timer::GetTimeMs();
+		m_settle = settleSamples;
+		m_slowCount = 0;
+		m_headroomCount = 0;
+		m_probing = false;
+		for (int i = 0; i <= SCALE_4X; ++i)
+			m_needed[i] = headroomSamples;
+
+		if (m_active)
+			INFO_LOG(VIDEO, "Adaptive resolution enabled, up to scale %d", m_maxScale);
+	}
+
+	static void SetScale(int scale)
+	{
+		INFO_LOG(VIDEO, "Adaptive resolution: scale %d -> %d", g_Config.iEFBScale, scale);
+
+		// Picked up by the renderer at the end of this frame.
+		g_Config.iEFBScale = scale;
+		m_settle = settleSamples;
+		m_slowCount = 0;
+		m_headroomCount = 0;
+	}
+
+	// Runs on the video thread once per frame.
+	void OnFrame()
+	{
+		if (!m_active)
+			return;
+
+		// The speed figures are only updated once a second.
+		u32 now = Common::Timer::GetTimeMs();
+		if (now - m_lastSample < 1000)
+			return;
+		m_lastSample = now;
+
+		if (m_settle > 0)
+		{
+			--m_settle;
+			return;
+		}
+
+		u32 speed = Core::GetEmulationSpeed();
+		u32 idle = Core::GetThrottleIdle();
+		int scale = g_Config.iEFBScale;
+
+		if (speed < slowSpeed && idle == 0)
+		{
+			m_headroomCount = 0;
+			if (++m_slowCount < slowSamples || scale <= SCALE_1X)
+				return;
+
+			if (m_probing && m_probeScale == scale)
+				m_needed[scale] = std::min(m_needed[scale] * 2, maxHeadroomSamples);
+			m_probing = false;
+
+			SetScale(scale - 1);
+		}
+		else if (idle >= headroomIdle || speed >= headroomSpeed)
+		{
+			m_slowCount = 0;
+			++m_headroomCount;
+
+			// Keeping up at a scale for this long means it wasn't too much after all.
+			if (m_probing && m_headroomCount >= m_needed[scale])
+				m_probing = false;
+
+			if (scale >= m_maxScale || m_headroomCount < m_needed[scale + 1])
+				return;
+
+			m_probeScale = scale + 1;
+			m_probing = true;
+			SetScale(scale + 1);
+		}
+		else
+		{
+			m_slowCount = 0;
+			m_headroomCount = 0;
+		}
+	}
+}
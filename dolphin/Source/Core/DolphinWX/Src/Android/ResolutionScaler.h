@@ -0,0 +1,35 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#pragma once
+
+// Adjusts the internal resolution while a game is running, so that it
+// runs at full speed without the user having to find the right setting.
+//
+// The resolution picked in the video settings is the most it will go up to.
+// It's lowered one step at a time while emulation can't keep up, and raised
+// again one step at a time while the frame limiter is left with time to spare.
+// A step up that turns out to be too slow is undone, and the next attempt at
+// it waits twice as long as the last one did.
+namespace ResolutionScaler
+{
+	void SetEnabled(bool enabled);
+
+	// OSD callbacks
+	void Init();
+	void OnFrame();
+}
@@ -0,0 +1,406 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#include <algorithm>
+#include <mutex>
+#include <string.h>
+#include <time.h>
+#include <vector>
+
+#include "FileUtil.h"
+#include "ConfigManager.h"
+#include "CoreTiming.h"
+#include "HW/SystemTimers.h"
+#include "GLInterface.h"
+#include "Android/StateIndex.h"
+
+namespace StateIndex
+{
+	const u32 magic = 0x49545344; // "DSTI"
+	const u32 version = 1;
+	const u32 header_size = 12;
+	const u32 entry_size = 48;
+
+	struct Entry
+	{
+		s32 slot;
+		char game_id[8];
+		s64 time;
+		double emulated_time;
+		u64 size;
+		u16 width;
+		u16 height;
+		std::vector<u16> thumbnail;
+	};
+
+	// A save that has been started, but hasn't been written to the index yet.
+	// That waits for both the state to be written and the thumbnail to be taken.
+	struct PendingSave
+	{
+		Entry entry;
+		std::string filename;
+		std::string index_filename;
+		bool saved;
+		bool captured;
+	};
+
+	std::mutex m_lock;
+	std::vector<PendingSave> m_pending;
+	bool m_captureRequested = false;
+
+	template <typename T>
+	static void Append(std::vector<u8>& out, const T& value)
+	{
+		const u8* bytes = (const u8*)&value;
+		out.insert(out.end(), bytes, bytes + sizeof(T));
+	}
+
+	template <typename T>
+	static T Read(const u8* in)
+	{
+		T value;
+		memcpy(&value, in, sizeof(T));
+		return value;
+	}
+
+	// Reads every entry of an index, thumbnails included.
+	// A missing or broken index reads as an empty one.
+	static std::vector<Entry> ReadIndex(const std::string& filename)
+	{
+		std::vector<Entry> entries;
+
+		File::IOFile f(filename, "rb");
+		std::vector<u8> data((size_t)f.GetSize());
+		if (data.size() < header_size || !f.ReadBytes(&data[0], data.size()))
+			return entries;
+
+		u32 count = Read<u32>(&data[8]);
+		if (Read<u32>(&data[0]) != magic || Read<u32>(&data[4]) != version ||
+			count > (data.size() - header_size) / entry_size)
+			return entries;
+
+		for (u32 i = 0; i < count; ++i)
+		{
+			const u8* in = &data[header_size + i * entry_size];
+
+			Entry entry;
+			entry.slot = Read<s32>(in);
+			memcpy(entry.game_id, in + 4, sizeof(entry.game_id));
+			entry.time = Read<s64>(in + 12);
+			entry.emulated_time = Read<double>(in + 20);
+			entry.size = Read<u64>(in + 28);
+			entry.width = Read<u16>(in + 36);
+			entry.height = Read<u16>(in + 38);
+
+			u32 offset = Read<u32>(in + 40);
+			size_t pixels = entry.width * entry.height;
+			if (offset > data.size() || pixels > (data.size() - offset) / sizeof(u16))
+			{
+				entry.width = entry.height = 0;
+				pixels = 0;
+			}
+
+			entry.thumbnail.resize(pixels);
+			if (pixels)
+				memcpy(&entry.thumbnail[0], &data[offset], pixels * sizeof(u16));
+
+			entries.push_back(entry);
+		}
+
+		return entries;
+	}
+
+	static bool CompareSlots(const Entry& a, const Entry& b)
+	{
+		return a.slot < b.slot;
+	}
+
+	// Writes an index to a temporary file first, so that a reader
+	// never sees half of one.
+	static void WriteIndex(const std::string& filename, std::vector<Entry>& entries)
+	{
+		std::sort(entries.begin(), entries.end(), CompareSlots);
+
+		std::vector<u8> data;
+		Append(data, magic);
+		Append(data, version);
+		Append(data, (u32)entries.size());
+
+		u32 offset = header_size + entries.size() * entry_size;
+		for (size_t i = 0; i < entries.size(); ++i)
+		{
+			const Entry& entry = entries[i];
+			Append(data, entry.slot);
+			data.insert(data.end(), entry.game_id, entry.game_id + sizeof(entry.game_id));
+			Append(data, entry.time);
+			Append(data, entry.emulated_time);
+			Append(data, entry.size);
+			Append(data, entry.width);
+			Append(data, entry.height);
+			Append(data, offset);
+			Append(data, (u32)0);
+
+			offset += entry.thumbnail.size() * sizeof(u16);
+		}
+
+		for (size_t i = 0; i < entries.size(); ++i)
+		{
+			const std::vector<u16>& thumbnail = entries[i].thumbnail;
+			if (!thumbnail.empty())
+				data.insert(data.end(), (const u8*)&thumbnail[0], (const u8*)&thumbnail[0] + thumbnail.size() * sizeof(u16));
+		}
+
+		const std::string temp_filename = filename + ".tmp";
+		File::IOFile f(temp_filename, "wb");
+		if (!f.WriteBytes(&data[0], data.size()) || !f.Close() || !File::Rename(temp_filename, filename))
+		{
+			ERROR_LOG(COMMON, "Unable to write state index %s", filename.c_str());
+			File::Delete(temp_filename);
+		}
+	}
+
+	static void AddToIndex(const std::string& filename, const Entry& entry)
+	{
+		std::vector<Entry> entries = ReadIndex(filename);
+
+		std::vector<Entry>::iterator it = entries.begin();
+		while (it != entries.end() && it->slot != entry.slot)
+			++it;
+
+		if (it != entries.end())
+			*it = entry;
+		else
+			entries.push_back(entry);
+
+		WriteIndex(filename, entries);
+	}
+
+	// Writes out every save that's ready. m_lock must be held.
+	static void WriteFinishedSaves()
+	{
+		std::vector<PendingSave>::iterator it = m_pending.begin();
+		while (it != m_pending.end())
+		{
+			if (it->saved && it->captured)
+			{
+				AddToIndex(it->index_filename, it->entry);
+				it = m_pending.erase(it);
+			}
+			else
+			{
+				++it;
+			}
+		}
+	}
+
+	// Shrinks the frame in the back buffer down to a thumbnail. Rather than
+	// setting up a framebuffer to scale it down on the GPU, which the software
+	// renderer's context can't do, the whole frame is read back once and
+	// averaged down here. That only happens when a state is saved.
+	static void CaptureThumbnail(Entry& entry)
+	{
+		const u32 screen_width = GLInterface->GetBackBufferWidth();
+		const u32 screen_height = GLInterface->GetBackBufferHeight();
+		entry.width = entry.height = 0;
+		entry.thumbnail.clear();
+
+		if (screen_width == 0 || screen_height == 0)
+			return;
+
+		u32 width, height;
+		if (screen_width * thumbnail_height > screen_height * thumbnail_width)
+		{
+			width = std::min(thumbnail_width, screen_width);
+			height = std::max(1u, screen_height * width / screen_width);
+		}
+		else
+		{
+			height = std::min(thumbnail_height, screen_height);
+			width = std::max(1u, screen_width * height / screen_height);
+		}
+
+		std::vector<u8> frame(screen_width * screen_height * 4);
+		glPixelStorei(GL_PACK_ALIGNMENT, 4);
+		glReadPixels(0, 0, screen_width, screen_height, GL_RGBA, GL_UNSIGNED_BYTE, &frame[0]);
+
+		entry.width = width;
+		entry.height = height;
+		entry.thumbnail.resize(width * height);
+
+		for (u32 y = 0; y < height; ++y)
+		{
+			const u32 y0 = y * screen_height / height;
+			const u32 y1 = std::max(y0 + 1, (y + 1) * screen_height / height);
+
+			for (u32 x = 0; x < width; ++x)
+			{
+				const u32 x0 = x * screen_width / width;
+				const u32 x1 = std::max(x0 + 1, (x + 1) * screen_width / width);
+
+				u32 r = 0, g = 0, b = 0;
+				for (u32 sy = y0; sy < y1; ++sy)
+				{
+					const u8* pixel = &frame[(sy * screen_width + x0) * 4];
+					for (u32 sx = x0; sx < x1; ++sx, pixel += 4)
+					{
+						r += pixel[0];
+						g += pixel[1];
+						b += pixel[2];
+					}
+				}
+
+				const u32 count = (y1 - y0) * (x1 - x0);
+				r /= count;
+				g /= count;
+				b /= count;
+
+				// GL reads the frame from the bottom up
+				entry.thumbnail[(height - 1 - y) * width + x] = ((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3);
+			}
+		}
+	}
+
+	std::string GetFilename(const std::string& game_id)
+	{
+		return File::GetUserPath(D_STATESAVES_IDX) + game_id + ".sti";
+	}
+
+	void OnSaveStarted(int slot, const std::string& filename)
+	{
+		const std::string game_id = SConfig::GetInstance().m_LocalCoreStartupParameter.GetUniqueID();
+
+		PendingSave save;
+		save.filename = filename;
+		save.index_filename = GetFilename(game_id);
+		save.saved = false;
+		save.captured = false;
+
+		Entry& entry = save.entry;
+		entry.slot = slot;
+		memset(entry.game_id, 0, sizeof(entry.game_id));
+		memcpy(entry.game_id, game_id.c_str(), std::min(game_id.size(), sizeof(entry.game_id)));
+		entry.time = (s64)time(NULL) * 1000;
+		entry.emulated_time = (double)CoreTiming::GetTicks() / SystemTimers::GetTicksPerSecond();
+		entry.size = 0;
+		entry.width = entry.height = 0;
+
+		std::lock_guard<std::mutex> lk(m_lock);
+		m_pending.push_back(save);
+		m_captureRequested = true;
+	}
+
+	// Runs on the save thread.
+	void OnStateSaved(const std::string& filename, u64 size)
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+
+		// Saves finish in the order they were started in
+		std::vector<PendingSave>::iterator it = m_pending.begin();
+		while (it != m_pending.end() && (it->saved || it->filename != filename))
+			++it;
+
+		if (it == m_pending.end())
+			return;
+
+		if (size == 0)
+		{
+			m_pending.erase(it);
+			return;
+		}
+
+		it->saved = true;
+		it->entry.size = size;
+
+		// The entry is written before this returns, so the slot is up to date by the
+		// time the frontend is told about the save. Usually the thumbnail was taken
+		// long ago, but if no frame has come along since the save started, the entry
+		// goes in without one and is written again once the thumbnail is taken.
+		AddToIndex(it->index_filename, it->entry);
+		if (it->captured)
+			m_pending.erase(it);
+	}
+
+	void Remove(const std::string& game_id, int slot)
+	{
+		const std::string filename = GetFilename(game_id);
+
+		std::lock_guard<std::mutex> lk(m_lock);
+		std::vector<Entry> entries = ReadIndex(filename);
+
+		std::vector<Entry>::iterator it = entries.begin();
+		while (it != entries.end() && it->slot != slot)
+			++it;
+
+		if (it == entries.end())
+			return;
+
+		entries.erase(it);
+		WriteIndex(filename, entries);
+	}
+
+	void Init()
+	{
+		std::lock_guard<std::mutex> lk(m_lock);
+		m_pending.clear();
+		m_captureRequested = false;
+	}
+
+	// Runs on the video thread once per frame, just before it's presented.
+	void OnFrame()
+	{
+		{
+			std::lock_guard<std::mutex> lk(m_lock);
+			if (!m_captureRequested)
+				return;
+			m_captureRequested = false;
+		}
+
+		// Read the frame without holding the lock,
+		// so the save thread never waits on the GPU.
+		Entry captured;
+		CaptureThumbnail(captured);
+
+		std::lock_guard<std::mutex> lk(m_lock);
+		for (size_t i = 0; i < m_pending.size(); ++i)
+		{
+			if (!m_pending[i].captured)
+			{
+				m_pending[i].entry.width = captured.width;
+				m_pending[i].entry.height = captured.height;
+				m_pending[i].entry.thumbnail = captured.thumbnail;
+				m_pending[i].captured = true;
+			}
+		}
+
+		// Usually the state is still being compressed at this point, and is
+		// written to the index from the save thread. This only writes the
+		// states that were written to the index before their thumbnail.
+		WriteFinishedSaves();
+	}
+
+	void Shutdown()
+	{
+		// No more frames are coming, so the saves still waiting
+		// on one are written to the index without a thumbnail.
+		std::lock_guard<std::mutex> lk(m_lock);
+		for (size_t i = 0; i < m_pending.size(); ++i)
+			m_pending[i].captured = true;
+
+		WriteFinishedSaves();
+		m_captureRequested = false;
+	}
+}
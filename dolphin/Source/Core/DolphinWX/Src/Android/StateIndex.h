@@ -0,0 +1,76 @@
+// Copyright (C) 2003 Dolphin Project.
+
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, version 2.0.
+
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License 2.0 for more details.
+
+// A copy of the GPL 2.0 should have been included with the program.
+// If not, see http://www.gnu.org/licenses/
+
+// Official SVN repository and contact information can be found at
+// http://code.google.com/p/dolphin-emu/
+
+#pragma once
+
+#include <string>
+
+#include "Common.h"
+
+// Keeps a small index file per game describing what's in each of its save
+// state slots, so the frontend can show the slots without opening the states.
+//
+// Each time a state is saved, the frame on screen is shrunk down to a
+// thumbnail, which is recorded along with when the state was saved, the
+// game ID, how long the game had been emulated for and the size of the state.
+// The entry is only written once the state itself has made it to disk, and
+// is written again if the thumbnail is only taken after that.
+//
+// The index is called <game ID>.sti and lives next to the states. All of it
+// is little-endian:
+//
+//   u32 magic ("DSTI")    u32 version (1)    u32 entry count
+//
+// followed by one 48 byte entry per slot, sorted by slot. Slots below 0 are
+// auto-saves, as in State::MakeStateFilename.
+//
+//   s32 slot              char[8] game ID, padded with zeros
+//   s64 save time, in milliseconds since 1970
+//   f64 emulated time, in seconds
+//   u64 state file size
+//   u16 thumbnail width   u16 thumbnail height
+//   u32 thumbnail offset from the start of the file    u32 reserved
+//
+// and then the thumbnails, as RGB565 pixels from the top left. Everything
+// but the thumbnails fits in the first few hundred bytes of the file.
+namespace StateIndex
+{
+	// The most a thumbnail can be in each direction. Thumbnails
+	// keep the aspect ratio of the screen they were taken from.
+	const u32 thumbnail_width = 160;
+	const u32 thumbnail_height = 120;
+
+	// Gets the path of the index for a game.
+	std::string GetFilename(const std::string& game_id);
+
+	// Records that the running game is being saved to a slot, which is
+	// at filename. Call this just before starting to save the state.
+	void OnSaveStarted(int slot, const std::string& filename);
+
+	// Called by the state saving code once a state has been written.
+	// size is the size of the state file, or 0 if it couldn't be saved.
+	// The slot has been written to the index by the time this returns.
+	void OnStateSaved(const std::string& filename, u64 size);
+
+	// Drops a slot from the index of a game, once its state has been deleted.
+	void Remove(const std::string& game_id, int slot);
+
+	// OSD callbacks
+	void Init();
+	void OnFrame();
+	void Shutdown();
+}
@@ -28,8 +28,36 @@ void cInterfaceEGL::UpdateFPSDisplay(const char *text)
 }
 void cInterfaceEGL::Swap()
 {
+	// Switch to the new window before presenting, on the thread that owns the context.
+	if (m_surface_changed)
+		RecreateSurface();
+
 	eglSwapBuffers(GLWin.egl_dpy, GLWin.egl_surf);
 }
+void cInterfaceEGL::UpdateSurface()
+{
+	m_surface_changed = true;
+}
+void cInterfaceEGL::RecreateSurface()
+{
+	m_surface_changed = false;
+
+#ifdef ANDROID
+	// Only Android hands us a new window, everywhere else the window outlives the renderer.
+	eglMakeCurrent(GLWin.egl_dpy, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+	eglDestroySurface(GLWin.egl_dpy, GLWin.egl_surf);
+
+	// Sets up the geometry of the new window and picks up its size.
+	Platform.Init(m_config);
+	GLWin.native_window = Platform.CreateWindow();
+
+	GLWin.egl_surf = eglCreateWindowSurface(GLWin.egl_dpy, m_config, GLWin.native_window, NULL);
+	if (!GLWin.egl_surf)
+		INFO_LOG(VIDEO, "Error: eglCreateWindowSurface failed\n");
+
+	MakeCurrent();
+#endif
+}
 void cInterfaceEGL::SwapInterval(int Interval)
 {
 	eglSwapInterval(GLWin.egl_dpy, Interval);
@@ -123,6 +151,8 @@ bool cInterfaceEGL::Create(void *&window_handle)
 		exit(1);
 	}
 
+	m_config = config;
+	m_surface_changed = false;
 	GLWin.native_window = Platform.CreateWindow();
 
 	GLWin.egl_surf = eglCreateWindowSurface(GLWin.egl_dpy, config,
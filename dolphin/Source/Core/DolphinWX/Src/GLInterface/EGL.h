@@ -36,6 +36,9 @@ class cInterfaceEGL : public cInterfaceBase
 {
 private:
 	cPlatform Platform;
+	EGLConfig m_config;
+	volatile bool m_surface_changed;
+	void RecreateSurface();
 public:
 	friend class cPlatform;
 	void SwapInterval(int Interval);
@@ -43,6 +46,7 @@ public:
 	void UpdateFPSDisplay(const char *Text);
 	bool Create(void *&window_handle);
 	bool MakeCurrent();
+	void UpdateSurface();
 	void Shutdown(); 
 };
 #endif
@@ -23,6 +23,8 @@ public:
 	virtual u32 GetBackBufferHeight() { return s_backbuffer_height; }
 	virtual void SetBackBufferDimensions(u32 W, u32 H) {s_backbuffer_width = W; s_backbuffer_height = H; }
 	virtual void Update() { } 
+	// Called from any thread when the window being rendered to has been replaced.
+	virtual void UpdateSurface() { }
 	virtual bool PeekMessages() { return false; }
 };
 #endif
@@ -17,6 +17,8 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <stdarg.h>
+#include <algorithm>
+#include <vector>
 
 #include "Common.h"
 #include "FileUtil.h"
@@ -27,6 +29,8 @@
 #include "Thread.h"
 
 #include "State.h"
+#include "Rewind.h"
+#include "Movie.h"
 #include "PowerPC/PowerPC.h"
 #include "HW/Wiimote.h"
 
@@ -42,14 +46,27 @@
 #include "VolumeCreator.h"
 
 #include "Android/ButtonManager.h"
+#include "Android/FrameCapture.h"
+#include "Android/FrameStats.h"
+#include "Android/ResolutionScaler.h"
+#include "Android/StateIndex.h"
+#include "GLInterface.h"
 
 #include <jni.h>
+#include <pthread.h>
 #include <android/log.h>
 #include <android/native_window_jni.h>
 ANativeWindow* surf;
 int g_width, g_height;
 std::string g_filename;
 static std::thread g_run_thread;
+static volatile bool g_stop_requested = false;
+static volatile bool g_fast_forward = false;
+
+// Slots to save to that were asked for while the core was paused. They're saved
+// on the thread that called Run, since saving can wait for the previous save.
+static std::mutex g_save_lock;
+static std::vector<int> g_save_requests;
 
 #define LOGI(...) ((void)__android_log_print(ANDROID_LOG_INFO, "Dolphinemu", __VA_ARGS__))
 
@@ -87,7 +104,9 @@ void Host_UpdateBreakPointView(){}
 
 bool Host_GetKeyState(int keycode)
 {
-	return false;
+	// Tab is the throttle key of the desktop frontends. Fast-forwarding
+	// holds it down, which turns the frame and audio limiters off.
+	return keycode == '\t' && g_fast_forward;
 }
 
 void Host_GetRenderWindowSize(int& x, int& y, int& width, int& height)
@@ -183,11 +202,113 @@ std::string GetName(std::string filename)
 	return name;
 }
 
+// Copies a Java string into a std::string.
+static std::string GetJString(JNIEnv *env, jstring jstr)
+{
+	const char *chars = env->GetStringUTFChars(jstr, NULL);
+	std::string str(chars);
+	env->ReleaseStringUTFChars(jstr, chars);
+	return str;
+}
+
+static JavaVM *g_jvm;
+static jclass g_native_library;
+static jmethodID g_on_state_saved;
+static jmethodID g_on_frame_captured;
+static pthread_key_t g_detach_key;
+
+// Runs as each thread attached by GetThreadEnv exits, on that thread.
+static void DetachThread(void *env)
+{
+	g_jvm->DetachCurrentThread();
+}
+
+// Gets the JNIEnv of the calling thread, attaching it if it isn't already.
+// Native threads stay attached until they exit rather than once per call,
+// and are detached by the thread itself, which is the only one allowed to.
+static JNIEnv *GetThreadEnv()
+{
+	JNIEnv *env;
+	if (g_jvm->GetEnv((void**)&env, JNI_VERSION_1_6) == JNI_OK)
+		return env;
+
+	if (g_jvm->AttachCurrentThread(&env, NULL) != JNI_OK)
+		return NULL;
+
+	pthread_setspecific(g_detach_key, env);
+	return env;
+}
+
+// Lets the frontend know a state has been written. Runs on the save thread.
+static void OnStateSaved(const std::string& filename, u64 size)
+{
+	// Update the index first, so the frontend can read the new slot as soon as it's told.
+	StateIndex::OnStateSaved(filename, size);
+
+	JNIEnv *env = GetThreadEnv();
+	if (!env)
+		return;
+
+	jstring jFilename = env->NewStringUTF(filename.c_str());
+	env->CallStaticVoidMethod(g_native_library, g_on_state_saved, jFilename, (jlong)size);
+	if (env->ExceptionCheck())
+	{
+		env->ExceptionDescribe();
+		env->ExceptionClear();
+	}
+	env->DeleteLocalRef(jFilename);
+}
+
+// Hands a captured frame to the frontend. Runs on whichever thread draws
+// frames, which is the CPU thread when running single core.
+static void OnFrameCaptured(u32 buffer, u8* data, u32 width, u32 height)
+{
+	JNIEnv *env = GetThreadEnv();
+	if (!env)
+	{
+		FrameCapture::Release(buffer);
+		return;
+	}
+
+	jobject jPixels = env->NewDirectByteBuffer(data, (jlong)width * height * 4);
+	env->CallStaticVoidMethod(g_native_library, g_on_frame_captured, (jint)buffer, jPixels, (jint)width, (jint)height);
+	if (env->ExceptionCheck())
+	{
+		// The frontend may not have got as far as taking the buffer,
+		// and releasing one that's already been released is harmless.
+		env->ExceptionDescribe();
+		env->ExceptionClear();
+		FrameCapture::Release(buffer);
+	}
+	env->DeleteLocalRef(jPixels);
+}
 
 #ifdef __cplusplus
 extern "C"
 {
 #endif
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
+{
+	JNIEnv *env;
+	if (vm->GetEnv((void**)&env, JNI_VERSION_1_6) != JNI_OK)
+		return -1;
+
+	// Classes can't be looked up from threads created on the native side,
+	// so everything the callbacks need is looked up here.
+	g_jvm = vm;
+	pthread_key_create(&g_detach_key, DetachThread);
+	jclass native_library = env->FindClass("org/dolphinemu/dolphinemu/NativeLibrary");
+	g_native_library = (jclass)env->NewGlobalRef(native_library);
+	env->DeleteLocalRef(native_library);
+	g_on_state_saved = env->GetStaticMethodID(g_native_library, "onStateSaved", "(Ljava/lang/String;J)V");
+	g_on_frame_captured = env->GetStaticMethodID(g_native_library, "onFrameCaptured", "(ILjava/nio/ByteBuffer;II)V");
+
+	State::SetOnAfterSaveCallback(OnStateSaved);
+	FrameCapture::SetCallback(OnFrameCaptured);
+
+	return JNI_VERSION_1_6;
+}
+
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_UnPauseEmulation(JNIEnv *env, jobject obj)
 {
 	PowerPC::Start();
@@ -199,12 +320,31 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_PauseEmulati
 
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_StopEmulation(JNIEnv *env, jobject obj) 
 {
-	PowerPC::Stop();
+	// The actual shutdown happens on the thread that called Run.
+	g_stop_requested = true;
 	updateMainFrameEvent.Set(); // Kick the waiting event
 }
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SurfaceChanged(JNIEnv *env, jobject obj, jobject _surf)
+{
+	ANativeWindow *old_surf = surf;
+	surf = ANativeWindow_fromSurface(env, _surf);
+
+	// The EGL surface holds its own reference to the old window until it's replaced.
+	if (old_surf)
+		ANativeWindow_release(old_surf);
+
+	if (Core::IsRunning() && GLInterface)
+		GLInterface->UpdateSurface();
+}
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SurfaceDestroyed(JNIEnv *env, jobject obj)
+{
+	// Nothing can be drawn until there's a new surface.
+	PowerPC::Pause();
+}
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_onTouchEvent(JNIEnv *env, jobject obj, jint Action, jfloat X, jfloat Y)
 {
-	ButtonManager::TouchEvent(Action, X, Y);
+	// Single touches have no pointer ID, so they're all the first pointer.
+	ButtonManager::TouchEvent(0, Action, X, Y);
 }
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_onGamePadEvent(JNIEnv *env, jobject obj, jstring jDevice, jint Button, jint Action)
 {
@@ -220,6 +360,34 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_onGamePadMov
 	ButtonManager::GamepadAxisEvent(strDevice, Axis, Value);
 	env->ReleaseStringUTFChars(jDevice, Device);
 }
+JNIEXPORT jint JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_RegisterGamePad(JNIEnv *env, jobject obj, jstring jDevice, jintArray jAxes)
+{
+	std::string Device = GetJString(env, jDevice);
+	jsize Count = env->GetArrayLength(jAxes);
+	std::vector<int> Axes(Count);
+	if (Count)
+		env->GetIntArrayRegion(jAxes, 0, Count, (jint*)&Axes[0]);
+	return ButtonManager::RegisterGamepad(Device, Count ? &Axes[0] : NULL, Count);
+}
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetInputQueue(JNIEnv *env, jobject obj, jint Slot, jobject jQueue)
+{
+	// Keep the buffers alive for as long as they're in use.
+	static jobject Queues[8] = {};
+	if (Slot < 0 || Slot >= 8)
+		return;
+
+	jobject OldQueue = Queues[Slot];
+	jobject Queue = jQueue ? env->NewGlobalRef(jQueue) : NULL;
+	Queues[Slot] = Queue;
+
+	if (Queue)
+		ButtonManager::SetInputQueue(Slot, env->GetDirectBufferAddress(Queue), env->GetDirectBufferCapacity(Queue));
+	else
+		ButtonManager::SetInputQueue(Slot, NULL, 0);
+
+	if (OldQueue)
+		env->DeleteGlobalRef(OldQueue);
+}
 
 JNIEXPORT jintArray JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetBanner(JNIEnv *env, jobject obj, jstring jFile)
 {
@@ -292,6 +460,10 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetFilename(
 
 	g_filename = std::string(File);
 
+	// A new session starts here rather than in Run, so a stop that comes
+	// in before the emulation thread gets to Run isn't forgotten.
+	g_stop_requested = false;
+
 	env->ReleaseStringUTFChars(jFile, File);
 }
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetDimensions(JNIEnv *env, jobject obj, jint _width, jint _height)
@@ -300,14 +472,162 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetDimension
 	g_height = (int)_height;
 }
 
-JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SaveState(JNIEnv *env, jobject obj, jint slot)
+JNIEXPORT jint JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetFrameStats(JNIEnv *env, jobject obj, jfloatArray jStats)
+{
+	// Copy into a stack buffer first, the lock on the stats shouldn't be held across JNI calls.
+	float stats[FrameStats::capacity * FrameStats::FIELDS];
+	u32 frames = env->GetArrayLength(jStats) / FrameStats::FIELDS;
+	u32 total = FrameStats::Get(stats, frames);
+
+	frames = std::min(std::min(frames, FrameStats::capacity), total);
+	env->SetFloatArrayRegion(jStats, 0, frames * FrameStats::FIELDS, stats);
+
+	return (jint)total;
+}
+
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetFastForward(JNIEnv *env, jobject obj, jboolean enabled, jint framesToSkip)
 {
-	State::Save(slot);
+	g_fast_forward = enabled;
+
+	// The frame skipping is reset once emulation stops
+	if (Core::IsRunning())
+		Movie::SetFrameSkipping(enabled ? std::max(framesToSkip, 0) : 0);
+}
+
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SetFrameCapture(JNIEnv *env, jobject obj, jboolean enabled)
+{
+	FrameCapture::SetEnabled(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_ReleaseCapturedFrame(JNIEnv *env, jobject obj, jint buffer)
+{
+	FrameCapture::Release((u32)buffer);
+}
+
+JNIEXPORT jint JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetDroppedCaptureFrames(JNIEnv *env, jobject obj)
+{
+	return (jint)FrameCapture::GetDroppedFrames();
+}
+
+JNIEXPORT jint JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetEmulationSpeed(JNIEnv *env, jobject obj)
+{
+	return Core::IsRunning() ? Core::GetEmulationSpeed() : 0;
+}
+
+JNIEXPORT jstring JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_SaveState(JNIEnv *env, jobject obj, jint slot)
+{
+	if (!Core::IsRunning())
+		return NULL;
+
+	const std::string filename = State::MakeStateFilename(slot);
+	StateIndex::OnSaveStarted(slot, filename);
+
+	// A running core takes the snapshot on the CPU thread, so it's only paused for as long as
+	// copying the state takes. A paused core won't get to it until it runs again, so the thread
+	// that called Run saves it instead. Either way the caller doesn't wait at all.
+	if (PowerPC::GetState() == PowerPC::CPU_RUNNING)
+	{
+		State::ScheduleSave(slot);
+	}
+	else
+	{
+		std::lock_guard<std::mutex> lk(g_save_lock);
+		g_save_requests.push_back(slot);
+		updateMainFrameEvent.Set();
+	}
+
+	return env->NewStringUTF(filename.c_str());
 }
 
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_LoadState(JNIEnv *env, jobject obj, jint slot)
 {
-	State::Load(slot);
+	if (!Core::IsRunning())
+		return;
+
+	if (PowerPC::GetState() == PowerPC::CPU_RUNNING)
+		State::ScheduleLoad(slot);
+	else
+		State::Load(slot);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_DeleteState(JNIEnv *env, jobject obj, jstring jGameId, jint slot)
+{
+	const std::string game_id = GetJString(env, jGameId);
+	const std::string filename = State::MakeStateFilename(game_id, slot);
+
+	if (File::Exists(filename) && !File::Delete(filename))
+		return JNI_FALSE;
+
+	if (File::Exists(filename + ".dtm"))
+		File::Delete(filename + ".dtm");
+
+	StateIndex::Remove(game_id, slot);
+	return JNI_TRUE;
+}
+
+static std::string GetGameId(const std::string& file)
+{
+	// The running game is saved under the ID it was booted with, which
+	// is all there is to go on for games that aren't disc images.
+	if (Core::IsRunning() && file == g_filename)
+		return SConfig::GetInstance().m_LocalCoreStartupParameter.GetUniqueID();
+
+	std::string game_id;
+	DiscIO::IVolume* volume = DiscIO::CreateVolumeFromFilename(file);
+	if (volume != NULL)
+	{
+		game_id = volume->GetUniqueID();
+		delete volume;
+	}
+
+	return game_id;
+}
+
+JNIEXPORT jstring JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetGameId(JNIEnv *env, jobject obj, jstring jFile)
+{
+	std::string game_id = GetGameId(GetJString(env, jFile));
+
+	if (game_id.empty())
+		return NULL;
+
+	return env->NewStringUTF(game_id.c_str());
+}
+
+JNIEXPORT jstring JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetStateIndexPath(JNIEnv *env, jobject obj, jstring jFile)
+{
+	std::string game_id = GetGameId(GetJString(env, jFile));
+
+	if (game_id.empty())
+		return NULL;
+
+	return env->NewStringUTF(StateIndex::GetFilename(game_id).c_str());
+}
+
+JNIEXPORT jfloatArray JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_GetRewindAges(JNIEnv *env, jobject obj)
+{
+	std::vector<float> ages;
+	if (Core::IsRunning())
+		ages = Rewind::GetAges();
+
+	jfloatArray jAges = env->NewFloatArray(ages.size());
+	if (!ages.empty())
+		env->SetFloatArrayRegion(jAges, 0, ages.size(), &ages[0]);
+
+	return jAges;
+}
+
+JNIEXPORT jboolean JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_Rewind(JNIEnv *env, jobject obj, jint index)
+{
+	if (!Core::IsRunning() || index < 0)
+		return JNI_FALSE;
+
+	if (PowerPC::GetState() == PowerPC::CPU_RUNNING)
+	{
+		Rewind::ScheduleLoad(index);
+		return JNI_TRUE;
+	}
+
+	return Rewind::Load(index) ? JNI_TRUE : JNI_FALSE;
 }
 
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_CreateUserFolders(JNIEnv *env, jobject obj)
@@ -316,6 +636,7 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_CreateUserFo
 	File::CreateFullPath(File::GetUserPath(D_GCUSER_IDX));
 	File::CreateFullPath(File::GetUserPath(D_WIIUSER_IDX));
 	File::CreateFullPath(File::GetUserPath(D_CACHE_IDX));
+	File::CreateFullPath(File::GetUserPath(D_GAMESETTINGS_IDX));
 	File::CreateFullPath(File::GetUserPath(D_DUMPDSP_IDX));
 	File::CreateFullPath(File::GetUserPath(D_DUMPTEXTURES_IDX));
 	File::CreateFullPath(File::GetUserPath(D_HIRESTEXTURES_IDX));
@@ -327,37 +648,106 @@ JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_CreateUserFo
 	File::CreateFullPath(File::GetUserPath(D_GCUSER_IDX) + JAP_DIR DIR_SEP);
 }
 
+static void SaveRequestedStates()
+{
+	std::vector<int> slots;
+	{
+		std::lock_guard<std::mutex> lk(g_save_lock);
+		slots.swap(g_save_requests);
+	}
+
+	for (size_t i = 0; i < slots.size(); ++i)
+		State::Save(slots[i]);
+}
+
 JNIEXPORT void JNICALL Java_org_dolphinemu_dolphinemu_NativeLibrary_Run(JNIEnv *env, jobject obj, jobject _surf)
 {
+	// Everything that doesn't depend on the game is only set up once per process,
+	// so starting another game only costs as much as booting it.
+	static bool initialized = false;
+
+	if (surf)
+		ANativeWindow_release(surf);
 	surf = ANativeWindow_fromSurface(env, _surf);
-	// Install our callbacks
-	OSD::AddCallback(OSD::OSD_INIT, ButtonManager::Init);
-	OSD::AddCallback(OSD::OSD_SHUTDOWN, ButtonManager::Shutdown);
 
-	LogManager::Init();
-	SConfig::Init();
-	VideoBackend::PopulateList();
+	if (!initialized)
+	{
+		// Install our callbacks
+		OSD::AddCallback(OSD::OSD_INIT, ButtonManager::Init);
+		OSD::AddCallback(OSD::OSD_SHUTDOWN, ButtonManager::Shutdown);
+		OSD::AddCallback(OSD::OSD_INIT, FrameStats::Init);
+		OSD::AddCallback(OSD::OSD_ONFRAME, FrameStats::OnFrame);
+		OSD::AddCallback(OSD::OSD_INIT, ResolutionScaler::Init);
+		OSD::AddCallback(OSD::OSD_ONFRAME, ResolutionScaler::OnFrame);
+		OSD::AddCallback(OSD::OSD_INIT, StateIndex::Init);
+		OSD::AddCallback(OSD::OSD_ONFRAME, StateIndex::OnFrame);
+		OSD::AddCallback(OSD::OSD_SHUTDOWN, StateIndex::Shutdown);
+		OSD::AddCallback(OSD::OSD_ONFRAME, FrameCapture::OnFrame);
+
+		LogManager::Init();
+		SConfig::Init();
+		VideoBackend::PopulateList();
+		initialized = true;
+	}
+	else
+	{
+		// The frontend may have changed the config since the last game.
+		SConfig::GetInstance().LoadSettings();
+	}
+
 	VideoBackend::ActivateBackend(SConfig::GetInstance().m_LocalCoreStartupParameter.m_strVideoBackend);
 	WiimoteReal::LoadSettings();
 
 	// Load our Android specific settings
 	IniFile ini;
 	bool onscreencontrols = true;
+	bool adaptiveresolution = false;
+	int rewindinterval = 0;
+	int rewindmemory = 64;
 	ini.Load(File::GetUserPath(D_CONFIG_IDX) + std::string("Dolphin.ini"));
 	ini.Get("Android", "ScreenControls", &onscreencontrols, true);
+	ini.Get("Android", "AdaptiveResolution", &adaptiveresolution, false);
+	ResolutionScaler::SetEnabled(adaptiveresolution);
+	ini.Get("Android", "RewindInterval", &rewindinterval, 0);
+	ini.Get("Android", "RewindMemory", &rewindmemory, 64);
+	Rewind::Configure(std::max(rewindinterval, 0), (size_t)std::max(rewindmemory, 1) * 1024 * 1024);
 
+	// Only for this game, so turning them off takes effect the next time one is started
 	if (onscreencontrols)
 		OSD::AddCallback(OSD::OSD_ONFRAME, ButtonManager::DrawButtons);
 
-	// No use running the loop when booting fails
-	if ( BootManager::BootCore( g_filename.c_str() ) )
-		while (PowerPC::GetState() != PowerPC::CPU_POWERDOWN)
+	// No use running the loop when booting fails, or booting at all if it's been stopped already
+	if ( !g_stop_requested && BootManager::BootCore( g_filename.c_str() ) )
+	{
+		while (!g_stop_requested && PowerPC::GetState() != PowerPC::CPU_POWERDOWN)
+		{
 			updateMainFrameEvent.Wait();
+			SaveRequestedStates();
+		}
+
+		// A state saved just before stopping, like the one saved when leaving the game, is still written.
+		SaveRequestedStates();
+
+		// Shut the core down completely, so that another game can be started afterwards.
+		// This also undoes the game's own settings, so they aren't saved as the global ones.
+		BootManager::Stop();
+	}
+
+	if (onscreencontrols)
+		OSD::RemoveCallback(OSD::OSD_ONFRAME, ButtonManager::DrawButtons);
+
+	// Nothing that's left belongs to the next game
+	{
+		std::lock_guard<std::mutex> lk(g_save_lock);
+		g_save_requests.clear();
+	}
+
+	// Every game starts out at normal speed
+	g_fast_forward = false;
+	Movie::SetFrameSkipping(0);
 
 	WiimoteReal::Shutdown();
-	VideoBackend::ClearList();
-	SConfig::Shutdown();
-	LogManager::Shutdown();
+	SConfig::GetInstance().SaveSettings();
 }
 
 
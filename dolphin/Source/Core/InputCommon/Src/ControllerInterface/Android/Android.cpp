@@ -25,7 +25,9 @@ namespace Android
 
 void Init( std::vector<Core::Device*>& devices )
 {
-	devices.push_back(new Touchscreen());
+	// One for each controller port, so that remote players each get their own.
+	for (int port = 0; port < 4; ++port)
+		devices.push_back(new Touchscreen(port));
 }
 
 // Touchscreens and stuff
@@ -41,26 +43,35 @@ std::string Touchscreen::GetSource() const
 
 int Touchscreen::GetId() const
 {
-	return 0;
+	return m_port;
 }
-Touchscreen::Touchscreen()
+
+bool Touchscreen::UpdateInput()
+{
+	// Take the input that arrived since the last poll, for every port at once.
+	if (m_port == 0)
+		ButtonManager::DrainInputQueue();
+	return true;
+}
+Touchscreen::Touchscreen(int port)
+	: m_port(port)
 {
-	AddInput(new Button(ButtonManager::BUTTON_A));
-	AddInput(new Button(ButtonManager::BUTTON_B));
-	AddInput(new Button(ButtonManager::BUTTON_START));
-	AddInput(new Button(ButtonManager::BUTTON_X));
-	AddInput(new Button(ButtonManager::BUTTON_Y));
-	AddInput(new Button(ButtonManager::BUTTON_Z));
-	AddInput(new Button(ButtonManager::BUTTON_UP));
-	AddInput(new Button(ButtonManager::BUTTON_DOWN));
-	AddInput(new Button(ButtonManager::BUTTON_LEFT));
-	AddInput(new Button(ButtonManager::BUTTON_RIGHT));
-	AddAnalogInputs(new Axis(ButtonManager::STICK_MAIN_LEFT), new Axis(ButtonManager::STICK_MAIN_RIGHT));
-	AddAnalogInputs(new Axis(ButtonManager::STICK_MAIN_UP), new Axis(ButtonManager::STICK_MAIN_DOWN));
-	AddAnalogInputs(new Axis(ButtonManager::STICK_C_UP), new Axis(ButtonManager::STICK_C_DOWN));
-	AddAnalogInputs(new Axis(ButtonManager::STICK_C_LEFT), new Axis(ButtonManager::STICK_C_RIGHT));
-	AddAnalogInputs(new Axis(ButtonManager::TRIGGER_L), new Axis(ButtonManager::TRIGGER_L));
-	AddAnalogInputs(new Axis(ButtonManager::TRIGGER_R), new Axis(ButtonManager::TRIGGER_R));
+	AddInput(new Button(port, ButtonManager::BUTTON_A));
+	AddInput(new Button(port, ButtonManager::BUTTON_B));
+	AddInput(new Button(port, ButtonManager::BUTTON_START));
+	AddInput(new Button(port, ButtonManager::BUTTON_X));
+	AddInput(new Button(port, ButtonManager::BUTTON_Y));
+	AddInput(new Button(port, ButtonManager::BUTTON_Z));
+	AddInput(new Button(port, ButtonManager::BUTTON_UP));
+	AddInput(new Button(port, ButtonManager::BUTTON_DOWN));
+	AddInput(new Button(port, ButtonManager::BUTTON_LEFT));
+	AddInput(new Button(port, ButtonManager::BUTTON_RIGHT));
+	AddAnalogInputs(new Axis(port, ButtonManager::STICK_MAIN_LEFT), new Axis(port, ButtonManager::STICK_MAIN_RIGHT));
+	AddAnalogInputs(new Axis(port, ButtonManager::STICK_MAIN_UP), new Axis(port, ButtonManager::STICK_MAIN_DOWN));
+	AddAnalogInputs(new Axis(port, ButtonManager::STICK_C_UP), new Axis(port, ButtonManager::STICK_C_DOWN));
+	AddAnalogInputs(new Axis(port, ButtonManager::STICK_C_LEFT), new Axis(port, ButtonManager::STICK_C_RIGHT));
+	AddAnalogInputs(new Axis(port, ButtonManager::TRIGGER_L), new Axis(port, ButtonManager::TRIGGER_L));
+	AddAnalogInputs(new Axis(port, ButtonManager::TRIGGER_R), new Axis(port, ButtonManager::TRIGGER_R));
 
 }
 // Buttons and stuff
@@ -74,7 +85,7 @@ std::string Touchscreen::Button::GetName() const
 
 ControlState Touchscreen::Button::GetState() const
 {
-	return ButtonManager::GetButtonPressed(m_index);
+	return ButtonManager::GetButtonPressed(m_port, m_index);
 }
 std::string Touchscreen::Axis::GetName() const
 {
@@ -85,7 +96,7 @@ std::string Touchscreen::Axis::GetName() const
 
 ControlState Touchscreen::Axis::GetState() const
 {
-	return ButtonManager::GetAxisValue(m_index);
+	return ButtonManager::GetAxisValue(m_port, m_index);
 }
 
 }
@@ -33,26 +33,29 @@ private:
 	{
 	public:
 		std::string GetName() const;
-		Button(ButtonManager::ButtonType index) : m_index(index) {}
+		Button(int port, ButtonManager::ButtonType index) : m_port(port), m_index(index) {}
 		ControlState GetState() const;
 	private:
+		const int m_port;
 		const ButtonManager::ButtonType m_index;
 	};
 	class Axis : public Input
 	{
 	public:
 		std::string GetName() const;
-		Axis(ButtonManager::ButtonType index) : m_index(index) {}
+		Axis(int port, ButtonManager::ButtonType index) : m_port(port), m_index(index) {}
 		ControlState GetState() const;
 	private:
+		const int m_port;
 		const ButtonManager::ButtonType m_index;
 	};
+	const int m_port;
 
 public:
-	bool UpdateInput() { return true; }
+	bool UpdateInput();
 	bool UpdateOutput() { return true; }
 
-	Touchscreen();
+	Touchscreen(int port);
 	~Touchscreen() {}
 
 	std::string GetName() const;
@@ -77,6 +77,20 @@ void AddCallback(CallbackType type, Callback cb)
 	s_callbacks.insert(std::pair<CallbackType, Callback>(type, cb));
 }
 
+void RemoveCallback(CallbackType type, void (*cb)())
+{
+	auto it_bounds = s_callbacks.equal_range(type);
+	for (auto it = it_bounds.first; it != it_bounds.second; ++it)
+	{
+		void (**target)() = it->second.target<void (*)()>();
+		if (target && *target == cb)
+		{
+			s_callbacks.erase(it);
+			return;
+		}
+	}
+}
+
 void DoCallbacks(CallbackType type)
 {
 	auto it_bounds = s_callbacks.equal_range(type);
@@ -25,6 +25,8 @@ enum CallbackType
 typedef std::function<void()> Callback;
 
 void AddCallback(CallbackType type, Callback cb);
+// Removes a callback that was added as a plain function. Not safe while callbacks are running.
+void RemoveCallback(CallbackType type, void (*cb)());
 void DoCallbacks(CallbackType type);
 }  // namespace OSD
 
@@ -41,6 +41,23 @@
   190:0x010 // Z
  };
 
+ // Remote input straight to the phone (stream/RemoteInput.java) numbers
+ // the buttons in the order of the GameCube controller of the Android build.
+ var remoteMap = {
+  69:0x0001, // A
+  81:0x0002, // B
+  13:0x0004, // start
+  75:0x0008, // X
+  76:0x0010, // Y
+  190:0x0020, // Z
+  87:0x0040, // up
+  83:0x0080, // down
+  65:0x0100, // left
+  68:0x0200, // right
+  187:0x0400, // L
+  189:0x0800 // R
+ };
+
  var games = {
   "R2DEEB":"Dokapon Kingdom",
   "RSBE01":"Super Smash Bros Brawl",
@@ -48,12 +65,15 @@
 };
 
 var socket;
+var inputSocket;
+var inputEncoder;
 var buttons = 0;
 var player = 1;
 var buttonMap = wiiSideMap;
 
 $(document).ready(function() {
   InitMessaging();
+  InitRemoteInput();
   InitPlayer();
   InitMouseTracking();
   InitKeyboardTracking();
@@ -77,6 +97,31 @@ $(document).ready(function() {
   });
 }
  
+ // With ?input=host:port in the address, the buttons go to the phone
+ // over a WebSocket as soon as they change, rather than through the server.
+ function InitRemoteInput()
+ {
+  var match = /[?&]input=([^&#]+)/.exec(window.location.search);
+  if (!match)
+    return;
+
+  inputSocket = new WebSocket('ws://' + match[1]);
+  inputSocket.binaryType = 'arraybuffer';
+  buttonMap = remoteMap;
+ }
+
+ // Sends the state of the controller, encoded as in inputcodec.js. A WebSocket
+ // doesn't lose anything, so each packet only needs the newest state.
+ function SendRemoteInput()
+ {
+  if (inputSocket.readyState != WebSocket.OPEN)
+    return;
+
+  if (!inputEncoder || inputEncoder.player != player)
+    inputEncoder = new InputCodec.Encoder(player, 1);
+  inputSocket.send(inputEncoder.encode(buttons));
+ }
+
  function InitPlayer()
  {
   $f("live", "http://releases.flowplayer.org/swf/flowplayer-3.2.16.swf", {
@@ -167,11 +212,22 @@ function InitKeyboardTracking()
 {
   $(window).keydown(function(event){
     console.log(event.keyCode);
+    var previous = buttons;
     buttons =  buttons | buttonMap[event.keyCode];
+    if (inputSocket) {
+      // Held keys repeat, but only changes need sending.
+      if (buttons != previous)
+        SendRemoteInput();
+      return;
+    }
     socket.send(player + " k " + buttons);
   });
   $(window).keyup(function(event){
     buttons = buttons & ~buttonMap[event.keyCode];
+    if (inputSocket) {
+      SendRemoteInput();
+      return;
+    }
     socket.send(player + " k " + buttons);
   }); 
 }
@@ -220,7 +276,8 @@ function InitPageControls(){
       }
     }
     $(this).addClass("selected");
-    buttonMap = window[controller + "Map"];
+    if (!inputSocket)
+      buttonMap = window[controller + "Map"];
   });
 
   $(".media a").click(function(){
@@ -0,0 +1,197 @@
+// Checks that inputcodec.js and stream/InputCodec.java in the Android app
+// speak the same protocol.
+//
+// Both encode the same run of states, which has to come out byte for byte
+// the same, then both decode those packets after they've been through a
+// channel that loses, repeats and reorders them. Each has to pass on the
+// same states, once each and in the order they were sent. Packets that are
+// cut short mustn't have any of their states passed on twice.
+//
+// Usage: node inputcodec-check.js
+//
+// Needs javac and java on the path. Exits with 1 if anything differs.
+
+var fs = require('fs'),
+  os = require('os'),
+  path = require('path'),
+  childProcess = require('child_process'),
+  InputCodec = require('./inputcodec.js');
+
+var SOURCE = path.join(__dirname, '..', 'dolphin', 'Source', 'Android', 'src',
+  'org', 'dolphinemu', 'dolphinemu', 'stream', 'InputCodec.java');
+
+// Reads "buttons x y x y" lines and writes a packet for each in hex,
+// or reads packets in hex and writes the states decoded from them.
+var DRIVER = [
+  'import java.io.BufferedReader;',
+  'import java.io.InputStreamReader;',
+  'import org.dolphinemu.dolphinemu.stream.InputCodec;',
+  '',
+  'public class InputCodecDriver',
+  '{',
+  '	public static void main(String[] args) throws Exception',
+  '	{',
+  '		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));',
+  '		StringBuilder out = new StringBuilder();',
+  '		String line;',
+  '		if (args[0].equals("encode"))',
+  '		{',
+  '			InputCodec.Encoder encoder = new InputCodec.Encoder(Integer.parseInt(args[1]), Integer.parseInt(args[2]));',
+  '			byte[] packet = new byte[InputCodec.MAX_PACKET_SIZE];',
+  '			byte[] axes = new byte[InputCodec.AXIS_COUNT];',
+  '			while ((line = in.readLine()) != null)',
+  '			{',
+  '				String[] fields = line.split(" ");',
+  '				for (int i = 0; i < axes.length; i++)',
+  '					axes[i] = (byte) Integer.parseInt(fields[i + 1]);',
+  '				int length = encoder.encode(Integer.parseInt(fields[0]), axes, packet, 0);',
+  '				for (int i = 0; i < length; i++)',
+  '					out.append(String.format("%02x", packet[i] & 0xFF));',
+  '				out.append("\\n");',
+  '			}',
+  '		}',
+  '		else',
+  '		{',
+  '			final StringBuilder states = out;',
+  '			InputCodec.Decoder decoder = new InputCodec.Decoder();',
+  '			while ((line = in.readLine()) != null)',
+  '			{',
+  '				byte[] packet = new byte[line.length() / 2];',
+  '				for (int i = 0; i < packet.length; i++)',
+  '					packet[i] = (byte) Integer.parseInt(line.substring(i * 2, i * 2 + 2), 16);',
+  '				decoder.decode(packet, 0, packet.length, new InputCodec.Listener()',
+  '				{',
+  '					public void onState(int player, int buttons, byte[] axes)',
+  '					{',
+  '						states.append(player).append(" ").append(buttons);',
+  '						for (byte axis : axes)',
+  '							states.append(" ").append(axis);',
+  '						states.append("\\n");',
+  '					}',
+  '				});',
+  '			}',
+  '		}',
+  '		System.out.print(out);',
+  '	}',
+  '}',
+  ''
+].join('\n');
+
+// A fixed generator, so a failure can be run again.
+var seed = 1;
+function random() {
+  seed = (seed * 1103515245 + 12345) & 0x7fffffff;
+  return seed / 0x80000000;
+}
+
+var failed = false;
+function check(name, ok) {
+  console.log((ok ? 'ok   ' : 'FAIL ') + name);
+  if (!ok)
+    failed = true;
+}
+
+var dir = fs.mkdtempSync(path.join(os.tmpdir(), 'inputcodec-'));
+fs.writeFileSync(path.join(dir, 'InputCodecDriver.java'), DRIVER);
+childProcess.execFileSync('javac', ['-d', dir, SOURCE, path.join(dir, 'InputCodecDriver.java')]);
+
+function java(args, input) {
+  return childProcess.execFileSync('java', ['-cp', dir, 'InputCodecDriver'].concat(args),
+    { input: input, maxBuffer: 1 << 28 }).toString();
+}
+
+function lines(text) {
+  return text.split('\n').filter(function(line) { return line.length > 0; });
+}
+
+function hex(bytes) {
+  return Buffer.from(bytes).toString('hex');
+}
+
+// Enough states to wrap the sequence number, mostly with little changing.
+var PLAYER = 2,
+  REDUNDANCY = 3,
+  states = [];
+for (var i = 0; i < 70000; i++) {
+  var state = [random() < 0.5 ? Math.floor(random() * 4096) : 0];
+  for (var a = 0; a < InputCodec.AXIS_COUNT; a++)
+    state.push(random() < 0.7 ? 0 : Math.floor(random() * 255) - 127);
+  states.push(state);
+}
+var sent = states.map(function(state) { return PLAYER + ' ' + state.join(' '); });
+
+var encoder = new InputCodec.Encoder(PLAYER, REDUNDANCY),
+  packets = states.map(function(state) { return hex(encoder.encode(state[0], state.slice(1))); }),
+  javaPackets = lines(java(['encode', PLAYER, REDUNDANCY], states.map(function(state) {
+    return state.join(' ');
+  }).join('\n') + '\n'));
+check('encoders agree', javaPackets.join('\n') == packets.join('\n'));
+
+// Loses a fifth, repeats one in twenty and swaps one in ten with the next.
+var channel = [];
+packets.forEach(function(packet) {
+  if (random() < 0.2)
+    return;
+  channel.push(packet);
+  if (random() < 0.05)
+    channel.push(packet);
+});
+for (var i = 0; i + 1 < channel.length; i++) {
+  if (random() < 0.1) {
+    var packet = channel[i];
+    channel[i] = channel[i + 1];
+    channel[++i] = packet;
+  }
+}
+
+// Cuts some packets short and sends them whole straight after.
+var truncated = [];
+channel.forEach(function(packet) {
+  if (random() < 0.05 && packet.length > 12)
+    truncated.push(packet.slice(0, 2 * (4 + Math.floor(random() * (packet.length / 2 - 4)))));
+  truncated.push(packet);
+});
+
+function decode(packets) {
+  var decoder = new InputCodec.Decoder(),
+    out = [];
+  packets.forEach(function(packet) {
+    decoder.decode(Buffer.from(packet, 'hex'), function(player, buttons, axes) {
+      out.push(player + ' ' + buttons + ' ' + axes.join(' '));
+    });
+  });
+  return out;
+}
+
+// Every state passed on has to have been sent, after the one before it.
+function inOrder(received) {
+  var j = 0;
+  for (var k = 0; k < received.length; k++) {
+    while (j < sent.length && sent[j] != received[k])
+      j++;
+    if (j == sent.length)
+      return false;
+    j++;
+  }
+  return true;
+}
+
+[['lossy channel', channel], ['packets cut short', truncated]].forEach(function(test) {
+  var received = decode(test[1]),
+    javaReceived = lines(java(['decode'], test[1].join('\n') + '\n'));
+  check('decoders agree over ' + test[0], javaReceived.join('\n') == received.join('\n'));
+  check('states in order over ' + test[0] + ' (' + received.length + ' of ' + sent.length + ')',
+    inOrder(received));
+});
+
+// The first state of a packet on its own, then the whole packet.
+var split = new InputCodec.Encoder(1, 3);
+split.encode(1);
+split.encode(2);
+var whole = hex(split.encode(3));
+check('a packet cut short passes nothing on twice',
+  decode([whole.slice(0, 12), whole]).join('\n') == ['1 1 0 0 0 0', '1 2 0 0 0 0', '1 3 0 0 0 0'].join('\n'));
+
+fs.rmSync(dir, { recursive: true });
+
+process.exit(failed ? 1 : 0);
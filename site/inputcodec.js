@@ -0,0 +1,177 @@
+// The binary protocol remote players send the state of their controllers in,
+// the same as stream/InputCodec.java in the Android app, which describes it.
+//
+// In a browser this adds InputCodec to the page; in node it's the module.
+//
+//   var encoder = new InputCodec.Encoder(player, redundancy);
+//   socket.send(encoder.encode(buttons, [mainX, mainY, cX, cY]));
+//
+//   var decoder = new InputCodec.Decoder();
+//   decoder.decode(bytes, function(player, buttons, axes) { ... });
+
+(function(exports) {
+  var VERSION = 1,
+    MAX_PLAYERS = 4,
+    AXIS_COUNT = 4,
+    MAX_STATES = 16,
+    HEADER_SIZE = 4,
+    // The buttons take the first two fields, the axes the rest.
+    FIELD_COUNT = 2 + AXIS_COUNT,
+    // How far back a packet can be and still be taken as overtaken.
+    REORDER_WINDOW = 256;
+
+  exports.VERSION = VERSION;
+  exports.MAX_PLAYERS = MAX_PLAYERS;
+  exports.AXIS_COUNT = AXIS_COUNT;
+  exports.MAX_STATES = MAX_STATES;
+  exports.MAX_PACKET_SIZE = HEADER_SIZE + MAX_STATES * (1 + FIELD_COUNT);
+
+  var NEUTRAL = new Int8Array(FIELD_COUNT);
+
+  // Encodes the states of the controller of one player as they change. Each
+  // packet carries the last `redundancy` states, which is worth raising over
+  // a connection that can lose packets; 1 is enough over a WebSocket.
+  function Encoder(player, redundancy) {
+    if (player < 1 || player > MAX_PLAYERS)
+      throw new Error('Player must be from 1 to ' + MAX_PLAYERS);
+    if (redundancy < 1 || redundancy > MAX_STATES)
+      throw new Error('Redundancy must be from 1 to ' + MAX_STATES);
+
+    this.player = player;
+    this.redundancy = redundancy;
+    this.history = [];
+    for (var i = 0; i < MAX_STATES; i++)
+      this.history.push(new Int8Array(FIELD_COUNT));
+    this.sequence = 0xFFFF;
+    this.count = 0;
+  }
+
+  // Returns a Uint8Array with the packet for a new state. axes can be left
+  // out while the sticks aren't used, and go from -127 to 127 otherwise.
+  Encoder.prototype.encode = function(buttons, axes) {
+    this.sequence = (this.sequence + 1) & 0xFFFF;
+    this.count = Math.min(this.count + 1, this.redundancy);
+
+    var state = this.history[this.sequence & (MAX_STATES - 1)];
+    state[0] = buttons & 0xFF;
+    state[1] = (buttons >> 8) & 0xFF;
+    for (var a = 0; a < AXIS_COUNT; a++)
+      state[2 + a] = axes ? axes[a] : 0;
+
+    var out = new Uint8Array(exports.MAX_PACKET_SIZE),
+      position = 0;
+    out[position++] = VERSION;
+    out[position++] = (this.player << 4) | (this.count - 1);
+    out[position++] = this.sequence >> 8;
+    out[position++] = this.sequence & 0xFF;
+
+    var previous = NEUTRAL;
+    for (var i = this.count - 1; i >= 0; i--) {
+      var current = this.history[(this.sequence - i) & (MAX_STATES - 1)],
+        fieldsPosition = position++,
+        fields = 0;
+      for (var f = 0; f < FIELD_COUNT; f++) {
+        if (current[f] != previous[f]) {
+          fields |= 1 << f;
+          out[position++] = current[f] & 0xFF;
+        }
+      }
+
+      out[fieldsPosition] = fields;
+      previous = current;
+    }
+
+    return out.subarray(0, position);
+  };
+
+  // Decodes packets from any number of players, passing on each state once
+  // and in order however the packets arrived.
+  function Decoder() {
+    this.lastSequence = [];
+    for (var i = 0; i < MAX_PLAYERS; i++)
+      this.lastSequence.push(-1);
+    this.lost = 0;
+    this.stale = 0;
+    this.rejected = 0;
+  }
+
+  // Calls onState(player, buttons, axes) for each new state in the packets
+  // in data, a Uint8Array or Buffer. Returns false if they were cut short,
+  // or of another version, after decoding everything before that.
+  Decoder.prototype.decode = function(data, onState) {
+    var offset = 0,
+      end = data.length,
+      state = new Int8Array(FIELD_COUNT);
+
+    while (offset < end) {
+      if (end - offset < HEADER_SIZE || data[offset] != VERSION) {
+        this.rejected++;
+        return false;
+      }
+
+      var player = data[offset + 1] >> 4,
+        count = (data[offset + 1] & 0x0F) + 1,
+        sequence = (data[offset + 2] << 8) | data[offset + 3],
+        known = player >= 1 && player <= MAX_PLAYERS,
+        fresh = known ? this.freshStates(player, sequence, count) : 0;
+      offset += HEADER_SIZE;
+
+      for (var f = 0; f < FIELD_COUNT; f++)
+        state[f] = 0;
+
+      for (var i = 0; i < count; i++) {
+        if (offset == end) {
+          this.rejected++;
+          return false;
+        }
+
+        var fields = data[offset++];
+        for (var f = 0; f < FIELD_COUNT; f++) {
+          if (!(fields & (1 << f)))
+            continue;
+
+          if (offset == end) {
+            this.rejected++;
+            return false;
+          }
+          state[f] = data[offset++];
+        }
+
+        // Each state is marked as seen as it's passed on, so none
+        // are passed on again if the rest of the packet is cut short.
+        if (i >= count - fresh) {
+          this.lastSequence[player - 1] = (sequence - (count - 1 - i)) & 0xFFFF;
+          onState(player, (state[1] & 0xFF) << 8 | (state[0] & 0xFF), Array.prototype.slice.call(state, 2));
+        }
+      }
+    }
+
+    return true;
+  };
+
+  // How many of the states at the end of a packet are new.
+  Decoder.prototype.freshStates = function(player, sequence, count) {
+    var last = this.lastSequence[player - 1];
+    if (last == -1)
+      return count;
+
+    // The difference as a signed 16-bit number, so it works across the wrap.
+    var ahead = ((sequence - last) << 16) >> 16;
+    if (ahead < -REORDER_WINDOW)
+      return count;
+
+    if (ahead <= 0) {
+      this.stale++;
+      return 0;
+    }
+
+    if (ahead > count) {
+      this.lost += ahead - count;
+      return count;
+    }
+    return ahead;
+  };
+
+  exports.Encoder = Encoder;
+  exports.Decoder = Decoder;
+})(typeof module != 'undefined' ? module.exports : (this.InputCodec = {}));
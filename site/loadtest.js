@@ -0,0 +1,162 @@
+// Load test for the stream relay in the Android app (stream/StreamRelay.java).
+//
+// Connects a number of synthetic viewers over WebSockets and reports, once a
+// second, how many pictures and bytes they got. Slow viewers stop reading
+// for a while every so often, so the relay has to make them skip ahead;
+// every message is checked to still be a whole picture afterwards.
+//
+// Usage: node loadtest.js [host] [port] [viewers] [slow viewers]
+//
+// The relay is part of the app and only runs on a phone or tablet, with a
+// game running and StreamPort set in the Android section of Dolphin.ini.
+// Either point this at the device over Wi-Fi, or forward the port first and
+// use localhost: adb forward tcp:8084 tcp:8084
+//
+// What the relay keeps up with depends on the device, the game and whether
+// the viewers come in over Wi-Fi or USB, so write those down with any figures.
+
+var net = require('net'),
+  crypto = require('crypto');
+
+var host = process.argv[2] || 'localhost',
+  port = parseInt(process.argv[3] || '8084'),
+  viewerCount = parseInt(process.argv[4] || '100'),
+  slowCount = parseInt(process.argv[5] || '0');
+
+var viewers = [];
+
+function Viewer(slow) {
+  this.slow = slow;
+  this.open = false;
+  this.headerSeen = false;
+  this.messages = 0;
+  this.bytes = 0;
+  this.broken = 0;
+  this.pending = Buffer.alloc(0);
+  this.key = crypto.randomBytes(16).toString('base64');
+
+  var self = this;
+  this.socket = net.connect(port, host, function() {
+    self.socket.write(
+      'GET / HTTP/1.1\r\n' +
+      'Host: ' + host + ':' + port + '\r\n' +
+      'Upgrade: websocket\r\n' +
+      'Connection: Upgrade\r\n' +
+      'Sec-WebSocket-Key: ' + self.key + '\r\n' +
+      'Sec-WebSocket-Version: 13\r\n\r\n');
+  });
+  this.socket.on('data', function(data) { self.receive(data); });
+  this.socket.on('error', function() {});
+  this.socket.on('close', function() { self.open = false; });
+
+  if (slow)
+    this.stall();
+}
+
+// Stops reading for half a second to two seconds, every few seconds.
+Viewer.prototype.stall = function() {
+  var self = this;
+  setTimeout(function() {
+    self.socket.pause();
+    setTimeout(function() {
+      self.socket.resume();
+      self.stall();
+    }, 500 + Math.random() * 1500);
+  }, 1000 + Math.random() * 3000);
+};
+
+Viewer.prototype.receive = function(data) {
+  this.pending = Buffer.concat([this.pending, data]);
+
+  if (!this.open) {
+    var end = this.pending.indexOf('\r\n\r\n');
+    if (end == -1)
+      return;
+
+    var accept = crypto.createHash('sha1')
+      .update(this.key + '258EAFA5-E914-47DA-95CA-C5AB0DC85B11').digest('base64');
+    if (this.pending.toString('latin1', 0, end).indexOf(accept) == -1) {
+      console.log('Handshake failed');
+      this.socket.destroy();
+      return;
+    }
+
+    this.open = true;
+    this.pending = this.pending.slice(end + 4);
+  }
+
+  while (this.pending.length >= 2) {
+    var length = this.pending[1] & 0x7f,
+      offset = 2;
+    if (length == 126) {
+      if (this.pending.length < 4)
+        return;
+      length = this.pending.readUInt16BE(2);
+      offset = 4;
+    }
+    else if (length == 127) {
+      if (this.pending.length < 10)
+        return;
+      length = this.pending.readUInt32BE(6);
+      offset = 10;
+    }
+
+    if (this.pending.length < offset + length)
+      return;
+
+    this.message(this.pending.slice(offset, offset + length));
+    this.pending = this.pending.slice(offset + length);
+  }
+};
+
+Viewer.prototype.message = function(message) {
+  // The first message is the header jsmpeg needs, every one after it a picture.
+  if (!this.headerSeen) {
+    if (message.toString('latin1', 0, 4) != 'jsmp')
+      this.broken++;
+    this.headerSeen = true;
+    return;
+  }
+
+  if (message[0] != 0 || message[1] != 0 || message[2] != 1)
+    this.broken++;
+
+  this.messages++;
+  this.bytes += message.length;
+};
+
+for (var i = 0; i < viewerCount; i++)
+  viewers.push(new Viewer(i < slowCount));
+
+var last = Date.now();
+setInterval(function() {
+  var now = Date.now(),
+    seconds = (now - last) / 1000,
+    stats = { fast: [0, 0, 0, 1e9], slow: [0, 0, 0, 1e9] },
+    connected = 0,
+    broken = 0;
+  last = now;
+
+  viewers.forEach(function(viewer) {
+    var s = viewer.slow ? stats.slow : stats.fast;
+    if (viewer.open)
+      connected++;
+    s[0]++;
+    s[1] += viewer.messages;
+    s[2] += viewer.bytes;
+    s[3] = Math.min(s[3], viewer.messages);
+    broken += viewer.broken;
+    viewer.messages = 0;
+    viewer.bytes = 0;
+  });
+
+  function describe(name, s) {
+    if (s[0] == 0)
+      return '';
+    return name + ': ' + (s[1] / s[0] / seconds).toFixed(1) + ' pictures/s per viewer (lowest ' +
+      (s[3] / seconds).toFixed(1) + '), ' + (s[2] / seconds / 1048576).toFixed(1) + ' MB/s total  ';
+  }
+
+  console.log(connected + '/' + viewers.length + ' connected  ' +
+    describe('fast', stats.fast) + describe('slow', stats.slow) + broken + ' broken');
+}, 1000);